@@ -0,0 +1,25 @@
+package br.pucpr.mage.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Ponto de entrada do benchmarks.jar. Aceita os mesmos argumentos da linha de comando do JMH, mas sempre liga o
+ * profiler de alocação (gc), que informa os bytes alocados por operação (gc.alloc.rate.norm).
+ *
+ * <pre>
+ *     java -jar benchmarks/target/benchmarks.jar                  # todos os benchmarks
+ *     java -jar benchmarks/target/benchmarks.jar MathUtil -rf json # apenas os de MathUtil, resultado em json
+ * </pre>
+ */
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        var options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
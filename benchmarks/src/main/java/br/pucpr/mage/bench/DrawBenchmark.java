@@ -0,0 +1,78 @@
+package br.pucpr.mage.bench;
+
+import br.pucpr.cg.MeshFactory;
+import br.pucpr.mage.Mesh;
+import br.pucpr.mage.RenderQueue;
+import br.pucpr.mage.Shader;
+import br.pucpr.mage.gl.RecordingBackend;
+import org.joml.Matrix4f;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Submissão de desenhos contra o RecordingBackend: o custo de CPU do motor para emitir os comandos, sem GPU.
+ * Cada operação desenha todas as malhas uma vez.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DrawBenchmark {
+    @Param({"16", "1024"})
+    private int objects;
+
+    private RecordingBackend backend;
+    private Shader shader;
+    private Mesh[] meshes;
+    private Matrix4f[] worlds;
+    private RenderQueue queue;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        backend = Engine.headless();
+        shader = Engine.basicShader();
+
+        //Poucas malhas diferentes, como em uma cena real, para que a ordenação da fila faça diferença
+        var factory = new MeshFactory(shader);
+        var distinct = new Mesh[8];
+        for (var i = 0; i < distinct.length; i++) {
+            distinct[i] = factory.createCube();
+        }
+
+        meshes = new Mesh[objects];
+        worlds = new Matrix4f[objects];
+        for (var i = 0; i < objects; i++) {
+            meshes[i] = distinct[(i * 5) % distinct.length];
+            worlds[i] = new Matrix4f().translate(i % 32, (i / 32) % 32, -i / 1024.0f);
+        }
+        queue = new RenderQueue("uWorld", objects);
+    }
+
+    /**
+     * Desenho imediato, na ordem de submissão.
+     */
+    @Benchmark
+    public long meshDraw() {
+        shader.bind();
+        for (var i = 0; i < objects; i++) {
+            shader.setUniform("uWorld", worlds[i]);
+            meshes[i].draw(shader);
+        }
+        return backend.getDrawCalls();
+    }
+
+    /**
+     * Desenho pela fila, ordenado por shader e VAO.
+     */
+    @Benchmark
+    public long renderQueue() {
+        for (var i = 0; i < objects; i++) {
+            queue.submit(meshes[i], shader, worlds[i]);
+        }
+        queue.flush();
+        return backend.getDrawCalls();
+    }
+}
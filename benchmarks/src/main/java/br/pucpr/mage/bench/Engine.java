@@ -0,0 +1,30 @@
+package br.pucpr.mage.bench;
+
+import br.pucpr.mage.Shader;
+import br.pucpr.mage.gl.Backend;
+import br.pucpr.mage.gl.RecordingBackend;
+
+/**
+ * Prepara o motor para rodar sem GPU: instala um RecordingBackend, que apenas conta as chamadas OpenGL.
+ */
+final class Engine {
+    private Engine() {
+    }
+
+    /**
+     * Instala um novo RecordingBackend.
+     * @return O backend instalado
+     */
+    static RecordingBackend headless() {
+        var backend = new RecordingBackend();
+        Backend.set(backend);
+        return backend;
+    }
+
+    /**
+     * @return O shader básico (basic.vert e basic.frag), compilado no backend atual.
+     */
+    static Shader basicShader() {
+        return Shader.loadProgram("basic.vert", "basic.frag");
+    }
+}
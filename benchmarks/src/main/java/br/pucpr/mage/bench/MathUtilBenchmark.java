@@ -0,0 +1,82 @@
+package br.pucpr.mage.bench;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static br.pucpr.mage.MathUtil.*;
+
+/**
+ * Operações de MathUtil nas duas formas: a que cria um novo objeto a cada chamada e a que escreve em um destino.
+ * Compare o gc.alloc.rate.norm das duas versões.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MathUtilBenchmark {
+    private Matrix4f a = new Matrix4f().rotateXYZ(0.3f, 0.7f, 1.1f).translate(1, 2, 3);
+    private Matrix4f b = new Matrix4f().perspective(1.0f, 1.33f, 0.1f, 100f);
+    private Vector3f u = new Vector3f(1, 2, 3);
+    private Vector3f v = new Vector3f(-3, 0.5f, 2);
+    private Vector4f point = new Vector4f(1, 1, 1, 1);
+
+    private Matrix4f matrixDest = new Matrix4f();
+    private Vector3f vectorDest = new Vector3f();
+    private Vector4f pointDest = new Vector4f();
+
+    @Benchmark
+    public Matrix4f mulAllocating() {
+        return mul(a, b);
+    }
+
+    @Benchmark
+    public Matrix4f mulDest() {
+        return mul(a, b, matrixDest);
+    }
+
+    @Benchmark
+    public Matrix4f invertAllocating() {
+        return invert(a);
+    }
+
+    @Benchmark
+    public Matrix4f invertDest() {
+        return invert(a, matrixDest);
+    }
+
+    @Benchmark
+    public Matrix4f rotateTranslateAllocating() {
+        return translate(rotateZ(a, 0.5f), 1, 2, 3);
+    }
+
+    @Benchmark
+    public Matrix4f rotateTranslateDest() {
+        return translate(rotateZ(a, 0.5f, matrixDest), 1, 2, 3, matrixDest);
+    }
+
+    @Benchmark
+    public Object transformAllocating() {
+        return transform(a, point);
+    }
+
+    @Benchmark
+    public Vector4f transformDest() {
+        return transform(a, point, pointDest);
+    }
+
+    @Benchmark
+    public Vector3f crossAllocating() {
+        return cross(u, v);
+    }
+
+    @Benchmark
+    public Vector3f crossDest() {
+        return cross(u, v, vectorDest);
+    }
+}
@@ -0,0 +1,71 @@
+package br.pucpr.mage.bench;
+
+import br.pucpr.mage.Mesh;
+import br.pucpr.mage.MeshBuilder;
+import br.pucpr.mage.Shader;
+import org.joml.Vector3f;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Custo de empacotar os atributos de uma malha: pela coleção de Vector3f, que percorre objetos, ou pelo array de
+ * floats (varargs), que é copiado diretamente.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MeshBuilderBenchmark {
+    @Param({"1024", "65536"})
+    private int vertices;
+
+    private Shader shader;
+    private List<Vector3f> positions;
+    private List<Vector3f> colors;
+    private float[] positionArray;
+    private float[] colorArray;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Engine.headless();
+        shader = Engine.basicShader();
+
+        positions = new ArrayList<>(vertices);
+        colors = new ArrayList<>(vertices);
+        positionArray = new float[vertices * 3];
+        colorArray = new float[vertices * 3];
+        for (var i = 0; i < vertices; i++) {
+            var p = new Vector3f(i % 7, i % 11, i % 13);
+            var c = new Vector3f((i % 3) / 2.0f, (i % 5) / 4.0f, (i % 7) / 6.0f);
+            positions.add(p);
+            colors.add(c);
+            positionArray[i * 3] = p.x;
+            positionArray[i * 3 + 1] = p.y;
+            positionArray[i * 3 + 2] = p.z;
+            colorArray[i * 3] = c.x;
+            colorArray[i * 3 + 1] = c.y;
+            colorArray[i * 3 + 2] = c.z;
+        }
+    }
+
+    @Benchmark
+    public Mesh collection() {
+        return new MeshBuilder(shader)
+                .addVector3fAttribute("aPosition", positions)
+                .addVector3fAttribute("aColor", colors)
+                .create();
+    }
+
+    @Benchmark
+    public Mesh varargs() {
+        return new MeshBuilder(shader)
+                .addVector3fAttribute("aPosition", positionArray)
+                .addVector3fAttribute("aColor", colorArray)
+                .create();
+    }
+}
@@ -0,0 +1,92 @@
+package br.pucpr.mage.bench;
+
+import br.pucpr.cg.MeshFactory;
+import br.pucpr.cg.Robot;
+import br.pucpr.mage.Frustum;
+import br.pucpr.mage.RenderQueue;
+import br.pucpr.mage.Shader;
+import br.pucpr.mage.TransformHierarchy;
+import org.joml.Matrix4f;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Propagação de transformações: uma cadeia de membros como a do robô, em que a rotação do primeiro membro obriga a
+ * recalcular todos os seguintes, e o desenho completo do Robot (propagação, culling e submissão à fila).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TransformBenchmark {
+    /**
+     * Quantidade de membros na cadeia. Cada membro tem três nós (junta, pivot e forma), como em Robot.
+     */
+    @Param({"3", "64"})
+    private int limbs;
+
+    private TransformHierarchy chain;
+    private int firstJoint;
+    private float angle;
+
+    private Robot robot;
+    private Shader shader;
+    private RenderQueue queue;
+    private Frustum frustum;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        chain = new TransformHierarchy(limbs * 3 + 1);
+        var parent = chain.add();
+        for (var i = 0; i < limbs; i++) {
+            var joint = chain.add(parent);
+            chain.setTranslation(joint, 0.0f, 0.35f, 0.0f);
+            if (i == 0) firstJoint = joint;
+            var frame = chain.add(joint);
+            chain.setTranslation(frame, 0.0f, 0.3f, 0.0f);
+            var shape = chain.add(frame);
+            chain.setScale(shape, 0.15f, 0.8f, 0.15f);
+            parent = frame;
+        }
+        chain.update();
+
+        Engine.headless();
+        shader = Shader.loadProgram("instanced.vert", "basic.frag");
+        robot = new Robot(new MeshFactory(shader).createInstancedCube(Robot.INSTANCES));
+        queue = new RenderQueue();
+        frustum = new Frustum().set(new Matrix4f()
+                .perspective(1.0f, 1.33f, 0.1f, 100f)
+                .lookAt(0, 0, 5, 0, 0, 0, 0, 1, 0));
+    }
+
+    /**
+     * Gira o primeiro membro e propaga para toda a cadeia.
+     */
+    @Benchmark
+    public int propagateChain() {
+        angle += 0.01f;
+        chain.setRotationZ(firstJoint, angle);
+        return chain.update();
+    }
+
+    /**
+     * Nada mudou: o update só percorre os flags de alteração.
+     */
+    @Benchmark
+    public int updateClean() {
+        return chain.update();
+    }
+
+    /**
+     * Desenho completo do robô parado: culling e submissão, sem reenvio do buffer de instâncias.
+     */
+    @Benchmark
+    public int robotDraw() {
+        robot.draw(queue, shader, frustum);
+        queue.flush();
+        return queue.getLastFlushed();
+    }
+}
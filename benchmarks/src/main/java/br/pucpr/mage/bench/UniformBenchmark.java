@@ -0,0 +1,47 @@
+package br.pucpr.mage.bench;
+
+import br.pucpr.mage.Shader;
+import br.pucpr.mage.Uniform;
+import org.joml.Matrix4f;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Envio de uniforms: pelo nome com setUniformObject, que busca o uniform e descobre o tipo do objeto a cada chamada,
+ * e pelo handle (Uniform) obtido uma única vez.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UniformBenchmark {
+    private Shader shader;
+    private Uniform world;
+    private Matrix4f matrix = new Matrix4f().translate(1, 2, 3);
+    private Object boxedMatrix = matrix;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Engine.headless();
+        shader = Engine.basicShader().bind();
+        world = shader.getUniform("uWorld");
+    }
+
+    @Benchmark
+    public Shader setUniformObjectMatrix() {
+        return shader.setUniformObject("uWorld", boxedMatrix);
+    }
+
+    @Benchmark
+    public Shader setUniformByName() {
+        return shader.setUniform("uWorld", matrix);
+    }
+
+    @Benchmark
+    public Uniform setUniformHandle() {
+        return world.set(matrix);
+    }
+}
@@ -1,5 +1,6 @@
 package br.pucpr.cg;
 
+import static br.pucpr.mage.gl.Backend.gl;
 import static org.joml.Math.toRadians;
 import static org.lwjgl.glfw.GLFW.*;
 import static org.lwjgl.opengl.GL11.*;
@@ -7,23 +8,28 @@ import static org.lwjgl.opengl.GL11.*;
 import br.pucpr.mage.*;
 import br.pucpr.mage.camera.CameraFPS;
 
+import java.nio.file.Paths;
+
 public class CameraScene implements Scene {
     private Keyboard keys = Keyboard.getInstance();
 
     private Shader shader;
     private Robot robot;
+    private RenderQueue queue = new RenderQueue();
 
     private CameraFPS camera = new CameraFPS();
+    private float time;
     private final float WALK_SPEED = 7f;
     private final float TURN_SPEED = toRadians(120f);
 
     @Override
     public void init() {
-        glEnable(GL_DEPTH_TEST);
-        glEnable(GL_CULL_FACE);
-        glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
-        shader = Shader.loadProgram("basic");
-        robot = new Robot(new MeshFactory(shader).createCube());
+        GLState.getInstance()
+            .enable(GL_DEPTH_TEST)
+            .enable(GL_CULL_FACE);
+        gl().clearColor(0.0f, 0.0f, 0.0f, 1.0f);
+        shader = Shader.loadProgram("instanced.vert", "basic.frag");
+        robot = new Robot(new MeshFactory(shader).createInstancedCube(Robot.INSTANCES));
         camera.getPosition().set(0.0f, 0.0f, 5.0f);
     }
 
@@ -57,25 +63,59 @@ public class CameraScene implements Scene {
         }
 
         robot.update(secs);
+        time += secs;
     }
 
     @Override
     public void draw() {
-        glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
-        shader.bind();
-            //Criamos uma camera afastada em 2 no eixo z, e um pouco elevada
-            camera.apply(shader);
-        shader.unbind();
+        gl().clear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+        //Os dados da camera vão para o uniform block Camera, lido por todos os shaders
+        camera.apply(time);
 
         //Como a camera está elevada, não precisamos mais girar o cubo no eixo x.
-        robot.draw(shader);
+        queue.setEye(camera.getPosition());
+        robot.draw(queue, shader, camera.getFrustum());
+        queue.flush();
     }
 
     @Override
     public void deinit() {
     }
 
+    /**
+     * Abre a janela. Com o argumento --headless, executa a cena sem janela pela quantidade de quadros indicada (600
+     * por padrão) e mostra o relatório de tempos. O contexto pode ser escolhido com --context (none, native, egl ou
+     * osmesa). Todos, exceto none, precisam de um display, que pode ser virtual (Xvfb). Com --shader-cache, os
+     * binários dos shaders são guardados no diretório indicado (ProgramBinaryCache).
+     */
     public static void main(String[] args) {
+        var headless = -1;
+        var context = Headless.Context.NONE;
+        String capture = null;
+        String replay = null;
+        for (var i = 0; i < args.length; i++) {
+            if (args[i].equals("--headless")) {
+                headless = i + 1 < args.length && !args[i + 1].startsWith("--") ? Integer.parseInt(args[++i]) : 600;
+            } else if (args[i].equals("--context") && i + 1 < args.length) {
+                context = Headless.Context.valueOf(args[++i].toUpperCase());
+            } else if (args[i].equals("--capture") && i + 1 < args.length) {
+                capture = args[++i];
+            } else if (args[i].equals("--replay") && i + 1 < args.length) {
+                replay = args[++i];
+            } else if (args[i].equals("--shader-cache") && i + 1 < args.length) {
+                ProgramBinaryCache.getInstance().setDirectory(Paths.get(args[++i]));
+            }
+        }
+
+        if (headless > 0 || replay != null) {
+            var runner = new Headless(800, 600)
+                .setFrames(headless > 0 ? headless : 600)
+                .setContext(context)
+                .setCaptureFile(capture);
+            var stats = replay != null ? runner.replay(replay) : runner.run(new CameraScene());
+            System.out.print(stats.toCsv());
+            return;
+        }
         new Window(new CameraScene(), "Rotating cube", 800, 600).show();
     }
 }
@@ -5,30 +5,65 @@ import br.pucpr.mage.MeshBuilder;
 import br.pucpr.mage.Shader;
 import org.joml.Vector3f;
 
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_BYTE;
+
 public class MeshFactory {
+    private static final Vector3f[] DEFAULT_COLORS = {
+        new Vector3f(0.988f, 0.663f, 0.522f),
+        new Vector3f(0.522f, 0.792f, 0.365f),
+        new Vector3f(0.459f, 0.537f, 0.749f),
+        new Vector3f(0.976f, 0.549f, 0.714f),
+        new Vector3f(0.647f, 0.537f, 0.757f),
+        new Vector3f(0.753f, 0.729f, 0.600f)
+    };
+
     private Shader shader;
+    private boolean keepData;
 
     public MeshFactory(Shader shader) {
         this.shader = shader;
     }
 
+    /**
+     * Define se as malhas criadas guardam uma cópia dos dados do lado da CPU (MeshBuilder.keepData()), permitindo
+     * combiná-las com o StaticBatcher.
+     */
+    public MeshFactory setKeepData(boolean keepData) {
+        this.keepData = keepData;
+        return this;
+    }
+
     public Mesh createCube() {
-        return createCube(
-            new Vector3f(0.988f, 0.663f, 0.522f),
-            new Vector3f(0.522f, 0.792f, 0.365f),
-            new Vector3f(0.459f, 0.537f, 0.749f),
-            new Vector3f(0.976f, 0.549f, 0.714f),
-            new Vector3f(0.647f, 0.537f, 0.757f),
-            new Vector3f(0.753f, 0.729f, 0.600f)
-        );
-    }   
+        return cubeBuilder(DEFAULT_COLORS).create();
+    }
+
+    /**
+     * Cria o cubo colorido padrão, preparado para desenho instanciado. A matriz world de cada instância fica no
+     * atributo por instância aWorld (mat4).
+     * @param instances Quantidade inicial de instâncias
+     */
+    public Mesh createInstancedCube(int instances) {
+        return cubeBuilder(DEFAULT_COLORS)
+            .addInstanceAttribute("aWorld", 16, instances)
+            .create();
+    }
     
     public Mesh createCube(Vector3f color) {
         return createCube(color, color, color, color, color, color);
     }
     
     public Mesh createCube(Vector3f frontColor, Vector3f backColor, Vector3f topColor, Vector3f bottomColor, Vector3f rightColor, Vector3f leftColor) {
-        return new MeshBuilder(shader)
+        return cubeBuilder(frontColor, backColor, topColor, bottomColor, rightColor, leftColor).create();
+    }
+
+    private MeshBuilder cubeBuilder(Vector3f[] colors) {
+        return cubeBuilder(colors[0], colors[1], colors[2], colors[3], colors[4], colors[5]);
+    }
+
+    private MeshBuilder cubeBuilder(Vector3f frontColor, Vector3f backColor, Vector3f topColor, Vector3f bottomColor, Vector3f rightColor, Vector3f leftColor) {
+        var builder = new MeshBuilder(shader);
+        if (keepData) builder.keepData();
+        return builder
         .addVector3fAttribute("aPosition", 
             //Face próxima
              -0.5f,  0.5f,  0.5f,  //0
@@ -60,7 +95,8 @@ public class MeshFactory {
              -0.5f,  0.5f,  0.5f,   //21
              -0.5f, -0.5f, -0.5f,  //22
              -0.5f,  0.5f, -0.5f)  //23
-        .addVector3fAttribute("aColor",
+        //Cores com um byte por componente: 4 bytes por vértice em vez de 12
+        .addVector3fAttribute("aColor", GL_UNSIGNED_BYTE, true,
             //Face próxima
               frontColor, 
               frontColor,
@@ -109,8 +145,7 @@ public class MeshFactory {
              16, 19, 17,
             //Face esquerda
              20, 23, 22,
-             20, 21, 23)
-        .create();        
+             20, 21, 23);
     }
     
 }
@@ -1,33 +1,45 @@
 package br.pucpr.cg;
 
+import br.pucpr.mage.Frustum;
+import br.pucpr.mage.FrustumCuller;
 import br.pucpr.mage.Keyboard;
 import br.pucpr.mage.Mesh;
+import br.pucpr.mage.RenderQueue;
 import br.pucpr.mage.Shader;
-import org.joml.Matrix4f;
+import br.pucpr.mage.TransformHierarchy;
 import org.joml.Vector3f;
 
 import static org.joml.Math.toRadians;
 import static org.lwjgl.glfw.GLFW.*;
 
-import static br.pucpr.mage.MathUtil.*;
-
 public class Robot {
     private class Limb {
         private Limb next;
         private int key1, key2;
 
-        private Vector3f translation;
         private float rotation = toRadians(290f);
-        private Vector3f scale;
-        private Vector3f pivot;
 
-        public Limb(int key1, int key2, Vector3f translation, Vector3f scale, Vector3f pivot) {
+        //Nós na hierarquia:
+        //joint: posição e rotação do membro em relação ao membro anterior
+        //frame: o pivot, que também é a base para o próximo membro
+        //shape: a escala do cubo, que não é herdada pelo próximo membro
+        private int joint;
+        private int frame;
+        private int shape;
+
+        public Limb(int key1, int key2, int parent, Vector3f translation, Vector3f scale, Vector3f pivot) {
             this.key1 = key1;
             this.key2 = key2;
 
-            this.translation = translation;
-            this.scale = scale;
-            this.pivot = pivot;
+            joint = transforms.add(parent);
+            transforms.setTranslation(joint, translation.x, translation.y, translation.z)
+                    .setRotationZ(joint, rotation);
+
+            frame = transforms.add(joint);
+            transforms.setTranslation(frame, pivot.x, pivot.y, pivot.z);
+
+            shape = transforms.add(frame);
+            transforms.setScale(shape, scale.x, scale.y, scale.z);
         }
 
         public void setNext(Limb next) {
@@ -37,31 +49,34 @@ public class Robot {
         public void update(float secs) {
             if (keys.isDown(key1)) {
                 rotation += toRadians(360.0f) * secs;
+                transforms.setRotationZ(joint, rotation);
             } else if (keys.isDown(key2)) {
                 rotation -= toRadians(360.0f) * secs;
+                transforms.setRotationZ(joint, rotation);
             }
 
             if (next != null) next.update(secs);
         }
-
-        public void draw(Matrix4f parent, Shader shader) {
-            var transform = new Matrix4f()
-                    .translate(translation)  //posição
-                    .rotateZ(rotation)       //rotação
-                    .translate(pivot);       //pivot
-
-            var world = mul(parent, transform);
-            mesh.setUniform("uWorld", scale(world, scale))
-                    .draw(shader);
-
-            if (next != null) next.draw(world, shader);
-        }
     }
 
     private static final Keyboard keys = Keyboard.getInstance();
+    //Base, braço, antebraço e mão
+    public static final int INSTANCES = 4;
+
     private Mesh mesh;
     private Limb arm;
-
+    private TransformHierarchy transforms = new TransformHierarchy(1 + 3 * (INSTANCES - 1));
+    private int[] shapes = new int[INSTANCES];
+    private float[] worlds = new float[INSTANCES * 16];
+    private FrustumCuller culler = new FrustumCuller(INSTANCES);
+    private int visibleMask = -1;
+
+    /**
+     * Cria o robô.
+     * @param mesh Malha usada em todas as partes. Deve ter o atributo por instância aWorld, com espaço para INSTANCES
+     *             instâncias.
+     * @see MeshFactory#createInstancedCube(int)
+     */
     public Robot(Mesh mesh) {
         this.mesh = mesh;
 
@@ -69,23 +84,59 @@ public class Robot {
         var scale = new Vector3f(0.15f, 0.8f, 0.15f);
         var pivot = new Vector3f(0.0f, 0.3f, 0.0f);
 
-        this.arm = new Limb(GLFW_KEY_Q, GLFW_KEY_E, new Vector3f(0.6f, 0.48f, 0.0f), scale, pivot);
-        var forearm = new Limb(GLFW_KEY_A, GLFW_KEY_D, translation, scale, pivot);
-        var hand = new Limb(GLFW_KEY_Z, GLFW_KEY_C, translation, scale, pivot);
+        var base = transforms.add();
+        this.arm = new Limb(GLFW_KEY_Q, GLFW_KEY_E, base, new Vector3f(0.6f, 0.48f, 0.0f), scale, pivot);
+        var forearm = new Limb(GLFW_KEY_A, GLFW_KEY_D, arm.frame, translation, scale, pivot);
+        var hand = new Limb(GLFW_KEY_Z, GLFW_KEY_C, forearm.frame, translation, scale, pivot);
 
         arm.setNext(forearm);
         forearm.setNext(hand);
+
+        shapes[0] = base;
+        shapes[1] = arm.shape;
+        shapes[2] = forearm.shape;
+        shapes[3] = hand.shape;
+        culler.setSize(INSTANCES);
     }
 
     public void update(float secs) {
         arm.update(secs);
     }
 
-    public void draw(Shader shader) {
-        var world = new Matrix4f();
-        mesh.setUniform("uWorld", world).draw(shader);
-        arm.draw(world, shader);
+    /**
+     * @return O culler com as partes do robô, para consulta das estatísticas
+     */
+    public FrustumCuller getCuller() {
+        return culler;
     }
-}
 
+    /**
+     * Atualiza as matrizes world das partes que se moveram, descarta as partes fora do frustum e submete as restantes
+     * em um único desenho instanciado. O buffer de instâncias só é reenviado quando alguma parte muda ou quando o
+     * conjunto de partes visíveis muda.
+     */
+    public void draw(RenderQueue queue, Shader shader, Frustum frustum) {
+        var moved = transforms.update() > 0;
+        if (moved) {
+            var all = transforms.getWorldArray();
+            for (var i = 0; i < INSTANCES; i++) {
+                culler.set(i, mesh.getBounds(), all, shapes[i] * 16);
+            }
+        }
+
+        var visible = culler.cull(frustum);
+        var mask = 0;
+        for (var i = 0; i < visible; i++) {
+            mask |= 1 << culler.getVisible()[i];
+        }
 
+        if (moved || mask != visibleMask) {
+            visibleMask = mask;
+            for (var i = 0; i < visible; i++) {
+                transforms.getWorld(shapes[culler.getVisible()[i]], worlds, i * 16);
+            }
+            mesh.updateInstanceAttribute("aWorld", worlds);
+        }
+        queue.submitInstanced(mesh, shader, visible);
+    }
+}
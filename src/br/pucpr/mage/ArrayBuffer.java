@@ -1,18 +1,32 @@
 package br.pucpr.mage;
 
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 
+import static br.pucpr.mage.gl.Backend.gl;
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
 import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
-import static org.lwjgl.opengl.GL11.glDrawArrays;
 import static org.lwjgl.opengl.GL15.*;
 
 /**
  * Representa um ELEMENT_ARRAY de floats.
+ *
+ * Os dados são sempre fornecidos como floats, mas podem ser guardados na placa de vídeo em um tipo compacto
+ * (GL_HALF_FLOAT, GL_UNSIGNED_BYTE normalizado, etc.), informado no construtor. Nesse caso, cada elemento é convertido
+ * com as regras de VertexFormat.pack e ocupa getStride() bytes.
+ *
+ * O conteúdo pode ser substituído por inteiro com update(data), que realoca o buffer (orphaning), ou em parte com
+ * update(first, data), que usa glBufferSubData. Para dados reescritos a cada quadro, prefira um StreamBuffer.
  */
 public class ArrayBuffer {
     private int id;
     private int elementSize;
     private int elementCount;
+    private int type = GL_FLOAT;
+    private boolean normalized;
+    private VertexFormat layout;
 
     /**
      * Cria um ArrayBuffer contendo os dados passados por parâmetro.
@@ -27,12 +41,12 @@ public class ArrayBuffer {
             throw new IllegalArgumentException("Data is null!");
         }
 
-        this.id = glGenBuffers();
+        this.id = gl().genBuffers();
         this.elementSize = elementSize;
         this.elementCount = data.length / elementSize;
 
-        glBindBuffer(GL_ARRAY_BUFFER, id);
-        glBufferData(GL_ARRAY_BUFFER, data, GL_STATIC_DRAW);
+        GLState.getInstance().bindBuffer(GL_ARRAY_BUFFER, id);
+        gl().bufferData(GL_ARRAY_BUFFER, data, GL_STATIC_DRAW);
     }
 
     /**
@@ -48,14 +62,77 @@ public class ArrayBuffer {
             throw new IllegalArgumentException("Data is null!");
         }
 
-        this.id = glGenBuffers();
+        this.id = gl().genBuffers();
         this.elementSize = elementSize;
         this.elementCount = data.remaining() / elementSize;
 
-        glBindBuffer(GL_ARRAY_BUFFER, id);
-        glBufferData(GL_ARRAY_BUFFER, data, GL_STATIC_DRAW);
+        GLState.getInstance().bindBuffer(GL_ARRAY_BUFFER, id);
+        gl().bufferData(GL_ARRAY_BUFFER, data, GL_STATIC_DRAW);
+    }
+
+    /**
+     * Cria um ArrayBuffer guardando os dados em um tipo compacto.
+     * @param elementSize Tamanho do elemento (1 a 4). Por exemplo 3 para uma cor rgb.
+     * @param type Tipo dos componentes na placa de vídeo, como GL_HALF_FLOAT ou GL_UNSIGNED_BYTE.
+     * @param normalized Se os inteiros devem ser lidos pelo shader como valores em [0, 1] ou [-1, 1].
+     * @param data Dados dentro do buffer, em float.
+     */
+    public ArrayBuffer(int elementSize, int type, boolean normalized, float... data) {
+        this(elementSize, type, normalized, FloatBuffer.wrap(data));
     }
 
+    /**
+     * Cria um ArrayBuffer guardando os dados em um tipo compacto.
+     * @param elementSize Tamanho do elemento (1 a 4). Por exemplo 3 para uma cor rgb.
+     * @param type Tipo dos componentes na placa de vídeo, como GL_HALF_FLOAT ou GL_UNSIGNED_BYTE.
+     * @param normalized Se os inteiros devem ser lidos pelo shader como valores em [0, 1] ou [-1, 1].
+     * @param data FloatBuffer com dados.
+     */
+    public ArrayBuffer(int elementSize, int type, boolean normalized, FloatBuffer data) {
+        if (elementSize < 1) {
+            throw new IllegalArgumentException("Element size < 1!");
+        }
+        if (data == null) {
+            throw new IllegalArgumentException("Data is null!");
+        }
+
+        this.id = gl().genBuffers();
+        this.elementSize = elementSize;
+        this.type = type;
+        this.normalized = normalized;
+        if (type != GL_FLOAT || normalized) {
+            layout = new VertexFormat().add("value", elementSize, type, normalized);
+        }
+        upload(data, GL_STATIC_DRAW);
+    }
+
+    /**
+     * Envia os dados, convertendo-os para o tipo do buffer se necessário.
+     */
+    private void upload(FloatBuffer data, int usage) {
+        bind();
+        this.elementCount = data.remaining() / elementSize;
+        if (layout == null) {
+            //A LWJGL só aceita buffers diretos
+            if (data.isDirect()) {
+                gl().bufferData(GL_ARRAY_BUFFER, data, usage);
+            } else {
+                var copy = new float[data.remaining()];
+                data.duplicate().get(copy);
+                gl().bufferData(GL_ARRAY_BUFFER, copy, usage);
+            }
+            return;
+        }
+
+        ByteBuffer packed = null;
+        try {
+            packed = MemoryUtil.memAlloc(elementCount * layout.getStride());
+            layout.pack(data, packed);
+            gl().bufferData(GL_ARRAY_BUFFER, packed.flip(), usage);
+        } finally {
+            if (packed != null) MemoryUtil.memFree(packed);
+        }
+    }
 
     /**
      * @return O id do buffer na OpenGL
@@ -78,6 +155,34 @@ public class ArrayBuffer {
         return elementCount;
     }
 
+    /**
+     * @return O tipo dos componentes na placa de vídeo. GL_FLOAT, a não ser que outro tipo tenha sido informado.
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * @return Verdadeiro se os inteiros do buffer são normalizados pela placa de vídeo.
+     */
+    public boolean isNormalized() {
+        return normalized;
+    }
+
+    /**
+     * @return A distância, em bytes, entre dois elementos. Zero para floats, que ficam contíguos.
+     */
+    public int getStride() {
+        return layout == null ? 0 : layout.getStride();
+    }
+
+    /**
+     * @return O parâmetro size de glVertexAttribPointer. Tipos empacotados (2_10_10_10) sempre usam 4.
+     */
+    public int getPointerSize() {
+        return layout == null ? elementSize : layout.getAttributes().get(0).getPointerSize();
+    }
+
     /**
      * Tamanho do buffer.
      */
@@ -85,11 +190,88 @@ public class ArrayBuffer {
         return elementSize * elementCount;
     }
 
+    /**
+     * Substitui o conteúdo do buffer. O buffer é realocado (GL_DYNAMIC_DRAW), o que permite ao driver descartar o
+     * armazenamento antigo sem esperar que a GPU termine de usá-lo.
+     * @param data Novos dados. A quantidade de elementos passa a ser data.length / elementSize.
+     * @return O próprio buffer
+     */
+    public ArrayBuffer update(float... data) {
+        if (data == null) {
+            throw new IllegalArgumentException("Data is null!");
+        }
+        if (layout != null) {
+            upload(FloatBuffer.wrap(data), GL_DYNAMIC_DRAW);
+            return this;
+        }
+        bind();
+        gl().bufferData(GL_ARRAY_BUFFER, data, GL_DYNAMIC_DRAW);
+        this.elementCount = data.length / elementSize;
+        return this;
+    }
+
+    /**
+     * Substitui o conteúdo do buffer. O buffer é realocado (GL_DYNAMIC_DRAW), o que permite ao driver descartar o
+     * armazenamento antigo sem esperar que a GPU termine de usá-lo.
+     * @param data Novos dados. A quantidade de elementos passa a ser data.remaining() / elementSize.
+     * @return O próprio buffer
+     */
+    public ArrayBuffer update(FloatBuffer data) {
+        if (data == null) {
+            throw new IllegalArgumentException("Data is null!");
+        }
+        if (layout != null) {
+            upload(data, GL_DYNAMIC_DRAW);
+            return this;
+        }
+        bind();
+        gl().bufferData(GL_ARRAY_BUFFER, data, GL_DYNAMIC_DRAW);
+        this.elementCount = data.remaining() / elementSize;
+        return this;
+    }
+
+    /**
+     * Substitui parte do conteúdo do buffer com glBufferSubData, sem realocá-lo. Útil para alterar poucos elementos
+     * de um buffer grande.
+     * @param first Índice do primeiro elemento alterado
+     * @param data Novos dados, elementSize floats por elemento
+     * @return O próprio buffer
+     */
+    public ArrayBuffer update(int first, float... data) {
+        if (data == null) {
+            throw new IllegalArgumentException("Data is null!");
+        }
+        var count = data.length / elementSize;
+        if (first < 0 || first + count > elementCount) {
+            throw new IllegalArgumentException("Invalid range: " + first + " to " + (first + count));
+        }
+
+        ByteBuffer bytes = null;
+        try {
+            long offset;
+            if (layout == null) {
+                bytes = MemoryUtil.memAlloc(count * elementSize * Float.BYTES);
+                bytes.asFloatBuffer().put(data, 0, count * elementSize);
+                offset = (long) first * elementSize * Float.BYTES;
+            } else {
+                bytes = MemoryUtil.memAlloc(count * layout.getStride());
+                layout.pack(FloatBuffer.wrap(data), bytes);
+                bytes.flip();
+                offset = (long) first * layout.getStride();
+            }
+            bind();
+            gl().bufferSubData(GL_ARRAY_BUFFER, offset, bytes);
+        } finally {
+            if (bytes != null) MemoryUtil.memFree(bytes);
+        }
+        return this;
+    }
+
     /**
      * @return Faz o bind do buffer na OpenGL
      */
     public ArrayBuffer bind() {
-        glBindBuffer(GL_ARRAY_BUFFER, id);
+        GLState.getInstance().bindBuffer(GL_ARRAY_BUFFER, id);
         return this;
     }
 
@@ -97,7 +279,7 @@ public class ArrayBuffer {
      * @return Faz unbind do buffer na OpenGL
      */
     public ArrayBuffer unbind() {
-        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        GLState.getInstance().bindBuffer(GL_ARRAY_BUFFER, 0);
         return this;
     }
 
@@ -105,6 +287,14 @@ public class ArrayBuffer {
      * Realiza o comando de desenho considerando todos os elementos desse buffer.
      */
     public void draw() {
-        glDrawArrays(GL_TRIANGLES, 0, getCount());
+        gl().drawArrays(GL_TRIANGLES, 0, getCount());
+    }
+
+    /**
+     * Realiza o comando de desenho instanciado considerando todos os elementos desse buffer.
+     * @param instances Quantidade de instâncias
+     */
+    public void drawInstanced(int instances) {
+        gl().drawArraysInstanced(GL_TRIANGLES, 0, getCount(), instances);
     }
 }
@@ -0,0 +1,139 @@
+package br.pucpr.mage;
+
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Volume envolvente de uma malha, no espaço do modelo: uma caixa alinhada aos eixos (AABB) e uma esfera. A esfera é
+ * centrada no centro da caixa e envolve todos os vértices, não apenas os cantos da caixa.
+ *
+ * É calculado pelo MeshBuilder a partir do atributo aPosition e usado pelo FrustumCuller para descartar objetos fora
+ * do campo de visão.
+ */
+public class Bounds {
+    private final Vector3f min = new Vector3f();
+    private final Vector3f max = new Vector3f();
+    private final Vector3f center = new Vector3f();
+    private final Vector3f extents = new Vector3f();
+    private float radius;
+
+    /**
+     * Cria o volume a partir da caixa indicada. O raio da esfera é a metade da diagonal da caixa.
+     */
+    public Bounds(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        if (minX > maxX || minY > maxY || minZ > maxZ) {
+            throw new IllegalArgumentException("Min > max!");
+        }
+        min.set(minX, minY, minZ);
+        max.set(maxX, maxY, maxZ);
+        max.add(min, center).mul(0.5f);
+        max.sub(center, extents);
+        radius = extents.length();
+    }
+
+    public Bounds(Vector3fc min, Vector3fc max) {
+        this(min.x(), min.y(), min.z(), max.x(), max.y(), max.z());
+    }
+
+    /**
+     * Calcula o volume de um conjunto de posições.
+     * @param positions Posições dos vértices, com ao menos 3 floats por vértice (x, y, z)
+     * @param elementSize Quantidade de floats por vértice
+     * @return O volume, ou null se não houver vértices.
+     */
+    public static Bounds of(float[] positions, int elementSize) {
+        return of(FloatBuffer.wrap(positions), elementSize);
+    }
+
+    /**
+     * Calcula o volume de um conjunto de posições. A posição do buffer não é alterada.
+     * @param positions Posições dos vértices, com ao menos 3 floats por vértice (x, y, z)
+     * @param elementSize Quantidade de floats por vértice
+     * @return O volume, ou null se não houver vértices.
+     */
+    public static Bounds of(FloatBuffer positions, int elementSize) {
+        if (elementSize < 3) {
+            throw new IllegalArgumentException("Positions need at least 3 components!");
+        }
+        return of(positions, 0, elementSize);
+    }
+
+    /**
+     * Calcula o volume das posições contidas em vértices intercalados. A posição do buffer não é alterada.
+     * @param positions Vértices, com stride floats cada
+     * @param offset Índice, dentro do vértice, do x da posição
+     * @param stride Quantidade de floats por vértice
+     * @return O volume, ou null se não houver vértices.
+     */
+    public static Bounds of(FloatBuffer positions, int offset, int stride) {
+        if (offset < 0 || offset + 3 > stride) {
+            throw new IllegalArgumentException("Invalid position offset: " + offset);
+        }
+        var start = positions.position() + offset;
+        var count = positions.remaining() / stride;
+        if (count == 0) {
+            return null;
+        }
+
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        for (var v = 0; v < count; v++) {
+            var i = start + v * stride;
+            var x = positions.get(i);
+            var y = positions.get(i + 1);
+            var z = positions.get(i + 2);
+            if (x < minX) minX = x;
+            if (y < minY) minY = y;
+            if (z < minZ) minZ = z;
+            if (x > maxX) maxX = x;
+            if (y > maxY) maxY = y;
+            if (z > maxZ) maxZ = z;
+        }
+
+        var bounds = new Bounds(minX, minY, minZ, maxX, maxY, maxZ);
+
+        //A esfera mais justa centrada na caixa é dada pelo vértice mais afastado do centro
+        var c = bounds.center;
+        var r2 = 0.0f;
+        for (var v = 0; v < count; v++) {
+            var i = start + v * stride;
+            var d2 = c.distanceSquared(positions.get(i), positions.get(i + 1), positions.get(i + 2));
+            if (d2 > r2) r2 = d2;
+        }
+        bounds.radius = (float) Math.sqrt(r2);
+        return bounds;
+    }
+
+    public Vector3fc getMin() {
+        return min;
+    }
+
+    public Vector3fc getMax() {
+        return max;
+    }
+
+    public Vector3fc getCenter() {
+        return center;
+    }
+
+    /**
+     * @return Metade do tamanho da caixa em cada eixo
+     */
+    public Vector3fc getExtents() {
+        return extents;
+    }
+
+    /**
+     * @return O raio da esfera envolvente, centrada em getCenter()
+     */
+    public float getRadius() {
+        return radius;
+    }
+
+    @Override
+    public String toString() {
+        return "Bounds{min=" + min + ", max=" + max + ", radius=" + radius + "}";
+    }
+}
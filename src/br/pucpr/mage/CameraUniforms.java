@@ -0,0 +1,102 @@
+package br.pucpr.mage;
+
+import br.pucpr.mage.camera.Camera;
+import br.pucpr.mage.gl.GLBackend;
+
+import static br.pucpr.mage.gl.Backend.gl;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER;
+
+/**
+ * Uniform buffer com os dados da camera, compartilhado por todos os shaders. Em vez de enviar uProjection e uView
+ * para cada shader program com glUniformMatrix4fv, os dados são escritos uma única vez por quadro e ligados ao ponto
+ * fixo BINDING. Todo shader que declarar o bloco abaixo é associado a esse ponto automaticamente no link (veja
+ * Shader.setBlockBinding), e não precisa de nenhuma chamada por programa:
+ *
+ * <pre>
+ * layout(std140) uniform Camera {
+ *     mat4 uView;
+ *     mat4 uProjection;
+ *     mat4 uViewProjection;
+ *     vec3 uCameraPosition;
+ *     float uTime;
+ * };
+ * </pre>
+ *
+ * O layout std140 é fixo: as três matrizes nos bytes 0, 64 e 128, a posição em 192 e o tempo em 204, ocupando o
+ * espaço que sobra do vec3. Os dados ficam em um StreamBuffer, portanto a escrita de um quadro nunca espera a GPU
+ * terminar de ler a do quadro anterior.
+ *
+ * <pre>
+ *     CameraUniforms.getInstance().update(camera, time);
+ * </pre>
+ */
+public class CameraUniforms {
+    public static final String BLOCK_NAME = "Camera";
+    public static final int BINDING = 0;
+    public static final int SIZE = 208;
+
+    //Quantas câmeras diferentes podem ser usadas no mesmo quadro. Cada escrita começa alinhada a
+    //StreamBuffer.ALIGNMENT, portanto ocupa ALIGNMENT bytes, e não SIZE.
+    private static final int UPDATES_PER_FRAME = 16;
+
+    private static final CameraUniforms INSTANCE = new CameraUniforms();
+
+    private StreamBuffer buffer;
+    private GLBackend backend;
+
+    private Camera camera;
+    private int version = -1;
+    private float time = Float.NaN;
+    private long frame = -1;
+
+    private CameraUniforms() {
+    }
+
+    public static CameraUniforms getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Escreve os dados da camera e liga o buffer ao ponto BINDING. Se a camera, suas matrizes e o tempo não mudaram
+     * desde a última chamada no mesmo quadro, nada é feito.
+     * @param camera Camera cujos dados serão usados pelos shaders
+     * @param time Tempo, em segundos, disponível nos shaders como uTime
+     * @return O próprio objeto
+     */
+    public CameraUniforms update(Camera camera, float time) {
+        if (camera == null) {
+            throw new IllegalArgumentException("Camera can't be null!");
+        }
+
+        var now = GLState.getInstance().getFrame();
+        var version = camera.getVersion();
+        //O buffer pertence ao contexto em que foi criado. Se o backend mudar, outro buffer é criado.
+        var sameBuffer = buffer != null && backend == gl();
+        if (sameBuffer && camera == this.camera && version == this.version && time == this.time && now == frame) {
+            return this;
+        }
+        if (!sameBuffer) {
+            backend = gl();
+            buffer = new StreamBuffer(GL_UNIFORM_BUFFER, StreamBuffer.ALIGNMENT * UPDATES_PER_FRAME);
+        }
+
+        var data = buffer.begin(SIZE);
+        var base = data.position();
+        camera.getViewMatrix().get(base, data);
+        camera.getProjectionMatrix().get(base + 64, data);
+        camera.getViewProjectionMatrix().get(base + 128, data);
+        var position = camera.getPosition();
+        data.putFloat(base + 192, position.x)
+            .putFloat(base + 196, position.y)
+            .putFloat(base + 200, position.z)
+            .putFloat(base + 204, time);
+        var offset = buffer.end();
+        gl().bindBufferRange(GL_UNIFORM_BUFFER, BINDING, buffer.getId(), offset, SIZE);
+
+        this.camera = camera;
+        this.version = version;
+        this.time = time;
+        this.frame = now;
+        return this;
+    }
+}
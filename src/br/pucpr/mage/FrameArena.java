@@ -0,0 +1,100 @@
+package br.pucpr.mage;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+import java.util.Arrays;
+
+/**
+ * Objetos temporários da JOML válidos durante um único quadro. Em vez de criar uma nova matriz ou vetor para cada
+ * cálculo intermediário, peça um objeto ao FrameArena e use as versões com destino das funções de MathUtil.
+ *
+ * A classe Window chama reset() ao final de cada quadro, e todos os objetos entregues voltam a ficar disponíveis.
+ * Portanto, nunca guarde um objeto do FrameArena de um quadro para o outro. Os objetos só são criados na primeira vez
+ * em que são necessários: após os primeiros quadros, nenhuma memória é alocada.
+ *
+ * <pre>
+ *     var arena = FrameArena.getInstance();
+ *     var world = mul(parent, local, arena.matrix4());
+ * </pre>
+ */
+public class FrameArena {
+    private static final FrameArena INSTANCE = new FrameArena();
+
+    private Matrix4f[] matrices = new Matrix4f[16];
+    private Vector3f[] vectors3 = new Vector3f[32];
+    private Vector4f[] vectors4 = new Vector4f[16];
+
+    private int matrixCount;
+    private int vector3Count;
+    private int vector4Count;
+
+    private FrameArena() {
+    }
+
+    public static FrameArena getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return Uma matriz identidade, válida até o final do quadro.
+     */
+    public Matrix4f matrix4() {
+        if (matrixCount == matrices.length) {
+            matrices = Arrays.copyOf(matrices, matrices.length * 2);
+        }
+        var m = matrices[matrixCount];
+        if (m == null) {
+            m = matrices[matrixCount] = new Matrix4f();
+        }
+        matrixCount++;
+        return m.identity();
+    }
+
+    /**
+     * @return Um vetor (0, 0, 0), válido até o final do quadro.
+     */
+    public Vector3f vector3() {
+        if (vector3Count == vectors3.length) {
+            vectors3 = Arrays.copyOf(vectors3, vectors3.length * 2);
+        }
+        var v = vectors3[vector3Count];
+        if (v == null) {
+            v = vectors3[vector3Count] = new Vector3f();
+        }
+        vector3Count++;
+        return v.zero();
+    }
+
+    /**
+     * @return Um vetor (0, 0, 0, 0), válido até o final do quadro.
+     */
+    public Vector4f vector4() {
+        if (vector4Count == vectors4.length) {
+            vectors4 = Arrays.copyOf(vectors4, vectors4.length * 2);
+        }
+        var v = vectors4[vector4Count];
+        if (v == null) {
+            v = vectors4[vector4Count] = new Vector4f();
+        }
+        vector4Count++;
+        return v.zero();
+    }
+
+    /**
+     * @return Quantidade de objetos entregues no quadro atual (matrizes + vetores).
+     */
+    public int getUsed() {
+        return matrixCount + vector3Count + vector4Count;
+    }
+
+    /**
+     * Devolve todos os objetos para o arena. Chamado pela Window ao final de cada quadro.
+     */
+    public void reset() {
+        matrixCount = 0;
+        vector3Count = 0;
+        vector4Count = 0;
+    }
+}
@@ -0,0 +1,146 @@
+package br.pucpr.mage;
+
+import java.util.Arrays;
+
+/**
+ * Histograma de durações, em nanosegundos, com erro relativo máximo de cerca de 3%.
+ *
+ * Os intervalos seguem uma escala log-linear: cada potência de 2 é dividida em 32 intervalos iguais. Assim, 1888
+ * contadores cobrem todos os valores positivos de um long, e registrar um valor custa apenas algumas operações de
+ * bits, sem alocar memória. O máximo, o mínimo e a soma são guardados com valor exato.
+ */
+public class FrameHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final String name;
+    private final long[] counts = new long[BUCKETS];
+    private final long[] hitchThresholds;
+    private final long[] hitches;
+    private long count;
+    private long total;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * Cria o histograma
+     * @param name Nome usado nos relatórios
+     * @param hitchThresholds Limites, em nanosegundos. Cada valor acima de um limite conta como um engasgo (hitch)
+     *                        daquele limite.
+     */
+    public FrameHistogram(String name, long... hitchThresholds) {
+        this.name = name;
+        this.hitchThresholds = hitchThresholds.clone();
+        this.hitches = new long[hitchThresholds.length];
+    }
+
+    static int bucket(long nanos) {
+        if (nanos < SUB_COUNT) {
+            return (int) Math.max(nanos, 0);
+        }
+        var exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        var sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * @return O maior valor que cai no intervalo indicado.
+     */
+    static long bucketMax(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        var exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+        var sub = bucket % SUB_COUNT;
+        return ((long) (SUB_COUNT + sub + 1) << (exponent - SUB_BITS)) - 1;
+    }
+
+    /**
+     * Registra uma duração.
+     * @param nanos Duração, em nanosegundos
+     */
+    public void record(long nanos) {
+        counts[bucket(nanos)]++;
+        count++;
+        total += nanos;
+        if (nanos < min) min = nanos;
+        if (nanos > max) max = nanos;
+        for (var i = 0; i < hitchThresholds.length; i++) {
+            if (nanos > hitchThresholds[i]) hitches[i]++;
+        }
+    }
+
+    /**
+     * Descarta todos os valores registrados.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        Arrays.fill(hitches, 0);
+        count = 0;
+        total = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return A quantidade de valores registrados
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @param percentile Percentil desejado, entre 0 e 100
+     * @return O valor abaixo do qual estão os valores do percentil indicado, em nanosegundos. Zero se não houver
+     * valores.
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Invalid percentile: " + percentile);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        var target = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        var seen = 0L;
+        for (var i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(bucketMax(i), max);
+            }
+        }
+        return max;
+    }
+
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public long getMean() {
+        return count == 0 ? 0 : total / count;
+    }
+
+    /**
+     * @return Os limites de engasgo, em nanosegundos. Não altere o conteúdo do array.
+     */
+    public long[] getHitchThresholds() {
+        return hitchThresholds;
+    }
+
+    /**
+     * @param threshold Índice do limite, na ordem passada ao construtor
+     * @return A quantidade de valores acima do limite
+     */
+    public long getHitches(int threshold) {
+        return hitches[threshold];
+    }
+}
@@ -0,0 +1,20 @@
+package br.pucpr.mage;
+
+/**
+ * Define como a Window controla a taxa de quadros.
+ * @see Window#setPacing(FramePacing)
+ */
+public enum FramePacing {
+    /**
+     * Aguarda o sincronismo vertical do monitor na troca de buffers (glfwSwapInterval(1)). É o padrão.
+     */
+    VSYNC,
+    /**
+     * Sem vsync. A Window aguarda até completar o tempo de quadro definido em setFrameCap.
+     */
+    CAPPED,
+    /**
+     * Sem vsync e sem limite: desenha o mais rápido possível. Útil para medir desempenho.
+     */
+    UNCAPPED
+}
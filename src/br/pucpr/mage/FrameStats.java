@@ -0,0 +1,154 @@
+package br.pucpr.mage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * Estatísticas de tempo de quadro da Window. Cada fase do quadro tem seu próprio histograma:
+ * - UPDATE: todos os updates do quadro
+ * - DRAW: o draw da cena
+ * - SWAP: a troca de buffers, incluindo a espera pelo vsync ou pelo limite de quadros
+ * - POLL: o processamento de eventos da GLFW
+ * - FRAME: o quadro inteiro, do início de um quadro ao início do próximo
+ *
+ * Os engasgos (hitches) são contados para cada fase com os mesmos limites, por padrão 33,3ms e 50ms.
+ *
+ * O relatório pode ser obtido em CSV ou JSON a qualquer momento, ou gravado em arquivo com save. A Window grava o
+ * arquivo ao fechar se setStatsFile tiver sido chamado.
+ */
+public class FrameStats {
+    public enum Phase {
+        UPDATE, DRAW, SWAP, POLL, FRAME
+    }
+
+    private static final double[] PERCENTILES = {50, 95, 99};
+
+    private final FrameHistogram[] histograms = new FrameHistogram[Phase.values().length];
+
+    /**
+     * Cria as estatísticas
+     * @param hitchMillis Limites de engasgo, em milisegundos
+     */
+    public FrameStats(float... hitchMillis) {
+        var thresholds = new long[hitchMillis.length];
+        for (var i = 0; i < hitchMillis.length; i++) {
+            if (hitchMillis[i] <= 0) {
+                throw new IllegalArgumentException("Invalid hitch threshold: " + hitchMillis[i]);
+            }
+            thresholds[i] = (long) (hitchMillis[i] * 1_000_000.0);
+        }
+        for (var phase : Phase.values()) {
+            histograms[phase.ordinal()] = new FrameHistogram(phase.name().toLowerCase(Locale.ROOT), thresholds);
+        }
+    }
+
+    public FrameStats() {
+        this(33.3f, 50.0f);
+    }
+
+    /**
+     * Registra a duração de uma fase do quadro.
+     * @param phase A fase
+     * @param nanos Duração, em nanosegundos
+     */
+    public void record(Phase phase, long nanos) {
+        histograms[phase.ordinal()].record(nanos);
+    }
+
+    public FrameHistogram get(Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    /**
+     * Descarta todos os valores registrados.
+     */
+    public void reset() {
+        for (var histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    private static String ms(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+
+    /**
+     * @return O relatório em CSV: uma linha por fase, com os tempos em milisegundos.
+     */
+    public String toCsv() {
+        var thresholds = histograms[0].getHitchThresholds();
+        var csv = new StringBuilder("phase,count,mean_ms,min_ms");
+        for (var p : PERCENTILES) {
+            csv.append(",p").append((int) p).append("_ms");
+        }
+        csv.append(",max_ms");
+        for (var t : thresholds) {
+            csv.append(",hitches_over_").append(ms(t)).append("ms");
+        }
+        csv.append('\n');
+
+        for (var h : histograms) {
+            csv.append(h.getName()).append(',').append(h.getCount())
+                    .append(',').append(ms(h.getMean()))
+                    .append(',').append(ms(h.getMin()));
+            for (var p : PERCENTILES) {
+                csv.append(',').append(ms(h.getPercentile(p)));
+            }
+            csv.append(',').append(ms(h.getMax()));
+            for (var i = 0; i < thresholds.length; i++) {
+                csv.append(',').append(h.getHitches(i));
+            }
+            csv.append('\n');
+        }
+        return csv.toString();
+    }
+
+    /**
+     * @return O relatório em JSON: um objeto por fase, com os tempos em milisegundos.
+     */
+    public String toJson() {
+        var thresholds = histograms[0].getHitchThresholds();
+        var json = new StringBuilder("{\n");
+        for (var k = 0; k < histograms.length; k++) {
+            var h = histograms[k];
+            json.append("  \"").append(h.getName()).append("\": {")
+                    .append("\"count\": ").append(h.getCount())
+                    .append(", \"mean_ms\": ").append(ms(h.getMean()))
+                    .append(", \"min_ms\": ").append(ms(h.getMin()));
+            for (var p : PERCENTILES) {
+                json.append(", \"p").append((int) p).append("_ms\": ").append(ms(h.getPercentile(p)));
+            }
+            json.append(", \"max_ms\": ").append(ms(h.getMax()))
+                    .append(", \"hitches\": {");
+            for (var i = 0; i < thresholds.length; i++) {
+                if (i > 0) json.append(", ");
+                json.append('"').append(ms(thresholds[i])).append("\": ").append(h.getHitches(i));
+            }
+            json.append("}}").append(k < histograms.length - 1 ? ",\n" : "\n");
+        }
+        return json.append("}\n").toString();
+    }
+
+    /**
+     * Grava o relatório em arquivo. O formato é JSON se o nome terminar em .json, e CSV caso contrário.
+     * @param file Caminho do arquivo
+     */
+    public void save(String file) {
+        var content = file.toLowerCase(Locale.ROOT).endsWith(".json") ? toJson() : toCsv();
+        try {
+            Files.write(Paths.get(file), content.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to save frame stats", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        var frame = get(Phase.FRAME);
+        return String.format(Locale.ROOT, "FrameStats{frames=%d, p50=%sms, p99=%sms, max=%sms}",
+                frame.getCount(), ms(frame.getPercentile(50)), ms(frame.getPercentile(99)), ms(frame.getMax()));
+    }
+}
@@ -0,0 +1,91 @@
+package br.pucpr.mage;
+
+import static br.pucpr.mage.gl.Backend.gl;
+import static org.lwjgl.opengl.GL30.*;
+
+/**
+ * Framebuffer fora da tela, com um buffer de cor RGBA de 8 bits por canal e um buffer de profundidade de 24 bits.
+ * Usado para desenhar sem depender da janela, como no modo headless.
+ */
+public class Framebuffer {
+    private int id;
+    private int color;
+    private int depth;
+    private int width;
+    private int height;
+
+    /**
+     * Cria o framebuffer
+     * @param width Largura, em pixels
+     * @param height Altura, em pixels
+     */
+    public Framebuffer(int width, int height) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("Invalid framebuffer size: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+
+        id = gl().genFramebuffers();
+        gl().bindFramebuffer(GL_FRAMEBUFFER, id);
+
+        color = gl().genRenderbuffers();
+        gl().bindRenderbuffer(GL_RENDERBUFFER, color);
+        gl().renderbufferStorage(GL_RENDERBUFFER, GL_RGBA8, width, height);
+        gl().framebufferRenderbuffer(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_RENDERBUFFER, color);
+
+        depth = gl().genRenderbuffers();
+        gl().bindRenderbuffer(GL_RENDERBUFFER, depth);
+        gl().renderbufferStorage(GL_RENDERBUFFER, GL_DEPTH_COMPONENT24, width, height);
+        gl().framebufferRenderbuffer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_RENDERBUFFER, depth);
+        gl().bindRenderbuffer(GL_RENDERBUFFER, 0);
+
+        var status = gl().checkFramebufferStatus(GL_FRAMEBUFFER);
+        gl().bindFramebuffer(GL_FRAMEBUFFER, 0);
+        if (status != GL_FRAMEBUFFER_COMPLETE) {
+            delete();
+            throw new RuntimeException("Unable to create framebuffer. Status: 0x" + Integer.toHexString(status));
+        }
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Passa a desenhar nesse framebuffer, ajustando o viewport para o seu tamanho.
+     * @return O próprio framebuffer
+     */
+    public Framebuffer bind() {
+        gl().bindFramebuffer(GL_FRAMEBUFFER, id);
+        gl().viewport(0, 0, width, height);
+        return this;
+    }
+
+    /**
+     * Volta a desenhar na janela.
+     * @return O próprio framebuffer
+     */
+    public Framebuffer unbind() {
+        gl().bindFramebuffer(GL_FRAMEBUFFER, 0);
+        return this;
+    }
+
+    /**
+     * Libera o framebuffer e seus buffers.
+     */
+    public void delete() {
+        gl().deleteRenderbuffers(color);
+        gl().deleteRenderbuffers(depth);
+        gl().deleteFramebuffers(id);
+        id = color = depth = 0;
+    }
+}
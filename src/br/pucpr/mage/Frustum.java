@@ -0,0 +1,106 @@
+package br.pucpr.mage;
+
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.joml.Vector3f;
+
+/**
+ * Os seis planos do volume de visão da camera, no espaço do mundo. Os planos são extraídos diretamente da matriz
+ * projection * view (método de Gribb e Hartmann) e normalizados, com a normal apontando para dentro do volume.
+ *
+ * Os planos ficam em um único array de 24 floats (a, b, c, d de cada plano), na ordem: esquerda, direita, baixo,
+ * cima, near e far. Um ponto p está dentro do plano se a*p.x + b*p.y + c*p.z + d >= 0.
+ *
+ * Também são calculados os oito cantos do frustum, usados por estruturas espaciais para limitar a região de busca.
+ */
+public class Frustum {
+    public static final int LEFT = 0;
+    public static final int RIGHT = 1;
+    public static final int BOTTOM = 2;
+    public static final int TOP = 3;
+    public static final int NEAR = 4;
+    public static final int FAR = 5;
+
+    private final float[] planes = new float[24];
+    private final float[] corners = new float[24];
+    private final Matrix4f inverse = new Matrix4f();
+    private final Vector3f corner = new Vector3f();
+
+    /**
+     * Extrai os planos da matriz indicada.
+     * @param viewProjection O produto projection * view
+     * @return O próprio frustum
+     */
+    public Frustum set(Matrix4fc viewProjection) {
+        var m = viewProjection;
+        setPlane(LEFT, m.m03() + m.m00(), m.m13() + m.m10(), m.m23() + m.m20(), m.m33() + m.m30());
+        setPlane(RIGHT, m.m03() - m.m00(), m.m13() - m.m10(), m.m23() - m.m20(), m.m33() - m.m30());
+        setPlane(BOTTOM, m.m03() + m.m01(), m.m13() + m.m11(), m.m23() + m.m21(), m.m33() + m.m31());
+        setPlane(TOP, m.m03() - m.m01(), m.m13() - m.m11(), m.m23() - m.m21(), m.m33() - m.m31());
+        setPlane(NEAR, m.m03() + m.m02(), m.m13() + m.m12(), m.m23() + m.m22(), m.m33() + m.m32());
+        setPlane(FAR, m.m03() - m.m02(), m.m13() - m.m12(), m.m23() - m.m22(), m.m33() - m.m32());
+
+        //Os cantos do cubo (-1..1) das coordenadas normalizadas, levados de volta para o mundo
+        viewProjection.invert(inverse);
+        for (var i = 0; i < 8; i++) {
+            inverse.transformProject((i & 1) == 0 ? -1 : 1, (i & 2) == 0 ? -1 : 1, (i & 4) == 0 ? -1 : 1, corner);
+            corners[i * 3] = corner.x;
+            corners[i * 3 + 1] = corner.y;
+            corners[i * 3 + 2] = corner.z;
+        }
+        return this;
+    }
+
+    private void setPlane(int plane, float a, float b, float c, float d) {
+        var invLength = 1.0f / (float) Math.sqrt(a * a + b * b + c * c);
+        var i = plane * 4;
+        planes[i] = a * invLength;
+        planes[i + 1] = b * invLength;
+        planes[i + 2] = c * invLength;
+        planes[i + 3] = d * invLength;
+    }
+
+    /**
+     * @return Os coeficientes dos seis planos, 4 floats por plano. Não altere o conteúdo do array.
+     */
+    public float[] getPlanes() {
+        return planes;
+    }
+
+    /**
+     * @return Os oito cantos do frustum no mundo, 3 floats por canto. Os quatro primeiros ficam no plano near. Não
+     * altere o conteúdo do array.
+     */
+    public float[] getCorners() {
+        return corners;
+    }
+
+    /**
+     * @return Verdadeiro se a esfera está total ou parcialmente dentro do frustum.
+     */
+    public boolean testSphere(float x, float y, float z, float radius) {
+        for (var i = 0; i < 24; i += 4) {
+            if (planes[i] * x + planes[i + 1] * y + planes[i + 2] * z + planes[i + 3] < -radius) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Testa uma caixa alinhada aos eixos, dada pelo centro e pela metade do tamanho em cada eixo.
+     * @return Verdadeiro se a caixa está total ou parcialmente dentro do frustum. Caixas próximas aos cantos do
+     * frustum podem ser consideradas visíveis mesmo estando fora.
+     */
+    public boolean testAabb(float cx, float cy, float cz, float ex, float ey, float ez) {
+        for (var i = 0; i < 24; i += 4) {
+            float a = planes[i], b = planes[i + 1], c = planes[i + 2];
+            var distance = a * cx + b * cy + c * cz + planes[i + 3];
+            var projected = Math.abs(a) * ex + Math.abs(b) * ey + Math.abs(c) * ez;
+            if (distance < -projected) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,276 @@
+package br.pucpr.mage;
+
+import org.joml.Matrix4fc;
+
+import java.util.Arrays;
+
+/**
+ * Descarta, em lote, os objetos que estão fora do frustum da camera.
+ *
+ * Cada objeto possui um volume no espaço do mundo: uma esfera e uma caixa alinhada aos eixos, ambas centradas no mesmo
+ * ponto. Os volumes ficam em arrays separados por componente (centro x, y e z, raio e tamanhos da caixa), de modo que
+ * o teste percorre a memória sequencialmente. Um objeto é descartado quando um dos planos deixa a esfera ou a caixa
+ * totalmente do lado de fora.
+ *
+ * Use set(index, bounds, world) sempre que um objeto se mover e chame cull(frustum) uma vez por quadro. Os índices dos
+ * objetos visíveis ficam em getVisible(). Nenhuma memória é alocada depois que o culler atinge seu tamanho máximo.
+ *
+ * <pre>
+ *     var visible = culler.cull(camera.getFrustum());
+ *     for (var i = 0; i < visible; i++) {
+ *         queue.submit(meshes[culler.getVisible()[i]], shader, worlds[culler.getVisible()[i]]);
+ *     }
+ * </pre>
+ */
+public class FrustumCuller {
+    private float[] centersX;
+    private float[] centersY;
+    private float[] centersZ;
+    private float[] radii;
+    private float[] extentsX;
+    private float[] extentsY;
+    private float[] extentsZ;
+    private int[] visible;
+    private boolean[] visibleFlags;
+    private int count;
+    private int visibleCount;
+
+    private int tested;
+    private int culled;
+
+    /**
+     * Cria o culler
+     * @param capacity Capacidade inicial. O culler cresce automaticamente se necessário.
+     */
+    public FrustumCuller(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity < 1!");
+        }
+        resize(capacity);
+    }
+
+    public FrustumCuller() {
+        this(64);
+    }
+
+    private void resize(int capacity) {
+        centersX = centersX == null ? new float[capacity] : Arrays.copyOf(centersX, capacity);
+        centersY = centersY == null ? new float[capacity] : Arrays.copyOf(centersY, capacity);
+        centersZ = centersZ == null ? new float[capacity] : Arrays.copyOf(centersZ, capacity);
+        radii = radii == null ? new float[capacity] : Arrays.copyOf(radii, capacity);
+        extentsX = extentsX == null ? new float[capacity] : Arrays.copyOf(extentsX, capacity);
+        extentsY = extentsY == null ? new float[capacity] : Arrays.copyOf(extentsY, capacity);
+        extentsZ = extentsZ == null ? new float[capacity] : Arrays.copyOf(extentsZ, capacity);
+        visible = visible == null ? new int[capacity] : Arrays.copyOf(visible, capacity);
+        visibleFlags = visibleFlags == null ? new boolean[capacity] : Arrays.copyOf(visibleFlags, capacity);
+    }
+
+    /**
+     * @return A quantidade de objetos no culler
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Define a quantidade de objetos. Objetos novos começam com volume nulo na origem.
+     * @return O próprio culler
+     */
+    public FrustumCuller setSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Size < 0!");
+        }
+        if (size > centersX.length) {
+            resize(Math.max(size, centersX.length * 2));
+        }
+        for (var i = count; i < size; i++) {
+            set(i, 0, 0, 0, 0, 0, 0, 0);
+            visibleFlags[i] = false;
+        }
+        count = size;
+        visibleCount = 0;
+        return this;
+    }
+
+    /**
+     * Remove todos os objetos.
+     * @return O próprio culler
+     */
+    public FrustumCuller clear() {
+        return setSize(0);
+    }
+
+    /**
+     * Adiciona um objeto.
+     * @param bounds Volume da malha, no espaço do modelo
+     * @param world Matriz world do objeto
+     * @return O índice do objeto
+     */
+    public int add(Bounds bounds, Matrix4fc world) {
+        var index = count;
+        setSize(count + 1);
+        set(index, bounds, world);
+        return index;
+    }
+
+    /**
+     * Define diretamente o volume do objeto, no espaço do mundo.
+     * @param index Índice do objeto
+     * @param x Centro em x
+     * @param y Centro em y
+     * @param z Centro em z
+     * @param radius Raio da esfera envolvente
+     * @param ex Metade do tamanho da caixa em x
+     * @param ey Metade do tamanho da caixa em y
+     * @param ez Metade do tamanho da caixa em z
+     * @return O próprio culler
+     */
+    public FrustumCuller set(int index, float x, float y, float z, float radius, float ex, float ey, float ez) {
+        centersX[index] = x;
+        centersY[index] = y;
+        centersZ[index] = z;
+        radii[index] = radius;
+        extentsX[index] = ex;
+        extentsY[index] = ey;
+        extentsZ[index] = ez;
+        return this;
+    }
+
+    /**
+     * Define o volume do objeto transformando o volume da malha pela matriz world.
+     * @param index Índice do objeto
+     * @param bounds Volume da malha, no espaço do modelo
+     * @param world Matriz world do objeto
+     * @return O próprio culler
+     */
+    public FrustumCuller set(int index, Bounds bounds, Matrix4fc world) {
+        return set(index, bounds,
+                world.m00(), world.m01(), world.m02(),
+                world.m10(), world.m11(), world.m12(),
+                world.m20(), world.m21(), world.m22(),
+                world.m30(), world.m31(), world.m32());
+    }
+
+    /**
+     * Define o volume do objeto transformando o volume da malha por uma matriz guardada em um array, em column-major,
+     * como as de TransformHierarchy.getWorldArray().
+     * @param index Índice do objeto
+     * @param bounds Volume da malha, no espaço do modelo
+     * @param worlds Array com a matriz world
+     * @param offset Posição da matriz no array
+     * @return O próprio culler
+     */
+    public FrustumCuller set(int index, Bounds bounds, float[] worlds, int offset) {
+        var m = worlds;
+        var o = offset;
+        return set(index, bounds,
+                m[o], m[o + 1], m[o + 2],
+                m[o + 4], m[o + 5], m[o + 6],
+                m[o + 8], m[o + 9], m[o + 10],
+                m[o + 12], m[o + 13], m[o + 14]);
+    }
+
+    private FrustumCuller set(int index, Bounds bounds,
+                              float m00, float m01, float m02,
+                              float m10, float m11, float m12,
+                              float m20, float m21, float m22,
+                              float m30, float m31, float m32) {
+        var c = bounds.getCenter();
+        var e = bounds.getExtents();
+
+        //Centro transformado
+        var x = m00 * c.x() + m10 * c.y() + m20 * c.z() + m30;
+        var y = m01 * c.x() + m11 * c.y() + m21 * c.z() + m31;
+        var z = m02 * c.x() + m12 * c.y() + m22 * c.z() + m32;
+
+        //Caixa que envolve a caixa transformada (Arvo)
+        var ex = Math.abs(m00) * e.x() + Math.abs(m10) * e.y() + Math.abs(m20) * e.z();
+        var ey = Math.abs(m01) * e.x() + Math.abs(m11) * e.y() + Math.abs(m21) * e.z();
+        var ez = Math.abs(m02) * e.x() + Math.abs(m12) * e.y() + Math.abs(m22) * e.z();
+
+        //O raio cresce pela maior escala da matriz
+        var sx = m00 * m00 + m01 * m01 + m02 * m02;
+        var sy = m10 * m10 + m11 * m11 + m12 * m12;
+        var sz = m20 * m20 + m21 * m21 + m22 * m22;
+        var radius = bounds.getRadius() * (float) Math.sqrt(Math.max(sx, Math.max(sy, sz)));
+
+        return set(index, x, y, z, radius, ex, ey, ez);
+    }
+
+    /**
+     * Testa todos os objetos contra o frustum.
+     * @param frustum O frustum da camera
+     * @return A quantidade de objetos visíveis
+     */
+    public int cull(Frustum frustum) {
+        var p = frustum.getPlanes();
+        visibleCount = 0;
+
+        for (var i = 0; i < count; i++) {
+            float x = centersX[i], y = centersY[i], z = centersZ[i];
+            float r = radii[i], ex = extentsX[i], ey = extentsY[i], ez = extentsZ[i];
+
+            var inside = true;
+            for (var k = 0; k < 24; k += 4) {
+                float a = p[k], b = p[k + 1], c = p[k + 2];
+                var distance = a * x + b * y + c * z + p[k + 3];
+                var box = Math.abs(a) * ex + Math.abs(b) * ey + Math.abs(c) * ez;
+                if (distance < -Math.min(r, box)) {
+                    inside = false;
+                    break;
+                }
+            }
+
+            visibleFlags[i] = inside;
+            if (inside) {
+                visible[visibleCount++] = i;
+            }
+        }
+
+        tested = count;
+        culled = count - visibleCount;
+        return visibleCount;
+    }
+
+    /**
+     * @return Os índices dos objetos visíveis no último cull, em ordem crescente. Somente as primeiras
+     * getVisibleCount() posições são válidas. Não altere o conteúdo do array.
+     */
+    public int[] getVisible() {
+        return visible;
+    }
+
+    /**
+     * @return A quantidade de objetos visíveis no último cull
+     */
+    public int getVisibleCount() {
+        return visibleCount;
+    }
+
+    /**
+     * @param index Índice do objeto
+     * @return Verdadeiro se o objeto estava visível no último cull
+     */
+    public boolean isVisible(int index) {
+        return visibleFlags[index];
+    }
+
+    /**
+     * @return Quantidade de objetos testados no último cull
+     */
+    public int getTested() {
+        return tested;
+    }
+
+    /**
+     * @return Quantidade de objetos descartados no último cull
+     */
+    public int getCulled() {
+        return culled;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FrustumCuller{tested=%d, culled=%d, visible=%d}", tested, culled, visibleCount);
+    }
+}
@@ -0,0 +1,198 @@
+package br.pucpr.mage;
+
+import static br.pucpr.mage.gl.Backend.gl;
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.GL_ELEMENT_ARRAY_BUFFER;
+
+/**
+ * Guarda o estado atual da OpenGL (programa, VAO, buffers, modo de polígono, depth test e culling) e descarta as
+ * chamadas que não mudariam nada. Todas as classes do motor fazem bind através dessa classe.
+ *
+ * Os contadores indicam quantas mudanças de estado foram enviadas e quantas foram evitadas no quadro atual. A classe
+ * Window chama endFrame() ao final de cada quadro, que guarda os valores do quadro anterior e zera os contadores.
+ *
+ * Se algum código alterar o estado chamando a OpenGL diretamente, ou se o backend for trocado, chame invalidate().
+ */
+public class GLState {
+    private static final GLState INSTANCE = new GLState();
+    private static final int UNKNOWN = -1;
+
+    private int program = UNKNOWN;
+    private int vertexArray = UNKNOWN;
+    private int arrayBuffer = UNKNOWN;
+    private int elementBuffer = UNKNOWN;
+    private int polygonMode = UNKNOWN;
+    private int depthTest = UNKNOWN;
+    private int cullFace = UNKNOWN;
+    private int blend = UNKNOWN;
+
+    private int changes;
+    private int avoided;
+    private int lastChanges;
+    private int lastAvoided;
+    private long frame;
+
+    private GLState() {
+    }
+
+    public static GLState getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Esquece todo o estado guardado. A próxima chamada de cada tipo sempre será enviada para a OpenGL.
+     * @return O próprio estado
+     */
+    public GLState invalidate() {
+        program = vertexArray = arrayBuffer = elementBuffer = UNKNOWN;
+        polygonMode = depthTest = cullFace = blend = UNKNOWN;
+        return this;
+    }
+
+    private boolean same(int current, int value) {
+        if (current == value) {
+            avoided++;
+            return true;
+        }
+        changes++;
+        return false;
+    }
+
+    public GLState useProgram(int id) {
+        if (!same(program, id)) {
+            gl().useProgram(id);
+            program = id;
+        }
+        return this;
+    }
+
+    public GLState bindVertexArray(int id) {
+        if (!same(vertexArray, id)) {
+            gl().bindVertexArray(id);
+            vertexArray = id;
+            //O element array buffer faz parte do estado do VAO
+            elementBuffer = UNKNOWN;
+        }
+        return this;
+    }
+
+    public GLState bindBuffer(int target, int id) {
+        if (target == GL_ARRAY_BUFFER) {
+            if (same(arrayBuffer, id)) return this;
+            arrayBuffer = id;
+        } else if (target == GL_ELEMENT_ARRAY_BUFFER) {
+            if (same(elementBuffer, id)) return this;
+            elementBuffer = id;
+        } else {
+            changes++;
+        }
+        gl().bindBuffer(target, id);
+        return this;
+    }
+
+    /**
+     * Define o modo de desenho dos polígonos (GL_FILL ou GL_LINE) para as duas faces.
+     */
+    public GLState polygonMode(int mode) {
+        if (!same(polygonMode, mode)) {
+            gl().polygonMode(GL_FRONT_AND_BACK, mode);
+            polygonMode = mode;
+        }
+        return this;
+    }
+
+    /**
+     * Habilita ou desabilita uma capacidade da OpenGL. GL_DEPTH_TEST, GL_CULL_FACE e GL_BLEND são guardados, as
+     * demais são sempre enviadas.
+     */
+    public GLState setEnabled(int cap, boolean enabled) {
+        var value = enabled ? 1 : 0;
+        if (cap == GL_DEPTH_TEST) {
+            if (same(depthTest, value)) return this;
+            depthTest = value;
+        } else if (cap == GL_CULL_FACE) {
+            if (same(cullFace, value)) return this;
+            cullFace = value;
+        } else if (cap == GL_BLEND) {
+            if (same(blend, value)) return this;
+            blend = value;
+        } else {
+            changes++;
+        }
+
+        if (enabled) gl().enable(cap);
+        else gl().disable(cap);
+        return this;
+    }
+
+    public GLState enable(int cap) {
+        return setEnabled(cap, true);
+    }
+
+    public GLState disable(int cap) {
+        return setEnabled(cap, false);
+    }
+
+    /**
+     * @return O id do shader program em uso, ou -1 se desconhecido.
+     */
+    public int getProgram() {
+        return program;
+    }
+
+    /**
+     * @return O id do VAO em uso, ou -1 se desconhecido.
+     */
+    public int getVertexArray() {
+        return vertexArray;
+    }
+
+    /**
+     * @return A quantidade de quadros encerrados por endFrame(). Usado por quem precisa saber quando um novo quadro
+     * começou, como o StreamBuffer.
+     */
+    public long getFrame() {
+        return frame;
+    }
+
+    /**
+     * @return Mudanças de estado enviadas para a OpenGL no quadro atual.
+     */
+    public int getChanges() {
+        return changes;
+    }
+
+    /**
+     * @return Mudanças de estado evitadas no quadro atual.
+     */
+    public int getAvoided() {
+        return avoided;
+    }
+
+    /**
+     * @return Mudanças de estado enviadas para a OpenGL no último quadro completo.
+     */
+    public int getLastFrameChanges() {
+        return lastChanges;
+    }
+
+    /**
+     * @return Mudanças de estado evitadas no último quadro completo.
+     */
+    public int getLastFrameAvoided() {
+        return lastAvoided;
+    }
+
+    /**
+     * Encerra o quadro: guarda os contadores do quadro, os zera e avisa o backend do final do quadro.
+     */
+    void endFrame() {
+        lastChanges = changes;
+        lastAvoided = avoided;
+        changes = 0;
+        avoided = 0;
+        frame++;
+        gl().frameTerminator();
+    }
+}
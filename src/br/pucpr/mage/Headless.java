@@ -0,0 +1,292 @@
+package br.pucpr.mage;
+
+import br.pucpr.mage.gl.Backend;
+import br.pucpr.mage.gl.CaptureBackend;
+import br.pucpr.mage.gl.GLBackend;
+import br.pucpr.mage.gl.LwjglBackend;
+import br.pucpr.mage.gl.RecordingBackend;
+import br.pucpr.mage.gl.TracePlayer;
+import org.lwjgl.glfw.GLFWErrorCallback;
+import org.lwjgl.opengl.GL;
+
+import java.util.function.Function;
+
+import static br.pucpr.mage.gl.Backend.gl;
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+/**
+ * Executa uma cena sem janela visível, por uma quantidade fixa de quadros e com um tempo fixo por quadro. Como o
+ * tempo não depende do relógio, duas execuções da mesma cena fazem exatamente a mesma simulação, o que permite
+ * comparar o desempenho de versões diferentes do motor em lote.
+ *
+ * O contexto é escolhido com setContext:
+ * - NONE: nenhum contexto OpenGL. As chamadas vão para um RecordingBackend, e apenas o custo de CPU é medido. Roda em
+ * qualquer máquina.
+ * - NATIVE, EGL ou OSMESA: cria uma janela invisível da GLFW com a API de contexto indicada e desenha em um
+ * Framebuffer fora da tela. A API de contexto muda apenas como o contexto é criado: a GLFW da LWJGL 3.2.3 é compilada
+ * para X11 e sempre precisa de um display. Em servidores sem GPU e sem monitor, rode com um display virtual, como o
+ * Xvfb (xvfb-run java ...), e o OSMesa ou o driver llvmpipe da Mesa desenham por software.
+ *
+ * Ao final, o tempo de cada fase do quadro fica no FrameStats devolvido por run. Nesse modo, a fase SWAP mede o
+ * glFinish, ou seja, a espera pelo término do desenho.
+ *
+ * Com setCaptureFile, todas as chamadas OpenGL da execução são gravadas em um trace (veja CaptureBackend). O método
+ * replay reproduz esse trace sem a cena, medindo apenas o custo das chamadas.
+ *
+ * <pre>
+ *     var stats = new Headless(800, 600).setFrames(1000).run(new CameraScene());
+ *     System.out.println(stats.toCsv());
+ * </pre>
+ */
+public class Headless {
+    public enum Context {
+        NONE, NATIVE, EGL, OSMESA
+    }
+
+    private final int width;
+    private final int height;
+    private int frames = 600;
+    private int warmupFrames = 60;
+    private float delta = 1 / 60.0f;
+    private Context context = Context.NONE;
+    private String statsFile;
+    private String captureFile;
+
+    /**
+     * Prepara a execução
+     * @param width Largura da área de desenho
+     * @param height Altura da área de desenho
+     */
+    public Headless(int width, int height) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("Invalid size: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Define a quantidade de quadros medidos.
+     * @return O próprio objeto
+     */
+    public Headless setFrames(int frames) {
+        if (frames < 1) {
+            throw new IllegalArgumentException("Frames < 1!");
+        }
+        this.frames = frames;
+        return this;
+    }
+
+    /**
+     * Define a quantidade de quadros executados antes da medição, para que a JVM compile os trechos mais usados.
+     * Esses quadros também avançam a simulação.
+     * @return O próprio objeto
+     */
+    public Headless setWarmupFrames(int warmupFrames) {
+        if (warmupFrames < 0) {
+            throw new IllegalArgumentException("Warmup frames < 0!");
+        }
+        this.warmupFrames = warmupFrames;
+        return this;
+    }
+
+    /**
+     * Define o tempo passado para cada update.
+     * @param secs Tempo, em segundos
+     * @return O próprio objeto
+     */
+    public Headless setDelta(float secs) {
+        if (secs <= 0) {
+            throw new IllegalArgumentException("Delta <= 0!");
+        }
+        this.delta = secs;
+        return this;
+    }
+
+    /**
+     * Define como o contexto OpenGL será criado.
+     * @return O próprio objeto
+     */
+    public Headless setContext(Context context) {
+        if (context == null) {
+            throw new IllegalArgumentException("Context can't be null!");
+        }
+        this.context = context;
+        return this;
+    }
+
+    /**
+     * Define o arquivo onde o relatório de tempos será gravado ao final, terminado em .json ou .csv.
+     * @return O próprio objeto
+     */
+    public Headless setStatsFile(String file) {
+        this.statsFile = file;
+        return this;
+    }
+
+    /**
+     * Define o arquivo onde as chamadas OpenGL de run serão gravadas, incluindo os quadros de aquecimento. Use null
+     * para não gravar.
+     * @return O próprio objeto
+     */
+    public Headless setCaptureFile(String file) {
+        this.captureFile = file;
+        return this;
+    }
+
+    /**
+     * Executa a cena: init, os quadros de aquecimento, os quadros medidos e deinit.
+     * @return Os tempos dos quadros medidos
+     */
+    public FrameStats run(Scene scene) {
+        return execute(captureFile, target -> loop(scene, target));
+    }
+
+    /**
+     * Reproduz um trace gravado pelo CaptureBackend. Os quadros de aquecimento também são descontados do trace. A
+     * reprodução termina no final do trace ou após os quadros definidos em setFrames, o que vier primeiro.
+     * @param file Arquivo de trace
+     * @return Os tempos dos quadros medidos. A fase DRAW mede a reprodução das chamadas do quadro.
+     */
+    public FrameStats replay(String file) {
+        return execute(null, target -> {
+            GLState.getInstance().invalidate();
+            Viewport.getInstance().set(width, height);
+            if (target != null) {
+                target.bind();
+            }
+
+            var player = new TracePlayer(file, gl());
+            var stats = new FrameStats();
+            try {
+                for (var frame = 0; frame < warmupFrames + frames; frame++) {
+                    var start = System.nanoTime();
+                    if (!player.nextFrame()) break;
+                    var drawn = System.nanoTime();
+
+                    gl().finish();
+                    var finished = System.nanoTime();
+
+                    if (frame >= warmupFrames) {
+                        stats.record(FrameStats.Phase.UPDATE, 0);
+                        stats.record(FrameStats.Phase.DRAW, drawn - start);
+                        stats.record(FrameStats.Phase.SWAP, finished - drawn);
+                        stats.record(FrameStats.Phase.POLL, 0);
+                        stats.record(FrameStats.Phase.FRAME, finished - start);
+                    }
+                }
+            } finally {
+                player.close();
+            }
+
+            if (statsFile != null) {
+                stats.save(statsFile);
+            }
+            return stats;
+        });
+    }
+
+    /**
+     * Cria o contexto, instala o backend e chama action com o framebuffer de destino (null no modo NONE).
+     */
+    private FrameStats execute(String capture, Function<Framebuffer, FrameStats> action) {
+        if (context == Context.NONE) {
+            return install(new RecordingBackend(width, height), capture, false, action);
+        }
+
+        GLFWErrorCallback.createPrint(System.err).set();
+        if (!glfwInit())
+            throw new IllegalStateException("Unable to initialize GLFW! The " + context +
+                    " context needs a display (use Xvfb on servers) or Context.NONE.");
+
+        var window = NULL;
+        try {
+            glfwDefaultWindowHints();
+            glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
+            glfwWindowHint(GLFW_CONTEXT_VERSION_MAJOR, 3);
+            glfwWindowHint(GLFW_CONTEXT_VERSION_MINOR, 3);
+            glfwWindowHint(GLFW_OPENGL_FORWARD_COMPAT, GLFW_TRUE);
+            glfwWindowHint(GLFW_OPENGL_PROFILE, GLFW_OPENGL_CORE_PROFILE);
+            glfwWindowHint(GLFW_CONTEXT_CREATION_API,
+                    context == Context.EGL ? GLFW_EGL_CONTEXT_API :
+                    context == Context.OSMESA ? GLFW_OSMESA_CONTEXT_API :
+                    GLFW_NATIVE_CONTEXT_API);
+
+            window = glfwCreateWindow(width, height, "Headless", NULL, NULL);
+            if (window == NULL)
+                throw new RuntimeException("Failed to create the " + context + " context");
+            glfwMakeContextCurrent(window);
+            glfwSwapInterval(0);
+            GL.createCapabilities();
+
+            return install(new LwjglBackend(), capture, true, action);
+        } finally {
+            if (window != NULL) glfwDestroyWindow(window);
+            glfwTerminate();
+        }
+    }
+
+    /**
+     * Instala o backend, envolvido por um CaptureBackend se houver arquivo de captura, e cria o framebuffer de destino
+     * se offscreen for verdadeiro. Assim, a criação do framebuffer também fica no trace.
+     */
+    private FrameStats install(GLBackend backend, String capture, boolean offscreen,
+                               Function<Framebuffer, FrameStats> action) {
+        var recorder = capture == null ? null : new CaptureBackend(backend, capture, warmupFrames + frames);
+        var previous = Backend.set(recorder == null ? backend : recorder);
+        try {
+            if (!offscreen) {
+                return action.apply(null);
+            }
+            var target = new Framebuffer(width, height);
+            try {
+                return action.apply(target);
+            } finally {
+                target.delete();
+            }
+        } finally {
+            if (recorder != null) recorder.close();
+            Backend.set(previous);
+        }
+    }
+
+    private FrameStats loop(Scene scene, Framebuffer target) {
+        GLState.getInstance().invalidate();
+        Viewport.getInstance().set(width, height);
+        if (target != null) {
+            target.bind();
+        }
+
+        scene.init();
+        var stats = new FrameStats();
+        for (var frame = 0; frame < warmupFrames + frames; frame++) {
+            var start = System.nanoTime();
+            scene.update(delta);
+            Keyboard.getInstance().update();
+            var updated = System.nanoTime();
+
+            scene.draw(1.0f);
+            GLState.getInstance().endFrame();
+            FrameArena.getInstance().reset();
+            var drawn = System.nanoTime();
+
+            gl().finish();
+            var finished = System.nanoTime();
+
+            if (frame >= warmupFrames) {
+                stats.record(FrameStats.Phase.UPDATE, updated - start);
+                stats.record(FrameStats.Phase.DRAW, drawn - updated);
+                stats.record(FrameStats.Phase.SWAP, finished - drawn);
+                stats.record(FrameStats.Phase.POLL, 0);
+                stats.record(FrameStats.Phase.FRAME, finished - start);
+            }
+        }
+        scene.deinit();
+
+        if (statsFile != null) {
+            stats.save(statsFile);
+        }
+        return stats;
+    }
+}
@@ -1,16 +1,24 @@
 package br.pucpr.mage;
 
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 
+import static br.pucpr.mage.gl.Backend.gl;
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL15.*;
 
 /**
  * Representa um IndexBuffer (ELEMENT_ARRAY_BUFFER).
+ *
+ * Os construtores guardam os índices como GL_UNSIGNED_INT. O método compact escolhe o menor tipo capaz de representar
+ * o maior índice (GL_UNSIGNED_BYTE, GL_UNSIGNED_SHORT ou GL_UNSIGNED_INT), reduzindo a memória e a banda usadas.
  */
 public class IndexBuffer {
     private int id;
     private int count;
+    private int type = GL_UNSIGNED_INT;
 
     /**
      * Cria um IndexBuffer com os dados fornecidos
@@ -21,10 +29,10 @@ public class IndexBuffer {
             throw new IllegalArgumentException("Data is null!");
         }
 
-        this.id = glGenBuffers();
+        this.id = gl().genBuffers();
         this.count = data.length;
-        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, id);
-        glBufferData(GL_ELEMENT_ARRAY_BUFFER, data, GL_STATIC_DRAW);
+        upload();
+        gl().bufferData(GL_ELEMENT_ARRAY_BUFFER, data, GL_STATIC_DRAW);
     }
 
     /**
@@ -36,10 +44,89 @@ public class IndexBuffer {
             throw new IllegalArgumentException("Data is null!");
         }
 
-        this.id = glGenBuffers();
+        this.id = gl().genBuffers();
         this.count = data.remaining();
-        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, id);
-        glBufferData(GL_ELEMENT_ARRAY_BUFFER, data, GL_STATIC_DRAW);
+        upload();
+        gl().bufferData(GL_ELEMENT_ARRAY_BUFFER, data, GL_STATIC_DRAW);
+    }
+
+    private IndexBuffer(int type, ByteBuffer data, int count) {
+        this.id = gl().genBuffers();
+        this.count = count;
+        this.type = type;
+        upload();
+        gl().bufferData(GL_ELEMENT_ARRAY_BUFFER, data, GL_STATIC_DRAW);
+    }
+
+    /**
+     * Cria um IndexBuffer com o menor tipo de índice capaz de representar os dados.
+     * @param data Indices.
+     * @return O IndexBuffer criado
+     */
+    public static IndexBuffer compact(int... data) {
+        if (data == null) {
+            throw new IllegalArgumentException("Data is null!");
+        }
+
+        var max = 0;
+        for (var index : data) {
+            if (index < 0) {
+                throw new IllegalArgumentException("Invalid index: " + index);
+            }
+            if (index > max) max = index;
+        }
+
+        var type = typeFor(max);
+        if (type == GL_UNSIGNED_INT) {
+            return new IndexBuffer(data);
+        }
+
+        ByteBuffer buffer = null;
+        try {
+            buffer = pack(type, data);
+            return new IndexBuffer(type, buffer, data.length);
+        } finally {
+            if (buffer != null) MemoryUtil.memFree(buffer);
+        }
+    }
+
+    /**
+     * Copia os índices para um buffer de bytes no tipo indicado (GL_UNSIGNED_BYTE ou GL_UNSIGNED_SHORT). O buffer
+     * deve ser liberado com MemoryUtil.memFree.
+     */
+    private static ByteBuffer pack(int type, int[] data) {
+        var buffer = MemoryUtil.memAlloc(data.length * sizeOf(type));
+        for (var index : data) {
+            if (type == GL_UNSIGNED_BYTE) buffer.put((byte) index);
+            else buffer.putShort((short) index);
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * @param maxIndex O maior índice
+     * @return O menor tipo capaz de representar o índice: GL_UNSIGNED_BYTE, GL_UNSIGNED_SHORT ou GL_UNSIGNED_INT.
+     */
+    public static int typeFor(int maxIndex) {
+        return maxIndex <= 0xFF ? GL_UNSIGNED_BYTE : maxIndex <= 0xFFFF ? GL_UNSIGNED_SHORT : GL_UNSIGNED_INT;
+    }
+
+    /**
+     * @param type Tipo do índice
+     * @return O tamanho do índice, em bytes
+     */
+    public static int sizeOf(int type) {
+        return type == GL_UNSIGNED_BYTE ? 1 : type == GL_UNSIGNED_SHORT ? 2 : 4;
+    }
+
+    /**
+     * Prepara o buffer para o envio de dados. O element array buffer faz parte do estado do VAO, por isso o VAO 0 é
+     * vinculado antes, evitando que o buffer seja associado à última malha desenhada.
+     */
+    private void upload() {
+        var state = GLState.getInstance();
+        state.bindVertexArray(0);
+        state.bindBuffer(GL_ELEMENT_ARRAY_BUFFER, id);
     }
 
     /**
@@ -56,11 +143,112 @@ public class IndexBuffer {
         return count;
     }
 
+    /**
+     * @return O tipo dos índices: GL_UNSIGNED_BYTE, GL_UNSIGNED_SHORT ou GL_UNSIGNED_INT.
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * @return O tamanho do buffer, em bytes
+     */
+    public int getSize() {
+        return count * sizeOf(type);
+    }
+
+    /**
+     * Substitui os índices do buffer. O buffer é realocado (GL_DYNAMIC_DRAW), o que permite ao driver descartar o
+     * armazenamento antigo sem esperar que a GPU termine de usá-lo. O tipo dos índices é mantido, a não ser que algum
+     * novo índice não caiba nele.
+     * @param data Novos índices
+     * @return O próprio buffer
+     */
+    public IndexBuffer update(int... data) {
+        if (data == null) {
+            throw new IllegalArgumentException("Data is null!");
+        }
+
+        var max = 0;
+        for (var index : data) {
+            if (index < 0) {
+                throw new IllegalArgumentException("Invalid index: " + index);
+            }
+            if (index > max) max = index;
+        }
+        if (sizeOf(typeFor(max)) > sizeOf(type)) {
+            type = typeFor(max);
+        }
+
+        upload();
+        this.count = data.length;
+        if (type == GL_UNSIGNED_INT) {
+            gl().bufferData(GL_ELEMENT_ARRAY_BUFFER, data, GL_DYNAMIC_DRAW);
+            return this;
+        }
+
+        ByteBuffer buffer = null;
+        try {
+            buffer = pack(type, data);
+            gl().bufferData(GL_ELEMENT_ARRAY_BUFFER, buffer, GL_DYNAMIC_DRAW);
+        } finally {
+            if (buffer != null) MemoryUtil.memFree(buffer);
+        }
+        return this;
+    }
+
+    /**
+     * Substitui parte dos índices do buffer, sem realocá-lo. Como o tamanho não muda, o tipo é mantido e todos os
+     * índices precisam caber nele.
+     * @param first Posição do primeiro índice a ser substituído
+     * @param data Novos índices
+     * @return O próprio buffer
+     */
+    public IndexBuffer update(int first, IntBuffer data) {
+        if (data == null) {
+            throw new IllegalArgumentException("Data is null!");
+        }
+        if (first < 0 || first + data.remaining() > count) {
+            throw new IllegalArgumentException("Invalid range: " + first + " to " + (first + data.remaining()));
+        }
+
+        var indices = new int[data.remaining()];
+        data.duplicate().get(indices);
+        for (var index : indices) {
+            if (index < 0 || sizeOf(typeFor(index)) > sizeOf(type)) {
+                throw new IllegalArgumentException("Invalid index: " + index);
+            }
+        }
+
+        upload();
+        var offset = (long) first * sizeOf(type);
+        if (type == GL_UNSIGNED_INT) {
+            ByteBuffer buffer = null;
+            try {
+                buffer = MemoryUtil.memAlloc(indices.length * Integer.BYTES);
+                buffer.asIntBuffer().put(indices);
+                gl().bufferSubData(GL_ELEMENT_ARRAY_BUFFER, offset, buffer);
+            } finally {
+                if (buffer != null) MemoryUtil.memFree(buffer);
+            }
+            return this;
+        }
+
+        ByteBuffer buffer = null;
+        try {
+            buffer = pack(type, indices);
+            gl().bufferSubData(GL_ELEMENT_ARRAY_BUFFER, offset, buffer);
+        } finally {
+            if (buffer != null) MemoryUtil.memFree(buffer);
+        }
+        return this;
+    }
+
     /**
      * @return Faz o bind do index buffer na OpenGL
      */
     public IndexBuffer bind() {
-        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, id);
+        GLState.getInstance().bindBuffer(GL_ELEMENT_ARRAY_BUFFER, id);
         return this;
     }
 
@@ -68,7 +256,7 @@ public class IndexBuffer {
      * @return Desfaz o bind do index buffer na OpenGL
      */
     public IndexBuffer unbind() {
-        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+        GLState.getInstance().bindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
         return this;
     }
 
@@ -77,7 +265,16 @@ public class IndexBuffer {
      * contém TRIANGLES. O bind e unbind é feito automaticamente, não sendo necessária a vinculação prévia.
      */
     public IndexBuffer draw() {
-        glDrawElements(GL_TRIANGLES, getCount(), GL_UNSIGNED_INT, 0);
+        gl().drawElements(GL_TRIANGLES, getCount(), type, 0);
+        return this;
+    }
+
+    /**
+     * Comanda o desenho instanciado com base nesse index buffer. Assim como em draw(), o VAO já deve estar vinculado.
+     * @param instances Quantidade de instâncias
+     */
+    public IndexBuffer drawInstanced(int instances) {
+        gl().drawElementsInstanced(GL_TRIANGLES, getCount(), type, 0, instances);
         return this;
     }
 }
@@ -2,95 +2,189 @@ package br.pucpr.mage;
 
 import org.joml.*;
 
+/**
+ * Funções auxiliares de matemática. Cada função existe em duas versões:
+ * - Sem destino: cria e retorna um novo objeto, sem alterar os parâmetros;
+ * - Com destino (último parâmetro dest): grava o resultado em dest e o retorna, sem alocar memória. Use essa versão,
+ * junto com os objetos do FrameArena, nos trechos executados a todo quadro.
+ */
 public class MathUtil {
     public static Matrix4f invert(Matrix4fc m) {
         return new Matrix4f(m).invert();
     }
 
+    public static Matrix4f invert(Matrix4fc m, Matrix4f dest) {
+        return m.invert(dest);
+    }
+
     public static Matrix4f transpose(Matrix4fc m) {
         return new Matrix4f(m).transpose();
     }
 
+    public static Matrix4f transpose(Matrix4fc m, Matrix4f dest) {
+        return m.transpose(dest);
+    }
+
     public static Matrix4f mul(Matrix4f l, Matrix4f r) {
         return new Matrix4f(l).mul(r);
     }
 
+    public static Matrix4f mul(Matrix4fc l, Matrix4fc r, Matrix4f dest) {
+        return l.mul(r, dest);
+    }
+
     public static Matrix4f scale(Matrix4fc m, float scale) {
         return new Matrix4f(m).scale(scale);
     }
 
+    public static Matrix4f scale(Matrix4fc m, float scale, Matrix4f dest) {
+        return m.scale(scale, dest);
+    }
+
     public static Matrix4f scale(Matrix4fc m, Vector3fc scale) {
         return new Matrix4f(m).scale(scale);
     }
 
+    public static Matrix4f scale(Matrix4fc m, Vector3fc scale, Matrix4f dest) {
+        return m.scale(scale, dest);
+    }
+
     public static Matrix4f translate(Matrix4fc m, Vector3fc offset) {
         return new Matrix4f(m).translate(offset);
     }
 
+    public static Matrix4f translate(Matrix4fc m, Vector3fc offset, Matrix4f dest) {
+        return m.translate(offset, dest);
+    }
+
     public static Matrix4f translate(Matrix4fc m, float x, float y, float z) {
         return new Matrix4f(m).translate(x, y, z);
     }
 
+    public static Matrix4f translate(Matrix4fc m, float x, float y, float z, Matrix4f dest) {
+        return m.translate(x, y, z, dest);
+    }
+
     public static Vector4fc transform(Matrix4fc m, Vector4fc v) {
         return m.transform(v, new Vector4f());
     }
 
+    public static Vector4f transform(Matrix4fc m, Vector4fc v, Vector4f dest) {
+        return m.transform(v, dest);
+    }
+
     public static Vector4fc transform(Matrix4fc m, Vector3fc v, float w) {
         return m.transform(new Vector4f(v, w));
     }
 
+    public static Vector4f transform(Matrix4fc m, Vector3fc v, float w, Vector4f dest) {
+        return m.transform(dest.set(v, w));
+    }
+
     public static Matrix4f rotateX(Matrix4fc m, float angle) {
         return new Matrix4f(m).rotateX(angle);
     }
 
+    public static Matrix4f rotateX(Matrix4fc m, float angle, Matrix4f dest) {
+        return m.rotateX(angle, dest);
+    }
+
     public static Matrix4f rotateY(Matrix4fc m, float angle) {
         return new Matrix4f(m).rotateY(angle);
     }
 
+    public static Matrix4f rotateY(Matrix4fc m, float angle, Matrix4f dest) {
+        return m.rotateY(angle, dest);
+    }
+
     public static Matrix4f rotateZ(Matrix4fc m, float angle) {
         return new Matrix4f(m).rotateZ(angle);
     }
 
+    public static Matrix4f rotateZ(Matrix4fc m, float angle, Matrix4f dest) {
+        return m.rotateZ(angle, dest);
+    }
+
     public static Vector3f add(Vector3fc a, Vector3f b) {
         return new Vector3f(a).add(b);
     }
 
+    public static Vector3f add(Vector3fc a, Vector3fc b, Vector3f dest) {
+        return a.add(b, dest);
+    }
+
     public static Vector3f add(Vector3fc a, float x, float y, float z) {
         return new Vector3f(a).add(x, y, z);
     }
 
+    public static Vector3f add(Vector3fc a, float x, float y, float z, Vector3f dest) {
+        return a.add(x, y, z, dest);
+    }
+
     public static Vector3f sub(Vector3fc a, Vector3f b) {
         return new Vector3f(a).sub(b);
     }
 
+    public static Vector3f sub(Vector3fc a, Vector3fc b, Vector3f dest) {
+        return a.sub(b, dest);
+    }
+
     public static Vector3f sub(Vector3fc a, float x, float y, float z) {
         return new Vector3f(a).sub(x, y, z);
     }
 
+    public static Vector3f sub(Vector3fc a, float x, float y, float z, Vector3f dest) {
+        return a.sub(x, y, z, dest);
+    }
+
     public static Vector3f mul(Vector3fc v, float s) {
         return new Vector3f(v).mul(s);
     }
 
+    public static Vector3f mul(Vector3fc v, float s, Vector3f dest) {
+        return v.mul(s, dest);
+    }
+
     public static Vector3f mul(Vector3fc a, Vector3fc b) {
         return new Vector3f(a).mul(b);
     }
 
+    public static Vector3f mul(Vector3fc a, Vector3fc b, Vector3f dest) {
+        return a.mul(b, dest);
+    }
+
     public static Vector3f mul(Vector3fc a, float x, float y, float z) {
         return new Vector3f(a).mul(x, y, z);
     }
 
+    public static Vector3f mul(Vector3fc a, float x, float y, float z, Vector3f dest) {
+        return a.mul(x, y, z, dest);
+    }
+
     public static Vector3f cross(Vector3fc a, Vector3fc b) {
         return new Vector3f(a).cross(b);
     }
 
+    public static Vector3f cross(Vector3fc a, Vector3fc b, Vector3f dest) {
+        return a.cross(b, dest);
+    }
+
     public static Vector3f cross(Vector3fc a, float x, float y, float z) {
         return new Vector3f(a).cross(x, y, z);
     }
 
+    public static Vector3f cross(Vector3fc a, float x, float y, float z, Vector3f dest) {
+        return a.cross(x, y, z, dest);
+    }
+
     public static Vector3f normalize(Vector3fc v) {
         return new Vector3f(v).normalize();
     }
 
+    public static Vector3f normalize(Vector3fc v, Vector3f dest) {
+        return v.normalize(dest);
+    }
+
     public static float dot(Vector3fc a, Vector3fc b) {
         return a.dot(b);
     }
@@ -100,16 +194,26 @@ public class MathUtil {
     }
 
     public static Vector3f negate(Vector3fc vec) {
-        return new Vector3f(vec);
+        return new Vector3f(vec).negate();
+    }
+
+    public static Vector3f negate(Vector3fc vec, Vector3f dest) {
+        return vec.negate(dest);
     }
 
     public static Vector3f lerp(Vector3fc a, Vector3fc b, float t) {
         return a.lerp(b, t, new Vector3f());
     }
 
+    public static Vector3f lerp(Vector3fc a, Vector3fc b, float t, Vector3f dest) {
+        return a.lerp(b, t, dest);
+    }
+
     public static Vector3f reflect(Vector3fc ray, Vector3fc normal) {
         return ray.reflect(normal, new Vector3f());
     }
 
-
+    public static Vector3f reflect(Vector3fc ray, Vector3fc normal, Vector3f dest) {
+        return ray.reflect(normal, dest);
+    }
 }
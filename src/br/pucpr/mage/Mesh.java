@@ -5,9 +5,8 @@ import org.joml.*;
 import java.util.HashMap;
 import java.util.Map;
 
+import static br.pucpr.mage.gl.Backend.gl;
 import static org.lwjgl.opengl.GL11.*;
-import static org.lwjgl.opengl.GL30.glBindVertexArray;
-import static org.lwjgl.opengl.GL30.glGenVertexArrays;
 
 /**
  * Representa a malha poligonal estática. A malha é formada por um conjunto de vértices, definidos por buffers de
@@ -19,11 +18,16 @@ public class Mesh {
     private IndexBuffer indexBuffer;
 
     private Map<String, ArrayBuffer> attributes = new HashMap<>();
-    private Map<String, Object> uniforms = new HashMap<>();
+    private ArrayBuffer firstAttribute;
+    private VertexBuffer vertexBuffer;
+    private Map<String, ArrayBuffer> instanceAttributes = new HashMap<>();
+    private UniformBlock uniforms = new UniformBlock();
+    private Bounds bounds;
+    private MeshData data;
     private boolean wireframe = false;
 
     Mesh() {
-        id = glGenVertexArrays();
+        id = gl().genVertexArrays();
     }
 
     /**
@@ -39,7 +43,8 @@ public class Mesh {
      * @param data O ArrayBuffer com os dados do atributo.
      */
     void addAttribute(String name, ArrayBuffer data) {
-        if (attributes.containsKey(name)) {
+        if (attributes.containsKey(name) ||
+                (vertexBuffer != null && vertexBuffer.getFormat().getAttribute(name) != null)) {
             throw new IllegalArgumentException("Attribute already exists: " + name);
         }
         if (data == null) {
@@ -47,6 +52,80 @@ public class Mesh {
         }
 
         attributes.put(name, data);
+        if (firstAttribute == null) firstAttribute = data;
+    }
+
+    /**
+     * Associa o buffer de vértices intercalados a malha. Uma malha tem um único VertexBuffer, que pode ser combinado
+     * com ArrayBuffers de atributos adicionais.
+     * @param buffer O buffer com os vértices
+     */
+    void setVertexBuffer(VertexBuffer buffer) {
+        if (vertexBuffer != null) {
+            throw new IllegalArgumentException("Vertex buffer already defined!");
+        }
+        if (buffer == null) {
+            throw new IllegalArgumentException("Buffer can't be null!");
+        }
+        for (var attribute : buffer.getFormat().getAttributes()) {
+            if (attributes.containsKey(attribute.getName())) {
+                throw new IllegalArgumentException("Attribute already exists: " + attribute.getName());
+            }
+        }
+        vertexBuffer = buffer;
+    }
+
+    /**
+     * @return O buffer de vértices intercalados, ou null se a malha usa apenas ArrayBuffers.
+     */
+    public VertexBuffer getVertexBuffer() {
+        return vertexBuffer;
+    }
+
+    /**
+     * Associa um buffer de atributo por instância a malha.
+     * @param name O nome do atributo.
+     * @param data O ArrayBuffer com um elemento por instância.
+     */
+    void addInstanceAttribute(String name, ArrayBuffer data) {
+        if (attributes.containsKey(name) || instanceAttributes.containsKey(name)) {
+            throw new IllegalArgumentException("Attribute already exists: " + name);
+        }
+        if (data == null) {
+            throw new IllegalArgumentException("Data can't be null!");
+        }
+
+        instanceAttributes.put(name, data);
+    }
+
+    /**
+     * @param name Nome do atributo por instância
+     * @return O buffer do atributo, que pode ser atualizado com ArrayBuffer.update.
+     */
+    public ArrayBuffer getInstanceAttribute(String name) {
+        var buffer = instanceAttributes.get(name);
+        if (buffer == null) {
+            throw new IllegalArgumentException("Instance attribute does not exists: " + name);
+        }
+        return buffer;
+    }
+
+    /**
+     * @return Verdadeiro se a malha possui atributos por instância.
+     */
+    boolean hasInstanceAttributes() {
+        return !instanceAttributes.isEmpty();
+    }
+
+    /**
+     * Substitui os dados de um atributo por instância.
+     * @param name Nome do atributo
+     * @param data Dados de todas as instâncias
+     * @return A própria malha
+     */
+    public Mesh updateInstanceAttribute(String name, float... data) {
+        getInstanceAttribute(name).update(data);
+        return this;
     }
 
     /**
@@ -54,7 +133,34 @@ public class Mesh {
      * @return verdadeiro se o atributo indicado existe.
      */
     public boolean hasAttribute(String name) {
-        return attributes.containsKey(name);
+        return attributes.containsKey(name) ||
+                (vertexBuffer != null && vertexBuffer.getFormat().getAttribute(name) != null);
+    }
+
+    /**
+     * @return O volume envolvente da malha, no espaço do modelo, ou null se não for conhecido.
+     * @see MeshBuilder#setBounds(Bounds)
+     */
+    public Bounds getBounds() {
+        return bounds;
+    }
+
+    Mesh setBounds(Bounds bounds) {
+        this.bounds = bounds;
+        return this;
+    }
+
+    /**
+     * @return A cópia dos dados da malha do lado da CPU, ou null se a malha não foi criada com
+     * MeshBuilder.keepData().
+     */
+    MeshData getData() {
+        return data;
+    }
+
+    Mesh setData(MeshData data) {
+        this.data = data;
+        return this;
     }
 
     /**
@@ -70,18 +176,22 @@ public class Mesh {
     }
 
     /**
-     * Define o valor de um uniforme dentro da malha
-     * @param name Nome do uniforme
-     * @param value valor a ser definido
-     * @return A própria malha
+     * @return Os valores de uniforms da malha. Use os slots do bloco para definir valores sem busca por nome.
+     */
+    public UniformBlock getUniforms() {
+        return uniforms;
+    }
+
+    /**
+     * Remove o uniforme da malha, caso o valor seja nulo.
+     * @return Verdadeiro se o uniforme foi removido
      */
-    private Mesh setUniformObject(String name, Object value) {
-        if (value == null)
+    private boolean removeIfNull(String name, Object value) {
+        if (value == null) {
             uniforms.remove(name);
-        else {
-            uniforms.put(name, value);
+            return true;
         }
-        return this;
+        return false;
     }
 
     /**
@@ -91,7 +201,8 @@ public class Mesh {
      * @return A própria malha
      */
     public Mesh setUniform(String name, Matrix3f matrix) {
-        return setUniformObject(name, matrix);
+        if (!removeIfNull(name, matrix)) uniforms.set(name, matrix);
+        return this;
     }
 
     /**
@@ -101,7 +212,8 @@ public class Mesh {
      * @return A própria malha
      */
     public Mesh setUniform(String name, Matrix4f matrix) {
-        return setUniformObject(name, matrix);
+        if (!removeIfNull(name, matrix)) uniforms.set(name, matrix);
+        return this;
     }
 
     /**
@@ -111,7 +223,8 @@ public class Mesh {
      * @return A própria malha
      */
     public Mesh setUniform(String name, Vector2f vector) {
-        return setUniformObject(name, vector);
+        if (!removeIfNull(name, vector)) uniforms.set(name, vector);
+        return this;
     }
 
     /**
@@ -121,7 +234,8 @@ public class Mesh {
      * @return A própria malha
      */
     public Mesh setUniform(String name, Vector3f vector) {
-        return setUniformObject(name, vector);
+        if (!removeIfNull(name, vector)) uniforms.set(name, vector);
+        return this;
     }
     /**
      * Define o valor de um uniforme dentro da malha
@@ -130,7 +244,8 @@ public class Mesh {
      * @return A própria malha
      */
     public Mesh setUniform(String name, Vector4f vector) {
-        return setUniformObject(name, vector);
+        if (!removeIfNull(name, vector)) uniforms.set(name, vector);
+        return this;
     }
 
     /**
@@ -140,7 +255,8 @@ public class Mesh {
      * @return A própria malha
      */
     public Mesh setUniform(String name, float value) {
-        return setUniformObject(name, value);
+        uniforms.set(name, value);
+        return this;
     }
 
     /**
@@ -150,7 +266,8 @@ public class Mesh {
      * @return A própria malha
      */
     public Mesh setUniform(String name, int value) {
-        return setUniformObject(name, value);
+        uniforms.set(name, value);
+        return this;
     }
 
     /**
@@ -160,7 +277,8 @@ public class Mesh {
      * @return A própria malha
      */
     public Mesh setUniform(String name, boolean value) {
-        return setUniformObject(name, value);
+        uniforms.set(name, value);
+        return this;
     }
 
     /**
@@ -188,36 +306,82 @@ public class Mesh {
             return this;
         }
 
-        glPolygonMode(GL_FRONT_AND_BACK, wireframe ? GL_LINE : GL_FILL);
+        bind(shader);
+        submit();
+
+        //Não há faxina: o programa e o VAO continuam vinculados, e o GLState evita que o próximo desenho com o mesmo
+        //estado os vincule novamente.
+        return this;
+    }
+
+    /**
+     * Desenha várias instâncias da malha com um único comando de desenho. Os dados de cada instância vêm dos
+     * atributos por instância definidos em MeshBuilder.addInstanceAttribute.
+     * @param shader O shader usado no desenho
+     * @param instances Quantidade de instâncias
+     * @return A própria mesh
+     */
+    public Mesh drawInstanced(Shader shader, int instances) {
+        if (shader == null || instances < 1) {
+            return this;
+        }
+
+        bind(shader);
+        submitInstanced(instances);
+        return this;
+    }
+
+    /**
+     * Prepara o desenho: define o modo de polígono, vincula o VAO e o shader e envia os uniforms da malha.
+     * Uniforms adicionais podem ser enviados entre bind e submit.
+     */
+    void bind(Shader shader) {
+        var state = GLState.getInstance();
+        state.polygonMode(wireframe ? GL_LINE : GL_FILL);
 
         //Precisamos dizer qual VAO iremos desenhar
-        glBindVertexArray(id);
+        state.bindVertexArray(id);
 
         //E qual shader program irá ser usado durante o desenho
         shader.bind();
 
-        //Associação dos uniforms (value) as suas variáveis no shader (key)
+        //Envio dos uniforms que mudaram desde o último desenho com esse shader
         //---------------------------------------------------
-        uniforms.forEach(shader::setUniformObject);
+        uniforms.apply(shader);
+    }
 
+    /**
+     * Emite o comando de desenho. Deve ser chamado após bind.
+     */
+    void submit() {
         if (indexBuffer == null) {
-            //Se não houver index buffer, busca pelo primeiro ArrayBuffer e desenha com ele.
-            attributes.values().iterator().next().draw();
+            //Se não houver index buffer, desenha com o buffer de vértices ou o primeiro ArrayBuffer.
+            if (vertexBuffer != null) vertexBuffer.draw();
+            else firstAttribute.draw();
         } else {
             //Se houver, desenha com o index buffer.
             indexBuffer.draw();
         }
+    }
 
-        // Faxina
-        shader.unbind();
-        glBindVertexArray(0);
-        return this;
+    /**
+     * Emite o comando de desenho instanciado. Deve ser chamado após bind.
+     */
+    void submitInstanced(int instances) {
+        if (indexBuffer == null) {
+            if (vertexBuffer != null) vertexBuffer.drawInstanced(instances);
+            else firstAttribute.drawInstanced(instances);
+        } else {
+            indexBuffer.drawInstanced(instances);
+        }
     }
 
     Mesh unbindAll() {
-        glBindVertexArray(0);
+        GLState.getInstance().bindVertexArray(0);
 
+        if (vertexBuffer != null) vertexBuffer.unbind();
         attributes.values().forEach(ArrayBuffer::unbind);
+        instanceAttributes.values().forEach(ArrayBuffer::unbind);
         if (indexBuffer != null) indexBuffer.unbind();
         return this;
     }
@@ -7,42 +7,192 @@ import org.lwjgl.system.MemoryUtil;
 
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
-import static org.lwjgl.opengl.GL30.glBindVertexArray;
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
 
 /**
  * Classe utilizada para a construção de novas malhas. Contém uma série de métodos para definição de atributos,
  * uniformes, index buffer e shader. Contém também versões do métodos com suporte a coleções, tipos da JOGL e outras
  * facilidades.
+ *
+ * Quando o atributo de posição (aPosition) é definido com dados do lado da CPU, o volume envolvente da malha (Bounds)
+ * é calculado automaticamente. Se os dados vierem de um ArrayBuffer já pronto, use setBounds.
+ *
+ * Além de um ArrayBuffer por atributo, os vértices podem ser definidos em um único buffer intercalado, descrito por um
+ * VertexFormat (setVertices). Cada vértice fica contíguo na memória e o VAO é configurado com um único buffer:
+ *
+ * <pre>
+ *     var format = new VertexFormat().add("aPosition", 3).add("aColor", 3);
+ *     var shader = Shader.loadProgram(format, "basic");
+ *     var mesh = new MeshBuilder(shader)
+ *         .setVertices(format, format.interleave(positions, colors))
+ *         .setIndexBuffer(indices)
+ *         .create();
+ * </pre>
+ *
+ * Chamando optimize() antes de definir os dados, os atributos e índices fornecidos do lado da CPU são guardados e só
+ * são enviados no create(), depois de passarem pelo MeshOptimizer (solda, ordenação para o cache de vértices e para
+ * overdraw, ordenação dos vértices e índices compactos).
+ *
+ * Para malhas procedurais grandes, begin(format) devolve um MeshWriter, que escreve valores primitivos diretamente em
+ * buffers fora do heap (vertex(x, y, z).color(r, g, b), triangle(a, b, c)) sem criar objetos por vértice.
+ *
+ * Com keepData(), a malha guarda uma cópia dos dados do lado da CPU, usada pelo StaticBatcher para combinar malhas
+ * estáticas.
  */
 public class MeshBuilder {
+    public static final String POSITION_ATTRIBUTE = "aPosition";
+
     private Mesh mesh;
     private Shader shader;
 
+    private MeshWriter writer;
+    private MeshOptimizer optimizer;
+    private final List<MeshData.Stream> pending = new ArrayList<>();
+    private int[] pendingIndices;
+    private MeshData kept;
+    private boolean uploaded;
+
     public MeshBuilder(Shader shader) {
         mesh = new Mesh();
         this.shader = shader;
-        glBindVertexArray(mesh.getId());
+        GLState.getInstance().bindVertexArray(mesh.getId());
     }
 
     //Buffers de atributos
     //--------------------
     public MeshBuilder addBufferAttribute(String name, ArrayBuffer data) {
+        uploaded = true;
+        if (kept != null) kept.buffers++;
+        GLState.getInstance().bindVertexArray(mesh.getId());
         mesh.addAttribute(name, data);
         shader.setAttribute(name, data);
         return this;
     }
 
     public MeshBuilder addBufferAttribute(String name, int elementSize, FloatBuffer values) {
+        if (optimizer != null) {
+            pending.add(new MeshData.Stream(name, null, elementSize, GL_FLOAT, false, values));
+            return this;
+        }
+        if (POSITION_ATTRIBUTE.equals(name) && elementSize >= 3) {
+            mesh.setBounds(Bounds.of(values, elementSize));
+        }
+        keep(name, null, elementSize, GL_FLOAT, false, values);
         return addBufferAttribute(name, new ArrayBuffer(elementSize, values));
     }
 
     public MeshBuilder addFloatArrayAttribute(String name, int elementSize, float... values) {
+        if (optimizer != null) {
+            return addBufferAttribute(name, elementSize, FloatBuffer.wrap(values));
+        }
+        if (POSITION_ATTRIBUTE.equals(name) && elementSize >= 3) {
+            mesh.setBounds(Bounds.of(values, elementSize));
+        }
+        keep(name, null, elementSize, GL_FLOAT, false, FloatBuffer.wrap(values));
         return addBufferAttribute(name, new ArrayBuffer(elementSize, values));
     }
 
+    // Atributos compactos
+    // -------------------
+    /**
+     * Adiciona um atributo guardado na placa de vídeo em um tipo menor que float. Por exemplo, cores com
+     * GL_UNSIGNED_BYTE normalizado ocupam 4 bytes por vértice em vez de 12, e posições com GL_HALF_FLOAT, 8 em vez
+     * de 12.
+     * @param name Nome do atributo
+     * @param elementSize Quantidade de componentes (1 a 4)
+     * @param type Tipo na placa de vídeo: GL_HALF_FLOAT, GL_UNSIGNED_BYTE, GL_SHORT, GL_INT_2_10_10_10_REV, etc.
+     * @param normalized Se os inteiros são lidos como [0, 1] ou [-1, 1] pelo shader
+     * @param values Valores em float, convertidos com VertexPacking
+     */
+    public MeshBuilder addBufferAttribute(String name, int elementSize, int type, boolean normalized,
+                                          FloatBuffer values) {
+        if (optimizer != null) {
+            pending.add(new MeshData.Stream(name, null, elementSize, type, normalized, values));
+            return this;
+        }
+        if (POSITION_ATTRIBUTE.equals(name) && elementSize >= 3) {
+            mesh.setBounds(Bounds.of(values, elementSize));
+        }
+        keep(name, null, elementSize, type, normalized, values);
+        return addBufferAttribute(name, new ArrayBuffer(elementSize, type, normalized, values));
+    }
+
+    public MeshBuilder addFloatArrayAttribute(String name, int elementSize, int type, boolean normalized,
+                                              float... values) {
+        return addBufferAttribute(name, elementSize, type, normalized, FloatBuffer.wrap(values));
+    }
+
+    public MeshBuilder addVector3fAttribute(String name, int type, boolean normalized, Collection<Vector3f> values) {
+        var data = new float[values.size() * 3];
+        var i = 0;
+        for (var value : values) {
+            data[i++] = value.x;
+            data[i++] = value.y;
+            data[i++] = value.z;
+        }
+        return addFloatArrayAttribute(name, 3, type, normalized, data);
+    }
+
+    public MeshBuilder addVector3fAttribute(String name, int type, boolean normalized, Vector3f... values) {
+        return addVector3fAttribute(name, type, normalized, Arrays.asList(values));
+    }
+
+    public MeshBuilder addVector4fAttribute(String name, int type, boolean normalized, Collection<Vector4f> values) {
+        var data = new float[values.size() * 4];
+        var i = 0;
+        for (var value : values) {
+            data[i++] = value.x;
+            data[i++] = value.y;
+            data[i++] = value.z;
+            data[i++] = value.w;
+        }
+        return addFloatArrayAttribute(name, 4, type, normalized, data);
+    }
+
+    public MeshBuilder addVector4fAttribute(String name, int type, boolean normalized, Vector4f... values) {
+        return addVector4fAttribute(name, type, normalized, Arrays.asList(values));
+    }
+
+    // Vértices intercalados
+    // --------------------
+    public MeshBuilder setVertexBuffer(VertexBuffer buffer) {
+        uploaded = true;
+        if (kept != null) kept.buffers++;
+        GLState.getInstance().bindVertexArray(mesh.getId());
+        mesh.setVertexBuffer(buffer);
+        shader.setVertexBuffer(buffer);
+        return this;
+    }
+
+    /**
+     * Define os vértices da malha em um único buffer intercalado. Se o formato tiver aPosition, com 3 ou mais
+     * componentes, o volume envolvente é calculado.
+     * @param format Formato dos vértices
+     * @param vertices Floats intercalados, format.getComponents() por vértice
+     */
+    public MeshBuilder setVertices(VertexFormat format, FloatBuffer vertices) {
+        if (optimizer != null) {
+            pending.add(new MeshData.Stream(null, format, format.getComponents(), GL_FLOAT, false, vertices));
+            return this;
+        }
+        var position = format.getAttribute(POSITION_ATTRIBUTE);
+        if (position != null && position.getComponents() >= 3) {
+            mesh.setBounds(Bounds.of(vertices, format.getComponentOffset(POSITION_ATTRIBUTE),
+                    format.getComponents()));
+        }
+        keep(null, format, format.getComponents(), GL_FLOAT, false, vertices);
+        return setVertexBuffer(new VertexBuffer(format, vertices));
+    }
+
+    public MeshBuilder setVertices(VertexFormat format, float... vertices) {
+        return setVertices(format, FloatBuffer.wrap(vertices));
+    }
+
     // Atributos do tipo Vector2
     // -------------------------
     public MeshBuilder addVector2fAttribute(String name, Collection<Vector2f> values) {
@@ -119,21 +269,67 @@ public class MeshBuilder {
         return addFloatArrayAttribute(name, 4, values);
     }
 
+    // Atributos por instância
+    // -----------------------
+    public MeshBuilder addInstanceAttribute(String name, ArrayBuffer data) {
+        GLState.getInstance().bindVertexArray(mesh.getId());
+        mesh.addInstanceAttribute(name, data);
+        shader.setInstanceAttribute(name, data);
+        return this;
+    }
+
+    /**
+     * Cria um atributo por instância vazio, com espaço para a quantidade de instâncias indicada. Os dados são
+     * definidos depois com Mesh.updateInstanceAttribute.
+     * @param name Nome do atributo. Por exemplo, um mat4 com a matriz world de cada instância.
+     * @param elementSize Tamanho do elemento: 16 para mat4, 4 para vec4, etc.
+     * @param instances Quantidade inicial de instâncias
+     */
+    public MeshBuilder addInstanceAttribute(String name, int elementSize, int instances) {
+        return addInstanceAttribute(name, new ArrayBuffer(elementSize, new float[elementSize * instances]));
+    }
+
+    // Volume envolvente
+    // -----------------
+    /**
+     * Define o volume envolvente da malha, substituindo o calculado a partir de aPosition.
+     */
+    public MeshBuilder setBounds(Bounds bounds) {
+        mesh.setBounds(bounds);
+        return this;
+    }
+
     // Index buffer
     // ------------
     public MeshBuilder setIndexBuffer(IndexBuffer indexBuffer) {
+        if (optimizer != null) {
+            throw new IllegalStateException("Index buffers already on the GPU can't be optimized!");
+        }
+        if (kept != null) kept.indexBuffer = true;
         mesh.setIndexBuffer(indexBuffer);
+        //O index buffer fica associado ao VAO que estiver vinculado no momento do bind
+        GLState.getInstance().bindVertexArray(mesh.getId());
+        indexBuffer.bind();
         return this;
     }
 
     public MeshBuilder setIndexBuffer(IntBuffer data) {
+        if (optimizer != null) {
+            pendingIndices = new int[data.remaining()];
+            data.duplicate().get(pendingIndices);
+            return this;
+        }
+        if (kept != null) {
+            kept.indices = new int[data.remaining()];
+            data.duplicate().get(kept.indices);
+        }
         return setIndexBuffer(new IndexBuffer(data));
     }
 
     public MeshBuilder setIndexBuffer(Collection<Integer> data) {
         IntBuffer buffer = null;
         try {
-            buffer = MemoryUtil.memAllocInt(data.size() * 3);
+            buffer = MemoryUtil.memAllocInt(data.size());
             for (var value : data) {
                 buffer.put(value);
             }
@@ -146,14 +342,161 @@ public class MeshBuilder {
     }
 
     public MeshBuilder setIndexBuffer(int... data) {
+        if (optimizer != null) {
+            pendingIndices = data.clone();
+            return this;
+        }
+        if (kept != null) kept.indices = data.clone();
         return setIndexBuffer(new IndexBuffer(data));
     }
 
+    // Escrita direta
+    // --------------
+    public MeshWriter begin(VertexFormat format) {
+        return begin(format, 1024, 1024);
+    }
+
+    /**
+     * Inicia a escrita dos vértices e índices da malha, um valor primitivo por vez, sem criar objetos por vértice.
+     * Os dados são enviados no create(), junto com os dados definidos pelos demais métodos.
+     * @param format Formato dos vértices. Deve conter aPosition.
+     * @param vertices Quantidade esperada de vértices. Os buffers crescem se for ultrapassada.
+     * @param indices Quantidade esperada de índices.
+     * @see MeshWriter
+     */
+    public MeshWriter begin(VertexFormat format, int vertices, int indices) {
+        if (writer != null) {
+            throw new IllegalStateException("Mesh writer already started!");
+        }
+        writer = new MeshWriter(this, format, vertices, indices);
+        return writer;
+    }
+
+    // Cópia dos dados
+    // ---------------
+    /**
+     * Guarda na malha uma cópia dos atributos e índices, do lado da CPU, para que ela possa ser combinada com outras
+     * pelo StaticBatcher. Deve ser chamado antes da definição dos atributos, que precisam vir de dados da CPU (e não
+     * de ArrayBuffers, VertexBuffers ou IndexBuffers prontos). Com optimize(), a cópia guarda os dados otimizados.
+     */
+    public MeshBuilder keepData() {
+        if (kept == null) kept = new MeshData();
+        return this;
+    }
+
+    /**
+     * Guarda a cópia de um atributo, se keepData() foi chamado. Sem keepData(), nenhuma cópia é feita.
+     */
+    private void keep(String name, VertexFormat format, int elementSize, int type, boolean normalized,
+                      FloatBuffer values) {
+        if (kept != null) {
+            kept.streams.add(new MeshData.Stream(name, format, elementSize, type, normalized, values));
+        }
+    }
+
+    // Otimização
+    // ----------
+    public MeshBuilder optimize() {
+        return optimize(new MeshOptimizer());
+    }
+
+    /**
+     * Liga a otimização da malha no create(). Deve ser chamado antes da definição dos atributos: atributos já
+     * enviados (como ArrayBuffers prontos) não podem ser reordenados, e nesse caso apenas a ordem dos triângulos é
+     * otimizada.
+     * @param optimizer Otimizador com as etapas desejadas. Seu relatório é atualizado no create().
+     */
+    public MeshBuilder optimize(MeshOptimizer optimizer) {
+        if (optimizer == null) {
+            throw new IllegalArgumentException("Optimizer can't be null!");
+        }
+        this.optimizer = optimizer;
+        return this;
+    }
+
+    /**
+     * Otimiza os dados guardados e os envia para a placa de vídeo.
+     */
+    private void flush() {
+        var optimizer = this.optimizer;
+        //A partir daqui, os métodos de atributos e índices enviam os dados normalmente
+        this.optimizer = null;
+
+        var streams = new float[pending.size()][];
+        var sizes = new int[pending.size()];
+        var vertexCount = -1;
+        var positionStream = -1;
+        var positionOffset = 0;
+        for (var i = 0; i < streams.length; i++) {
+            var p = pending.get(i);
+            streams[i] = p.data;
+            sizes[i] = p.elementSize;
+
+            var count = p.data.length / p.elementSize;
+            if (vertexCount != -1 && count != vertexCount) {
+                throw new IllegalArgumentException("Attributes with different vertex counts!");
+            }
+            vertexCount = count;
+
+            if (p.format != null && p.format.getAttribute(POSITION_ATTRIBUTE) != null
+                    && p.format.getAttribute(POSITION_ATTRIBUTE).getComponents() >= 3) {
+                positionStream = i;
+                positionOffset = p.format.getComponentOffset(POSITION_ATTRIBUTE);
+            } else if (POSITION_ATTRIBUTE.equals(p.name) && p.elementSize >= 3) {
+                positionStream = i;
+                positionOffset = 0;
+            }
+        }
+
+        //Vértices já enviados não podem ser reordenados: apenas os triângulos são
+        var remap = !uploaded && streams.length > 0;
+        int[] indices = pendingIndices;
+        if (remap || indices != null) {
+            if (vertexCount == -1) {
+                vertexCount = 0;
+                for (var index : indices) vertexCount = Math.max(vertexCount, index + 1);
+            }
+            var result = optimizer.optimize(indices, vertexCount, remap ? streams : null, sizes,
+                    remap ? positionStream : -1, positionOffset);
+            if (remap) streams = result.streams;
+            indices = result.indices;
+        }
+
+        for (var i = 0; i < streams.length; i++) {
+            var p = pending.get(i);
+            if (p.format != null) {
+                setVertices(p.format, streams[i]);
+            } else {
+                addFloatArrayAttribute(p.name, p.elementSize, p.type, p.normalized, streams[i]);
+            }
+        }
+        if (indices != null) {
+            if (kept != null) kept.indices = indices;
+            setIndexBuffer(optimizer.isCompactIndices() ? IndexBuffer.compact(indices) : new IndexBuffer(indices));
+        }
+        pending.clear();
+        pendingIndices = null;
+    }
+
     /**
      * Cria a malha previamente definida.
      * @return A malha criada.
      */
     public Mesh create() {
+        if (writer != null) {
+            var writer = this.writer;
+            this.writer = null;
+            writer.upload();
+        }
+        if (optimizer != null) {
+            flush();
+        }
+        if (kept != null) {
+            if (!kept.isComplete()) {
+                throw new IllegalStateException("Mesh data can't be kept: buffers already on the GPU have no copy!");
+            }
+            mesh.setData(kept);
+        }
         return mesh.unbindAll();
     }
 }
\ No newline at end of file
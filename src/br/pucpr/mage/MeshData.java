@@ -0,0 +1,101 @@
+package br.pucpr.mage;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cópia, do lado da CPU, dos atributos e índices de uma malha. É usada pelo MeshBuilder para guardar os dados que
+ * serão otimizados antes do envio e, com MeshBuilder.keepData(), fica na própria malha para que o StaticBatcher possa
+ * combiná-la com outras.
+ */
+class MeshData {
+    /**
+     * Um atributo, ou um conjunto de atributos intercalados (quando format não é nulo), em float.
+     */
+    static class Stream {
+        final String name;
+        final VertexFormat format;
+        final int elementSize;
+        final int type;
+        final boolean normalized;
+        final float[] data;
+
+        Stream(String name, VertexFormat format, int elementSize, int type, boolean normalized, FloatBuffer data) {
+            this.name = name;
+            this.format = format;
+            this.elementSize = elementSize;
+            this.type = type;
+            this.normalized = normalized;
+            this.data = new float[data.remaining()];
+            data.duplicate().get(this.data);
+        }
+
+        /**
+         * @return Quantidade de vértices do atributo
+         */
+        int getVertexCount() {
+            return data.length / elementSize;
+        }
+
+        /**
+         * @param attribute Nome do atributo
+         * @param minSize Quantidade mínima de componentes
+         * @return Posição do atributo dentro de cada vértice, ou -1 se ele não fizer parte desse stream.
+         */
+        int offsetOf(String attribute, int minSize) {
+            if (format == null) {
+                return attribute.equals(name) && elementSize >= minSize ? 0 : -1;
+            }
+            var found = format.getAttribute(attribute);
+            return found != null && found.getComponents() >= minSize ? format.getComponentOffset(attribute) : -1;
+        }
+
+        /**
+         * @return Descrição do layout do stream. Streams com o mesmo layout podem ser concatenados.
+         */
+        String getLayout() {
+            if (format == null) {
+                return name + ":" + elementSize + ":" + type + ":" + normalized;
+            }
+            var layout = new StringBuilder();
+            for (var attribute : format.getAttributes()) {
+                layout.append(attribute.getName()).append(':').append(attribute.getComponents()).append(':')
+                        .append(attribute.getType()).append(':').append(attribute.isNormalized()).append(',');
+            }
+            return layout.toString();
+        }
+    }
+
+    final List<Stream> streams = new ArrayList<>();
+    int[] indices;
+
+    //Buffers associados à malha, incluindo os que já estavam na placa de vídeo e não têm cópia
+    int buffers;
+    boolean indexBuffer;
+
+    /**
+     * @return Verdadeiro se todos os buffers da malha possuem cópia do lado da CPU.
+     */
+    boolean isComplete() {
+        return buffers == streams.size() && indexBuffer == (indices != null);
+    }
+
+    /**
+     * @return Quantidade de vértices
+     */
+    int getVertexCount() {
+        return streams.isEmpty() ? 0 : streams.get(0).getVertexCount();
+    }
+
+    /**
+     * @return Descrição do layout de todos os streams, na ordem em que foram definidos.
+     */
+    String getLayout() {
+        var layout = new StringBuilder();
+        for (var stream : streams) {
+            layout.append(stream.getLayout()).append('|');
+        }
+        return layout.toString();
+    }
+}
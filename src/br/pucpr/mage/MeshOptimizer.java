@@ -0,0 +1,667 @@
+package br.pucpr.mage;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+
+/**
+ * Etapa opcional de otimização das malhas, executada pelo MeshBuilder no create() quando optimize() é chamado. As
+ * etapas, todas ligadas por padrão, são:
+ *
+ * - Solda (weld): vértices com exatamente os mesmos atributos viram um só. Malhas sem index buffer ganham um.
+ * - Cache de vértices: reordena os triângulos com o algoritmo de Tom Forsyth ("Linear-Speed Vertex Cache
+ * Optimisation"), para que vértices recém transformados sejam reaproveitados pela placa de vídeo.
+ * - Overdraw: agrupa os triângulos em clusters e desenha primeiro os que estão voltados para fora da malha, reduzindo
+ * pixels sobrescritos. A nova ordem só é aceita se o ACMR não piorar mais que o limite (5% por padrão).
+ * - Busca de vértices (fetch): reordena os vértices na ordem em que são usados pelos índices, de modo que a leitura
+ * dos buffers seja sequencial. Vértices não usados são descartados.
+ * - Índices compactos: usa GL_UNSIGNED_BYTE ou GL_UNSIGNED_SHORT quando o número de vértices permite.
+ *
+ * A qualidade é medida pelo ACMR (average cache miss ratio): vértices transformados por triângulo, simulando um cache
+ * FIFO. Varia de 0,5 (ideal) a 3 (nenhum reaproveitamento). O relatório da última malha fica em getLastReport().
+ *
+ * <pre>
+ *     var optimizer = new MeshOptimizer();
+ *     var mesh = new MeshBuilder(shader).optimize(optimizer)
+ *         ...
+ *         .create();
+ *     System.out.println(optimizer.getLastReport());
+ * </pre>
+ */
+public class MeshOptimizer {
+    //Parâmetros do algoritmo de Forsyth
+    private static final int FORSYTH_CACHE = 32;
+    private static final float CACHE_DECAY_POWER = 1.5f;
+    private static final float LAST_TRIANGLE_SCORE = 0.75f;
+    private static final float VALENCE_BOOST_SCALE = 2.0f;
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+
+    /**
+     * Resultado da otimização de uma malha.
+     */
+    public static class Report {
+        private final int verticesBefore;
+        private final int verticesAfter;
+        private final int triangles;
+        private final float acmrBefore;
+        private final float acmrAfter;
+        private final int indexType;
+        private final boolean overdraw;
+
+        Report(int verticesBefore, int verticesAfter, int triangles, float acmrBefore, float acmrAfter,
+               int indexType, boolean overdraw) {
+            this.verticesBefore = verticesBefore;
+            this.verticesAfter = verticesAfter;
+            this.triangles = triangles;
+            this.acmrBefore = acmrBefore;
+            this.acmrAfter = acmrAfter;
+            this.indexType = indexType;
+            this.overdraw = overdraw;
+        }
+
+        public int getVerticesBefore() {
+            return verticesBefore;
+        }
+
+        public int getVerticesAfter() {
+            return verticesAfter;
+        }
+
+        public int getTriangles() {
+            return triangles;
+        }
+
+        /**
+         * @return O ACMR dos índices originais
+         */
+        public float getAcmrBefore() {
+            return acmrBefore;
+        }
+
+        /**
+         * @return O ACMR dos índices otimizados
+         */
+        public float getAcmrAfter() {
+            return acmrAfter;
+        }
+
+        /**
+         * @return O tipo de índice escolhido
+         */
+        public int getIndexType() {
+            return indexType;
+        }
+
+        /**
+         * @return Verdadeiro se a ordem para redução de overdraw foi aplicada.
+         */
+        public boolean isOverdrawApplied() {
+            return overdraw;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "vertices %d -> %d, triangles %d, ACMR %.3f -> %.3f, %d-bit indices%s",
+                    verticesBefore, verticesAfter, triangles, acmrBefore, acmrAfter,
+                    IndexBuffer.sizeOf(indexType) * 8, overdraw ? ", overdraw sorted" : "");
+        }
+    }
+
+    /**
+     * Malha otimizada: índices e, se os vértices puderam ser reordenados, os novos dados dos atributos.
+     */
+    static class Result {
+        int[] indices;
+        float[][] streams;
+        int vertexCount;
+    }
+
+    private boolean weld = true;
+    private boolean vertexCache = true;
+    private boolean overdraw = true;
+    private boolean vertexFetch = true;
+    private boolean compactIndices = true;
+    private int cacheSize = 16;
+    private float overdrawThreshold = 1.05f;
+    private Report lastReport;
+
+    public MeshOptimizer setWeld(boolean weld) {
+        this.weld = weld;
+        return this;
+    }
+
+    public MeshOptimizer setVertexCache(boolean vertexCache) {
+        this.vertexCache = vertexCache;
+        return this;
+    }
+
+    public MeshOptimizer setOverdraw(boolean overdraw) {
+        this.overdraw = overdraw;
+        return this;
+    }
+
+    public MeshOptimizer setVertexFetch(boolean vertexFetch) {
+        this.vertexFetch = vertexFetch;
+        return this;
+    }
+
+    public MeshOptimizer setCompactIndices(boolean compactIndices) {
+        this.compactIndices = compactIndices;
+        return this;
+    }
+
+    public boolean isCompactIndices() {
+        return compactIndices;
+    }
+
+    /**
+     * Define o tamanho do cache FIFO usado para medir o ACMR e para separar os clusters de overdraw.
+     * @return O próprio otimizador
+     */
+    public MeshOptimizer setCacheSize(int cacheSize) {
+        if (cacheSize < 3) {
+            throw new IllegalArgumentException("Cache size < 3!");
+        }
+        this.cacheSize = cacheSize;
+        return this;
+    }
+
+    /**
+     * Define quanto o ACMR pode piorar na ordenação para overdraw. Por exemplo, 1.05 aceita até 5% a mais.
+     * @return O próprio otimizador
+     */
+    public MeshOptimizer setOverdrawThreshold(float overdrawThreshold) {
+        if (overdrawThreshold < 1.0f) {
+            throw new IllegalArgumentException("Overdraw threshold < 1!");
+        }
+        this.overdrawThreshold = overdrawThreshold;
+        return this;
+    }
+
+    /**
+     * @return O relatório da última malha otimizada, ou null.
+     */
+    public Report getLastReport() {
+        return lastReport;
+    }
+
+    /**
+     * Executa as etapas ligadas.
+     * @param indices Índices dos triângulos, ou null para uma malha sem index buffer. O array pode ser alterado.
+     * @param vertexCount Quantidade de vértices
+     * @param streams Dados de cada atributo, ou null se os vértices já estão na placa de vídeo e não podem ser
+     *                reordenados (nesse caso, apenas a ordem dos triângulos muda).
+     * @param sizes Quantidade de floats por vértice de cada stream
+     * @param positionStream Índice do stream com as posições, ou -1 se não houver.
+     * @param positionOffset Índice do x da posição dentro do vértice desse stream
+     */
+    Result optimize(int[] indices, int vertexCount, float[][] streams, int[] sizes,
+                    int positionStream, int positionOffset) {
+        if (indices == null) {
+            indices = new int[vertexCount];
+            for (var i = 0; i < vertexCount; i++) indices[i] = i;
+        }
+        if (indices.length % 3 != 0) {
+            throw new IllegalArgumentException("Index count is not a multiple of 3: " + indices.length);
+        }
+
+        var result = new Result();
+        result.streams = streams;
+        result.vertexCount = vertexCount;
+        var acmrBefore = acmr(indices, cacheSize);
+
+        if (weld && streams != null) {
+            var remap = weld(streams, sizes, vertexCount);
+            result.vertexCount = remap(result, sizes, remap);
+            for (var i = 0; i < indices.length; i++) indices[i] = remap[indices[i]];
+        }
+
+        if (vertexCache) {
+            optimizeVertexCache(indices, result.vertexCount);
+        }
+
+        var sorted = false;
+        if (overdraw && positionStream != -1 && result.streams != null) {
+            sorted = optimizeOverdraw(indices, result.streams[positionStream], positionOffset,
+                    sizes[positionStream], cacheSize, overdrawThreshold);
+        }
+
+        if (vertexFetch && streams != null) {
+            var remap = optimizeVertexFetch(indices, result.vertexCount);
+            result.vertexCount = remap(result, sizes, remap);
+        }
+
+        result.indices = indices;
+        lastReport = new Report(vertexCount, result.vertexCount, indices.length / 3, acmrBefore,
+                acmr(indices, cacheSize),
+                compactIndices ? IndexBuffer.typeFor(Math.max(0, result.vertexCount - 1)) : GL_UNSIGNED_INT,
+                sorted);
+        return result;
+    }
+
+    /**
+     * Aplica um remapeamento aos streams do resultado.
+     * @return A nova quantidade de vértices
+     */
+    private static int remap(Result result, int[] sizes, int[] remap) {
+        var count = 0;
+        for (var target : remap) {
+            if (target >= count) count = target + 1;
+        }
+
+        var streams = new float[result.streams.length][];
+        for (var s = 0; s < streams.length; s++) {
+            var size = sizes[s];
+            var source = result.streams[s];
+            var dest = new float[count * size];
+            for (var v = 0; v < remap.length; v++) {
+                if (remap[v] != -1) {
+                    System.arraycopy(source, v * size, dest, remap[v] * size, size);
+                }
+            }
+            streams[s] = dest;
+        }
+        result.streams = streams;
+        return count;
+    }
+
+    // Métricas
+    // --------
+    /**
+     * Calcula o ACMR: vértices transformados por triângulo, simulando um cache FIFO.
+     * @param indices Índices dos triângulos
+     * @param cacheSize Tamanho do cache
+     * @return O ACMR, entre 0,5 e 3. Zero se não houver triângulos.
+     */
+    public static float acmr(int[] indices, int cacheSize) {
+        if (indices.length < 3) return 0;
+        var max = 0;
+        for (var index : indices) if (index > max) max = index;
+
+        //Cada vértice guarda o instante (em misses) em que entrou no cache
+        var inserted = new int[max + 1];
+        Arrays.fill(inserted, Integer.MIN_VALUE / 2);
+        var misses = 0;
+        for (var index : indices) {
+            if (misses - inserted[index] >= cacheSize) {
+                inserted[index] = misses++;
+            }
+        }
+        return misses / (float) (indices.length / 3);
+    }
+
+    // Solda
+    // -----
+    /**
+     * Encontra os vértices idênticos (mesmos bits em todos os atributos).
+     * @return Para cada vértice, o índice do vértice único correspondente. Os únicos são numerados na ordem em que
+     * aparecem pela primeira vez.
+     */
+    public static int[] weld(float[][] streams, int[] sizes, int vertexCount) {
+        var capacity = Integer.highestOneBit(Math.max(2, vertexCount * 2 - 1)) << 1;
+        var table = new int[capacity];
+        Arrays.fill(table, -1);
+        var mask = capacity - 1;
+
+        var remap = new int[vertexCount];
+        var unique = new int[vertexCount];
+        var uniqueCount = 0;
+        for (var v = 0; v < vertexCount; v++) {
+            var slot = hash(streams, sizes, v) & mask;
+            while (table[slot] != -1 && !equal(streams, sizes, unique[table[slot]], v)) {
+                slot = (slot + 1) & mask;
+            }
+            if (table[slot] == -1) {
+                table[slot] = uniqueCount;
+                unique[uniqueCount++] = v;
+            }
+            remap[v] = table[slot];
+        }
+        return remap;
+    }
+
+    private static int hash(float[][] streams, int[] sizes, int v) {
+        var h = 1;
+        for (var s = 0; s < streams.length; s++) {
+            var base = v * sizes[s];
+            for (var c = 0; c < sizes[s]; c++) {
+                h = h * 31 + Float.floatToIntBits(streams[s][base + c]);
+            }
+        }
+        h ^= h >>> 16;
+        h *= 0x45D9F3B;
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean equal(float[][] streams, int[] sizes, int a, int b) {
+        for (var s = 0; s < streams.length; s++) {
+            var size = sizes[s];
+            for (var c = 0; c < size; c++) {
+                if (Float.floatToIntBits(streams[s][a * size + c]) != Float.floatToIntBits(streams[s][b * size + c])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Cache de vértices
+    // -----------------
+    private static float vertexScore(int cachePosition, int remaining) {
+        if (remaining == 0) return -1.0f;
+
+        var score = 0.0f;
+        if (cachePosition >= 0) {
+            if (cachePosition < 3) {
+                //Os vértices do último triângulo têm um valor fixo, para não favorecer uma direção
+                score = LAST_TRIANGLE_SCORE;
+            } else {
+                var scale = 1.0f / (FORSYTH_CACHE - 3);
+                score = (float) Math.pow(1.0f - (cachePosition - 3) * scale, CACHE_DECAY_POWER);
+            }
+        }
+        //Vértices com poucos triângulos restantes ganham prioridade, para que não fiquem isolados
+        return score + VALENCE_BOOST_SCALE * (float) Math.pow(remaining, -VALENCE_BOOST_POWER);
+    }
+
+    /**
+     * Reordena os triângulos para aproveitar o cache de vértices pós-transformação (algoritmo de Forsyth).
+     * @param indices Índices dos triângulos. São reordenados no próprio array.
+     * @param vertexCount Quantidade de vértices
+     */
+    public static void optimizeVertexCache(int[] indices, int vertexCount) {
+        var triangles = indices.length / 3;
+        if (triangles < 2) return;
+
+        //Triângulos de cada vértice, em um único array. Os triângulos ainda não emitidos ficam no início da faixa.
+        var remaining = new int[vertexCount];
+        for (var index : indices) remaining[index]++;
+        var offsets = new int[vertexCount + 1];
+        for (var v = 0; v < vertexCount; v++) offsets[v + 1] = offsets[v] + remaining[v];
+        var adjacency = new int[indices.length];
+        var fill = Arrays.copyOf(offsets, vertexCount);
+        for (var i = 0; i < indices.length; i++) adjacency[fill[indices[i]]++] = i / 3;
+
+        var cachePosition = new int[vertexCount];
+        Arrays.fill(cachePosition, -1);
+        var vertexScores = new float[vertexCount];
+        for (var v = 0; v < vertexCount; v++) vertexScores[v] = vertexScore(-1, remaining[v]);
+
+        var best = 0;
+        var bestScore = -1.0f;
+        for (var t = 0; t < triangles; t++) {
+            var score = vertexScores[indices[t * 3]] + vertexScores[indices[t * 3 + 1]]
+                    + vertexScores[indices[t * 3 + 2]];
+            if (score > bestScore) {
+                best = t;
+                bestScore = score;
+            }
+        }
+
+        var emitted = new boolean[triangles];
+        var cache = new int[FORSYTH_CACHE + 3];
+        var next = new int[FORSYTH_CACHE + 3];
+        var cacheCount = 0;
+        var output = new int[indices.length];
+        var outputCount = 0;
+        var scan = 0;
+
+        while (best != -1) {
+            emitted[best] = true;
+            var a = indices[best * 3];
+            var b = indices[best * 3 + 1];
+            var c = indices[best * 3 + 2];
+            output[outputCount++] = a;
+            output[outputCount++] = b;
+            output[outputCount++] = c;
+
+            //Remove o triângulo das listas dos seus vértices
+            for (var k = 0; k < 3; k++) {
+                var v = indices[best * 3 + k];
+                var start = offsets[v];
+                var end = start + remaining[v] - 1;
+                for (var i = start; i <= end; i++) {
+                    if (adjacency[i] == best) {
+                        adjacency[i] = adjacency[end];
+                        adjacency[end] = best;
+                        break;
+                    }
+                }
+                remaining[v]--;
+            }
+
+            //Novo cache: os vértices do triângulo no início, seguidos dos que já estavam
+            var nextCount = 0;
+            next[nextCount++] = a;
+            next[nextCount++] = b;
+            next[nextCount++] = c;
+            for (var i = 0; i < cacheCount; i++) {
+                var v = cache[i];
+                if (v != a && v != b && v != c) next[nextCount++] = v;
+            }
+
+            //Atualiza as posições e pontuações, incluindo os vértices que saíram do cache
+            for (var i = 0; i < nextCount; i++) {
+                var v = next[i];
+                cachePosition[v] = i < FORSYTH_CACHE ? i : -1;
+                vertexScores[v] = vertexScore(cachePosition[v], remaining[v]);
+            }
+
+            //O próximo triângulo é o de maior pontuação entre os que tocam o cache
+            best = -1;
+            for (var i = 0; i < nextCount; i++) {
+                var v = next[i];
+                for (int j = offsets[v], end = offsets[v] + remaining[v]; j < end; j++) {
+                    var t = adjacency[j];
+                    var score = vertexScores[indices[t * 3]] + vertexScores[indices[t * 3 + 1]]
+                            + vertexScores[indices[t * 3 + 2]];
+                    if (best == -1 || score > bestScore) {
+                        best = t;
+                        bestScore = score;
+                    }
+                }
+            }
+
+            cacheCount = Math.min(nextCount, FORSYTH_CACHE);
+            var swap = cache;
+            cache = next;
+            next = swap;
+
+            if (best == -1) {
+                //Nenhum triângulo ligado ao cache: continua pelo próximo ainda não emitido
+                while (scan < triangles && emitted[scan]) scan++;
+                best = scan < triangles ? scan : -1;
+            }
+        }
+        System.arraycopy(output, 0, indices, 0, indices.length);
+    }
+
+    // Overdraw
+    // --------
+    /**
+     * Reordena clusters de triângulos para que os voltados para fora da malha sejam desenhados primeiro. Os clusters
+     * são as sequências que começam em um triângulo sem nenhum vértice no cache, de modo que a ordem interna, já
+     * otimizada para o cache, é preservada.
+     * @param indices Índices, já otimizados para o cache de vértices. São alterados apenas se a ordem for aceita.
+     * @param positions Stream com as posições
+     * @param offset Índice do x dentro do vértice
+     * @param stride Floats por vértice
+     * @param cacheSize Tamanho do cache FIFO simulado
+     * @param threshold Quanto o ACMR pode piorar
+     * @return Verdadeiro se a nova ordem foi aplicada
+     */
+    public static boolean optimizeOverdraw(int[] indices, float[] positions, int offset, int stride,
+                                           int cacheSize, float threshold) {
+        var triangles = indices.length / 3;
+        if (triangles < 2) return false;
+
+        //Clusters rígidos: começam em triângulos sem nenhum vértice no cache
+        var max = 0;
+        for (var index : indices) if (index > max) max = index;
+        var cache = new FifoCache(max + 1, cacheSize);
+        var hard = new int[triangles + 1];
+        var hardCount = 0;
+        for (var t = 0; t < triangles; t++) {
+            if (t == 0 || cache.misses(indices, t) == 3) hard[hardCount++] = t;
+        }
+        hard[hardCount] = triangles;
+
+        //Clusters flexíveis: cada cluster rígido é dividido sempre que o trecho atual, começando com o cache vazio,
+        //tem ACMR dentro do limite do cluster. Assim, a ordem dos clusters pode mudar sem piorar muito o cache.
+        var starts = new int[triangles + 1];
+        var clusters = 0;
+        for (var h = 0; h < hardCount; h++) {
+            cache.flush();
+            var clusterMisses = 0;
+            for (var t = hard[h]; t < hard[h + 1]; t++) clusterMisses += cache.misses(indices, t);
+            var limit = threshold * clusterMisses / (hard[h + 1] - hard[h]);
+
+            cache.flush();
+            starts[clusters++] = hard[h];
+            var misses = 0;
+            for (var t = hard[h]; t < hard[h + 1]; t++) {
+                misses += cache.misses(indices, t);
+                if (t + 1 < hard[h + 1] && misses / (float) (t - starts[clusters - 1] + 1) <= limit) {
+                    starts[clusters++] = t + 1;
+                    cache.flush();
+                    misses = 0;
+                }
+            }
+        }
+        starts[clusters] = triangles;
+        if (clusters < 2) return false;
+
+        //Centro e normal de cada cluster, ponderados pela área dos triângulos
+        var centers = new float[clusters * 3];
+        var normals = new float[clusters * 3];
+        var areas = new float[clusters];
+        float meshX = 0, meshY = 0, meshZ = 0, meshArea = 0;
+        for (var i = 0; i < clusters; i++) {
+            for (var t = starts[i]; t < starts[i + 1]; t++) {
+                var p0 = indices[t * 3] * stride + offset;
+                var p1 = indices[t * 3 + 1] * stride + offset;
+                var p2 = indices[t * 3 + 2] * stride + offset;
+                var ux = positions[p1] - positions[p0];
+                var uy = positions[p1 + 1] - positions[p0 + 1];
+                var uz = positions[p1 + 2] - positions[p0 + 2];
+                var vx = positions[p2] - positions[p0];
+                var vy = positions[p2 + 1] - positions[p0 + 1];
+                var vz = positions[p2 + 2] - positions[p0 + 2];
+                var nx = uy * vz - uz * vy;
+                var ny = uz * vx - ux * vz;
+                var nz = ux * vy - uy * vx;
+                var area = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+                var cx = (positions[p0] + positions[p1] + positions[p2]) / 3.0f;
+                var cy = (positions[p0 + 1] + positions[p1 + 1] + positions[p2 + 1]) / 3.0f;
+                var cz = (positions[p0 + 2] + positions[p1 + 2] + positions[p2 + 2]) / 3.0f;
+                centers[i * 3] += cx * area;
+                centers[i * 3 + 1] += cy * area;
+                centers[i * 3 + 2] += cz * area;
+                normals[i * 3] += nx;
+                normals[i * 3 + 1] += ny;
+                normals[i * 3 + 2] += nz;
+                areas[i] += area;
+            }
+            meshX += centers[i * 3];
+            meshY += centers[i * 3 + 1];
+            meshZ += centers[i * 3 + 2];
+            meshArea += areas[i];
+        }
+        if (meshArea == 0) return false;
+        meshX /= meshArea;
+        meshY /= meshArea;
+        meshZ /= meshArea;
+
+        //Quanto mais o cluster aponta para fora do centro da malha, mais cedo ele deve ser desenhado
+        var keys = new float[clusters];
+        for (var i = 0; i < clusters; i++) {
+            if (areas[i] == 0) continue;
+            var dx = centers[i * 3] / areas[i] - meshX;
+            var dy = centers[i * 3 + 1] / areas[i] - meshY;
+            var dz = centers[i * 3 + 2] / areas[i] - meshZ;
+            var nx = normals[i * 3];
+            var ny = normals[i * 3 + 1];
+            var nz = normals[i * 3 + 2];
+            var length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            keys[i] = length == 0 ? 0 : (dx * nx + dy * ny + dz * nz) / length;
+        }
+
+        var order = new Integer[clusters];
+        for (var i = 0; i < clusters; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Float.compare(keys[b], keys[a]));
+
+        var sorted = new int[indices.length];
+        var count = 0;
+        for (var cluster : order) {
+            var from = starts[cluster] * 3;
+            var length = starts[cluster + 1] * 3 - from;
+            System.arraycopy(indices, from, sorted, count, length);
+            count += length;
+        }
+
+        if (acmr(sorted, cacheSize) > acmr(indices, cacheSize) * threshold) {
+            return false;
+        }
+        System.arraycopy(sorted, 0, indices, 0, indices.length);
+        return true;
+    }
+
+    /**
+     * Cache FIFO simulado. Cada vértice guarda o instante (em misses) em que entrou no cache.
+     */
+    private static class FifoCache {
+        private final int[] inserted;
+        private final int size;
+        private int clock;
+
+        FifoCache(int vertices, int size) {
+            this.inserted = new int[vertices];
+            this.size = size;
+            Arrays.fill(inserted, Integer.MIN_VALUE / 2);
+        }
+
+        /**
+         * @return Quantos vértices do triângulo não estavam no cache
+         */
+        int misses(int[] indices, int triangle) {
+            var misses = 0;
+            for (var k = 0; k < 3; k++) {
+                var index = indices[triangle * 3 + k];
+                if (clock - inserted[index] >= size) {
+                    inserted[index] = clock++;
+                    misses++;
+                }
+            }
+            return misses;
+        }
+
+        /**
+         * Esvazia o cache.
+         */
+        void flush() {
+            clock += size;
+        }
+    }
+
+    // Busca de vértices
+    // -----------------
+    /**
+     * Renumera os vértices na ordem em que são usados pelos índices.
+     * @param indices Índices dos triângulos. São renumerados no próprio array.
+     * @param vertexCount Quantidade de vértices
+     * @return Para cada vértice antigo, o novo índice, ou -1 se o vértice não é usado.
+     */
+    public static int[] optimizeVertexFetch(int[] indices, int vertexCount) {
+        var remap = new int[vertexCount];
+        Arrays.fill(remap, -1);
+        var next = 0;
+        for (var i = 0; i < indices.length; i++) {
+            var index = indices[i];
+            if (remap[index] == -1) remap[index] = next++;
+            indices[i] = remap[index];
+        }
+        return remap;
+    }
+}
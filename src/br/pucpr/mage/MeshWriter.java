@@ -0,0 +1,292 @@
+package br.pucpr.mage;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Escreve os vértices e índices de uma malha diretamente em buffers fora do heap, um valor primitivo por vez. Não cria
+ * nenhum objeto por vértice (como Vector3f ou Integer), o que permite gerar malhas procedurais com milhões de
+ * vértices sem pressionar o coletor de lixo. Os buffers crescem conforme necessário e os dados são enviados uma única
+ * vez, no create() do MeshBuilder.
+ *
+ * Cada chamada a vertex inicia um novo vértice, que começa como cópia do anterior. Os demais métodos alteram o último
+ * vértice iniciado. Assim como na OpenGL, o primeiro vértice começa com (0, 0, 0, 1) em todos os atributos.
+ *
+ * <pre>
+ *     var format = new VertexFormat().add("aPosition", 3).add("aColor", 3);
+ *     var writer = new MeshBuilder(shader).begin(format);
+ *     writer.vertex(-0.5f, 0, 0).color(1, 0, 0)
+ *           .vertex( 0.5f, 0, 0).color(0, 1, 0)
+ *           .vertex( 0.0f, 1, 0).color(0, 0, 1)
+ *           .triangle(0, 1, 2);
+ *     var mesh = writer.create();
+ * </pre>
+ *
+ * Os índices são absolutos. Use getVertexCount() antes de escrever um bloco de vértices para saber o índice do
+ * primeiro deles.
+ *
+ * @see MeshBuilder#begin(VertexFormat)
+ */
+public class MeshWriter {
+    public static final String NORMAL_ATTRIBUTE = "aNormal";
+    public static final String COLOR_ATTRIBUTE = "aColor";
+    public static final String TEXCOORD_ATTRIBUTE = "aTexCoord";
+
+    private final MeshBuilder builder;
+    private final VertexFormat format;
+    private final int components;
+
+    private final int positionOffset;
+    private final int positionSize;
+    private final int normalOffset;
+    private final int normalSize;
+    private final int colorOffset;
+    private final int colorSize;
+    private final int texCoordOffset;
+    private final int texCoordSize;
+
+    private FloatBuffer vertices;
+    private IntBuffer indices;
+    private int vertexCount;
+    private int indexCount;
+
+    MeshWriter(MeshBuilder builder, VertexFormat format, int vertexCapacity, int indexCapacity) {
+        if (format == null) {
+            throw new IllegalArgumentException("Format can't be null!");
+        }
+        if (format.getAttribute(MeshBuilder.POSITION_ATTRIBUTE) == null) {
+            throw new IllegalArgumentException("Vertex format has no " + MeshBuilder.POSITION_ATTRIBUTE + "!");
+        }
+        if (vertexCapacity < 1 || indexCapacity < 1) {
+            throw new IllegalArgumentException("Capacity < 1!");
+        }
+
+        this.builder = builder;
+        this.format = format;
+        this.components = format.getComponents();
+
+        positionOffset = format.getComponentOffset(MeshBuilder.POSITION_ATTRIBUTE);
+        positionSize = sizeOf(MeshBuilder.POSITION_ATTRIBUTE);
+        normalOffset = format.getComponentOffset(NORMAL_ATTRIBUTE);
+        normalSize = sizeOf(NORMAL_ATTRIBUTE);
+        colorOffset = format.getComponentOffset(COLOR_ATTRIBUTE);
+        colorSize = sizeOf(COLOR_ATTRIBUTE);
+        texCoordOffset = format.getComponentOffset(TEXCOORD_ATTRIBUTE);
+        texCoordSize = sizeOf(TEXCOORD_ATTRIBUTE);
+
+        vertices = MemoryUtil.memAllocFloat(vertexCapacity * components);
+        indices = MemoryUtil.memAllocInt(indexCapacity);
+    }
+
+    private int sizeOf(String name) {
+        var attribute = format.getAttribute(name);
+        return attribute == null ? 0 : attribute.getComponents();
+    }
+
+    /**
+     * @return O formato dos vértices
+     */
+    public VertexFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return Quantidade de vértices escritos. É também o índice do próximo vértice.
+     */
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * @return Quantidade de índices escritos.
+     */
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    // Vértices
+    // --------
+    /**
+     * Inicia um novo vértice, copiando os atributos do anterior, na posição indicada.
+     * @return O próprio objeto
+     */
+    public MeshWriter vertex(float x, float y, float z) {
+        if (vertices == null) {
+            throw new IllegalStateException("Mesh already created!");
+        }
+        if (positionSize < 3) {
+            throw new IllegalArgumentException(MeshBuilder.POSITION_ATTRIBUTE + " has only " + positionSize +
+                    " components!");
+        }
+
+        var base = vertexCount * components;
+        if (base + components > vertices.capacity()) {
+            vertices = MemoryUtil.memRealloc(vertices, Math.max(base + components, vertices.capacity() * 2));
+        }
+
+        if (vertexCount == 0) {
+            //Valor padrão dos atributos na OpenGL: (0, 0, 0, 1)
+            var offset = 0;
+            for (var attribute : format.getAttributes()) {
+                for (var i = 0; i < attribute.getComponents(); i++) {
+                    vertices.put(offset + i, i == 3 ? 1.0f : 0.0f);
+                }
+                offset += attribute.getComponents();
+            }
+        } else {
+            for (var i = 0; i < components; i++) {
+                vertices.put(base + i, vertices.get(base - components + i));
+            }
+        }
+        vertexCount++;
+        return set(MeshBuilder.POSITION_ATTRIBUTE, positionOffset, positionSize, 3, x, y, z, 1.0f);
+    }
+
+    /**
+     * Define a normal (aNormal) do vértice atual.
+     * @return O próprio objeto
+     */
+    public MeshWriter normal(float x, float y, float z) {
+        return set(NORMAL_ATTRIBUTE, normalOffset, normalSize, 3, x, y, z, 0.0f);
+    }
+
+    /**
+     * Define a cor (aColor) do vértice atual. Se o atributo tiver 4 componentes, o alfa é mantido.
+     * @return O próprio objeto
+     */
+    public MeshWriter color(float r, float g, float b) {
+        return set(COLOR_ATTRIBUTE, colorOffset, colorSize, 3, r, g, b, 1.0f);
+    }
+
+    /**
+     * Define a cor (aColor) do vértice atual, com alfa.
+     * @return O próprio objeto
+     */
+    public MeshWriter color(float r, float g, float b, float a) {
+        return set(COLOR_ATTRIBUTE, colorOffset, colorSize, 4, r, g, b, a);
+    }
+
+    /**
+     * Define a coordenada de textura (aTexCoord) do vértice atual.
+     * @return O próprio objeto
+     */
+    public MeshWriter texCoord(float u, float v) {
+        return set(TEXCOORD_ATTRIBUTE, texCoordOffset, texCoordSize, 2, u, v, 0.0f, 0.0f);
+    }
+
+    /**
+     * Define um atributo qualquer do vértice atual. Os métodos normal, color e texCoord evitam a busca pelo nome e
+     * devem ser preferidos quando possível.
+     * @return O próprio objeto
+     */
+    public MeshWriter attribute(String name, float x) {
+        return set(name, format.getComponentOffset(name), sizeOf(name), 1, x, 0.0f, 0.0f, 0.0f);
+    }
+
+    public MeshWriter attribute(String name, float x, float y) {
+        return set(name, format.getComponentOffset(name), sizeOf(name), 2, x, y, 0.0f, 0.0f);
+    }
+
+    public MeshWriter attribute(String name, float x, float y, float z) {
+        return set(name, format.getComponentOffset(name), sizeOf(name), 3, x, y, z, 0.0f);
+    }
+
+    public MeshWriter attribute(String name, float x, float y, float z, float w) {
+        return set(name, format.getComponentOffset(name), sizeOf(name), 4, x, y, z, w);
+    }
+
+    private MeshWriter set(String name, int offset, int size, int count, float x, float y, float z, float w) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Attribute " + name + " is not part of the vertex format!");
+        }
+        if (count > size) {
+            throw new IllegalArgumentException("Attribute " + name + " has only " + size + " components!");
+        }
+        if (vertexCount == 0) {
+            throw new IllegalStateException("No vertex to set " + name + ". Call vertex first!");
+        }
+
+        var base = (vertexCount - 1) * components + offset;
+        vertices.put(base, x);
+        if (count > 1) vertices.put(base + 1, y);
+        if (count > 2) vertices.put(base + 2, z);
+        if (count > 3) vertices.put(base + 3, w);
+        return this;
+    }
+
+    // Índices
+    // -------
+    /**
+     * Adiciona um triângulo com os vértices indicados, em sentido anti-horário.
+     * @return O próprio objeto
+     */
+    public MeshWriter triangle(int a, int b, int c) {
+        if (indices == null) {
+            throw new IllegalStateException("Mesh already created!");
+        }
+        if (indexCount + 3 > indices.capacity()) {
+            indices = MemoryUtil.memRealloc(indices, Math.max(indexCount + 3, indices.capacity() * 2));
+        }
+        indices.put(indexCount++, a);
+        indices.put(indexCount++, b);
+        indices.put(indexCount++, c);
+        return this;
+    }
+
+    /**
+     * Adiciona um quadrilátero, em sentido anti-horário, como os triângulos (a, b, c) e (a, c, d).
+     * @return O próprio objeto
+     */
+    public MeshWriter quad(int a, int b, int c, int d) {
+        return triangle(a, b, c).triangle(a, c, d);
+    }
+
+    // Finalização
+    // -----------
+    /**
+     * @return O MeshBuilder, para a definição de outros dados da malha. Os dados escritos são enviados no create().
+     */
+    public MeshBuilder end() {
+        return builder;
+    }
+
+    /**
+     * Cria a malha. Equivale a end().create().
+     * @return A malha criada.
+     */
+    public Mesh create() {
+        return builder.create();
+    }
+
+    /**
+     * Envia os dados escritos para o MeshBuilder e libera os buffers. Sem índices, a malha é desenhada na ordem dos
+     * vértices.
+     */
+    void upload() {
+        try {
+            if (vertexCount == 0) {
+                throw new IllegalStateException("No vertices written!");
+            }
+            for (var i = 0; i < indexCount; i++) {
+                var index = indices.get(i);
+                if (index < 0 || index >= vertexCount) {
+                    throw new IllegalArgumentException("Invalid index: " + index);
+                }
+            }
+
+            vertices.limit(vertexCount * components);
+            builder.setVertices(format, vertices);
+            if (indexCount > 0) {
+                indices.limit(indexCount);
+                builder.setIndexBuffer(indices);
+            }
+        } finally {
+            MemoryUtil.memFree(vertices);
+            MemoryUtil.memFree(indices);
+            vertices = null;
+            indices = null;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package br.pucpr.mage;
+
+import org.joml.Matrix4fc;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import static br.pucpr.mage.gl.Backend.gl;
+import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER;
+import static org.lwjgl.opengl.GL40.GL_DRAW_INDIRECT_BUFFER;
+
+/**
+ * Desenha muitas malhas diferentes, que usam o mesmo shader e o mesmo formato de vértice, com poucos comandos de
+ * desenho. As malhas são adicionadas a um único VertexBuffer e IndexBuffer compartilhados (add), e cada uma passa a
+ * ser identificada pela posição de seus índices e pelo seu vértice base.
+ *
+ * Durante o quadro, draw apenas anota a malha, a matriz world e a cor. No flush, os dados de cada desenho são escritos
+ * em um uniform buffer (bloco DrawData, ponto de ligação BINDING) e os desenhos são emitidos em blocos de CHUNK:
+ * - Com ARB_multi_draw_indirect e ARB_shader_draw_parameters, os parâmetros de cada desenho são escritos em um
+ * GL_DRAW_INDIRECT_BUFFER e cada bloco é desenhado com um único glMultiDrawElementsIndirect. O shader encontra seus
+ * dados com gl_DrawIDARB.
+ * - Em OpenGL 3.3, um laço na CPU emite um glDrawElementsBaseVertex por malha, e o índice do desenho é enviado no
+ * uniform uDrawID. Os dados continuam no uniform buffer, portanto cada desenho custa apenas um glUniform1i.
+ *
+ * Os shaders devem ser carregados com loadProgram, que insere o cabeçalho adequado ao contexto e define DRAW_ID,
+ * e declarar o bloco de dados como no batch.vert:
+ *
+ * <pre>
+ * struct DrawItem { mat4 world; vec4 color; };
+ * layout(std140) uniform DrawData { DrawItem uDraws[128]; };
+ * ...
+ * DrawItem item = uDraws[DRAW_ID];
+ * </pre>
+ *
+ * Uso:
+ *
+ * <pre>
+ *     var shader = MultiDrawBatch.loadProgram(format, "batch.vert", "basic.frag");
+ *     var batch = new MultiDrawBatch(shader, format, 100_000, 300_000, 4096);
+ *     var cube = batch.add(cubeVertices, cubeIndices);
+ *     ...
+ *     batch.draw(cube, world, 1, 0, 0, 1);
+ *     batch.flush();
+ * </pre>
+ *
+ * Os dados de desenho ficam em StreamBuffers dimensionados para maxDraws desenhos por quadro. Cada flush ocupa ao
+ * menos um bloco inteiro, portanto prefira um único flush por quadro.
+ */
+public class MultiDrawBatch {
+    public static final String BLOCK_NAME = "DrawData";
+    public static final int BINDING = 1;
+    public static final String DRAW_ID_UNIFORM = "uDrawID";
+
+    /**
+     * Quantidade de desenhos por bloco. Deve ser igual ao tamanho do array uDraws nos shaders.
+     */
+    public static final int CHUNK = 128;
+
+    //std140: mat4 world (64 bytes) + vec4 color (16 bytes)
+    private static final int ITEM_SIZE = 80;
+    //DrawElementsIndirectCommand: count, instanceCount, firstIndex, baseVertex, baseInstance
+    private static final int COMMAND_SIZE = 20;
+
+    private final Shader shader;
+    private final VertexFormat format;
+    private final VertexBuffer vertexBuffer;
+    private final IndexBuffer indexBuffer;
+    private final Mesh mesh;
+    private final boolean indirect;
+
+    private final StreamBuffer drawData;
+    private final StreamBuffer commands;
+    private final Uniform drawId;
+
+    private int vertexCount;
+    private int indexCount;
+
+    private int[] firstIndices = new int[64];
+    private int[] indexCounts = new int[64];
+    private int[] baseVertices = new int[64];
+    private int meshes;
+
+    private final int maxDraws;
+    private final int[] handles;
+    private final float[] worlds;
+    private final float[] colors;
+    private int count;
+    private int calls;
+
+    /**
+     * Cria o lote, com os buffers compartilhados vazios.
+     * @param shader Shader carregado com MultiDrawBatch.loadProgram
+     * @param format Formato dos vértices de todas as malhas
+     * @param maxVertices Total de vértices de todas as malhas
+     * @param maxIndices Total de índices de todas as malhas
+     * @param maxDraws Quantidade máxima de desenhos por quadro
+     */
+    public MultiDrawBatch(Shader shader, VertexFormat format, int maxVertices, int maxIndices, int maxDraws) {
+        if (shader == null) {
+            throw new IllegalArgumentException("Shader can't be null!");
+        }
+        if (format == null) {
+            throw new IllegalArgumentException("Format can't be null!");
+        }
+        if (maxVertices < 1 || maxIndices < 1 || maxDraws < 1) {
+            throw new IllegalArgumentException("Capacity < 1!");
+        }
+
+        this.shader = shader;
+        this.format = format;
+        this.indirect = isIndirectSupported();
+        this.maxDraws = maxDraws;
+        handles = new int[maxDraws];
+        worlds = new float[maxDraws * 16];
+        colors = new float[maxDraws * 4];
+
+        var vertices = MemoryUtil.memCalloc(maxVertices * format.getStride());
+        var indices = MemoryUtil.memCallocInt(maxIndices);
+        try {
+            vertexBuffer = new VertexBuffer(format, vertices);
+            indexBuffer = new IndexBuffer(indices);
+        } finally {
+            MemoryUtil.memFree(vertices);
+            MemoryUtil.memFree(indices);
+        }
+        mesh = new MeshBuilder(shader)
+                .setVertexBuffer(vertexBuffer)
+                .setIndexBuffer(indexBuffer)
+                .create();
+
+        var chunks = (maxDraws + CHUNK - 1) / CHUNK;
+        drawData = new StreamBuffer(GL_UNIFORM_BUFFER, chunks * CHUNK * ITEM_SIZE);
+        if (indirect) {
+            commands = new StreamBuffer(GL_DRAW_INDIRECT_BUFFER, chunks * CHUNK * COMMAND_SIZE);
+            drawId = null;
+        } else {
+            commands = null;
+            drawId = shader.getUniform(DRAW_ID_UNIFORM);
+        }
+    }
+
+    /**
+     * @return Verdadeiro se o contexto atual suporta glMultiDrawElementsIndirect e gl_DrawIDARB.
+     */
+    public static boolean isIndirectSupported() {
+        return gl().isExtensionSupported("GL_ARB_multi_draw_indirect") &&
+                gl().isExtensionSupported("GL_ARB_shader_draw_parameters");
+    }
+
+    /**
+     * @return O cabeçalho que define DRAW_ID nos shaders, de acordo com o suporte do contexto atual.
+     */
+    public static String getHeader() {
+        if (isIndirectSupported()) {
+            return "#extension GL_ARB_shader_draw_parameters : require\n#define DRAW_ID gl_DrawIDARB\n";
+        }
+        return "uniform int " + DRAW_ID_UNIFORM + ";\n#define DRAW_ID " + DRAW_ID_UNIFORM + "\n";
+    }
+
+    /**
+     * Carrega um shader program para o lote, inserindo o cabeçalho de getHeader(). O bloco DrawData é registrado no
+     * ponto de ligação BINDING antes do link (veja Shader.setBlockBinding).
+     * @param format Formato dos vértices
+     * @param shaders Shaders para carregar
+     * @return O shader program
+     * @see Shader#loadProgramWithHeader(VertexFormat, String, String...)
+     */
+    public static Shader loadProgram(VertexFormat format, String... shaders) {
+        Shader.setBlockBinding(BLOCK_NAME, BINDING);
+        return Shader.loadProgramWithHeader(format, getHeader(), shaders);
+    }
+
+    /**
+     * Adiciona uma malha aos buffers compartilhados.
+     * @param vertices Floats intercalados, no formato do lote
+     * @param indices Índices dos triângulos, relativos ao primeiro vértice dessa malha
+     * @return O identificador da malha, usado em draw
+     */
+    public int add(float[] vertices, int[] indices) {
+        if (vertices == null || indices == null) {
+            throw new IllegalArgumentException("Data is null!");
+        }
+        var added = vertices.length / format.getComponents();
+        if (added == 0 || indices.length == 0) {
+            throw new IllegalArgumentException("Mesh has no triangles!");
+        }
+        if (vertexCount + added > vertexBuffer.getCount() || indexCount + indices.length > indexBuffer.getCount()) {
+            throw new IllegalStateException("Batch buffers full! Increase maxVertices or maxIndices.");
+        }
+        for (var index : indices) {
+            if (index < 0 || index >= added) {
+                throw new IllegalArgumentException("Invalid index: " + index);
+            }
+        }
+
+        vertexBuffer.update(vertexCount, vertices);
+        indexBuffer.update(indexCount, IntBuffer.wrap(indices));
+
+        if (meshes == firstIndices.length) {
+            firstIndices = Arrays.copyOf(firstIndices, meshes * 2);
+            indexCounts = Arrays.copyOf(indexCounts, meshes * 2);
+            baseVertices = Arrays.copyOf(baseVertices, meshes * 2);
+        }
+        firstIndices[meshes] = indexCount;
+        indexCounts[meshes] = indices.length;
+        baseVertices[meshes] = vertexCount;
+
+        vertexCount += added;
+        indexCount += indices.length;
+        return meshes++;
+    }
+
+    /**
+     * Anota o desenho de uma malha. O comando só é emitido no flush.
+     * @param mesh Identificador devolvido por add
+     * @param world Matriz world do desenho
+     * @param r Componente vermelho da cor, multiplicado pela cor dos vértices
+     * @return O próprio lote
+     */
+    public MultiDrawBatch draw(int mesh, Matrix4fc world, float r, float g, float b, float a) {
+        if (mesh < 0 || mesh >= meshes) {
+            throw new IllegalArgumentException("Invalid mesh: " + mesh);
+        }
+        if (count == maxDraws) {
+            throw new IllegalStateException("Batch full! Call flush or increase maxDraws.");
+        }
+
+        handles[count] = mesh;
+        world.get(worlds, count * 16);
+        var color = count * 4;
+        colors[color] = r;
+        colors[color + 1] = g;
+        colors[color + 2] = b;
+        colors[color + 3] = a;
+        count++;
+        return this;
+    }
+
+    /**
+     * Anota o desenho de uma malha, sem alterar a cor dos vértices.
+     * @return O próprio lote
+     */
+    public MultiDrawBatch draw(int mesh, Matrix4fc world) {
+        return draw(mesh, world, 1, 1, 1, 1);
+    }
+
+    /**
+     * Envia os dados e emite os desenhos anotados desde o último flush. O bloco Camera deve estar atualizado
+     * (Camera.apply).
+     * @return A quantidade de comandos de desenho emitidos
+     */
+    public int flush() {
+        calls = 0;
+        if (count == 0) {
+            return 0;
+        }
+
+        mesh.bind(shader);
+        for (var start = 0; start < count; start += CHUNK) {
+            var size = Math.min(CHUNK, count - start);
+
+            //O bloco inteiro é ligado, pois o shader declara CHUNK itens
+            var data = drawData.begin(CHUNK * ITEM_SIZE);
+            var base = data.position();
+            for (var i = 0; i < size; i++) {
+                var item = start + i;
+                var offset = base + i * ITEM_SIZE;
+                for (var j = 0; j < 16; j++) {
+                    data.putFloat(offset + j * 4, worlds[item * 16 + j]);
+                }
+                for (var j = 0; j < 4; j++) {
+                    data.putFloat(offset + 64 + j * 4, colors[item * 4 + j]);
+                }
+            }
+            var dataOffset = drawData.end();
+            gl().bindBufferRange(GL_UNIFORM_BUFFER, BINDING, drawData.getId(), dataOffset, CHUNK * ITEM_SIZE);
+
+            if (indirect) {
+                var buffer = commands.begin(size * COMMAND_SIZE);
+                var position = buffer.position();
+                for (var i = 0; i < size; i++) {
+                    var handle = handles[start + i];
+                    buffer.putInt(position, indexCounts[handle])
+                          .putInt(position + 4, 1)
+                          .putInt(position + 8, firstIndices[handle])
+                          .putInt(position + 12, baseVertices[handle])
+                          .putInt(position + 16, 0);
+                    position += COMMAND_SIZE;
+                }
+                var offset = commands.end();
+                commands.bind();
+                gl().multiDrawElementsIndirect(GL_TRIANGLES, GL_UNSIGNED_INT, offset, size, 0);
+                calls++;
+            } else {
+                for (var i = 0; i < size; i++) {
+                    var handle = handles[start + i];
+                    drawId.set(i);
+                    gl().drawElementsBaseVertex(GL_TRIANGLES, indexCounts[handle], GL_UNSIGNED_INT,
+                            (long) firstIndices[handle] * Integer.BYTES, baseVertices[handle]);
+                    calls++;
+                }
+            }
+        }
+
+        count = 0;
+        return calls;
+    }
+
+    /**
+     * @return Verdadeiro se os desenhos usam glMultiDrawElementsIndirect, ou falso no fallback com laço na CPU.
+     */
+    public boolean isIndirect() {
+        return indirect;
+    }
+
+    /**
+     * @return Quantidade de malhas adicionadas
+     */
+    public int getMeshCount() {
+        return meshes;
+    }
+
+    /**
+     * @return Quantidade de desenhos anotados e ainda não enviados
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return Quantidade de comandos de desenho emitidos no último flush
+     */
+    public int getCalls() {
+        return calls;
+    }
+
+    /**
+     * Libera os buffers de dados de desenho.
+     */
+    public void delete() {
+        drawData.delete();
+        if (commands != null) commands.delete();
+    }
+}
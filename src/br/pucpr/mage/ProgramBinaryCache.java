@@ -0,0 +1,274 @@
+package br.pucpr.mage;
+
+import br.pucpr.mage.gl.GLBackend;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static br.pucpr.mage.gl.Backend.gl;
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL20.GL_LINK_STATUS;
+import static org.lwjgl.opengl.GL41.GL_NUM_PROGRAM_BINARY_FORMATS;
+
+/**
+ * Cache em disco dos binários dos shader programs (glGetProgramBinary / glProgramBinary). Com o cache ligado, o
+ * Shader.loadProgram procura um binário antes de compilar os fontes: se ele existir e for aceito pelo driver, a
+ * compilação e o link são evitados, e a inicialização passa a custar basicamente a leitura dos arquivos.
+ *
+ * Cada binário é identificado por um hash (SHA-256) dos fontes de todos os shaders do programa, já com cabeçalhos
+ * inseridos, das localizações de atributos fixadas pelo VertexFormat e do fabricante, renderizador e versão do driver.
+ * Uma atualização de driver, ou qualquer mudança nos fontes, gera outra chave. Se mesmo assim o driver rejeitar um
+ * binário, o arquivo é apagado e o programa é compilado a partir dos fontes, como se não houvesse cache.
+ *
+ * O cache fica desligado até que um diretório seja definido, e só é usado se o contexto suportar
+ * ARB_get_program_binary com ao menos um formato de binário:
+ *
+ * <pre>
+ *     ProgramBinaryCache.getInstance().setDirectory(Paths.get("shadercache"));
+ *     var shader = Shader.loadProgram("basic");
+ * </pre>
+ *
+ * Falhas de leitura e escrita do cache nunca impedem o carregamento do shader: no pior caso, ele é compilado.
+ */
+public class ProgramBinaryCache {
+    private static final ProgramBinaryCache INSTANCE = new ProgramBinaryCache();
+
+    private static final int MAGIC = 0x4D504243;
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".bin";
+
+    private Path directory;
+
+    //Suporte e identificação do driver, consultados uma vez por backend
+    private GLBackend backend;
+    private boolean supported;
+    private String driver;
+
+    private int hits;
+    private int misses;
+    private int rejected;
+
+    private ProgramBinaryCache() {
+    }
+
+    public static ProgramBinaryCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Define o diretório dos binários. Ele é criado se não existir.
+     * @param directory O diretório, ou null para desligar o cache.
+     * @return O próprio cache
+     */
+    public ProgramBinaryCache setDirectory(Path directory) {
+        this.directory = directory;
+        return this;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return Verdadeiro se um diretório foi definido e o contexto atual suporta binários de programa.
+     */
+    public boolean isEnabled() {
+        if (directory == null) {
+            return false;
+        }
+        if (backend != gl()) {
+            backend = gl();
+            supported = gl().isExtensionSupported("GL_ARB_get_program_binary") &&
+                    gl().getInteger(GL_NUM_PROGRAM_BINARY_FORMATS) > 0;
+            driver = gl().getString(GL_VENDOR) + "\n" + gl().getString(GL_RENDERER) + "\n" +
+                    gl().getString(GL_VERSION);
+        }
+        return supported;
+    }
+
+    /**
+     * Calcula a chave do programa.
+     * @param format Formato de vértice usado no link, ou null
+     * @param types Tipo de cada shader (GL_VERTEX_SHADER, ...)
+     * @param sources Código fonte de cada shader
+     * @return O hash, em hexadecimal
+     */
+    String key(VertexFormat format, int[] types, String[] sources) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            var text = new StringBuilder().append(VERSION).append('\n').append(driver).append('\n');
+            if (format != null) {
+                for (var attribute : format.getAttributes()) {
+                    text.append(attribute.getName()).append('=').append(attribute.getLocation()).append('\n');
+                }
+            }
+            digest.update(text.toString().getBytes(StandardCharsets.UTF_8));
+            for (var i = 0; i < sources.length; i++) {
+                //O tamanho separa os fontes, evitando que dois conjuntos diferentes gerem o mesmo texto
+                var source = sources[i].getBytes(StandardCharsets.UTF_8);
+                digest.update((types[i] + ":" + source.length + "\n").getBytes(StandardCharsets.UTF_8));
+                digest.update(source);
+            }
+
+            var hex = new StringBuilder();
+            for (var b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Unable to hash shader sources", e);
+        }
+    }
+
+    private Path fileOf(String key) {
+        return directory.resolve(key + EXTENSION);
+    }
+
+    /**
+     * Cria um programa a partir do binário guardado com a chave.
+     * @return O id do programa, já linkado, ou 0 se não houver binário ou se ele for rejeitado.
+     */
+    int load(String key) {
+        var file = fileOf(key);
+        if (!Files.isRegularFile(file)) {
+            misses++;
+            return 0;
+        }
+
+        int binaryFormat;
+        byte[] binary;
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Invalid program binary file: " + file);
+            }
+            binaryFormat = in.readInt();
+            //Um tamanho corrompido não pode gerar um array negativo ou maior que o próprio arquivo
+            var length = in.readInt();
+            if (length <= 0 || length > Files.size(file)) {
+                throw new IOException("Invalid program binary length: " + length);
+            }
+            binary = new byte[length];
+            in.readFully(binary);
+        } catch (IOException e) {
+            discard(file);
+            misses++;
+            return 0;
+        }
+
+        var program = gl().createProgram();
+        var buffer = MemoryUtil.memAlloc(binary.length);
+        try {
+            buffer.put(binary).flip();
+            gl().programBinary(program, binaryFormat, buffer);
+        } finally {
+            MemoryUtil.memFree(buffer);
+        }
+
+        if (gl().getProgrami(program, GL_LINK_STATUS) == GL_FALSE) {
+            gl().deleteProgram(program);
+            discard(file);
+            rejected++;
+            return 0;
+        }
+        hits++;
+        return program;
+    }
+
+    /**
+     * Guarda o binário de um programa recém linkado. O programa deve ter sido linkado com
+     * GL_PROGRAM_BINARY_RETRIEVABLE_HINT.
+     */
+    void store(String key, int program) {
+        byte[] binary;
+        int binaryFormat;
+        try (var stack = MemoryStack.stackPush()) {
+            var format = stack.mallocInt(1);
+            binary = gl().getProgramBinary(program, format);
+            binaryFormat = format.get(0);
+        }
+        if (binary.length == 0) {
+            return;
+        }
+
+        //O arquivo é escrito com outro nome e renomeado, para que um programa interrompido não deixe um binário
+        //incompleto com o nome definitivo
+        var file = fileOf(key);
+        Path temp = null;
+        try {
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, key, ".tmp");
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(binaryFormat);
+                out.writeInt(binary.length);
+                out.write(binary);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            //O cache é apenas uma otimização: o programa já foi compilado e continua válido
+            if (temp != null) discard(temp);
+        }
+    }
+
+    private static void discard(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            //Será sobrescrito no próximo store
+        }
+    }
+
+    /**
+     * Apaga todos os binários do diretório.
+     * @return O próprio cache
+     */
+    public ProgramBinaryCache clear() {
+        if (directory == null || !Files.isDirectory(directory)) {
+            return this;
+        }
+        try (var files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (var file : files) {
+                discard(file);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to clear the program binary cache", e);
+        }
+        return this;
+    }
+
+    /**
+     * @return Quantidade de programas carregados do cache
+     */
+    public int getHits() {
+        return hits;
+    }
+
+    /**
+     * @return Quantidade de programas que não estavam no cache e foram compilados
+     */
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return Quantidade de binários rejeitados pelo driver, que foram apagados e recompilados
+     */
+    public int getRejected() {
+        return rejected;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ProgramBinaryCache{hits=%d, misses=%d, rejected=%d}", hits, misses, rejected);
+    }
+}
@@ -0,0 +1,277 @@
+package br.pucpr.mage;
+
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+import java.util.Arrays;
+
+/**
+ * Fila de desenho. Em vez de desenhar imediatamente, a cena submete cada malha com seu shader e seus uniforms de
+ * desenho (a matriz world e, opcionalmente, um UniformBlock), ou então uma quantidade de instâncias. No flush, os
+ * itens são ordenados por uma chave de 64 bits e desenhados em ordem, o que agrupa desenhos com o mesmo shader e o
+ * mesmo VAO e reduz as trocas de estado.
+ *
+ * A chave é formada, do bit mais significativo para o menos significativo, por:
+ * - 16 bits: id do shader program
+ * - 1 bit: wireframe
+ * - 23 bits: id do VAO
+ * - 24 bits: distância até a camera (os mais próximos primeiro)
+ *
+ * A ordenação é um radix sort (LSD, 8 bits por passada) sobre arrays pré-alocados. Passadas em que todos os itens
+ * possuem o mesmo byte são puladas. Nenhuma memória é alocada por quadro depois que a fila atinge seu tamanho máximo.
+ */
+public class RenderQueue {
+    private static final int DEPTH_BITS = 24;
+    private static final int VAO_BITS = 23;
+    private static final int PROGRAM_BITS = 16;
+
+    private final String worldUniform;
+
+    private Mesh[] meshes;
+    private Shader[] shaders;
+    private UniformBlock[] blocks;
+    private float[] worlds;
+    private boolean[] hasWorld;
+    private int[] instances;
+    private long[] keys;
+    private int[] items;
+    private long[] keysTmp;
+    private int[] itemsTmp;
+    private int[] histogram = new int[256];
+    private int count;
+
+    private final Vector3f eye = new Vector3f();
+    private final Matrix4f world = new Matrix4f();
+
+    private Shader worldShader;
+    private Uniform worldHandle;
+
+    private int lastFlushed;
+
+    /**
+     * Cria a fila de desenho
+     * @param worldUniform Nome do uniforme que recebe a matriz world de cada item
+     * @param capacity Capacidade inicial. A fila cresce automaticamente se necessário.
+     */
+    public RenderQueue(String worldUniform, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity < 1!");
+        }
+        this.worldUniform = worldUniform;
+        resize(capacity);
+    }
+
+    public RenderQueue() {
+        this("uWorld", 256);
+    }
+
+    private void resize(int capacity) {
+        meshes = meshes == null ? new Mesh[capacity] : Arrays.copyOf(meshes, capacity);
+        shaders = shaders == null ? new Shader[capacity] : Arrays.copyOf(shaders, capacity);
+        blocks = blocks == null ? new UniformBlock[capacity] : Arrays.copyOf(blocks, capacity);
+        worlds = worlds == null ? new float[capacity * 16] : Arrays.copyOf(worlds, capacity * 16);
+        hasWorld = hasWorld == null ? new boolean[capacity] : Arrays.copyOf(hasWorld, capacity);
+        instances = instances == null ? new int[capacity] : Arrays.copyOf(instances, capacity);
+        keys = keys == null ? new long[capacity] : Arrays.copyOf(keys, capacity);
+        items = items == null ? new int[capacity] : Arrays.copyOf(items, capacity);
+        keysTmp = new long[capacity];
+        itemsTmp = new int[capacity];
+    }
+
+    /**
+     * Define a posição da camera, usada para ordenar os itens por distância.
+     * @param position A posição da camera no mundo
+     * @return A própria fila
+     */
+    public RenderQueue setEye(Vector3fc position) {
+        eye.set(position);
+        return this;
+    }
+
+    /**
+     * @return A quantidade de itens submetidos desde o último flush.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return A quantidade de itens desenhados no último flush.
+     */
+    public int getLastFlushed() {
+        return lastFlushed;
+    }
+
+    /**
+     * Submete uma malha para desenho com os uniforms da própria malha.
+     */
+    public RenderQueue submit(Mesh mesh, Shader shader) {
+        return submit(mesh, shader, null, null);
+    }
+
+    /**
+     * Submete uma malha para desenho com a matriz world indicada. A matriz é copiada.
+     */
+    public RenderQueue submit(Mesh mesh, Shader shader, Matrix4fc world) {
+        return submit(mesh, shader, world, null);
+    }
+
+    /**
+     * Submete o desenho instanciado de uma malha. Os dados das instâncias são lidos dos atributos por instância da
+     * malha no momento do flush.
+     * @param mesh A malha a ser desenhada
+     * @param shader O shader usado no desenho
+     * @param count Quantidade de instâncias
+     * @return A própria fila
+     */
+    public RenderQueue submitInstanced(Mesh mesh, Shader shader, int count) {
+        if (count < 1) {
+            return this;
+        }
+        submit(mesh, shader, null, null);
+        instances[this.count - 1] = count;
+        return this;
+    }
+
+    /**
+     * Submete uma malha para desenho.
+     * @param mesh A malha a ser desenhada
+     * @param shader O shader usado no desenho
+     * @param world Matriz world do item, ou null para usar a da própria malha. A matriz é copiada.
+     * @param uniforms Uniforms adicionais, aplicados após os da malha. Pode ser null. O bloco não é copiado, portanto
+     *                 não deve ser alterado antes do flush.
+     * @return A própria fila
+     */
+    public RenderQueue submit(Mesh mesh, Shader shader, Matrix4fc world, UniformBlock uniforms) {
+        if (mesh == null || shader == null) {
+            return this;
+        }
+        if (count == keys.length) {
+            resize(count * 2);
+        }
+
+        var i = count++;
+        meshes[i] = mesh;
+        shaders[i] = shader;
+        blocks[i] = uniforms;
+        hasWorld[i] = world != null;
+        instances[i] = 0;
+
+        var distance = 0.0f;
+        if (world != null) {
+            world.get(worlds, i * 16);
+            distance = eye.distanceSquared(world.m30(), world.m31(), world.m32());
+        }
+
+        keys[i] = key(shader.getId(), mesh.isWireframe(), mesh.getId(), distance);
+        items[i] = i;
+        return this;
+    }
+
+    /**
+     * Monta a chave de ordenação.
+     */
+    static long key(int program, boolean wireframe, int vao, float distance) {
+        //Floats positivos mantêm a ordem quando interpretados como inteiros. Descartamos o bit de sinal e os bits
+        //menos significativos da mantissa.
+        var bits = Float.floatToRawIntBits(Math.max(distance, 0.0f));
+        var depth = (bits >>> (31 - DEPTH_BITS)) & ((1L << DEPTH_BITS) - 1);
+        return ((long) (program & ((1 << PROGRAM_BITS) - 1)) << (64 - PROGRAM_BITS))
+                | ((wireframe ? 1L : 0L) << (DEPTH_BITS + VAO_BITS))
+                | ((long) (vao & ((1 << VAO_BITS) - 1)) << DEPTH_BITS)
+                | depth;
+    }
+
+    /**
+     * Ordena os itens pela chave usando radix sort.
+     */
+    private void sort() {
+        var srcKeys = keys;
+        var srcItems = items;
+        var dstKeys = keysTmp;
+        var dstItems = itemsTmp;
+
+        for (var shift = 0; shift < 64; shift += 8) {
+            Arrays.fill(histogram, 0);
+            for (var i = 0; i < count; i++) {
+                histogram[(int) (srcKeys[i] >>> shift) & 0xFF]++;
+            }
+
+            //Todos com o mesmo byte: a passada não mudaria nada
+            if (histogram[(int) (srcKeys[0] >>> shift) & 0xFF] == count) continue;
+
+            var sum = 0;
+            for (var b = 0; b < 256; b++) {
+                var c = histogram[b];
+                histogram[b] = sum;
+                sum += c;
+            }
+
+            for (var i = 0; i < count; i++) {
+                var pos = histogram[(int) (srcKeys[i] >>> shift) & 0xFF]++;
+                dstKeys[pos] = srcKeys[i];
+                dstItems[pos] = srcItems[i];
+            }
+
+            var tk = srcKeys; srcKeys = dstKeys; dstKeys = tk;
+            var ti = srcItems; srcItems = dstItems; dstItems = ti;
+        }
+
+        keys = srcKeys;
+        items = srcItems;
+        keysTmp = dstKeys;
+        itemsTmp = dstItems;
+    }
+
+    /**
+     * Ordena e desenha todos os itens submetidos, esvaziando a fila.
+     * @return A própria fila
+     */
+    public RenderQueue flush() {
+        if (count > 1) {
+            sort();
+        }
+
+        for (var k = 0; k < count; k++) {
+            var i = items[k];
+            var mesh = meshes[i];
+            var shader = shaders[i];
+
+            mesh.bind(shader);
+            if (hasWorld[i]) {
+                if (shader != worldShader) {
+                    worldShader = shader;
+                    worldHandle = shader.getUniform(worldUniform);
+                }
+                worldHandle.set(world.set(worlds, i * 16));
+            }
+            if (blocks[i] != null) {
+                blocks[i].apply(shader);
+            }
+            if (instances[i] > 0) {
+                mesh.submitInstanced(instances[i]);
+            } else {
+                mesh.submit();
+            }
+        }
+
+        lastFlushed = count;
+        clear();
+        return this;
+    }
+
+    /**
+     * Descarta todos os itens submetidos.
+     * @return A própria fila
+     */
+    public RenderQueue clear() {
+        //Solta as referências para não segurar malhas e shaders
+        Arrays.fill(meshes, 0, count, null);
+        Arrays.fill(shaders, 0, count, null);
+        Arrays.fill(blocks, 0, count, null);
+        count = 0;
+        return this;
+    }
+}
@@ -5,4 +5,14 @@ public interface Scene {
 	void update(float secs);
 	void draw();
 	void deinit();
+
+	/**
+	 * Desenha a cena. Chamado pela Window no lugar de draw() e, por padrão, apenas chama draw().
+	 * @param alpha Quando a Window usa passo fixo, indica quanto do próximo passo de simulação já passou (de 0 a 1).
+	 *              Use para interpolar entre o estado anterior e o atual. Com passo variável é sempre 1.
+	 * @see Window#setFixedStep(float)
+	 */
+	default void draw(float alpha) {
+		draw();
+	}
 }
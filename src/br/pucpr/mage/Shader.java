@@ -4,19 +4,75 @@ import org.joml.*;
 import org.lwjgl.system.MemoryStack;
 
 import java.io.*;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
+import static br.pucpr.mage.gl.Backend.gl;
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL31.GL_INVALID_INDEX;
 import static org.lwjgl.opengl.GL32.GL_GEOMETRY_SHADER;
+import static org.lwjgl.opengl.GL41.GL_PROGRAM_BINARY_RETRIEVABLE_HINT;
 
 /**
  * Representa o shader program.
+ *
+ * Uniform blocks com um ponto de ligação fixo (como o bloco Camera, do CameraUniforms) são associados a esse ponto
+ * logo após o link. Assim, um único uniform buffer alimenta todos os programas que declaram o bloco.
+ *
+ * Se o ProgramBinaryCache estiver ligado, os programas são carregados dos binários guardados em disco, e só são
+ * compilados quando o binário não existe ou é rejeitado pelo driver.
  */
 public class Shader {
+    private static final Map<String, Integer> BLOCK_BINDINGS = new HashMap<>();
+    static {
+        BLOCK_BINDINGS.put(CameraUniforms.BLOCK_NAME, CameraUniforms.BINDING);
+    }
+
     private int id;
 
+    private Map<String, Uniform> uniforms = new HashMap<>();
+    private Map<String, Integer> attributes = new HashMap<>();
+
     private Shader(int id) {
         this.id = id;
+        reflect();
+    }
+
+    /**
+     * Consulta todos os uniforms e atributos ativos do programa e guarda suas localizações. É chamado uma única vez,
+     * logo após o link, de modo que nenhuma busca por nome precise ser feita ao driver durante o desenho.
+     */
+    private void reflect() {
+        try (var stack = MemoryStack.stackPush()) {
+            var size = stack.mallocInt(1);
+            var type = stack.mallocInt(1);
+
+            var count = gl().getProgrami(id, GL_ACTIVE_UNIFORMS);
+            for (var i = 0; i < count; i++) {
+                var name = gl().getActiveUniform(id, i, size, type);
+                var location = gl().getUniformLocation(id, name);
+                if (location == -1) {
+                    continue; //Uniforms dentro de uniform blocks não possuem localização
+                }
+                //Arrays são reportados como nome[0]. Registramos pelo nome base.
+                if (name.endsWith("[0]")) {
+                    name = name.substring(0, name.length() - 3);
+                }
+                uniforms.put(name, new Uniform(this, name, location, type.get(0), size.get(0)));
+            }
+
+            count = gl().getProgrami(id, GL_ACTIVE_ATTRIBUTES);
+            for (var i = 0; i < count; i++) {
+                var name = gl().getActiveAttrib(id, i, size, type);
+                var location = gl().getAttribLocation(id, name);
+                if (location != -1) {
+                    attributes.put(name, location);
+                }
+            }
+        }
     }
 
     private static InputStream findInputStream(String name) {
@@ -59,63 +115,131 @@ public class Shader {
      * @throws RuntimeException Caso o código contenha erros.
      */
     private static int compileShader(int type, String code) {
-        var shader = glCreateShader(type);
-        glShaderSource(shader, code);
-        glCompileShader(shader);
+        var shader = gl().createShader(type);
+        gl().shaderSource(shader, code);
+        gl().compileShader(shader);
 
-        if (glGetShaderi(shader, GL_COMPILE_STATUS) == GL_FALSE) {
+        if (gl().getShaderi(shader, GL_COMPILE_STATUS) == GL_FALSE) {
             String typeStr = type == GL_VERTEX_SHADER ? "vertex" : type == GL_FRAGMENT_SHADER ? "fragment" : "geometry";
-            throw new RuntimeException("Unable to compile " + typeStr + " shader." + glGetShaderInfoLog(shader));
+            throw new RuntimeException("Unable to compile " + typeStr + " shader." + gl().getShaderInfoLog(shader));
         }
         return shader;
     }
 
     /**
-     * Carrega e compila o shader indicado no parâmetro.
-     * @param name Nome do shader a ser carregado
-     * @return O shader compilado.
+     * @param name Nome do shader
+     * @return O tipo do shader, de acordo com a extensão do arquivo.
      */
-    private static int loadShader(String name) {
+    private static int shaderType(String name) {
         name = name.trim();
-
-        int type;
         if (name.endsWith(".vert") || name.endsWith(".vs"))
-            type = GL_VERTEX_SHADER;
+            return GL_VERTEX_SHADER;
         else if (name.endsWith(".frag") || name.endsWith(".fs"))
-            type = GL_FRAGMENT_SHADER;
+            return GL_FRAGMENT_SHADER;
         else if (name.endsWith(".geom") || name.endsWith(".gs"))
-            type = GL_GEOMETRY_SHADER;
+            return GL_GEOMETRY_SHADER;
         else
             throw new IllegalArgumentException("Invalid shader name: " + name);
+    }
 
-        return compileShader(type, readInputStream(findInputStream(name)));
+    /**
+     * Lê o código fonte do shader indicado no parâmetro.
+     * @param name Nome do shader a ser carregado
+     * @param header Código inserido logo após a linha #version, ou null
+     * @return O código fonte.
+     */
+    private static String readShader(String name, String header) {
+        var code = readInputStream(findInputStream(name.trim()));
+        if (header != null) {
+            code = insertHeader(code, header);
+        }
+        return code;
+    }
+
+    /**
+     * Insere o cabeçalho após a diretiva #version, que precisa ser a primeira do shader. Sem ela, o cabeçalho é
+     * inserido no início.
+     */
+    private static String insertHeader(String code, String header) {
+        if (!header.endsWith("\n")) {
+            header = header + "\n";
+        }
+        var version = code.indexOf("#version");
+        if (version == -1) {
+            return header + code;
+        }
+        var end = code.indexOf('\n', version);
+        if (end == -1) {
+            return code + "\n" + header;
+        }
+        return code.substring(0, end + 1) + header + code.substring(end + 1);
     }
 
     /**
      * Une um vertex e um fragment shader, gerando o shader program que será usado no desenho.
      * O parâmetro de entrada dessa função é um array com o id de todos os shaders que devem ser unidos.
+     * @param format Se não for nulo, fixa a localização de cada atributo do formato antes do link.
+     * @param retrievable Se verdadeiro, o binário do programa poderá ser lido depois do link (ProgramBinaryCache).
      * @param shaders Ids dos shaders a serem linkados
      * @return id do programa gerado
      * @throws RuntimeException Caso algum erro de link ocorra.
      */
-    private static int linkProgram(int... shaders) {
-        int program = glCreateProgram();
+    private static int linkProgram(VertexFormat format, boolean retrievable, int... shaders) {
+        int program = gl().createProgram();
+        if (retrievable) {
+            gl().programParameteri(program, GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL_TRUE);
+        }
         for (var shader : shaders) {
-            glAttachShader(program, shader);
+            gl().attachShader(program, shader);
+        }
+        if (format != null) {
+            for (var attribute : format.getAttributes()) {
+                gl().bindAttribLocation(program, attribute.getLocation(), attribute.getName());
+            }
         }
 
-        glLinkProgram(program);
-        if (glGetProgrami(program, GL_LINK_STATUS) == GL_FALSE) {
-            throw new RuntimeException("Unable to link shaders." + glGetProgramInfoLog(program));
+        gl().linkProgram(program);
+        if (gl().getProgrami(program, GL_LINK_STATUS) == GL_FALSE) {
+            throw new RuntimeException("Unable to link shaders." + gl().getProgramInfoLog(program));
         }
 
         for (var shader : shaders) {
-            glDetachShader(program, shader);
+            gl().detachShader(program, shader);
         }
 
+        bindBlocks(program);
         return program;
     }
 
+    /**
+     * Associa os uniform blocks conhecidos aos seus pontos de ligação fixos. Feito após o link e também nos programas
+     * carregados do ProgramBinaryCache, já que o binário pode não guardar essas associações.
+     */
+    private static void bindBlocks(int program) {
+        for (var block : BLOCK_BINDINGS.entrySet()) {
+            var index = gl().getUniformBlockIndex(program, block.getKey());
+            if (index != GL_INVALID_INDEX) {
+                gl().uniformBlockBinding(program, index, block.getValue());
+            }
+        }
+    }
+
+    /**
+     * Define o ponto de ligação fixo de um uniform block. Os programas carregados depois dessa chamada que declararem
+     * o bloco são associados a ele automaticamente.
+     * @param block Nome do bloco no GLSL
+     * @param binding Ponto de ligação, usado em glBindBufferBase ou glBindBufferRange
+     */
+    public static void setBlockBinding(String block, int binding) {
+        if (block == null) {
+            throw new IllegalArgumentException("Block can't be null!");
+        }
+        if (binding < 0) {
+            throw new IllegalArgumentException("Invalid binding: " + binding);
+        }
+        BLOCK_BINDINGS.put(block, binding);
+    }
+
     /**
      * Carrega o shader program formado pelos shaders indicados
      * @param shaders Shaders para carregar
@@ -123,6 +247,32 @@ public class Shader {
      * @throws RuntimeException Caso um erro de compilação ou link ocorra.
      */
     public static Shader loadProgram(String... shaders) {
+        return loadProgram(null, shaders);
+    }
+
+    /**
+     * Carrega o shader program formado pelos shaders indicados, fixando a localização dos atributos de acordo com o
+     * formato de vértice. Assim, todos os shaders carregados com o mesmo formato concordam nas localizações.
+     * @param format Formato dos vértices. Atributos do formato ausentes no shader são ignorados.
+     * @param shaders Shaders para carregar
+     * @return O shader program
+     * @throws RuntimeException Caso um erro de compilação ou link ocorra.
+     */
+    public static Shader loadProgram(VertexFormat format, String... shaders) {
+        return loadProgramWithHeader(format, null, shaders);
+    }
+
+    /**
+     * Carrega o shader program como em loadProgram(VertexFormat, String...), inserindo um cabeçalho em todos os
+     * shaders logo após a linha #version. Permite escolher, ao carregar, extensões e #defines que dependem do
+     * contexto, como faz o MultiDrawBatch.
+     * @param format Formato dos vértices, ou null.
+     * @param header Código inserido em cada shader, como "#define USE_FOG 1"
+     * @param shaders Shaders para carregar
+     * @return O shader program
+     * @throws RuntimeException Caso um erro de compilação ou link ocorra.
+     */
+    public static Shader loadProgramWithHeader(VertexFormat format, String header, String... shaders) {
         if (shaders.length == 0) {
             throw new IllegalArgumentException("You must provide shader names!");
         }
@@ -131,11 +281,33 @@ public class Shader {
             shaders = new String[] { shaders[0] + ".vert", shaders[0] + ".frag" };
         }
 
+        var types = new int[shaders.length];
+        var sources = new String[shaders.length];
+        for (var i = 0; i < shaders.length; i++) {
+            types[i] = shaderType(shaders[i]);
+            sources[i] = readShader(shaders[i], header);
+        }
+
+        var cache = ProgramBinaryCache.getInstance();
+        String key = null;
+        if (cache.isEnabled()) {
+            key = cache.key(format, types, sources);
+            var program = cache.load(key);
+            if (program != 0) {
+                bindBlocks(program);
+                return new Shader(program);
+            }
+        }
+
         var ids = new int[shaders.length];
         for (var i = 0; i < shaders.length; i++) {
-            ids[i] = loadShader(shaders[i]);
+            ids[i] = compileShader(types[i], sources[i]);
+        }
+        var program = linkProgram(format, key != null, ids);
+        if (key != null) {
+            cache.store(key, program);
         }
-        return new Shader(linkProgram(ids));
+        return new Shader(program);
     }
 
     /**
@@ -150,7 +322,7 @@ public class Shader {
      * @return O próprio shader program
      */
     public Shader bind() {
-        glUseProgram(id);
+        GLState.getInstance().useProgram(id);
         return this;
     }
 
@@ -159,10 +331,47 @@ public class Shader {
      * @return O próprio shader program
      */
     public Shader unbind() {
-        glUseProgram(0);
+        GLState.getInstance().useProgram(0);
         return this;
     }
 
+    /**
+     * @return Os uniforms ativos do shader program.
+     */
+    public Collection<Uniform> getUniforms() {
+        return Collections.unmodifiableCollection(uniforms.values());
+    }
+
+    /**
+     * @param name Nome do uniforme
+     * @return verdadeiro se o uniforme existe e está ativo no shader program.
+     */
+    public boolean hasUniform(String name) {
+        return uniforms.containsKey(name);
+    }
+
+    /**
+     * Localiza o uniforme com o nome passado por parâmetro. O objeto retornado pode ser guardado e usado para
+     * definir o valor do uniforme sem novas buscas por nome. Dispara um erro caso o uniforme não seja encontrado.
+     * @param name Nome do uniforme a ser procurado dentro do shader
+     * @return O uniforme.
+     */
+    public Uniform getUniform(String name) {
+        var uniform = uniforms.get(name);
+        if (uniform == null) {
+            throw new IllegalArgumentException("Uniform does not exists: " + name);
+        }
+        return uniform;
+    }
+
+    /**
+     * @param name Nome do atributo
+     * @return A localização do atributo, ou -1 caso o atributo não exista.
+     */
+    public int getAttributeLocation(String name) {
+        return attributes.getOrDefault(name, -1);
+    }
+
     /**
      * Vincula um buffer a um atributo.
      * @param name Nome do atributo a ser definido
@@ -170,31 +379,77 @@ public class Shader {
      * @return O próprio shader
      */
     public Shader setAttribute(String name, ArrayBuffer buffer) {
-        var attribute = glGetAttribLocation(id, name);
+        var attribute = getAttributeLocation(name);
         if (attribute == -1) {
             throw new IllegalArgumentException("Attribute does not exists: " + name);
         }
         if (buffer == null) {
-            glDisableVertexAttribArray(attribute);
+            gl().disableVertexAttribArray(attribute);
         } else {
             buffer.bind();
-            glVertexAttribPointer(attribute, buffer.getElementSize(), GL_FLOAT, false, 0, 0);
-            glEnableVertexAttribArray(attribute);
+            gl().vertexAttribPointer(attribute, buffer.getPointerSize(), buffer.getType(), buffer.isNormalized(),
+                    buffer.getStride(), 0);
+            gl().enableVertexAttribArray(attribute);
         }
         return this;
     }
 
     /**
-     * Localiza o id do uniforme com o nome passado por parâmetro. Dispara um erro caso o uniforme não seja encontrado.
-     * @param name Nome do uniforme a ser procurado dentro do shader
-     * @return O id do uniforme.
+     * Vincula todos os atributos de um buffer intercalado, com o stride e o offset de cada um. Atributos do formato que
+     * não são usados pelo shader são ignorados.
+     * @param buffer Buffer com os vértices
+     * @return O próprio shader
      */
-    private int findUniform(String name) {
-        var uniform = glGetUniformLocation(id, name);
-        if (uniform == -1) {
-            throw new IllegalArgumentException("Uniform does not exists: " + name);
+    public Shader setVertexBuffer(VertexBuffer buffer) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("Buffer can't be null!");
         }
-        return uniform;
+
+        var format = buffer.getFormat();
+        buffer.bind();
+        for (var attribute : format.getAttributes()) {
+            var location = getAttributeLocation(attribute.getName());
+            if (location == -1) {
+                continue;
+            }
+            gl().vertexAttribPointer(location, attribute.getPointerSize(), attribute.getType(),
+                    attribute.isNormalized(), format.getStride(), attribute.getOffset());
+            gl().enableVertexAttribArray(location);
+        }
+        return this;
+    }
+
+    /**
+     * Vincula um buffer a um atributo por instância (glVertexAttribDivisor 1). Atributos do tipo mat3 ou mat4
+     * (elementSize 9 ou 16) ocupam uma localização por coluna, e cada coluna é associada a uma fatia do elemento.
+     * @param name Nome do atributo a ser definido
+     * @param buffer Buffer com um elemento por instância
+     * @return O próprio shader
+     */
+    public Shader setInstanceAttribute(String name, ArrayBuffer buffer) {
+        var attribute = getAttributeLocation(name);
+        if (attribute == -1) {
+            throw new IllegalArgumentException("Attribute does not exists: " + name);
+        }
+        if (buffer == null) {
+            throw new IllegalArgumentException("Buffer can't be null!");
+        }
+        if (buffer.getStride() != 0) {
+            throw new IllegalArgumentException("Instance attributes must be floats: " + name);
+        }
+
+        var size = buffer.getElementSize();
+        var columns = size == 16 ? 4 : size == 9 ? 3 : 1;
+        var rows = size / columns;
+        var stride = size * Float.BYTES;
+
+        buffer.bind();
+        for (var c = 0; c < columns; c++) {
+            gl().vertexAttribPointer(attribute + c, rows, GL_FLOAT, false, stride, (long) c * rows * Float.BYTES);
+            gl().vertexAttribDivisor(attribute + c, 1);
+            gl().enableVertexAttribArray(attribute + c);
+        }
+        return this;
     }
 
     /**
@@ -204,12 +459,8 @@ public class Shader {
      * @return O próprio shader
      */
     public Shader setUniform(String name, Matrix3f matrix) {
-        var uniform = findUniform(name);
-        try (var stack = MemoryStack.stackPush()) {
-            glUniformMatrix3fv(uniform, false,
-                    matrix.get(stack.mallocFloat(9)));
-            return this;
-        }
+        getUniform(name).set(matrix);
+        return this;
     }
 
     /**
@@ -219,13 +470,8 @@ public class Shader {
      * @return O próprio shader
      */
     public Shader setUniform(String name, Matrix4f matrix) {
-        var uniform = findUniform(name);
-
-        try (var stack = MemoryStack.stackPush()) {
-            glUniformMatrix4fv(uniform, false,
-                    matrix.get(stack.mallocFloat(16)));
-            return this;
-        }
+        getUniform(name).set(matrix);
+        return this;
     }
 
     /**
@@ -235,7 +481,7 @@ public class Shader {
      * @return O próprio shader
      */
     public Shader setUniform(String name, Vector2f vector) {
-        glUniform2f(findUniform(name), vector.x, vector.y);
+        getUniform(name).set(vector);
         return this;
     }
 
@@ -246,7 +492,7 @@ public class Shader {
      * @return O próprio shader
      */
     public Shader setUniform(String name, Vector3f vector) {
-        glUniform3f(findUniform(name), vector.x, vector.y, vector.z);
+        getUniform(name).set(vector);
         return this;
     }
 
@@ -257,7 +503,7 @@ public class Shader {
      * @return O próprio shader
      */
     public Shader setUniform(String name, Vector4f vector) {
-        glUniform4f(findUniform(name), vector.x, vector.y, vector.z, vector.w);
+        getUniform(name).set(vector);
         return this;
     }
 
@@ -268,7 +514,7 @@ public class Shader {
      * @return O próprio shader
      */
     public Shader setUniform(String name, int value) {
-        glUniform1i(findUniform(name), value);
+        getUniform(name).set(value);
         return this;
     }
 
@@ -279,7 +525,7 @@ public class Shader {
      * @return O próprio shader
      */
     public Shader setUniform(String name, float value) {
-        glUniform1f(findUniform(name), value);
+        getUniform(name).set(value);
         return this;
     }
 
@@ -290,7 +536,8 @@ public class Shader {
      * @return O próprio shader
      */
     public Shader setUniform(String name, boolean value) {
-        return setUniform(name, value ? GL_TRUE : GL_FALSE);
+        getUniform(name).set(value);
+        return this;
     }
 
     /**
@@ -301,17 +548,7 @@ public class Shader {
      * @throws ClassCastException Se o valor passado não for suportado.
      */
     public Shader setUniformObject(String name, Object value) {
-        //Converte o tipo do objeto de acordo com sua classe
-        if (value instanceof Matrix4f) return setUniform(name, (Matrix4f) value);
-        if (value instanceof Matrix3f) return setUniform(name, (Matrix3f) value);
-        if (value instanceof Vector4f) return setUniform(name, (Vector4f) value);
-        if (value instanceof Vector3f) return setUniform(name, (Vector3f) value);
-        if (value instanceof Vector2f) return setUniform(name, (Vector2f) value);
-        if (value instanceof Integer) return setUniform(name, (Integer) value);
-        if (value instanceof Float) return setUniform(name, (Float) value);
-        if (value instanceof Boolean) return setUniform(name, (Boolean) value);
-
-        //Lança exceção para tipos não suportados
-        throw new ClassCastException("Unsupported uniform type: " + value.getClass().getName());
+        getUniform(name).setObject(value);
+        return this;
     }
 }
@@ -0,0 +1,570 @@
+package br.pucpr.mage;
+
+import org.joml.Matrix4fc;
+
+import java.util.Arrays;
+
+/**
+ * Índice espacial dinâmico para os objetos da cena: uma grade uniforme "solta" (loose grid) guardada em uma tabela
+ * hash, de modo que só as células ocupadas consomem memória e o mundo não precisa ter limites.
+ *
+ * Cada objeto é uma caixa alinhada aos eixos (centro e metade do tamanho) e fica na célula que contém o seu centro,
+ * mesmo que a caixa ultrapasse a célula. Por isso inserir, mover e remover custam O(1): o objeto só troca de lista
+ * quando seu centro muda de célula. Nas consultas, cada célula é tratada como se fosse maior do que é, expandida pela
+ * maior metade de tamanho de objeto já inserida. Escolha um tamanho de célula próximo ao tamanho dos objetos típicos:
+ * células pequenas demais geram muitas células por consulta, e grandes demais geram muitos objetos por célula.
+ *
+ * Os objetos são identificados pelo handle devolvido em insert. As consultas escrevem os handles encontrados em um
+ * array interno, obtido por getResults(), e não alocam memória depois que o índice atinge seu tamanho máximo.
+ *
+ * <pre>
+ *     var handle = grid.insert(bounds, world);
+ *     ...
+ *     grid.move(handle, bounds, world);
+ *     var count = grid.query(camera.getFrustum());
+ *     for (var i = 0; i < count; i++) draw(objects[grid.getResults()[i]]);
+ * </pre>
+ */
+public class SpatialGrid {
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int SPHERE = 0;
+    private static final int BOX = 1;
+    private static final int COORD_BITS = 21;
+    private static final int COORD_MASK = (1 << COORD_BITS) - 1;
+    private static final int COORD_MAX = (1 << (COORD_BITS - 1)) - 1;
+
+    private final float cellSize;
+    private final float invCellSize;
+
+    //Tabela hash de células (endereçamento aberto, sondagem linear)
+    private long[] cellKeys;
+    private int[] cellHeads;
+    private int[] cellCounts;
+    private int usedCells;
+    private int occupiedCells;
+
+    //Região já ocupada por algum objeto, em coordenadas de célula. Só cresce.
+    private int minCellX = Integer.MAX_VALUE, minCellY = Integer.MAX_VALUE, minCellZ = Integer.MAX_VALUE;
+    private int maxCellX = Integer.MIN_VALUE, maxCellY = Integer.MIN_VALUE, maxCellZ = Integer.MIN_VALUE;
+
+    //Objetos
+    private float[] centersX;
+    private float[] centersY;
+    private float[] centersZ;
+    private float[] extentsX;
+    private float[] extentsY;
+    private float[] extentsZ;
+    private long[] objectCells;
+    private int[] next;
+    private int[] prev;
+    private boolean[] alive;
+    private int objectCount;
+    private int highWater;
+    private int freeList = -1;
+    private float maxExtent;
+
+    private int[] results;
+    private int resultCount;
+    private int cellsVisited;
+    private int objectsTested;
+
+    /**
+     * Cria o índice
+     * @param cellSize Tamanho da aresta de cada célula
+     * @param capacity Quantidade inicial de objetos. O índice cresce automaticamente se necessário.
+     */
+    public SpatialGrid(float cellSize, int capacity) {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("Cell size must be positive!");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity < 1!");
+        }
+        this.cellSize = cellSize;
+        this.invCellSize = 1.0f / cellSize;
+        resizeObjects(capacity);
+        resizeCells(Integer.highestOneBit(capacity) * 4);
+    }
+
+    public SpatialGrid(float cellSize) {
+        this(cellSize, 256);
+    }
+
+    private void resizeObjects(int capacity) {
+        centersX = centersX == null ? new float[capacity] : Arrays.copyOf(centersX, capacity);
+        centersY = centersY == null ? new float[capacity] : Arrays.copyOf(centersY, capacity);
+        centersZ = centersZ == null ? new float[capacity] : Arrays.copyOf(centersZ, capacity);
+        extentsX = extentsX == null ? new float[capacity] : Arrays.copyOf(extentsX, capacity);
+        extentsY = extentsY == null ? new float[capacity] : Arrays.copyOf(extentsY, capacity);
+        extentsZ = extentsZ == null ? new float[capacity] : Arrays.copyOf(extentsZ, capacity);
+        objectCells = objectCells == null ? new long[capacity] : Arrays.copyOf(objectCells, capacity);
+        next = next == null ? new int[capacity] : Arrays.copyOf(next, capacity);
+        prev = prev == null ? new int[capacity] : Arrays.copyOf(prev, capacity);
+        alive = alive == null ? new boolean[capacity] : Arrays.copyOf(alive, capacity);
+        results = new int[capacity];
+    }
+
+    /**
+     * Recria a tabela de células com a capacidade indicada (potência de 2), descartando as células vazias.
+     */
+    private void resizeCells(int capacity) {
+        var oldKeys = cellKeys;
+        var oldHeads = cellHeads;
+        var oldCounts = cellCounts;
+
+        cellKeys = new long[capacity];
+        cellHeads = new int[capacity];
+        cellCounts = new int[capacity];
+        Arrays.fill(cellKeys, EMPTY);
+        usedCells = 0;
+
+        if (oldKeys == null) return;
+        for (var i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY || oldCounts[i] == 0) continue;
+            var slot = findSlot(oldKeys[i]);
+            cellKeys[slot] = oldKeys[i];
+            cellHeads[slot] = oldHeads[i];
+            cellCounts[slot] = oldCounts[i];
+            usedCells++;
+        }
+    }
+
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    /**
+     * @return A posição da célula na tabela, ou a posição vazia onde ela deve ser criada.
+     */
+    private int findSlot(long key) {
+        var mask = cellKeys.length - 1;
+        var slot = hash(key) & mask;
+        while (cellKeys[slot] != EMPTY && cellKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int cellCoord(float value) {
+        var c = (float) Math.floor(value * invCellSize);
+        return (int) Math.max(-COORD_MAX, Math.min(COORD_MAX, c));
+    }
+
+    private static long cellKey(int x, int y, int z) {
+        return ((long) (x & COORD_MASK) << (2 * COORD_BITS)) | ((long) (y & COORD_MASK) << COORD_BITS)
+                | (z & COORD_MASK);
+    }
+
+    private void link(int handle) {
+        int x = cellCoord(centersX[handle]), y = cellCoord(centersY[handle]), z = cellCoord(centersZ[handle]);
+        minCellX = Math.min(minCellX, x);
+        minCellY = Math.min(minCellY, y);
+        minCellZ = Math.min(minCellZ, z);
+        maxCellX = Math.max(maxCellX, x);
+        maxCellY = Math.max(maxCellY, y);
+        maxCellZ = Math.max(maxCellZ, z);
+
+        var key = cellKey(x, y, z);
+        var slot = findSlot(key);
+        if (cellKeys[slot] == EMPTY) {
+            if ((usedCells + 1) * 2 > cellKeys.length) {
+                //Se a maior parte das células estiver vazia, basta descartá-las
+                resizeCells(occupiedCells * 4 > cellKeys.length ? cellKeys.length * 2 : cellKeys.length);
+                slot = findSlot(key);
+            }
+            cellKeys[slot] = key;
+            cellHeads[slot] = -1;
+            cellCounts[slot] = 0;
+            usedCells++;
+        }
+
+        objectCells[handle] = key;
+        prev[handle] = -1;
+        next[handle] = cellHeads[slot];
+        if (cellHeads[slot] != -1) prev[cellHeads[slot]] = handle;
+        cellHeads[slot] = handle;
+        if (cellCounts[slot]++ == 0) occupiedCells++;
+    }
+
+    private void unlink(int handle) {
+        var slot = findSlot(objectCells[handle]);
+        if (prev[handle] != -1) {
+            next[prev[handle]] = next[handle];
+        } else {
+            cellHeads[slot] = next[handle];
+        }
+        if (next[handle] != -1) prev[next[handle]] = prev[handle];
+        //A célula vazia continua na tabela e é descartada no próximo redimensionamento
+        if (--cellCounts[slot] == 0) occupiedCells--;
+    }
+
+    private void checkHandle(int handle) {
+        if (handle < 0 || handle >= highWater || !alive[handle]) {
+            throw new IllegalArgumentException("Invalid handle: " + handle);
+        }
+    }
+
+    private void setBox(int handle, float x, float y, float z, float ex, float ey, float ez) {
+        if (ex < 0 || ey < 0 || ez < 0) {
+            throw new IllegalArgumentException("Negative extents!");
+        }
+        centersX[handle] = x;
+        centersY[handle] = y;
+        centersZ[handle] = z;
+        extentsX[handle] = ex;
+        extentsY[handle] = ey;
+        extentsZ[handle] = ez;
+        maxExtent = Math.max(maxExtent, Math.max(ex, Math.max(ey, ez)));
+    }
+
+    /**
+     * Insere um objeto.
+     * @param x Centro da caixa em x
+     * @param y Centro da caixa em y
+     * @param z Centro da caixa em z
+     * @param ex Metade do tamanho da caixa em x
+     * @param ey Metade do tamanho da caixa em y
+     * @param ez Metade do tamanho da caixa em z
+     * @return O handle do objeto
+     */
+    public int insert(float x, float y, float z, float ex, float ey, float ez) {
+        int handle;
+        if (freeList != -1) {
+            handle = freeList;
+            freeList = next[handle];
+        } else {
+            if (highWater == centersX.length) {
+                resizeObjects(highWater * 2);
+            }
+            handle = highWater++;
+        }
+
+        setBox(handle, x, y, z, ex, ey, ez);
+        alive[handle] = true;
+        link(handle);
+        objectCount++;
+        return handle;
+    }
+
+    /**
+     * Insere um objeto com o volume de uma malha transformado pela matriz world.
+     * @return O handle do objeto
+     */
+    public int insert(Bounds bounds, Matrix4fc world) {
+        var c = bounds.getCenter();
+        var e = bounds.getExtents();
+        return insert(
+                world.m00() * c.x() + world.m10() * c.y() + world.m20() * c.z() + world.m30(),
+                world.m01() * c.x() + world.m11() * c.y() + world.m21() * c.z() + world.m31(),
+                world.m02() * c.x() + world.m12() * c.y() + world.m22() * c.z() + world.m32(),
+                Math.abs(world.m00()) * e.x() + Math.abs(world.m10()) * e.y() + Math.abs(world.m20()) * e.z(),
+                Math.abs(world.m01()) * e.x() + Math.abs(world.m11()) * e.y() + Math.abs(world.m21()) * e.z(),
+                Math.abs(world.m02()) * e.x() + Math.abs(world.m12()) * e.y() + Math.abs(world.m22()) * e.z());
+    }
+
+    /**
+     * Move ou redimensiona um objeto. O objeto só troca de célula se o seu centro mudar de célula.
+     * @return O próprio índice
+     */
+    public SpatialGrid move(int handle, float x, float y, float z, float ex, float ey, float ez) {
+        checkHandle(handle);
+        setBox(handle, x, y, z, ex, ey, ez);
+        var key = cellKey(cellCoord(x), cellCoord(y), cellCoord(z));
+        if (key != objectCells[handle]) {
+            unlink(handle);
+            link(handle);
+        }
+        return this;
+    }
+
+    /**
+     * Move um objeto para o volume de uma malha transformado pela matriz world.
+     * @return O próprio índice
+     */
+    public SpatialGrid move(int handle, Bounds bounds, Matrix4fc world) {
+        var c = bounds.getCenter();
+        var e = bounds.getExtents();
+        return move(handle,
+                world.m00() * c.x() + world.m10() * c.y() + world.m20() * c.z() + world.m30(),
+                world.m01() * c.x() + world.m11() * c.y() + world.m21() * c.z() + world.m31(),
+                world.m02() * c.x() + world.m12() * c.y() + world.m22() * c.z() + world.m32(),
+                Math.abs(world.m00()) * e.x() + Math.abs(world.m10()) * e.y() + Math.abs(world.m20()) * e.z(),
+                Math.abs(world.m01()) * e.x() + Math.abs(world.m11()) * e.y() + Math.abs(world.m21()) * e.z(),
+                Math.abs(world.m02()) * e.x() + Math.abs(world.m12()) * e.y() + Math.abs(world.m22()) * e.z());
+    }
+
+    /**
+     * Remove um objeto. O handle poderá ser reaproveitado por uma próxima inserção.
+     * @return O próprio índice
+     */
+    public SpatialGrid remove(int handle) {
+        checkHandle(handle);
+        unlink(handle);
+        alive[handle] = false;
+        next[handle] = freeList;
+        freeList = handle;
+        objectCount--;
+        return this;
+    }
+
+    /**
+     * @return A quantidade de objetos no índice
+     */
+    public int size() {
+        return objectCount;
+    }
+
+    /**
+     * @return Verdadeiro se o handle pertence a um objeto do índice
+     */
+    public boolean contains(int handle) {
+        return handle >= 0 && handle < highWater && alive[handle];
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Adiciona ao resultado os objetos de uma célula que passarem no teste.
+     */
+    private void collect(int slot, int mode, float a, float b, float c, float d, float e, float f) {
+        cellsVisited++;
+        for (var h = cellHeads[slot]; h != -1; h = next[h]) {
+            objectsTested++;
+            float x = centersX[h], y = centersY[h], z = centersZ[h];
+            float ex = extentsX[h], ey = extentsY[h], ez = extentsZ[h];
+            boolean hit;
+            if (mode == SPHERE) {
+                //Esfera (a, b, c) de raio d: distância da esfera até o ponto mais próximo da caixa
+                var dx = Math.max(Math.abs(a - x) - ex, 0.0f);
+                var dy = Math.max(Math.abs(b - y) - ey, 0.0f);
+                var dz = Math.max(Math.abs(c - z) - ez, 0.0f);
+                hit = dx * dx + dy * dy + dz * dz <= d * d;
+            } else {
+                //Caixa de centro (a, b, c) e metade do tamanho (d, e, f)
+                hit = Math.abs(a - x) <= d + ex && Math.abs(b - y) <= e + ey && Math.abs(c - z) <= f + ez;
+            }
+            if (hit) {
+                results[resultCount++] = h;
+            }
+        }
+    }
+
+    private void beginQuery() {
+        resultCount = 0;
+        cellsVisited = 0;
+        objectsTested = 0;
+    }
+
+    /**
+     * Percorre as células da região indicada (já expandida). Se a região tiver mais células do que as ocupadas,
+     * percorre diretamente as células ocupadas.
+     */
+    private void queryRange(int mode, float minX, float minY, float minZ, float maxX, float maxY, float maxZ,
+                            float a, float b, float c, float d, float e, float f) {
+        int x0 = cellCoord(minX), y0 = cellCoord(minY), z0 = cellCoord(minZ);
+        int x1 = cellCoord(maxX), y1 = cellCoord(maxY), z1 = cellCoord(maxZ);
+        var cells = (double) (x1 - x0 + 1) * (y1 - y0 + 1) * (z1 - z0 + 1);
+
+        if (cells > occupiedCells) {
+            for (var slot = 0; slot < cellKeys.length; slot++) {
+                if (cellKeys[slot] == EMPTY || cellCounts[slot] == 0) continue;
+                var key = cellKeys[slot];
+                var cx = signExtend((int) (key >>> (2 * COORD_BITS)) & COORD_MASK);
+                var cy = signExtend((int) (key >>> COORD_BITS) & COORD_MASK);
+                var cz = signExtend((int) key & COORD_MASK);
+                if (cx < x0 || cx > x1 || cy < y0 || cy > y1 || cz < z0 || cz > z1) continue;
+                collect(slot, mode, a, b, c, d, e, f);
+            }
+            return;
+        }
+
+        for (var x = x0; x <= x1; x++) {
+            for (var y = y0; y <= y1; y++) {
+                for (var z = z0; z <= z1; z++) {
+                    var slot = findSlot(cellKey(x, y, z));
+                    if (cellKeys[slot] == EMPTY || cellCounts[slot] == 0) continue;
+                    collect(slot, mode, a, b, c, d, e, f);
+                }
+            }
+        }
+    }
+
+    private static int signExtend(int coord) {
+        return (coord << (32 - COORD_BITS)) >> (32 - COORD_BITS);
+    }
+
+    /**
+     * Busca os objetos que tocam a esfera indicada.
+     * @return A quantidade de objetos encontrados
+     * @see #getResults()
+     */
+    public int query(float x, float y, float z, float radius) {
+        beginQuery();
+        var r = radius + maxExtent;
+        queryRange(SPHERE, x - r, y - r, z - r, x + r, y + r, z + r, x, y, z, radius, 0, 0);
+        return resultCount;
+    }
+
+    /**
+     * Busca os objetos que tocam a caixa indicada.
+     * @param x Centro da caixa em x
+     * @param y Centro da caixa em y
+     * @param z Centro da caixa em z
+     * @param ex Metade do tamanho da caixa em x
+     * @param ey Metade do tamanho da caixa em y
+     * @param ez Metade do tamanho da caixa em z
+     * @return A quantidade de objetos encontrados
+     * @see #getResults()
+     */
+    public int query(float x, float y, float z, float ex, float ey, float ez) {
+        beginQuery();
+        float rx = ex + maxExtent, ry = ey + maxExtent, rz = ez + maxExtent;
+        queryRange(BOX, x - rx, y - ry, z - rz, x + rx, y + ry, z + rz, x, y, z, ex, ey, ez);
+        return resultCount;
+    }
+
+    /**
+     * Busca os objetos que estão total ou parcialmente dentro do frustum. As células são testadas antes dos objetos,
+     * e os objetos de uma célula fora do frustum nem chegam a ser testados.
+     *
+     * Normalmente, a caixa que envolve o frustum é subdividida recursivamente e os blocos fora do frustum são
+     * descartados inteiros, sem consultar a tabela. Se essa caixa tiver mais células do que a própria tabela (um
+     * frustum enorme sobre uma cena pequena), a tabela é percorrida diretamente. Assim, o custo fica limitado pelo
+     * menor entre o tamanho do frustum e o tamanho da tabela, e não pela quantidade de objetos.
+     * @return A quantidade de objetos encontrados
+     * @see #getResults()
+     */
+    public int query(Frustum frustum) {
+        beginQuery();
+        var c = frustum.getCorners();
+        float minX = c[0], minY = c[1], minZ = c[2];
+        float maxX = minX, maxY = minY, maxZ = minZ;
+        for (var i = 3; i < 24; i += 3) {
+            minX = Math.min(minX, c[i]);
+            minY = Math.min(minY, c[i + 1]);
+            minZ = Math.min(minZ, c[i + 2]);
+            maxX = Math.max(maxX, c[i]);
+            maxY = Math.max(maxY, c[i + 1]);
+            maxZ = Math.max(maxZ, c[i + 2]);
+        }
+
+        //A caixa do frustum é recortada pela região ocupada
+        var x0 = Math.max(cellCoord(minX - maxExtent), minCellX);
+        var y0 = Math.max(cellCoord(minY - maxExtent), minCellY);
+        var z0 = Math.max(cellCoord(minZ - maxExtent), minCellZ);
+        var x1 = Math.min(cellCoord(maxX + maxExtent), maxCellX);
+        var y1 = Math.min(cellCoord(maxY + maxExtent), maxCellY);
+        var z1 = Math.min(cellCoord(maxZ + maxExtent), maxCellZ);
+        if (x0 > x1 || y0 > y1 || z0 > z1) {
+            return resultCount;
+        }
+        var cells = (double) (x1 - x0 + 1) * (y1 - y0 + 1) * (z1 - z0 + 1);
+
+        if (cells <= cellKeys.length) {
+            queryBlock(frustum, x0, y0, z0, x1, y1, z1);
+            return resultCount;
+        }
+
+        var half = cellSize * 0.5f;
+        var loose = half + maxExtent;
+        for (var slot = 0; slot < cellKeys.length; slot++) {
+            if (cellKeys[slot] == EMPTY || cellCounts[slot] == 0) continue;
+            var key = cellKeys[slot];
+            var cx = signExtend((int) (key >>> (2 * COORD_BITS)) & COORD_MASK);
+            var cy = signExtend((int) (key >>> COORD_BITS) & COORD_MASK);
+            var cz = signExtend((int) key & COORD_MASK);
+            if (cx < x0 || cx > x1 || cy < y0 || cy > y1 || cz < z0 || cz > z1) continue;
+            cellsVisited++;
+            if (!frustum.testAabb((cx + 0.5f) * cellSize, (cy + 0.5f) * cellSize, (cz + 0.5f) * cellSize,
+                    loose, loose, loose)) {
+                continue;
+            }
+            collectFrustum(slot, frustum);
+        }
+        return resultCount;
+    }
+
+    /**
+     * Testa um bloco de células contra o frustum e, se ele estiver visível, o divide ao meio no maior eixo.
+     */
+    private void queryBlock(Frustum frustum, int x0, int y0, int z0, int x1, int y1, int z1) {
+        //Caixa solta do bloco: as células mais a maior metade de tamanho de objeto
+        var ex = (x1 - x0 + 1) * cellSize * 0.5f + maxExtent;
+        var ey = (y1 - y0 + 1) * cellSize * 0.5f + maxExtent;
+        var ez = (z1 - z0 + 1) * cellSize * 0.5f + maxExtent;
+        var cx = (x0 + x1 + 1) * cellSize * 0.5f;
+        var cy = (y0 + y1 + 1) * cellSize * 0.5f;
+        var cz = (z0 + z1 + 1) * cellSize * 0.5f;
+        cellsVisited++;
+        if (!frustum.testAabb(cx, cy, cz, ex, ey, ez)) {
+            return;
+        }
+
+        int sx = x1 - x0, sy = y1 - y0, sz = z1 - z0;
+        if (sx == 0 && sy == 0 && sz == 0) {
+            var slot = findSlot(cellKey(x0, y0, z0));
+            if (cellKeys[slot] != EMPTY && cellCounts[slot] != 0) {
+                collectFrustum(slot, frustum);
+            }
+        } else if (sx >= sy && sx >= sz) {
+            var mid = x0 + sx / 2;
+            queryBlock(frustum, x0, y0, z0, mid, y1, z1);
+            queryBlock(frustum, mid + 1, y0, z0, x1, y1, z1);
+        } else if (sy >= sz) {
+            var mid = y0 + sy / 2;
+            queryBlock(frustum, x0, y0, z0, x1, mid, z1);
+            queryBlock(frustum, x0, mid + 1, z0, x1, y1, z1);
+        } else {
+            var mid = z0 + sz / 2;
+            queryBlock(frustum, x0, y0, z0, x1, y1, mid);
+            queryBlock(frustum, x0, y0, mid + 1, x1, y1, z1);
+        }
+    }
+
+    private void collectFrustum(int slot, Frustum frustum) {
+        for (var h = cellHeads[slot]; h != -1; h = next[h]) {
+            objectsTested++;
+            if (frustum.testAabb(centersX[h], centersY[h], centersZ[h], extentsX[h], extentsY[h], extentsZ[h])) {
+                results[resultCount++] = h;
+            }
+        }
+    }
+
+    /**
+     * @return Os handles encontrados na última consulta. Somente as primeiras posições, indicadas pelo retorno da
+     * consulta, são válidas. Não altere o conteúdo do array.
+     */
+    public int[] getResults() {
+        return results;
+    }
+
+    /**
+     * @return A quantidade de objetos encontrados na última consulta
+     */
+    public int getResultCount() {
+        return resultCount;
+    }
+
+    /**
+     * @return Quantidade de células visitadas na última consulta
+     */
+    public int getCellsVisited() {
+        return cellsVisited;
+    }
+
+    /**
+     * @return Quantidade de objetos testados individualmente na última consulta
+     */
+    public int getObjectsTested() {
+        return objectsTested;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SpatialGrid{objects=%d, cells=%d, cellsVisited=%d, objectsTested=%d, results=%d}",
+                objectCount, occupiedCells, cellsVisited, objectsTested, resultCount);
+    }
+}
@@ -0,0 +1,105 @@
+package br.pucpr.mage;
+
+/**
+ * Resultado do StaticBatcher: as malhas combinadas, cada uma com o shader usado no seu desenho. As malhas estão no
+ * espaço do mundo, e seus volumes envolventes (getBounds) são usados no frustum culling.
+ */
+public class StaticBatch {
+    private final Shader[] shaders;
+    private final Mesh[] meshes;
+    private final int sources;
+    private final FrustumCuller culler;
+
+    StaticBatch(Shader[] shaders, Mesh[] meshes, int sources) {
+        this.shaders = shaders;
+        this.meshes = meshes;
+        this.sources = sources;
+
+        //As malhas já estão no espaço do mundo: os volumes são usados diretamente
+        culler = new FrustumCuller(Math.max(1, meshes.length));
+        culler.setSize(meshes.length);
+        for (var i = 0; i < meshes.length; i++) {
+            var bounds = meshes[i].getBounds();
+            var center = bounds.getCenter();
+            var extents = bounds.getExtents();
+            culler.set(i, center.x(), center.y(), center.z(), bounds.getRadius(), extents.x(), extents.y(),
+                    extents.z());
+        }
+    }
+
+    /**
+     * @return Quantidade de malhas geradas
+     */
+    public int size() {
+        return meshes.length;
+    }
+
+    /**
+     * @return Quantidade de malhas que foram combinadas
+     */
+    public int getSourceCount() {
+        return sources;
+    }
+
+    public Mesh getMesh(int index) {
+        return meshes[index];
+    }
+
+    public Shader getShader(int index) {
+        return shaders[index];
+    }
+
+    /**
+     * @return O culler com os volumes das malhas, para consulta das estatísticas do último desenho.
+     */
+    public FrustumCuller getCuller() {
+        return culler;
+    }
+
+    /**
+     * Desenha todas as malhas.
+     * @return A quantidade de malhas desenhadas
+     */
+    public int draw() {
+        for (var i = 0; i < meshes.length; i++) {
+            meshes[i].draw(shaders[i]);
+        }
+        return meshes.length;
+    }
+
+    /**
+     * Desenha as malhas que estão dentro do frustum.
+     * @param frustum O frustum da camera
+     * @return A quantidade de malhas desenhadas
+     */
+    public int draw(Frustum frustum) {
+        var visible = culler.cull(frustum);
+        var items = culler.getVisible();
+        for (var i = 0; i < visible; i++) {
+            meshes[items[i]].draw(shaders[items[i]]);
+        }
+        return visible;
+    }
+
+    /**
+     * Submete para a fila de desenho as malhas que estão dentro do frustum.
+     * @param queue A fila de desenho
+     * @param frustum O frustum da camera, ou null para submeter todas as malhas.
+     * @return A própria batch
+     */
+    public StaticBatch submit(RenderQueue queue, Frustum frustum) {
+        if (frustum == null) {
+            for (var i = 0; i < meshes.length; i++) {
+                queue.submit(meshes[i], shaders[i]);
+            }
+            return this;
+        }
+
+        var visible = culler.cull(frustum);
+        var items = culler.getVisible();
+        for (var i = 0; i < visible; i++) {
+            queue.submit(meshes[items[i]], shaders[items[i]]);
+        }
+        return this;
+    }
+}
@@ -0,0 +1,277 @@
+package br.pucpr.mage;
+
+import org.joml.Matrix3f;
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Combina malhas estáticas em poucas malhas grandes. Cada malha adicionada tem sua matriz world aplicada diretamente
+ * nas posições (e nas normais, aNormal) de uma cópia dos seus vértices, e as malhas com o mesmo shader, o mesmo layout
+ * de atributos e o mesmo modo de polígono são concatenadas em uma única malha, com um único VAO e um único comando de
+ * desenho. As malhas precisam ter sido criadas com MeshBuilder.keepData().
+ *
+ * Uma única malha para toda a fase impede o frustum culling. Com setClusterSize, os objetos são agrupados também por
+ * uma grade no espaço do mundo: cada objeto vai para a célula que contém o centro do seu volume envolvente, e cada
+ * célula gera uma malha própria, com seu próprio Bounds.
+ *
+ * <pre>
+ *     var factory = new MeshFactory(shader).setKeepData(true);
+ *     var cube = factory.createCube();
+ *     var batcher = new StaticBatcher().setClusterSize(32);
+ *     for (...) batcher.add(shader, cube, world);
+ *     var level = batcher.build();
+ *     ...
+ *     level.draw(camera.getFrustum());
+ * </pre>
+ *
+ * Os uniforms das malhas não são copiados. O uniforme da matriz world (uWorld, por padrão) recebe a identidade nas
+ * malhas geradas, já que as transformações estão nos vértices.
+ */
+public class StaticBatcher {
+    private static class Entry {
+        final Shader shader;
+        final MeshData data;
+        final Matrix4f world;
+        final boolean wireframe;
+        final Vector3f center = new Vector3f();
+
+        Entry(Shader shader, Mesh mesh, Matrix4fc world) {
+            this.shader = shader;
+            this.data = mesh.getData();
+            this.world = new Matrix4f(world);
+            this.wireframe = mesh.isWireframe();
+        }
+    }
+
+    private final String worldUniform;
+    private final List<Entry> entries = new ArrayList<>();
+    private float clusterSize;
+
+    /**
+     * Cria o combinador.
+     * @param worldUniform Nome do uniforme da matriz world, que recebe a identidade nas malhas geradas.
+     */
+    public StaticBatcher(String worldUniform) {
+        this.worldUniform = worldUniform;
+    }
+
+    public StaticBatcher() {
+        this("uWorld");
+    }
+
+    /**
+     * Define o tamanho das células da grade usada para dividir as malhas geradas.
+     * @param clusterSize Tamanho da célula, no espaço do mundo, ou 0 para não dividir.
+     * @return O próprio combinador
+     */
+    public StaticBatcher setClusterSize(float clusterSize) {
+        if (clusterSize < 0) {
+            throw new IllegalArgumentException("Invalid cluster size: " + clusterSize);
+        }
+        this.clusterSize = clusterSize;
+        return this;
+    }
+
+    public float getClusterSize() {
+        return clusterSize;
+    }
+
+    /**
+     * Adiciona uma malha. A mesma malha pode ser adicionada várias vezes, com matrizes diferentes.
+     * @param shader Shader usado no desenho da malha
+     * @param mesh Malha criada com MeshBuilder.keepData(), sem atributos por instância
+     * @param world Matriz world da malha. A matriz é copiada.
+     * @return O próprio combinador
+     */
+    public StaticBatcher add(Shader shader, Mesh mesh, Matrix4fc world) {
+        if (shader == null) {
+            throw new IllegalArgumentException("Shader can't be null!");
+        }
+        if (mesh == null) {
+            throw new IllegalArgumentException("Mesh can't be null!");
+        }
+        if (world == null) {
+            throw new IllegalArgumentException("World can't be null!");
+        }
+        if (mesh.getData() == null) {
+            throw new IllegalArgumentException("Mesh has no CPU data! Create it with MeshBuilder.keepData().");
+        }
+        if (mesh.hasInstanceAttributes()) {
+            throw new IllegalArgumentException("Meshes with instance attributes can't be batched!");
+        }
+        if (positionStream(mesh.getData()) == -1) {
+            throw new IllegalArgumentException("Mesh has no " + MeshBuilder.POSITION_ATTRIBUTE + "!");
+        }
+
+        var entry = new Entry(shader, mesh, world);
+        var bounds = mesh.getBounds();
+        if (bounds != null) {
+            world.transformPosition(bounds.getCenter(), entry.center);
+        } else {
+            world.getTranslation(entry.center);
+        }
+        entries.add(entry);
+        return this;
+    }
+
+    /**
+     * @return Quantidade de malhas adicionadas
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Descarta as malhas adicionadas.
+     * @return O próprio combinador
+     */
+    public StaticBatcher clear() {
+        entries.clear();
+        return this;
+    }
+
+    private static int positionStream(MeshData data) {
+        for (var i = 0; i < data.streams.size(); i++) {
+            if (data.streams.get(i).offsetOf(MeshBuilder.POSITION_ATTRIBUTE, 3) != -1) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Gera as malhas combinadas.
+     * @return As malhas geradas, agrupadas por shader.
+     */
+    public StaticBatch build() {
+        var groups = new LinkedHashMap<String, List<Entry>>();
+        for (var entry : entries) {
+            var key = new StringBuilder()
+                    .append(entry.shader.getId()).append('#')
+                    .append(entry.wireframe).append('#')
+                    .append(entry.data.getLayout());
+            if (clusterSize > 0) {
+                key.append('#').append((int) Math.floor(entry.center.x / clusterSize))
+                        .append(',').append((int) Math.floor(entry.center.y / clusterSize))
+                        .append(',').append((int) Math.floor(entry.center.z / clusterSize));
+            }
+            groups.computeIfAbsent(key.toString(), k -> new ArrayList<>()).add(entry);
+        }
+
+        //Os grupos de um mesmo shader ficam juntos, evitando trocas de programa no desenho
+        var sorted = new ArrayList<>(groups.values());
+        sorted.sort((a, b) -> Integer.compare(a.get(0).shader.getId(), b.get(0).shader.getId()));
+
+        var shaders = new Shader[sorted.size()];
+        var meshes = new Mesh[sorted.size()];
+        for (var i = 0; i < meshes.length; i++) {
+            shaders[i] = sorted.get(i).get(0).shader;
+            meshes[i] = merge(sorted.get(i));
+        }
+        return new StaticBatch(shaders, meshes, entries.size());
+    }
+
+    /**
+     * Concatena os dados das malhas, aplicando a matriz world nas posições e normais.
+     */
+    private Mesh merge(List<Entry> group) {
+        var first = group.get(0).data;
+        var streamCount = first.streams.size();
+
+        var vertexCount = 0;
+        var indexCount = 0;
+        for (var entry : group) {
+            vertexCount += entry.data.getVertexCount();
+            indexCount += entry.data.indices != null ? entry.data.indices.length : entry.data.getVertexCount();
+        }
+
+        var streams = new float[streamCount][];
+        for (var s = 0; s < streamCount; s++) {
+            var source = first.streams.get(s);
+            streams[s] = new float[vertexCount * source.elementSize];
+        }
+        var indices = new int[indexCount];
+
+        var normal = new Matrix3f();
+        var v = new Vector3f();
+        var baseVertex = 0;
+        var baseIndex = 0;
+        for (var entry : group) {
+            var data = entry.data;
+            var count = data.getVertexCount();
+            entry.world.normal(normal);
+
+            for (var s = 0; s < streamCount; s++) {
+                var stream = data.streams.get(s);
+                var size = stream.elementSize;
+                var target = streams[s];
+                System.arraycopy(stream.data, 0, target, baseVertex * size, count * size);
+
+                var position = stream.offsetOf(MeshBuilder.POSITION_ATTRIBUTE, 3);
+                var normals = stream.offsetOf(MeshWriter.NORMAL_ATTRIBUTE, 3);
+                for (var i = 0; i < count; i++) {
+                    var base = (baseVertex + i) * size;
+                    if (position != -1) {
+                        var p = base + position;
+                        entry.world.transformPosition(v.set(target[p], target[p + 1], target[p + 2]));
+                        target[p] = v.x;
+                        target[p + 1] = v.y;
+                        target[p + 2] = v.z;
+                    }
+                    if (normals != -1) {
+                        var n = base + normals;
+                        normal.transform(v.set(target[n], target[n + 1], target[n + 2]));
+                        if (v.lengthSquared() > 0) v.normalize();
+                        target[n] = v.x;
+                        target[n + 1] = v.y;
+                        target[n + 2] = v.z;
+                    }
+                }
+            }
+
+            //Matrizes com escala negativa espelham a malha: a ordem dos vértices é invertida para manter a face frontal
+            var mirrored = entry.world.determinant3x3() < 0;
+            if (data.indices == null) {
+                for (var i = 0; i < count; i++) {
+                    indices[baseIndex + i] = baseVertex + i;
+                }
+            } else {
+                for (var i = 0; i < data.indices.length; i++) {
+                    indices[baseIndex + i] = baseVertex + data.indices[i];
+                }
+            }
+            var added = data.indices == null ? count : data.indices.length;
+            if (mirrored) {
+                for (var i = baseIndex; i + 2 < baseIndex + added; i += 3) {
+                    var swap = indices[i + 1];
+                    indices[i + 1] = indices[i + 2];
+                    indices[i + 2] = swap;
+                }
+            }
+
+            baseVertex += count;
+            baseIndex += added;
+        }
+
+        var shader = group.get(0).shader;
+        var builder = new MeshBuilder(shader);
+        for (var s = 0; s < streamCount; s++) {
+            var stream = first.streams.get(s);
+            if (stream.format != null) {
+                builder.setVertices(stream.format, streams[s]);
+            } else {
+                builder.addFloatArrayAttribute(stream.name, stream.elementSize, stream.type, stream.normalized,
+                        streams[s]);
+            }
+        }
+        var mesh = builder.setIndexBuffer(IndexBuffer.compact(indices)).create();
+        mesh.setWireframe(group.get(0).wireframe);
+        if (worldUniform != null && shader.hasUniform(worldUniform)) {
+            mesh.setUniform(worldUniform, new Matrix4f());
+        }
+        return mesh;
+    }
+}
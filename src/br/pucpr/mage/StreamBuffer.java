@@ -0,0 +1,332 @@
+package br.pucpr.mage;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+import static br.pucpr.mage.gl.Backend.gl;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL32.*;
+import static org.lwjgl.opengl.GL44.GL_MAP_PERSISTENT_BIT;
+
+/**
+ * Buffer para dados que mudam a cada quadro (partículas, linhas de depuração, dados por instância, uniform buffers).
+ * Em vez de criar um buffer novo, ou de sobrescrever uma área que a GPU ainda pode estar lendo, o buffer é dividido
+ * em regiões usadas em rodízio: enquanto a CPU escreve o quadro atual em uma região, a GPU ainda desenha os quadros
+ * anteriores a partir das outras. Com 3 regiões, a CPU pode estar até 2 quadros à frente da GPU sem esperar.
+ *
+ * Os dados de um quadro são escritos entre begin e end, que devolve o deslocamento (offset) onde eles ficaram no
+ * buffer. Várias escritas podem ser feitas no mesmo quadro, até o tamanho da região. Cada escrita começa alinhada em
+ * 256 bytes, o que permite usá-la também com glBindBufferRange. A troca de região acontece na primeira escrita após o
+ * GLState.endFrame(), chamado pela Window e pelo Headless ao final de cada quadro.
+ *
+ * O envio depende do modo:
+ * - PERSISTENT: o buffer é criado com glBufferStorage (OpenGL 4.4 ou ARB_buffer_storage) e mapeado uma única vez. O
+ * begin devolve um pedaço do próprio mapeamento e o end apenas faz o flush da área escrita. Uma fence é colocada ao
+ * final do uso de cada região, e a CPU só espera por ela se tentar reutilizar a região antes da GPU terminar.
+ * - MAP_RANGE: para OpenGL 3.3. Cada escrita mapeia a área com GL_MAP_UNSYNCHRONIZED_BIT, protegida pelas mesmas
+ * fences, e o end desfaz o mapeamento.
+ * - ORPHAN: os dados são escritos em memória da CPU e enviados com glBufferSubData. Ao voltar para a primeira região,
+ * o buffer é realocado com glBufferData (orphaning), e o driver descarta o armazenamento antigo quando a GPU terminar.
+ * - SUB_DATA: como o ORPHAN, mas sem realocação. O driver se encarrega da sincronização, o que pode causar esperas.
+ *
+ * <pre>
+ *     var particles = new StreamBuffer(GL_ARRAY_BUFFER, maxParticles * 16);
+ *     ...
+ *     var data = particles.begin(count * 16);
+ *     for (...) data.putFloat(x).putFloat(y).putFloat(z).putFloat(size);
+ *     var offset = particles.end();
+ * </pre>
+ *
+ * O ByteBuffer devolvido por begin já está posicionado no início da área: escreva apenas com os métodos relativos
+ * (put, putFloat), sem passar do seu limite. Ele só é válido até o end.
+ */
+public class StreamBuffer {
+    public enum Mode {
+        SUB_DATA, ORPHAN, MAP_RANGE, PERSISTENT
+    }
+
+    public static final int ALIGNMENT = 256;
+
+    private final int id;
+    private final int target;
+    private final int regionSize;
+    private final int regions;
+    private final Mode mode;
+
+    private final long[] fences;
+    private ByteBuffer mapped;
+    private ByteBuffer scratch;
+
+    private int region;
+    private int head;
+    private int offset;
+    private int size;
+    private long frame = -1;
+    private boolean writing;
+    private int stalls;
+
+    /**
+     * Cria o buffer com 3 regiões, no melhor modo suportado pelo contexto atual.
+     * @param target Alvo do buffer, como GL_ARRAY_BUFFER ou GL_UNIFORM_BUFFER
+     * @param regionSize Tamanho, em bytes, dos dados escritos por quadro
+     */
+    public StreamBuffer(int target, int regionSize) {
+        this(target, regionSize, 3, bestMode());
+    }
+
+    /**
+     * Cria o buffer.
+     * @param target Alvo do buffer, como GL_ARRAY_BUFFER ou GL_UNIFORM_BUFFER
+     * @param regionSize Tamanho, em bytes, dos dados escritos por quadro. É arredondado para um múltiplo de 256.
+     * @param regions Quantidade de regiões: quantos quadros a CPU pode estar à frente da GPU, mais um.
+     * @param mode Forma de envio dos dados
+     */
+    public StreamBuffer(int target, int regionSize, int regions, Mode mode) {
+        if (regionSize < 1) {
+            throw new IllegalArgumentException("Region size < 1!");
+        }
+        if (regions < 1) {
+            throw new IllegalArgumentException("Regions < 1!");
+        }
+        if (mode == null) {
+            throw new IllegalArgumentException("Mode can't be null!");
+        }
+
+        this.id = gl().genBuffers();
+        this.target = target;
+        this.regionSize = align(regionSize);
+        this.regions = regions;
+        this.mode = mode;
+        this.fences = new long[regions];
+        //A primeira escrita passa para a região 0
+        this.region = regions - 1;
+
+        var total = (long) this.regionSize * regions;
+        bindForUpload();
+        if (mode == Mode.PERSISTENT) {
+            gl().bufferStorage(target, total, GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT);
+            mapped = gl().mapBufferRange(target, 0, total,
+                    GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_FLUSH_EXPLICIT_BIT);
+            if (mapped == null) {
+                throw new IllegalStateException("Unable to map the stream buffer!");
+            }
+        } else {
+            gl().bufferData(target, total, GL_STREAM_DRAW);
+        }
+        if (mode == Mode.SUB_DATA || mode == Mode.ORPHAN) {
+            scratch = MemoryUtil.memAlloc(this.regionSize);
+        }
+    }
+
+    /**
+     * @return PERSISTENT, se o contexto suportar ARB_buffer_storage, ou MAP_RANGE.
+     */
+    public static Mode bestMode() {
+        return gl().isExtensionSupported("GL_ARB_buffer_storage") ? Mode.PERSISTENT : Mode.MAP_RANGE;
+    }
+
+    private static int align(int value) {
+        return (value + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /**
+     * Inicia a escrita de dados no quadro atual.
+     * @param size Quantidade de bytes que serão escritos
+     * @return A área de escrita, válida até o end.
+     */
+    public ByteBuffer begin(int size) {
+        if (writing) {
+            throw new IllegalStateException("Previous write not finished!");
+        }
+        if (size < 1 || size > regionSize) {
+            throw new IllegalArgumentException("Invalid size: " + size);
+        }
+
+        var now = GLState.getInstance().getFrame();
+        if (now != frame) {
+            nextRegion();
+            frame = now;
+        }
+
+        var start = align(head);
+        if (start + size > regionSize) {
+            throw new IllegalStateException("Stream buffer region full! Increase the region size.");
+        }
+        head = start + size;
+        offset = region * regionSize + start;
+        this.size = size;
+        writing = true;
+
+        switch (mode) {
+            case PERSISTENT:
+                mapped.limit(offset + size).position(offset);
+                return mapped;
+            case MAP_RANGE:
+                bindForUpload();
+                var memory = gl().mapBufferRange(target, offset, size,
+                        GL_MAP_WRITE_BIT | GL_MAP_INVALIDATE_RANGE_BIT | GL_MAP_UNSYNCHRONIZED_BIT);
+                if (memory == null) {
+                    writing = false;
+                    throw new IllegalStateException("Unable to map the stream buffer!");
+                }
+                return memory;
+            default:
+                scratch.clear().limit(size);
+                return scratch;
+        }
+    }
+
+    /**
+     * Envia os dados escritos desde o begin.
+     * @return O deslocamento, em bytes, dos dados dentro do buffer.
+     */
+    public int end() {
+        if (!writing) {
+            throw new IllegalStateException("No write in progress!");
+        }
+        writing = false;
+
+        bindForUpload();
+        switch (mode) {
+            case PERSISTENT:
+                gl().flushMappedBufferRange(target, offset, size);
+                break;
+            case MAP_RANGE:
+                gl().unmapBuffer(target);
+                break;
+            default:
+                scratch.clear().limit(size);
+                gl().bufferSubData(target, offset, scratch);
+        }
+        return offset;
+    }
+
+    /**
+     * Passa para a próxima região. A região que estava em uso recebe uma fence, e a próxima só é reutilizada depois
+     * que a GPU terminar os comandos que a leram.
+     */
+    private void nextRegion() {
+        var fenced = mode == Mode.PERSISTENT || mode == Mode.MAP_RANGE;
+        if (fenced && frame != -1) {
+            fences[region] = gl().fenceSync();
+        }
+
+        region = (region + 1) % regions;
+        head = 0;
+
+        if (mode == Mode.ORPHAN && region == 0) {
+            bindForUpload();
+            gl().bufferData(target, (long) regionSize * regions, GL_STREAM_DRAW);
+        }
+
+        var fence = fences[region];
+        if (fence != 0) {
+            var waited = false;
+            while (true) {
+                var result = gl().clientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, 1_000_000L);
+                if (result == GL_ALREADY_SIGNALED || result == GL_CONDITION_SATISFIED) break;
+                if (result == GL_WAIT_FAILED) {
+                    throw new IllegalStateException("Unable to wait for the stream buffer fence!");
+                }
+                waited = true;
+            }
+            if (waited) stalls++;
+            gl().deleteSync(fence);
+            fences[region] = 0;
+        }
+    }
+
+    /**
+     * Faz o bind para envio dos dados. O element array buffer faz parte do estado do VAO, por isso o VAO 0 é
+     * vinculado antes, como no IndexBuffer.
+     */
+    private void bindForUpload() {
+        var state = GLState.getInstance();
+        if (target == GL_ELEMENT_ARRAY_BUFFER) {
+            state.bindVertexArray(0);
+        }
+        state.bindBuffer(target, id);
+    }
+
+    /**
+     * @return O id do buffer na OpenGL
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return O alvo do buffer
+     */
+    public int getTarget() {
+        return target;
+    }
+
+    /**
+     * @return A forma de envio dos dados
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return O tamanho de cada região, em bytes
+     */
+    public int getRegionSize() {
+        return regionSize;
+    }
+
+    /**
+     * @return A quantidade de regiões
+     */
+    public int getRegions() {
+        return regions;
+    }
+
+    /**
+     * @return O deslocamento, em bytes, da última escrita
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return Quantas vezes a CPU precisou esperar a GPU liberar uma região. Se aumentar com frequência, use mais
+     * regiões.
+     */
+    public int getStalls() {
+        return stalls;
+    }
+
+    /**
+     * @return Faz o bind do buffer na OpenGL
+     */
+    public StreamBuffer bind() {
+        GLState.getInstance().bindBuffer(target, id);
+        return this;
+    }
+
+    /**
+     * Libera o buffer, as fences e a memória usada. O objeto não pode mais ser usado.
+     */
+    public void delete() {
+        bindForUpload();
+        for (var i = 0; i < fences.length; i++) {
+            if (fences[i] != 0) gl().deleteSync(fences[i]);
+            fences[i] = 0;
+        }
+        if (mapped != null) {
+            gl().unmapBuffer(target);
+            mapped = null;
+        }
+        if (scratch != null) {
+            MemoryUtil.memFree(scratch);
+            scratch = null;
+        }
+        //O id pode ser reaproveitado pela OpenGL, portanto o GLState não pode achar que ele continua vinculado
+        GLState.getInstance().bindBuffer(target, 0);
+        gl().deleteBuffers(id);
+    }
+}
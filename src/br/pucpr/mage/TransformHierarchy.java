@@ -0,0 +1,283 @@
+package br.pucpr.mage;
+
+import org.joml.Matrix4f;
+import org.joml.Quaternionfc;
+
+import java.util.Arrays;
+
+/**
+ * Hierarquia de transformações guardada em arrays contíguos de floats, indexados pelo número do nó.
+ *
+ * Cada nó possui uma transformação local formada por translação, rotação (quaternion) e escala, nessa ordem:
+ * local = T * R * S. A matriz world do nó é world(pai) * local. As matrizes são guardadas em column-major, 16 floats
+ * por nó, no mesmo formato usado pela OpenGL e pela JOML.
+ *
+ * Um nó sempre é criado depois de seu pai, portanto os índices já estão em ordem topológica. O update() percorre os
+ * nós uma única vez, do primeiro ao último, e só recalcula a matriz dos nós alterados e de seus descendentes. Nenhuma
+ * memória é alocada depois que a hierarquia atinge seu tamanho máximo.
+ */
+public class TransformHierarchy {
+    private int[] parents;
+    private float[] translations;
+    private float[] rotations;
+    private float[] scales;
+    private float[] locals;
+    private float[] worlds;
+    private boolean[] localDirty;
+    private boolean[] worldChanged;
+    private int count;
+
+    /**
+     * Cria a hierarquia
+     * @param capacity Capacidade inicial. A hierarquia cresce automaticamente se necessário.
+     */
+    public TransformHierarchy(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity < 1!");
+        }
+        parents = new int[capacity];
+        translations = new float[capacity * 3];
+        rotations = new float[capacity * 4];
+        scales = new float[capacity * 3];
+        locals = new float[capacity * 16];
+        worlds = new float[capacity * 16];
+        localDirty = new boolean[capacity];
+        worldChanged = new boolean[capacity];
+    }
+
+    public TransformHierarchy() {
+        this(16);
+    }
+
+    private void grow() {
+        var capacity = parents.length * 2;
+        parents = Arrays.copyOf(parents, capacity);
+        translations = Arrays.copyOf(translations, capacity * 3);
+        rotations = Arrays.copyOf(rotations, capacity * 4);
+        scales = Arrays.copyOf(scales, capacity * 3);
+        locals = Arrays.copyOf(locals, capacity * 16);
+        worlds = Arrays.copyOf(worlds, capacity * 16);
+        localDirty = Arrays.copyOf(localDirty, capacity);
+        worldChanged = Arrays.copyOf(worldChanged, capacity);
+    }
+
+    /**
+     * Cria um novo nó, com transformação identidade.
+     * @param parent Índice do nó pai, ou -1 para um nó raiz.
+     * @return O índice do novo nó
+     */
+    public int add(int parent) {
+        if (parent < -1 || parent >= count) {
+            throw new IllegalArgumentException("Invalid parent: " + parent);
+        }
+        if (count == parents.length) {
+            grow();
+        }
+
+        var node = count++;
+        parents[node] = parent;
+        translations[node * 3] = translations[node * 3 + 1] = translations[node * 3 + 2] = 0;
+        rotations[node * 4] = rotations[node * 4 + 1] = rotations[node * 4 + 2] = 0;
+        rotations[node * 4 + 3] = 1;
+        scales[node * 3] = scales[node * 3 + 1] = scales[node * 3 + 2] = 1;
+        localDirty[node] = true;
+        return node;
+    }
+
+    /**
+     * Cria um nó raiz.
+     * @return O índice do novo nó
+     */
+    public int add() {
+        return add(-1);
+    }
+
+    /**
+     * @return A quantidade de nós
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param node Índice do nó
+     * @return O índice do pai do nó, ou -1 se ele for raiz.
+     */
+    public int getParent(int node) {
+        return parents[node];
+    }
+
+    public TransformHierarchy setTranslation(int node, float x, float y, float z) {
+        var i = node * 3;
+        if (translations[i] != x || translations[i + 1] != y || translations[i + 2] != z) {
+            translations[i] = x;
+            translations[i + 1] = y;
+            translations[i + 2] = z;
+            localDirty[node] = true;
+        }
+        return this;
+    }
+
+    public TransformHierarchy setRotation(int node, float x, float y, float z, float w) {
+        var i = node * 4;
+        if (rotations[i] != x || rotations[i + 1] != y || rotations[i + 2] != z || rotations[i + 3] != w) {
+            rotations[i] = x;
+            rotations[i + 1] = y;
+            rotations[i + 2] = z;
+            rotations[i + 3] = w;
+            localDirty[node] = true;
+        }
+        return this;
+    }
+
+    public TransformHierarchy setRotation(int node, Quaternionfc rotation) {
+        return setRotation(node, rotation.x(), rotation.y(), rotation.z(), rotation.w());
+    }
+
+    /**
+     * Define a rotação do nó como uma rotação em torno do eixo x.
+     * @param angle Angulo, em radianos
+     */
+    public TransformHierarchy setRotationX(int node, float angle) {
+        return setRotation(node, (float) Math.sin(angle * 0.5), 0, 0, (float) Math.cos(angle * 0.5));
+    }
+
+    /**
+     * Define a rotação do nó como uma rotação em torno do eixo y.
+     * @param angle Angulo, em radianos
+     */
+    public TransformHierarchy setRotationY(int node, float angle) {
+        return setRotation(node, 0, (float) Math.sin(angle * 0.5), 0, (float) Math.cos(angle * 0.5));
+    }
+
+    /**
+     * Define a rotação do nó como uma rotação em torno do eixo z.
+     * @param angle Angulo, em radianos
+     */
+    public TransformHierarchy setRotationZ(int node, float angle) {
+        return setRotation(node, 0, 0, (float) Math.sin(angle * 0.5), (float) Math.cos(angle * 0.5));
+    }
+
+    public TransformHierarchy setScale(int node, float x, float y, float z) {
+        var i = node * 3;
+        if (scales[i] != x || scales[i + 1] != y || scales[i + 2] != z) {
+            scales[i] = x;
+            scales[i + 1] = y;
+            scales[i + 2] = z;
+            localDirty[node] = true;
+        }
+        return this;
+    }
+
+    public TransformHierarchy setScale(int node, float scale) {
+        return setScale(node, scale, scale, scale);
+    }
+
+    /**
+     * Recalcula as matrizes dos nós alterados desde o último update e de todos os seus descendentes.
+     * @return A quantidade de matrizes world recalculadas.
+     */
+    public int update() {
+        var updated = 0;
+        for (var node = 0; node < count; node++) {
+            var parent = parents[node];
+            var changed = localDirty[node] || (parent != -1 && worldChanged[parent]);
+            worldChanged[node] = changed;
+            if (!changed) continue;
+
+            if (localDirty[node]) {
+                compose(node);
+                localDirty[node] = false;
+            }
+
+            if (parent == -1) {
+                System.arraycopy(locals, node * 16, worlds, node * 16, 16);
+            } else {
+                mulAffine(worlds, parent * 16, locals, node * 16, worlds, node * 16);
+            }
+            updated++;
+        }
+        return updated;
+    }
+
+    /**
+     * Calcula a matriz local = T * R * S do nó.
+     */
+    private void compose(int node) {
+        var t = node * 3;
+        var q = node * 4;
+        var m = node * 16;
+
+        float x = rotations[q], y = rotations[q + 1], z = rotations[q + 2], w = rotations[q + 3];
+        float sx = scales[t], sy = scales[t + 1], sz = scales[t + 2];
+
+        float xx = x * x, yy = y * y, zz = z * z;
+        float xy = x * y, xz = x * z, yz = y * z;
+        float xw = x * w, yw = y * w, zw = z * w;
+
+        var l = locals;
+        l[m] = (1 - 2 * (yy + zz)) * sx;
+        l[m + 1] = 2 * (xy + zw) * sx;
+        l[m + 2] = 2 * (xz - yw) * sx;
+        l[m + 3] = 0;
+
+        l[m + 4] = 2 * (xy - zw) * sy;
+        l[m + 5] = (1 - 2 * (xx + zz)) * sy;
+        l[m + 6] = 2 * (yz + xw) * sy;
+        l[m + 7] = 0;
+
+        l[m + 8] = 2 * (xz + yw) * sz;
+        l[m + 9] = 2 * (yz - xw) * sz;
+        l[m + 10] = (1 - 2 * (xx + yy)) * sz;
+        l[m + 11] = 0;
+
+        l[m + 12] = translations[t];
+        l[m + 13] = translations[t + 1];
+        l[m + 14] = translations[t + 2];
+        l[m + 15] = 1;
+    }
+
+    /**
+     * Multiplica duas matrizes afins (última linha 0, 0, 0, 1) guardadas em column-major: dest = a * b.
+     */
+    private static void mulAffine(float[] a, int ao, float[] b, int bo, float[] dest, int o) {
+        for (var c = 0; c < 4; c++) {
+            float b0 = b[bo + c * 4], b1 = b[bo + c * 4 + 1], b2 = b[bo + c * 4 + 2];
+            var w = c == 3 ? 1.0f : 0.0f;
+            for (var r = 0; r < 3; r++) {
+                dest[o + c * 4 + r] = a[ao + r] * b0 + a[ao + 4 + r] * b1 + a[ao + 8 + r] * b2 + a[ao + 12 + r] * w;
+            }
+            dest[o + c * 4 + 3] = w;
+        }
+    }
+
+    /**
+     * Array com as matrizes world de todos os nós, 16 floats por nó. O nó n começa na posição n * 16. Não altere o
+     * conteúdo do array. Só é válido após o update().
+     */
+    public float[] getWorldArray() {
+        return worlds;
+    }
+
+    /**
+     * Copia a matriz world do nó para um array.
+     * @param node Índice do nó
+     * @param dest Array de destino
+     * @param offset Posição inicial no array de destino
+     * @return O array de destino
+     */
+    public float[] getWorld(int node, float[] dest, int offset) {
+        System.arraycopy(worlds, node * 16, dest, offset, 16);
+        return dest;
+    }
+
+    /**
+     * Copia a matriz world do nó para uma matriz da JOML.
+     * @param node Índice do nó
+     * @param dest Matriz de destino
+     * @return A matriz de destino
+     */
+    public Matrix4f getWorld(int node, Matrix4f dest) {
+        return dest.set(worlds, node * 16);
+    }
+}
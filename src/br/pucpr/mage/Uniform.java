@@ -0,0 +1,203 @@
+package br.pucpr.mage;
+
+import org.joml.*;
+import org.lwjgl.system.MemoryStack;
+
+import static br.pucpr.mage.gl.Backend.gl;
+import static org.lwjgl.opengl.GL11.GL_FALSE;
+import static org.lwjgl.opengl.GL11.GL_TRUE;
+
+/**
+ * Representa um uniforme ativo de um shader program. A localização é obtida uma única vez, quando o programa é
+ * linkado, portanto os métodos set não fazem nenhuma busca por nome. Guarde o Uniform em um atributo e utilize-o
+ * diretamente nos trechos de código executados a todo quadro.
+ *
+ * Assim como em Shader.setUniform, o shader program precisa já ter sofrido bind.
+ *
+ * @see Shader#getUniform(String)
+ */
+public class Uniform {
+    private final Shader shader;
+    private final String name;
+    private final int location;
+    private final int type;
+    private final int size;
+
+    //Último bloco (e versão) cujo valor foi enviado para esse uniforme. Veja UniformBlock.
+    private Object owner;
+    private long ownerVersion;
+
+    Uniform(Shader shader, String name, int location, int type, int size) {
+        this.shader = shader;
+        this.name = name;
+        this.location = location;
+        this.type = type;
+        this.size = size;
+    }
+
+    /**
+     * @return O shader program ao qual o uniforme pertence
+     */
+    public Shader getShader() {
+        return shader;
+    }
+
+    /**
+     * @return O nome do uniforme. Para arrays, o nome não contém o sufixo [0].
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return A localização do uniforme dentro do shader program
+     */
+    public int getLocation() {
+        return location;
+    }
+
+    /**
+     * @return O tipo do uniforme na OpenGL. Por exemplo: GL_FLOAT_MAT4.
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * @return A quantidade de elementos, no caso de arrays. Para demais uniformes, 1.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Define o valor do uniforme
+     * @param matrix valor a ser definido
+     * @return O próprio uniforme
+     */
+    public Uniform set(Matrix3f matrix) {
+        try (var stack = MemoryStack.stackPush()) {
+            owner = null;
+            gl().uniformMatrix3fv(location, false, matrix.get(stack.mallocFloat(9)));
+            return this;
+        }
+    }
+
+    /**
+     * Define o valor do uniforme
+     * @param matrix valor a ser definido
+     * @return O próprio uniforme
+     */
+    public Uniform set(Matrix4f matrix) {
+        try (var stack = MemoryStack.stackPush()) {
+            owner = null;
+            gl().uniformMatrix4fv(location, false, matrix.get(stack.mallocFloat(16)));
+            return this;
+        }
+    }
+
+    /**
+     * Define o valor do uniforme
+     * @param vector valor a ser definido
+     * @return O próprio uniforme
+     */
+    public Uniform set(Vector2f vector) {
+        owner = null;
+        gl().uniform2f(location, vector.x, vector.y);
+        return this;
+    }
+
+    /**
+     * Define o valor do uniforme
+     * @param vector valor a ser definido
+     * @return O próprio uniforme
+     */
+    public Uniform set(Vector3f vector) {
+        owner = null;
+        gl().uniform3f(location, vector.x, vector.y, vector.z);
+        return this;
+    }
+
+    /**
+     * Define o valor do uniforme
+     * @param vector valor a ser definido
+     * @return O próprio uniforme
+     */
+    public Uniform set(Vector4f vector) {
+        owner = null;
+        gl().uniform4f(location, vector.x, vector.y, vector.z, vector.w);
+        return this;
+    }
+
+    /**
+     * Define o valor do uniforme
+     * @param value valor a ser definido
+     * @return O próprio uniforme
+     */
+    public Uniform set(int value) {
+        owner = null;
+        gl().uniform1i(location, value);
+        return this;
+    }
+
+    /**
+     * Define o valor do uniforme
+     * @param value valor a ser definido
+     * @return O próprio uniforme
+     */
+    public Uniform set(float value) {
+        owner = null;
+        gl().uniform1f(location, value);
+        return this;
+    }
+
+    /**
+     * Define o valor do uniforme
+     * @param value valor a ser definido
+     * @return O próprio uniforme
+     */
+    public Uniform set(boolean value) {
+        return set(value ? GL_TRUE : GL_FALSE);
+    }
+
+    /**
+     * Define o valor do uniforme tentando converter o objeto passado para um dos tipos suportados.
+     * @param value Valor a ser inserido
+     * @return O próprio uniforme
+     * @throws ClassCastException Se o valor passado não for suportado.
+     */
+    public Uniform setObject(Object value) {
+        //Converte o tipo do objeto de acordo com sua classe
+        if (value instanceof Matrix4f) return set((Matrix4f) value);
+        if (value instanceof Matrix3f) return set((Matrix3f) value);
+        if (value instanceof Vector4f) return set((Vector4f) value);
+        if (value instanceof Vector3f) return set((Vector3f) value);
+        if (value instanceof Vector2f) return set((Vector2f) value);
+        if (value instanceof Integer) return set((int) (Integer) value);
+        if (value instanceof Float) return set((float) (Float) value);
+        if (value instanceof Boolean) return set((boolean) (Boolean) value);
+
+        //Lança exceção para tipos não suportados
+        throw new ClassCastException("Unsupported uniform type: " + value.getClass().getName());
+    }
+
+    /**
+     * @return Verdadeiro se o último valor enviado para esse uniforme foi a versão indicada do bloco.
+     */
+    boolean isCurrent(Object block, long version) {
+        return owner == block && ownerVersion == version;
+    }
+
+    /**
+     * Registra que a versão indicada do bloco acabou de ser enviada para esse uniforme.
+     */
+    void stamp(Object block, long version) {
+        owner = block;
+        ownerVersion = version;
+    }
+
+    @Override
+    public String toString() {
+        return "Uniform[" + name + ", location=" + location + "]";
+    }
+}
@@ -0,0 +1,363 @@
+package br.pucpr.mage;
+
+import org.joml.*;
+import org.lwjgl.system.MemoryStack;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static br.pucpr.mage.gl.Backend.gl;
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+import static org.lwjgl.opengl.GL11.GL_INT;
+import static org.lwjgl.opengl.GL20.*;
+
+/**
+ * Conjunto de valores de uniforms guardados em arrays de tipos primitivos. Cada uniforme ocupa um slot, identificado
+ * por um índice, e seus valores são copiados para um array de floats (ou de ints). Isso evita tanto o autoboxing dos
+ * tipos primitivos quanto a conversão por instanceof no momento do desenho.
+ *
+ * Cada slot guarda também uma versão, que muda sempre que seu valor é alterado. Ao aplicar o bloco em um shader,
+ * apenas os uniforms cuja versão ainda não foi enviada para aquele shader program são enviados para a OpenGL.
+ *
+ * Os tipos dos slots seguem as constantes da OpenGL: GL_FLOAT, GL_INT, GL_BOOL, GL_FLOAT_VEC2, GL_FLOAT_VEC3,
+ * GL_FLOAT_VEC4, GL_FLOAT_MAT3 e GL_FLOAT_MAT4.
+ */
+public class UniformBlock {
+    private static final int REMOVED = 0;
+
+    private Map<String, Integer> slots = new HashMap<>();
+    private String[] names = new String[4];
+    private int[] types = new int[4];
+    private int[] offsets = new int[4];
+    private long[] versions = new long[4];
+    private int count;
+
+    private float[] floats = new float[64];
+    private int floatCount;
+    private int[] ints = new int[8];
+    private int intCount;
+
+    private long version;
+
+    private Shader shader;
+    private Uniform[] handles = new Uniform[4];
+
+    /**
+     * @param type Tipo do uniforme
+     * @return Quantidade de valores usados pelo tipo.
+     */
+    private static int sizeOf(int type) {
+        switch (type) {
+            case GL_FLOAT:
+            case GL_INT:
+            case GL_BOOL: return 1;
+            case GL_FLOAT_VEC2: return 2;
+            case GL_FLOAT_VEC3: return 3;
+            case GL_FLOAT_VEC4: return 4;
+            case GL_FLOAT_MAT3: return 9;
+            case GL_FLOAT_MAT4: return 16;
+            default: throw new IllegalArgumentException("Unsupported uniform type: " + type);
+        }
+    }
+
+    private static boolean isInt(int type) {
+        return type == GL_INT || type == GL_BOOL;
+    }
+
+    /**
+     * @return A quantidade de slots do bloco, incluindo os removidos.
+     */
+    public int getSlotCount() {
+        return count;
+    }
+
+    /**
+     * @param name Nome do uniforme
+     * @return O índice do slot do uniforme, ou -1 caso ele não exista.
+     */
+    public int getSlot(String name) {
+        var slot = slots.get(name);
+        return slot == null || types[slot] == REMOVED ? -1 : slot;
+    }
+
+    /**
+     * @param slot Índice do slot
+     * @return O nome do uniforme no slot
+     */
+    public String getName(int slot) {
+        return names[slot];
+    }
+
+    /**
+     * @param slot Índice do slot
+     * @return O tipo do uniforme no slot
+     */
+    public int getType(int slot) {
+        return types[slot];
+    }
+
+    /**
+     * Localiza ou cria o slot do uniforme. Se o uniforme já existir com outro tipo, seu espaço é realocado.
+     * @param name Nome do uniforme
+     * @param type Tipo do uniforme
+     * @return O índice do slot.
+     */
+    public int addSlot(String name, int type) {
+        var size = sizeOf(type);
+        var slot = slots.get(name);
+        if (slot != null && types[slot] == type) {
+            return slot;
+        }
+
+        if (slot == null) {
+            if (count == names.length) {
+                var capacity = count * 2;
+                names = Arrays.copyOf(names, capacity);
+                types = Arrays.copyOf(types, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+                versions = Arrays.copyOf(versions, capacity);
+                handles = Arrays.copyOf(handles, capacity);
+            }
+            slot = count++;
+            names[slot] = name;
+            slots.put(name, slot);
+        }
+
+        if (isInt(type)) {
+            if (intCount + size > ints.length) {
+                ints = Arrays.copyOf(ints, java.lang.Math.max(ints.length * 2, intCount + size));
+            }
+            offsets[slot] = intCount;
+            intCount += size;
+        } else {
+            if (floatCount + size > floats.length) {
+                floats = Arrays.copyOf(floats, java.lang.Math.max(floats.length * 2, floatCount + size));
+            }
+            offsets[slot] = floatCount;
+            floatCount += size;
+        }
+        types[slot] = type;
+        versions[slot] = ++version;
+        return slot;
+    }
+
+    /**
+     * Remove o uniforme do bloco. O valor deixa de ser enviado para o shader.
+     * @param name Nome do uniforme
+     * @return O próprio bloco
+     */
+    public UniformBlock remove(String name) {
+        var slot = slots.get(name);
+        if (slot != null) {
+            types[slot] = REMOVED;
+        }
+        return this;
+    }
+
+    private int check(int slot, int type) {
+        if (slot < 0 || slot >= count || types[slot] != type) {
+            throw new IllegalArgumentException("Invalid slot " + slot + " for type " + type);
+        }
+        return offsets[slot];
+    }
+
+    private void changed(int slot) {
+        versions[slot] = ++version;
+    }
+
+    // Escrita por slot
+    // ----------------
+    public UniformBlock set(int slot, float value) {
+        var o = check(slot, GL_FLOAT);
+        if (floats[o] != value) {
+            floats[o] = value;
+            changed(slot);
+        }
+        return this;
+    }
+
+    public UniformBlock set(int slot, int value) {
+        var o = check(slot, GL_INT);
+        if (ints[o] != value) {
+            ints[o] = value;
+            changed(slot);
+        }
+        return this;
+    }
+
+    public UniformBlock set(int slot, boolean value) {
+        var o = check(slot, GL_BOOL);
+        var v = value ? 1 : 0;
+        if (ints[o] != v) {
+            ints[o] = v;
+            changed(slot);
+        }
+        return this;
+    }
+
+    public UniformBlock set(int slot, float x, float y) {
+        var o = check(slot, GL_FLOAT_VEC2);
+        if (floats[o] != x || floats[o + 1] != y) {
+            floats[o] = x;
+            floats[o + 1] = y;
+            changed(slot);
+        }
+        return this;
+    }
+
+    public UniformBlock set(int slot, float x, float y, float z) {
+        var o = check(slot, GL_FLOAT_VEC3);
+        if (floats[o] != x || floats[o + 1] != y || floats[o + 2] != z) {
+            floats[o] = x;
+            floats[o + 1] = y;
+            floats[o + 2] = z;
+            changed(slot);
+        }
+        return this;
+    }
+
+    public UniformBlock set(int slot, float x, float y, float z, float w) {
+        var o = check(slot, GL_FLOAT_VEC4);
+        if (floats[o] != x || floats[o + 1] != y || floats[o + 2] != z || floats[o + 3] != w) {
+            floats[o] = x;
+            floats[o + 1] = y;
+            floats[o + 2] = z;
+            floats[o + 3] = w;
+            changed(slot);
+        }
+        return this;
+    }
+
+    public UniformBlock set(int slot, Vector2fc vector) {
+        return set(slot, vector.x(), vector.y());
+    }
+
+    public UniformBlock set(int slot, Vector3fc vector) {
+        return set(slot, vector.x(), vector.y(), vector.z());
+    }
+
+    public UniformBlock set(int slot, Vector4fc vector) {
+        return set(slot, vector.x(), vector.y(), vector.z(), vector.w());
+    }
+
+    public UniformBlock set(int slot, Matrix3fc matrix) {
+        var o = check(slot, GL_FLOAT_MAT3);
+        if (!equals(o, matrix)) {
+            matrix.get(floats, o);
+            changed(slot);
+        }
+        return this;
+    }
+
+    public UniformBlock set(int slot, Matrix4fc matrix) {
+        var o = check(slot, GL_FLOAT_MAT4);
+        if (!equals(o, matrix)) {
+            matrix.get(floats, o);
+            changed(slot);
+        }
+        return this;
+    }
+
+    private boolean equals(int o, Matrix3fc m) {
+        var f = floats;
+        return f[o] == m.m00() && f[o + 1] == m.m01() && f[o + 2] == m.m02()
+            && f[o + 3] == m.m10() && f[o + 4] == m.m11() && f[o + 5] == m.m12()
+            && f[o + 6] == m.m20() && f[o + 7] == m.m21() && f[o + 8] == m.m22();
+    }
+
+    private boolean equals(int o, Matrix4fc m) {
+        var f = floats;
+        return f[o] == m.m00() && f[o + 1] == m.m01() && f[o + 2] == m.m02() && f[o + 3] == m.m03()
+            && f[o + 4] == m.m10() && f[o + 5] == m.m11() && f[o + 6] == m.m12() && f[o + 7] == m.m13()
+            && f[o + 8] == m.m20() && f[o + 9] == m.m21() && f[o + 10] == m.m22() && f[o + 11] == m.m23()
+            && f[o + 12] == m.m30() && f[o + 13] == m.m31() && f[o + 14] == m.m32() && f[o + 15] == m.m33();
+    }
+
+    // Escrita por nome
+    // ----------------
+    public UniformBlock set(String name, float value) {
+        return set(addSlot(name, GL_FLOAT), value);
+    }
+
+    public UniformBlock set(String name, int value) {
+        return set(addSlot(name, GL_INT), value);
+    }
+
+    public UniformBlock set(String name, boolean value) {
+        return set(addSlot(name, GL_BOOL), value);
+    }
+
+    public UniformBlock set(String name, Vector2fc vector) {
+        return set(addSlot(name, GL_FLOAT_VEC2), vector);
+    }
+
+    public UniformBlock set(String name, Vector3fc vector) {
+        return set(addSlot(name, GL_FLOAT_VEC3), vector);
+    }
+
+    public UniformBlock set(String name, Vector4fc vector) {
+        return set(addSlot(name, GL_FLOAT_VEC4), vector);
+    }
+
+    public UniformBlock set(String name, Matrix3fc matrix) {
+        return set(addSlot(name, GL_FLOAT_MAT3), matrix);
+    }
+
+    public UniformBlock set(String name, Matrix4fc matrix) {
+        return set(addSlot(name, GL_FLOAT_MAT4), matrix);
+    }
+
+    /**
+     * Envia para o shader os uniforms que mudaram desde a última vez que esse bloco foi aplicado a ele. O shader já
+     * deve ter sofrido bind.
+     * @param shader O shader que receberá os valores
+     * @return A quantidade de uniforms efetivamente enviados.
+     */
+    public int apply(Shader shader) {
+        if (shader != this.shader) {
+            this.shader = shader;
+            Arrays.fill(handles, null);
+        }
+
+        var uploaded = 0;
+        for (var slot = 0; slot < count; slot++) {
+            var type = types[slot];
+            if (type == REMOVED) continue;
+
+            var uniform = handles[slot];
+            if (uniform == null) {
+                uniform = handles[slot] = shader.getUniform(names[slot]);
+            }
+            if (uniform.isCurrent(this, versions[slot])) continue;
+
+            upload(uniform.getLocation(), type, offsets[slot]);
+            uniform.stamp(this, versions[slot]);
+            uploaded++;
+        }
+        return uploaded;
+    }
+
+    private void upload(int location, int type, int o) {
+        switch (type) {
+            case GL_FLOAT: gl().uniform1f(location, floats[o]); break;
+            case GL_INT:
+            case GL_BOOL: gl().uniform1i(location, ints[o]); break;
+            case GL_FLOAT_VEC2: gl().uniform2f(location, floats[o], floats[o + 1]); break;
+            case GL_FLOAT_VEC3: gl().uniform3f(location, floats[o], floats[o + 1], floats[o + 2]); break;
+            case GL_FLOAT_VEC4:
+                gl().uniform4f(location, floats[o], floats[o + 1], floats[o + 2], floats[o + 3]);
+                break;
+            case GL_FLOAT_MAT3:
+            case GL_FLOAT_MAT4:
+                var size = sizeOf(type);
+                try (var stack = MemoryStack.stackPush()) {
+                    var buffer = stack.mallocFloat(size);
+                    buffer.put(floats, o, size).flip();
+                    if (type == GL_FLOAT_MAT3) gl().uniformMatrix3fv(location, false, buffer);
+                    else gl().uniformMatrix4fv(location, false, buffer);
+                }
+                break;
+        }
+    }
+}
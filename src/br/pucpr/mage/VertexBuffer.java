@@ -0,0 +1,182 @@
+package br.pucpr.mage;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import static br.pucpr.mage.gl.Backend.gl;
+import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL15.*;
+
+/**
+ * Um único ARRAY_BUFFER com todos os atributos dos vértices intercalados, no layout descrito por um VertexFormat.
+ * Substitui os vários ArrayBuffers (um por atributo) de uma malha.
+ * @see MeshBuilder#setVertices(VertexFormat, float...)
+ */
+public class VertexBuffer {
+    private int id;
+    private VertexFormat format;
+    private int count;
+
+    /**
+     * Cria o buffer com vértices já empacotados no layout do formato.
+     * @param format Formato dos vértices
+     * @param data Bytes dos vértices, format.getStride() por vértice
+     */
+    public VertexBuffer(VertexFormat format, ByteBuffer data) {
+        if (format == null) {
+            throw new IllegalArgumentException("Format can't be null!");
+        }
+        if (data == null) {
+            throw new IllegalArgumentException("Data is null!");
+        }
+        if (format.getStride() == 0) {
+            throw new IllegalArgumentException("Vertex format has no attributes!");
+        }
+
+        this.id = gl().genBuffers();
+        this.format = format;
+        this.count = data.remaining() / format.getStride();
+
+        bind();
+        gl().bufferData(GL_ARRAY_BUFFER, data, GL_STATIC_DRAW);
+    }
+
+    /**
+     * Cria o buffer a partir de floats intercalados, que são convertidos para os tipos do formato.
+     * @param format Formato dos vértices
+     * @param data Floats intercalados, format.getComponents() por vértice
+     */
+    public VertexBuffer(VertexFormat format, FloatBuffer data) {
+        if (format == null) {
+            throw new IllegalArgumentException("Format can't be null!");
+        }
+        if (data == null) {
+            throw new IllegalArgumentException("Data is null!");
+        }
+        if (format.getStride() == 0) {
+            throw new IllegalArgumentException("Vertex format has no attributes!");
+        }
+
+        this.id = gl().genBuffers();
+        this.format = format;
+
+        ByteBuffer packed = null;
+        try {
+            packed = MemoryUtil.memAlloc(data.remaining() / format.getComponents() * format.getStride());
+            this.count = format.pack(data, packed);
+            packed.flip();
+            bind();
+            gl().bufferData(GL_ARRAY_BUFFER, packed, GL_STATIC_DRAW);
+        } finally {
+            if (packed != null) MemoryUtil.memFree(packed);
+        }
+    }
+
+    /**
+     * Cria o buffer a partir de floats intercalados, que são convertidos para os tipos do formato.
+     * @param format Formato dos vértices
+     * @param data Floats intercalados, format.getComponents() por vértice
+     */
+    public VertexBuffer(VertexFormat format, float... data) {
+        this(format, FloatBuffer.wrap(data));
+    }
+
+    /**
+     * @return O id do buffer na OpenGL
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return O formato dos vértices
+     */
+    public VertexFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return Quantidade de vértices dentro do buffer.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return O tamanho do buffer, em bytes
+     */
+    public int getSize() {
+        return count * format.getStride();
+    }
+
+    /**
+     * Substitui parte dos vértices do buffer, sem realocá-lo.
+     * @param first Índice do primeiro vértice a ser substituído
+     * @param data Floats intercalados, format.getComponents() por vértice
+     * @return O próprio buffer
+     */
+    public VertexBuffer update(int first, FloatBuffer data) {
+        if (data == null) {
+            throw new IllegalArgumentException("Data is null!");
+        }
+        var vertices = data.remaining() / format.getComponents();
+        if (first < 0 || first + vertices > count) {
+            throw new IllegalArgumentException("Invalid range: " + first + " to " + (first + vertices));
+        }
+
+        ByteBuffer packed = null;
+        try {
+            packed = MemoryUtil.memAlloc(vertices * format.getStride());
+            format.pack(data, packed);
+            packed.flip();
+            bind();
+            gl().bufferSubData(GL_ARRAY_BUFFER, (long) first * format.getStride(), packed);
+        } finally {
+            if (packed != null) MemoryUtil.memFree(packed);
+        }
+        return this;
+    }
+
+    /**
+     * Substitui parte dos vértices do buffer, sem realocá-lo.
+     * @param first Índice do primeiro vértice a ser substituído
+     * @param data Floats intercalados, format.getComponents() por vértice
+     * @return O próprio buffer
+     */
+    public VertexBuffer update(int first, float... data) {
+        return update(first, FloatBuffer.wrap(data));
+    }
+
+    /**
+     * @return Faz o bind do buffer na OpenGL
+     */
+    public VertexBuffer bind() {
+        GLState.getInstance().bindBuffer(GL_ARRAY_BUFFER, id);
+        return this;
+    }
+
+    /**
+     * @return Faz unbind do buffer na OpenGL
+     */
+    public VertexBuffer unbind() {
+        GLState.getInstance().bindBuffer(GL_ARRAY_BUFFER, 0);
+        return this;
+    }
+
+    /**
+     * Realiza o comando de desenho considerando todos os vértices desse buffer.
+     */
+    public void draw() {
+        gl().drawArrays(GL_TRIANGLES, 0, count);
+    }
+
+    /**
+     * Realiza o comando de desenho instanciado considerando todos os vértices desse buffer.
+     * @param instances Quantidade de instâncias
+     */
+    public void drawInstanced(int instances) {
+        gl().drawArraysInstanced(GL_TRIANGLES, 0, count, instances);
+    }
+}
@@ -0,0 +1,383 @@
+package br.pucpr.mage;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static br.pucpr.mage.VertexPacking.*;
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_UNSIGNED_INT_2_10_10_10_REV;
+import static org.lwjgl.opengl.GL30.GL_HALF_FLOAT;
+import static org.lwjgl.opengl.GL33.GL_INT_2_10_10_10_REV;
+
+/**
+ * Descreve o layout de um vértice intercalado: a lista de atributos, com nome, quantidade de componentes, tipo,
+ * normalização e deslocamento (offset) em bytes dentro do vértice. Todos os atributos ficam em um único buffer
+ * (VertexBuffer), um vértice após o outro, o que faz com que a leitura de um vértice toque uma única região da memória.
+ *
+ * Cada atributo recebe também uma localização fixa, igual à sua posição no formato. Shaders carregados com
+ * Shader.loadProgram(format, ...) usam essas localizações, de modo que qualquer malha desse formato é compatível com
+ * qualquer um desses shaders.
+ *
+ * <pre>
+ *     var format = new VertexFormat()
+ *         .add("aPosition", 3)
+ *         .add("aColor", 3);
+ * </pre>
+ *
+ * Os dados são sempre fornecidos como floats intercalados, na ordem dos atributos. O formato converte cada componente
+ * para o tipo do atributo ao empacotar o vértice (veja pack). Tipos compactos reduzem bastante o tamanho do vértice:
+ *
+ * <pre>
+ *     //24 bytes por vértice em vez de 48
+ *     var format = new VertexFormat()
+ *         .addHalf("aPosition", 3)       //8 bytes
+ *         .addNormal("aNormal")          //4 bytes, GL_INT_2_10_10_10_REV
+ *         .addColor("aColor", 4)         //4 bytes, unorm8
+ *         .add("aTexCoord", 2);          //8 bytes
+ * </pre>
+ */
+public class VertexFormat {
+    /**
+     * Um atributo do vértice.
+     */
+    public static class Attribute {
+        private final String name;
+        private final int components;
+        private final int type;
+        private final boolean normalized;
+        private final int offset;
+        private final int location;
+
+        private Attribute(String name, int components, int type, boolean normalized, int offset, int location) {
+            this.name = name;
+            this.components = components;
+            this.type = type;
+            this.normalized = normalized;
+            this.offset = offset;
+            this.location = location;
+        }
+
+        /**
+         * @return O nome do atributo no shader
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return Quantidade de componentes. Por exemplo, 3 para um vec3.
+         */
+        public int getComponents() {
+            return components;
+        }
+
+        /**
+         * @return O tipo de cada componente no buffer: GL_FLOAT, GL_UNSIGNED_BYTE, etc.
+         */
+        public int getType() {
+            return type;
+        }
+
+        /**
+         * @return Verdadeiro se os inteiros são convertidos para [0, 1] (ou [-1, 1]) pela placa de vídeo.
+         */
+        public boolean isNormalized() {
+            return normalized;
+        }
+
+        /**
+         * @return O deslocamento do atributo, em bytes, a partir do início do vértice.
+         */
+        public int getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return A localização fixa do atributo
+         */
+        public int getLocation() {
+            return location;
+        }
+
+        /**
+         * @return Verdadeiro se todos os componentes estão empacotados em um único inteiro (tipos 2_10_10_10).
+         */
+        public boolean isPacked() {
+            return isPackedType(type);
+        }
+
+        /**
+         * @return O parâmetro size de glVertexAttribPointer. Tipos empacotados sempre usam 4.
+         */
+        public int getPointerSize() {
+            return isPacked() ? 4 : components;
+        }
+
+        /**
+         * @return O tamanho do atributo, em bytes
+         */
+        public int getSize() {
+            return isPacked() ? 4 : components * sizeOf(type);
+        }
+    }
+
+    private final List<Attribute> attributes = new ArrayList<>();
+    private int stride;
+    private int components;
+
+    /**
+     * @param type Tipo OpenGL do componente
+     * @return O tamanho do tipo, em bytes
+     */
+    public static int sizeOf(int type) {
+        switch (type) {
+            case GL_FLOAT:
+            case GL_INT:
+            case GL_UNSIGNED_INT:
+                return 4;
+            case GL_INT_2_10_10_10_REV:
+            case GL_UNSIGNED_INT_2_10_10_10_REV:
+                return 4;
+            case GL_SHORT:
+            case GL_UNSIGNED_SHORT:
+            case GL_HALF_FLOAT:
+                return 2;
+            case GL_BYTE:
+            case GL_UNSIGNED_BYTE:
+                return 1;
+            default:
+                throw new IllegalArgumentException("Unsupported vertex type: " + type);
+        }
+    }
+
+    /**
+     * Adiciona um atributo de floats.
+     * @param name Nome do atributo no shader
+     * @param components Quantidade de componentes (1 a 4)
+     * @return O próprio formato
+     */
+    public VertexFormat add(String name, int components) {
+        return add(name, components, GL_FLOAT, false);
+    }
+
+    private static boolean isPackedType(int type) {
+        return type == GL_INT_2_10_10_10_REV || type == GL_UNSIGNED_INT_2_10_10_10_REV;
+    }
+
+    /**
+     * Adiciona um atributo em meia precisão (GL_HALF_FLOAT). Metade do tamanho de um float, com cerca de 3 dígitos
+     * significativos.
+     * @return O próprio formato
+     */
+    public VertexFormat addHalf(String name, int components) {
+        return add(name, components, GL_HALF_FLOAT, false);
+    }
+
+    /**
+     * Adiciona um atributo com componentes em [-1, 1] guardados em 16 bits (GL_SHORT normalizado).
+     * @return O próprio formato
+     */
+    public VertexFormat addSnorm16(String name, int components) {
+        return add(name, components, GL_SHORT, true);
+    }
+
+    /**
+     * Adiciona uma normal (ou outro vetor unitário) empacotada em 4 bytes, no formato GL_INT_2_10_10_10_REV
+     * normalizado. Os dados de entrada têm 3 componentes. No shader, o atributo pode ser declarado como vec3.
+     * @return O próprio formato
+     */
+    public VertexFormat addNormal(String name) {
+        return add(name, 3, GL_INT_2_10_10_10_REV, true);
+    }
+
+    /**
+     * Adiciona uma cor com um byte por componente (GL_UNSIGNED_BYTE normalizado), com valores em [0, 1].
+     * @param components 3 (rgb) ou 4 (rgba). Em ambos os casos o atributo ocupa 4 bytes.
+     * @return O próprio formato
+     */
+    public VertexFormat addColor(String name, int components) {
+        return add(name, components, GL_UNSIGNED_BYTE, true);
+    }
+
+    /**
+     * Adiciona um atributo ao final do vértice. O offset é alinhado em 4 bytes, como recomendado pela OpenGL.
+     * @param name Nome do atributo no shader
+     * @param components Quantidade de componentes (1 a 4)
+     * @param type Tipo de cada componente no buffer
+     * @param normalized Se inteiros devem ser normalizados para [0, 1] ou [-1, 1]
+     * @return O próprio formato
+     */
+    public VertexFormat add(String name, int components, int type, boolean normalized) {
+        if (name == null || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("Invalid attribute name: " + name);
+        }
+        if (components < 1 || components > 4) {
+            throw new IllegalArgumentException("Invalid component count: " + components);
+        }
+        if (getAttribute(name) != null) {
+            throw new IllegalArgumentException("Attribute already exists: " + name);
+        }
+        if (isPackedType(type) && (components < 3 || !normalized)) {
+            throw new IllegalArgumentException("Packed attributes need 3 or 4 normalized components: " + name);
+        }
+        sizeOf(type);
+
+        var offset = align(stride);
+        var attribute = new Attribute(name, components, type, normalized, offset, attributes.size());
+        attributes.add(attribute);
+        stride = align(offset + attribute.getSize());
+        this.components += components;
+        return this;
+    }
+
+    private static int align(int bytes) {
+        return (bytes + 3) & ~3;
+    }
+
+    /**
+     * @return Os atributos, na ordem em que aparecem no vértice.
+     */
+    public List<Attribute> getAttributes() {
+        return Collections.unmodifiableList(attributes);
+    }
+
+    /**
+     * @param name Nome do atributo
+     * @return O atributo, ou null se não fizer parte do formato.
+     */
+    public Attribute getAttribute(String name) {
+        for (var attribute : attributes) {
+            if (attribute.name.equals(name)) return attribute;
+        }
+        return null;
+    }
+
+    /**
+     * @return O tamanho de um vértice, em bytes
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * @return A quantidade de floats de um vértice nos dados intercalados de entrada (soma dos componentes).
+     */
+    public int getComponents() {
+        return components;
+    }
+
+    /**
+     * @param name Nome do atributo
+     * @return O índice do primeiro componente do atributo nos floats intercalados de entrada, ou -1.
+     */
+    public int getComponentOffset(String name) {
+        var offset = 0;
+        for (var attribute : attributes) {
+            if (attribute.name.equals(name)) return offset;
+            offset += attribute.components;
+        }
+        return -1;
+    }
+
+    /**
+     * Intercala os dados de cada atributo, fornecidos separadamente, na ordem do formato.
+     * @param values Um array por atributo, com components floats por vértice
+     * @return Os floats intercalados
+     */
+    public float[] interleave(float[]... values) {
+        if (values.length != attributes.size()) {
+            throw new IllegalArgumentException("Expected " + attributes.size() + " arrays, got " + values.length);
+        }
+        var vertices = values[0].length / attributes.get(0).components;
+        for (var i = 0; i < values.length; i++) {
+            if (values[i].length != vertices * attributes.get(i).components) {
+                throw new IllegalArgumentException("Invalid size for " + attributes.get(i).name + ": "
+                        + values[i].length);
+            }
+        }
+
+        var result = new float[vertices * components];
+        var index = 0;
+        for (var v = 0; v < vertices; v++) {
+            for (var i = 0; i < values.length; i++) {
+                var c = attributes.get(i).components;
+                System.arraycopy(values[i], v * c, result, index, c);
+                index += c;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Empacota vértices no layout do formato. Cada componente é convertido para o tipo do atributo: inteiros
+     * normalizados são escalados (por exemplo, 1.0 vira 255 em GL_UNSIGNED_BYTE), os demais são arredondados e
+     * GL_HALF_FLOAT é convertido para meia precisão. Nos tipos 2_10_10_10, um w ausente é gravado como 0.
+     * @param source Floats intercalados, getComponents() por vértice. A posição do buffer não é alterada.
+     * @param dest Buffer de destino, em ordem nativa, com espaço para os vértices. Sua posição avança.
+     * @return A quantidade de vértices empacotados
+     */
+    public int pack(FloatBuffer source, ByteBuffer dest) {
+        if (attributes.isEmpty()) {
+            throw new IllegalStateException("Vertex format has no attributes!");
+        }
+        var vertices = source.remaining() / components;
+        var index = source.position();
+        for (var v = 0; v < vertices; v++) {
+            var base = dest.position();
+            for (var attribute : attributes) {
+                dest.position(base + attribute.offset);
+                if (attribute.isPacked()) {
+                    putPacked(dest, attribute, source, index);
+                    index += attribute.components;
+                    continue;
+                }
+                for (var c = 0; c < attribute.components; c++) {
+                    put(dest, attribute, source.get(index++));
+                }
+            }
+            dest.position(base + stride);
+        }
+        return vertices;
+    }
+
+    private static void put(ByteBuffer dest, Attribute attribute, float value) {
+        var n = attribute.normalized;
+        switch (attribute.type) {
+            case GL_FLOAT:
+                dest.putFloat(value);
+                break;
+            case GL_HALF_FLOAT:
+                dest.putShort(toHalf(value));
+                break;
+            case GL_UNSIGNED_BYTE:
+                dest.put(n ? unorm8(value) : (byte) clamp(value, 0, 0xFF));
+                break;
+            case GL_BYTE:
+                dest.put(n ? snorm8(value) : (byte) clamp(value, -0x80, 0x7F));
+                break;
+            case GL_UNSIGNED_SHORT:
+                dest.putShort(n ? unorm16(value) : (short) clamp(value, 0, 0xFFFF));
+                break;
+            case GL_SHORT:
+                dest.putShort(n ? snorm16(value) : (short) clamp(value, -0x8000, 0x7FFF));
+                break;
+            default:
+                dest.putInt(Math.round(value));
+        }
+    }
+
+    private static void putPacked(ByteBuffer dest, Attribute attribute, FloatBuffer source, int index) {
+        var x = source.get(index);
+        var y = source.get(index + 1);
+        var z = source.get(index + 2);
+        var w = attribute.components == 4 ? source.get(index + 3) : 0.0f;
+        dest.putInt(attribute.type == GL_INT_2_10_10_10_REV ? snorm2101010(x, y, z, w) : unorm2101010(x, y, z, w));
+    }
+
+    private static int clamp(float value, int min, int max) {
+        return Math.max(min, Math.min(max, Math.round(value)));
+    }
+}
@@ -0,0 +1,142 @@
+package br.pucpr.mage;
+
+/**
+ * Conversões de floats para os tipos compactos aceitos pela OpenGL em atributos de vértice. Os valores gerados são
+ * os mesmos que a placa de vídeo converte de volta para float no vertex shader, de acordo com o tipo e o flag
+ * normalized passados para glVertexAttribPointer:
+ *
+ * - half: GL_HALF_FLOAT, 16 bits. Bom para posições e coordenadas de textura de objetos pequenos.
+ * - unorm8: GL_UNSIGNED_BYTE normalizado, [0, 1]. Ideal para cores.
+ * - snorm16: GL_SHORT normalizado, [-1, 1]. Posições precisam ser escaladas para esse intervalo.
+ * - snorm 2_10_10_10: GL_INT_2_10_10_10_REV normalizado. Uma normal (ou tangente) inteira em 4 bytes.
+ *
+ * @see VertexFormat
+ */
+public final class VertexPacking {
+    private VertexPacking() {
+    }
+
+    /**
+     * Converte para meia precisão (IEEE 754 binary16), arredondando para o mais próximo. Valores fora do intervalo
+     * viram infinito e valores muito pequenos viram subnormais ou zero.
+     * @param value Valor a converter
+     * @return Os 16 bits do half
+     */
+    public static short toHalf(float value) {
+        var bits = Float.floatToRawIntBits(value);
+        var sign = (bits >>> 16) & 0x8000;
+        var exponent = (bits >>> 23) & 0xFF;
+        var mantissa = bits & 0x7FFFFF;
+
+        if (exponent == 0xFF) {
+            //Infinito ou NaN (mantendo um bit de mantissa para que o NaN continue NaN)
+            return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 | (mantissa >>> 13) : 0));
+        }
+
+        var e = exponent - 127 + 15;
+        if (e >= 0x1F) {
+            return (short) (sign | 0x7C00);
+        }
+        if (e <= 0) {
+            if (e < -10) {
+                return (short) sign;
+            }
+            //Subnormal: inclui o bit implícito e desloca, arredondando para o par mais próximo
+            mantissa |= 0x800000;
+            var shift = 14 - e;
+            var half = mantissa >>> shift;
+            var rest = mantissa & ((1 << shift) - 1);
+            var middle = 1 << (shift - 1);
+            if (rest > middle || (rest == middle && (half & 1) != 0)) half++;
+            return (short) (sign | half);
+        }
+
+        var half = (e << 10) | (mantissa >>> 13);
+        var rest = mantissa & 0x1FFF;
+        //Arredonda para o par mais próximo. O carry pode subir para o expoente, o que está correto.
+        if (rest > 0x1000 || (rest == 0x1000 && (half & 1) != 0)) half++;
+        return (short) (sign | half);
+    }
+
+    /**
+     * Converte um half de volta para float.
+     * @param half Os 16 bits do half
+     * @return O valor em float
+     */
+    public static float fromHalf(short half) {
+        var h = half & 0xFFFF;
+        var sign = (h & 0x8000) << 16;
+        var exponent = (h >>> 10) & 0x1F;
+        var mantissa = h & 0x3FF;
+
+        if (exponent == 0) {
+            var value = mantissa * 0x1p-24f;
+            return sign != 0 ? -value : value;
+        }
+        if (exponent == 0x1F) {
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+        }
+        return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+    }
+
+    /**
+     * @param value Valor em [0, 1]. Valores fora do intervalo são limitados.
+     * @return O valor como unsigned byte normalizado (0 a 255)
+     */
+    public static byte unorm8(float value) {
+        return (byte) Math.round(clamp(value, 0.0f) * 255.0f);
+    }
+
+    /**
+     * @param value Valor em [-1, 1]. Valores fora do intervalo são limitados.
+     * @return O valor como byte normalizado (-127 a 127)
+     */
+    public static byte snorm8(float value) {
+        return (byte) Math.round(clamp(value, -1.0f) * 127.0f);
+    }
+
+    /**
+     * @param value Valor em [0, 1]. Valores fora do intervalo são limitados.
+     * @return O valor como unsigned short normalizado (0 a 65535)
+     */
+    public static short unorm16(float value) {
+        return (short) Math.round(clamp(value, 0.0f) * 65535.0f);
+    }
+
+    /**
+     * @param value Valor em [-1, 1]. Valores fora do intervalo são limitados.
+     * @return O valor como short normalizado (-32767 a 32767)
+     */
+    public static short snorm16(float value) {
+        return (short) Math.round(clamp(value, -1.0f) * 32767.0f);
+    }
+
+    /**
+     * Empacota um vetor em [-1, 1] no formato GL_INT_2_10_10_10_REV normalizado: x, y e z com 10 bits e w com 2 bits,
+     * com x nos bits menos significativos.
+     * @return Os 32 bits do vetor empacotado
+     */
+    public static int snorm2101010(float x, float y, float z, float w) {
+        var ix = Math.round(clamp(x, -1.0f) * 511.0f) & 0x3FF;
+        var iy = Math.round(clamp(y, -1.0f) * 511.0f) & 0x3FF;
+        var iz = Math.round(clamp(z, -1.0f) * 511.0f) & 0x3FF;
+        var iw = Math.round(clamp(w, -1.0f)) & 0x3;
+        return ix | (iy << 10) | (iz << 20) | (iw << 30);
+    }
+
+    /**
+     * Empacota um vetor em [0, 1] no formato GL_UNSIGNED_INT_2_10_10_10_REV normalizado.
+     * @return Os 32 bits do vetor empacotado
+     */
+    public static int unorm2101010(float x, float y, float z, float w) {
+        var ix = Math.round(clamp(x, 0.0f) * 1023.0f);
+        var iy = Math.round(clamp(y, 0.0f) * 1023.0f);
+        var iz = Math.round(clamp(z, 0.0f) * 1023.0f);
+        var iw = Math.round(clamp(w, 0.0f) * 3.0f);
+        return ix | (iy << 10) | (iz << 20) | (iw << 30);
+    }
+
+    private static float clamp(float value, float min) {
+        return value < min ? min : value > 1.0f ? 1.0f : value;
+    }
+}
@@ -0,0 +1,68 @@
+package br.pucpr.mage;
+
+/**
+ * Tamanho atual da área de desenho (framebuffer) da janela. É atualizado pela Window sempre que a janela muda de
+ * tamanho, através do callback de framebuffer da GLFW, o que evita consultar a GLFW a todo quadro.
+ *
+ * Cada mudança incrementa a versão, permitindo que quem depende do tamanho (como a Camera) saiba quando recalcular.
+ */
+public class Viewport {
+    private static final Viewport INSTANCE = new Viewport();
+
+    private int width;
+    private int height;
+    private int version;
+
+    private Viewport() {
+    }
+
+    public static Viewport getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return Largura do framebuffer, em pixels. Zero se ainda não foi definida.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return Altura do framebuffer, em pixels. Zero se ainda não foi definida.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return Verdadeiro se o tamanho já foi definido e não é nulo (janela minimizada).
+     */
+    public boolean isValid() {
+        return width > 0 && height > 0;
+    }
+
+    /**
+     * @return A proporção do framebuffer (largura / altura). Só é válida se isValid() for verdadeiro.
+     */
+    public float getAspect() {
+        return width / (float) height;
+    }
+
+    /**
+     * @return Número que muda sempre que o tamanho muda.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Define o novo tamanho do framebuffer.
+     */
+    public void set(int width, int height) {
+        if (this.width != width || this.height != height) {
+            this.width = width;
+            this.height = height;
+            version++;
+        }
+    }
+}
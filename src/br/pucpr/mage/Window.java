@@ -3,10 +3,27 @@ package br.pucpr.mage;
 import org.lwjgl.glfw.GLFWErrorCallback;
 import org.lwjgl.glfw.GLFWVidMode;
 import org.lwjgl.opengl.GL;
+import org.lwjgl.system.MemoryStack;
 
+import static br.pucpr.mage.gl.Backend.gl;
 import static org.lwjgl.glfw.GLFW.*;
 import static org.lwjgl.system.MemoryUtil.NULL;
 
+/**
+ * Janela e laço principal do jogo.
+ *
+ * O tempo é medido com System.nanoTime. Por padrão, cada quadro executa um update com o tempo decorrido e um draw. Com
+ * setFixedStep, a simulação passa a andar em passos de tamanho fixo: o tempo decorrido é acumulado e consumido em
+ * quantos updates forem necessários, e o draw recebe a fração do passo seguinte que já passou (alpha). Para não entrar
+ * em espiral quando a simulação fica mais lenta que o tempo real, o tempo de um quadro é limitado a setMaxFrameTime e a
+ * quantidade de updates por quadro a setMaxUpdates. O tempo excedente é descartado, e o jogo fica mais lento em vez de
+ * travar.
+ *
+ * A taxa de quadros é controlada por setPacing: vsync (padrão), limitada por setFrameCap ou sem limite.
+ *
+ * O tempo de cada fase do quadro (update, draw, swap e poll) é registrado em getStats(). Se setStatsFile for
+ * chamado, o relatório é gravado ao fechar a janela.
+ */
 public class Window {
     // The window handle
     private long window;
@@ -15,6 +32,15 @@ public class Window {
     private int height;
     private String title;
 
+    private float fixedStep = 0;
+    private int maxUpdates = 5;
+    private float maxFrameTime = 0.25f;
+    private FramePacing pacing = FramePacing.VSYNC;
+    private int frameCap = 60;
+    private long droppedNanos;
+    private FrameStats stats = new FrameStats();
+    private String statsFile;
+
     public Window(Scene scene, String title, int width, int height) {
         this.scene = scene;
         this.title = title;
@@ -30,6 +56,96 @@ public class Window {
         this(scene, "Game");
     }
 
+    /**
+     * Define o tamanho do passo de simulação.
+     * @param secs Duração de cada update, em segundos (por exemplo, 1/60f), ou 0 para um update por quadro com o
+     *             tempo decorrido (passo variável).
+     * @return A própria janela
+     */
+    public Window setFixedStep(float secs) {
+        if (secs < 0) {
+            throw new IllegalArgumentException("Step < 0!");
+        }
+        this.fixedStep = secs;
+        return this;
+    }
+
+    /**
+     * Define a quantidade máxima de updates de passo fixo em um único quadro.
+     * @return A própria janela
+     */
+    public Window setMaxUpdates(int maxUpdates) {
+        if (maxUpdates < 1) {
+            throw new IllegalArgumentException("Max updates < 1!");
+        }
+        this.maxUpdates = maxUpdates;
+        return this;
+    }
+
+    /**
+     * Define o maior tempo, em segundos, considerado em um único quadro. Pausas maiores (como arrastar a janela ou
+     * parar no depurador) não são repassadas à simulação.
+     * @return A própria janela
+     */
+    public Window setMaxFrameTime(float secs) {
+        if (secs <= 0) {
+            throw new IllegalArgumentException("Max frame time <= 0!");
+        }
+        this.maxFrameTime = secs;
+        return this;
+    }
+
+    /**
+     * Define como a taxa de quadros é controlada. Pode ser alterado com a janela aberta.
+     * @return A própria janela
+     */
+    public Window setPacing(FramePacing pacing) {
+        if (pacing == null) {
+            throw new IllegalArgumentException("Pacing can't be null!");
+        }
+        this.pacing = pacing;
+        if (window != NULL) {
+            glfwSwapInterval(pacing == FramePacing.VSYNC ? 1 : 0);
+        }
+        return this;
+    }
+
+    /**
+     * Define o limite de quadros por segundo usado em FramePacing.CAPPED.
+     * @return A própria janela
+     */
+    public Window setFrameCap(int fps) {
+        if (fps < 1) {
+            throw new IllegalArgumentException("Frame cap < 1!");
+        }
+        this.frameCap = fps;
+        return this;
+    }
+
+    /**
+     * @return As estatísticas de tempo de quadro. Podem ser consultadas, zeradas ou gravadas a qualquer momento.
+     */
+    public FrameStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Define o arquivo onde o relatório de tempos de quadro será gravado ao fechar a janela.
+     * @param file Caminho do arquivo, terminado em .json ou .csv, ou null para não gravar.
+     * @return A própria janela
+     */
+    public Window setStatsFile(String file) {
+        this.statsFile = file;
+        return this;
+    }
+
+    /**
+     * @return O tempo total, em segundos, descartado pelos limites de setMaxFrameTime e setMaxUpdates.
+     */
+    public float getDroppedTime() {
+        return droppedNanos / 1e9f;
+    }
+
     private void init() {
         System.setProperty("java.awt.headless", "true");
         // Setup an error callback. The default implementation
@@ -61,6 +177,19 @@ public class Window {
             Keyboard.getInstance().set(key, action)
         );
 
+        // Keep the viewport in sync with the framebuffer size, so nobody needs
+        // to query the window size every frame.
+        glfwSetFramebufferSizeCallback(window, (window, w, h) -> {
+            Viewport.getInstance().set(w, h);
+            if (w > 0 && h > 0) gl().viewport(0, 0, w, h);
+        });
+        try (var stack = MemoryStack.stackPush()) {
+            var w = stack.mallocInt(1);
+            var h = stack.mallocInt(1);
+            glfwGetFramebufferSize(window, w, h);
+            Viewport.getInstance().set(w.get(0), h.get(0));
+        }
+
         // Get the resolution of the primary monitor
         GLFWVidMode vidmode = glfwGetVideoMode(glfwGetPrimaryMonitor());
         // Center our window
@@ -68,8 +197,8 @@ public class Window {
 
         // Make the OpenGL context current
         glfwMakeContextCurrent(window);
-        // Enable v-sync
-        glfwSwapInterval(1);
+        // Enable v-sync, unless another pacing was requested
+        glfwSwapInterval(pacing == FramePacing.VSYNC ? 1 : 0);
 
         // Make the window visible
         glfwShowWindow(window);
@@ -82,24 +211,114 @@ public class Window {
         // creates the GLCapabilities instance and makes the OpenGL
         // bindings available for use.
         GL.createCapabilities();
+        GLState.getInstance().invalidate();
 
         // Set the clear color
         scene.init();
 
         // Run the rendering loop until the user has attempted to close
         // the window or has pressed the ESCAPE key.
-        long before = System.currentTimeMillis() - 1;
+        var maxFrameNanos = (long) (maxFrameTime * 1e9);
+        var before = System.nanoTime();
+        var accumulator = 0L;
+        var deadline = before;
+        var first = true;
         while (!glfwWindowShouldClose(window)) {
-            float time = (System.currentTimeMillis() - before) / 1000f;
-            before = System.currentTimeMillis();
-            scene.update(time);
-            scene.draw();
+            var now = System.nanoTime();
+            var elapsed = now - before;
+            before = now;
+            if (!first) stats.record(FrameStats.Phase.FRAME, elapsed);
+            first = false;
+            if (elapsed > maxFrameNanos) {
+                droppedNanos += elapsed - maxFrameNanos;
+                elapsed = maxFrameNanos;
+            }
+
+            var alpha = 1.0f;
+            var mark = now;
+            if (fixedStep > 0) {
+                var step = (long) (fixedStep * 1e9);
+                accumulator += elapsed;
+                var updates = 0;
+                while (accumulator >= step && updates < maxUpdates) {
+                    update(fixedStep);
+                    accumulator -= step;
+                    updates++;
+                }
+                //Não conseguimos alcançar o tempo real: descarta o atraso em vez de acumulá-lo
+                if (accumulator >= step) {
+                    droppedNanos += accumulator - accumulator % step;
+                    accumulator %= step;
+                }
+                alpha = accumulator / (float) step;
+            } else {
+                update(elapsed / 1e9f);
+            }
+            mark = record(FrameStats.Phase.UPDATE, mark);
+
+            scene.draw(alpha);
+            GLState.getInstance().endFrame();
+            FrameArena.getInstance().reset();
+            mark = record(FrameStats.Phase.DRAW, mark);
 
-            Keyboard.getInstance().update();
             glfwSwapBuffers(window);
+            if (pacing == FramePacing.CAPPED) {
+                deadline = waitUntil(deadline + 1_000_000_000L / frameCap);
+            }
+            mark = record(FrameStats.Phase.SWAP, mark);
+
             glfwPollEvents();
+            record(FrameStats.Phase.POLL, mark);
         }
         scene.deinit();
+        if (statsFile != null) {
+            stats.save(statsFile);
+        }
+    }
+
+    /**
+     * Registra o tempo passado desde start na fase indicada.
+     * @return O instante atual, início da próxima fase
+     */
+    private long record(FrameStats.Phase phase, long start) {
+        var now = System.nanoTime();
+        stats.record(phase, now - start);
+        return now;
+    }
+
+    /**
+     * Executa um passo de simulação. O teclado é atualizado logo depois, para que teclas pressionadas em quadros sem
+     * update não se percam, e para que não sejam vistas duas vezes quando o quadro tiver vários updates.
+     */
+    private void update(float secs) {
+        scene.update(secs);
+        Keyboard.getInstance().update();
+    }
+
+    /**
+     * Aguarda até o instante indicado. Dorme enquanto falta mais de 2ms, e espera ativamente o restante, já que a
+     * precisão do sleep depende do sistema operacional.
+     * @return O prazo atingido, ou o instante atual se o prazo já tiver passado há mais de um quadro.
+     */
+    private long waitUntil(long deadline) {
+        var now = System.nanoTime();
+        if (now - deadline > 1_000_000_000L / frameCap) {
+            //Muito atrasado: recomeça a contagem em vez de tentar compensar com quadros sem espera
+            return now;
+        }
+        while (deadline - now > 2_000_000L) {
+            try {
+                Thread.sleep(Math.max(1, (deadline - now - 2_000_000L) / 1_000_000L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return now;
+            }
+            now = System.nanoTime();
+        }
+        while (deadline - System.nanoTime() > 0) {
+            Thread.onSpinWait();
+        }
+        return deadline;
     }
 
     public void show() {
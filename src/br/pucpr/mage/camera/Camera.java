@@ -1,14 +1,15 @@
 package br.pucpr.mage.camera;
 
+import static br.pucpr.mage.gl.Backend.gl;
 import static org.joml.Math.*;
-import static org.lwjgl.glfw.GLFW.glfwGetCurrentContext;
-import static org.lwjgl.glfw.GLFW.glfwGetWindowSize;
 
+import br.pucpr.mage.CameraUniforms;
+import br.pucpr.mage.Frustum;
 import br.pucpr.mage.Shader;
+import br.pucpr.mage.Viewport;
 
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
-import org.lwjgl.system.MemoryStack;
 
 
 /**
@@ -17,6 +18,11 @@ import org.lwjgl.system.MemoryStack;
  * up
  * - Projection: Que indica a abertura da camera. Formada pelos planos near, far, taxa de proporção (aspecto) e angulo
  * de abertura da camera (fov)
+ *
+ * As matrizes view, projection e viewProjection ficam guardadas na camera e só são recalculadas quando algo muda: a
+ * projeção quando fov, near, far ou o tamanho do Viewport mudam; a view quando a posição, o alvo ou o vetor up são
+ * diferentes dos usados no último cálculo. Como os vetores podem ser alterados diretamente, essa comparação é feita a
+ * cada consulta, mas custa apenas nove comparações de floats.
  */
 public class Camera {
     private Vector3f position = new Vector3f(0,0,2);    //Onde a camera está
@@ -26,6 +32,22 @@ public class Camera {
     private float near = 0.1f;                                    //Distancia mais proxima que a camera enxerga
     private float far = 1000.0f;                                  //Distancia mais afastada que a camera enxerga
 
+    private Matrix4f view = new Matrix4f();
+    private Matrix4f projection = new Matrix4f();
+    private Matrix4f viewProjection = new Matrix4f();
+    private Frustum frustum = new Frustum();
+    private int frustumVersion = -1;
+
+    //Valores usados no último cálculo das matrizes
+    private Vector3f lastPosition = new Vector3f(Float.NaN);
+    private Vector3f lastTarget = new Vector3f(Float.NaN);
+    private Vector3f lastUp = new Vector3f(Float.NaN);
+    private float lastAspect = Float.NaN;
+    private int viewportVersion = -1;
+    private boolean projectionDirty = true;
+    private boolean viewProjectionDirty = true;
+    private int version;
+
     /**
      * @return A posição da câmera no mundo
      */
@@ -60,6 +82,7 @@ public class Camera {
      */
     public Camera setFov(float fov) {
         this.fov = fov;
+        projectionDirty = true;
         return this;
     }
 
@@ -77,6 +100,7 @@ public class Camera {
      */
     public Camera setNear(float near) {
         this.near = near;
+        projectionDirty = true;
         return this;
     }
 
@@ -94,43 +118,130 @@ public class Camera {
      */
     public Camera setFar(float far) {
         this.far = far;
+        projectionDirty = true;
         return this;
     }
 
     /**
-     * @return A proporção da tela. A proporção é dada pela largura / altura.
+     * @return A proporção da tela. A proporção é dada pela largura / altura. Vem do Viewport, que é atualizado pela
+     * janela. Se ainda não houver janela (por exemplo, em um backend sem GPU), é consultada ao backend.
      */
     public float getAspect() {
-        try (var stack = MemoryStack.stackPush()) {
-            var w = stack.mallocInt(1);
-            var h = stack.mallocInt(1);
-            long window = glfwGetCurrentContext();
-            glfwGetWindowSize(window, w, h);
-            return w.get() / (float) h.get();
+        var viewport = Viewport.getInstance();
+        return viewport.isValid() ? viewport.getAspect() : gl().getWindowAspect();
+    }
+
+    /**
+     * Recalcula as matrizes que estiverem desatualizadas.
+     */
+    private void update() {
+        var viewport = Viewport.getInstance();
+        if (viewport.getVersion() != viewportVersion) {
+            viewportVersion = viewport.getVersion();
+            var aspect = getAspect();
+            if (aspect != lastAspect) {
+                lastAspect = aspect;
+                projectionDirty = true;
+            }
+        }
+
+        if (projectionDirty) {
+            projection.setPerspective(fov, lastAspect, near, far);
+            projectionDirty = false;
+            viewProjectionDirty = true;
+        }
+
+        var position = getPosition();
+        var target = getTarget();
+        var up = getUp();
+        if (!position.equals(lastPosition) || !target.equals(lastTarget) || !up.equals(lastUp)) {
+            lastPosition.set(position);
+            lastTarget.set(target);
+            lastUp.set(up);
+            view.setLookAt(position, target, up);
+            viewProjectionDirty = true;
+        }
+
+        if (viewProjectionDirty) {
+            projection.mul(view, viewProjection);
+            viewProjectionDirty = false;
+            version++;
         }
     }
 
     /**
-     * @return A matriz view, calculada com base nos campos da camera.
+     * @return A matriz view, calculada com base nos campos da camera. A matriz pertence à camera e não deve ser
+     * alterada.
      */
     public Matrix4f getViewMatrix() {
-        return new Matrix4f().lookAt(getPosition(), getTarget(), getUp());
+        update();
+        return view;
     }
 
     /**
-     * @return A matriz projection, calculada com base nos campos da camera.
+     * @return A matriz projection, calculada com base nos campos da camera. A matriz pertence à camera e não deve ser
+     * alterada.
      */
     public Matrix4f getProjectionMatrix() {
-        return new Matrix4f().perspective(fov, getAspect(), near, far);
+        update();
+        return projection;
+    }
+
+    /**
+     * @return O produto projection * view. A matriz pertence à camera e não deve ser alterada.
+     */
+    public Matrix4f getViewProjectionMatrix() {
+        update();
+        return viewProjection;
     }
 
     /**
-     * Define as matrizes de projeção nas propriedades uProjection e uView do shader.
+     * @return Os planos do volume de visão da camera, no espaço do mundo. Extraídos novamente apenas quando as
+     * matrizes mudam.
+     */
+    public Frustum getFrustum() {
+        update();
+        if (frustumVersion != version) {
+            frustum.set(viewProjection);
+            frustumVersion = version;
+        }
+        return frustum;
+    }
+
+    /**
+     * @return Número que muda sempre que alguma das matrizes da camera é recalculada.
+     */
+    public int getVersion() {
+        update();
+        return version;
+    }
+
+    /**
+     * Envia os dados da camera para o uniform block Camera, compartilhado por todos os shaders que o declaram. Basta
+     * uma chamada por quadro, independente da quantidade de shaders.
+     * @param time Tempo, em segundos, disponível nos shaders como uTime
+     * @see CameraUniforms
+     */
+    public Camera apply(float time) {
+        CameraUniforms.getInstance().update(this, time);
+        return this;
+    }
+
+    /**
+     * Envia os dados da camera para o uniform block Camera e define as matrizes de projeção nas propriedades
+     * uProjection e uView do shader, caso ele as declare fora do bloco. Shaders que usam apenas o bloco, como os que
+     * acompanham a biblioteca, não têm nenhum uniform definido.
      * @param shader Shader onde será definido. Já deve ter sofrido bind.
+     * @param time Tempo, em segundos, disponível nos shaders como uTime
      */
-    public Camera apply(Shader shader) {
-        shader.setUniform("uProjection", getProjectionMatrix())
-              .setUniform("uView", getViewMatrix());
+    public Camera apply(Shader shader, float time) {
+        apply(time);
+        if (shader.hasUniform("uProjection")) {
+            shader.setUniform("uProjection", getProjectionMatrix());
+        }
+        if (shader.hasUniform("uView")) {
+            shader.setUniform("uView", getViewMatrix());
+        }
         return this;
     }
 }
@@ -4,16 +4,26 @@ import org.joml.Vector3f;
 
 import static br.pucpr.mage.MathUtil.*;
 
+/**
+ * Camera em primeira pessoa. A direção é calculada a partir do ângulo de rotação em torno do eixo y.
+ *
+ * Os vetores retornados por getDirection e getTarget pertencem à camera e são atualizados a cada chamada, assim
+ * nenhum objeto é criado durante a movimentação. Copie-os caso precise guardar o valor.
+ */
 public class CameraFPS extends Camera {
     private float angleY = 0;
 
+    private Vector3f direction = new Vector3f();
+    private Vector3f target = new Vector3f();
+    private Vector3f displacement = new Vector3f();
+
     public Vector3f getDirection() {
-        return new Vector3f(0, 0, -1).rotateY(angleY);
+        return direction.set(0, 0, -1).rotateY(angleY);
     }
 
     @Override
     public Vector3f getTarget() {
-        return add(getPosition(), getDirection());
+        return add(getPosition(), getDirection(), target);
     }
 
     public CameraFPS setAngleY(float angle) {
@@ -27,16 +37,15 @@ public class CameraFPS extends Camera {
     }
 
     public CameraFPS move(float speed, float secs) {
-        var displacement = mul(getDirection(), speed * secs);
+        mul(getDirection(), speed * secs, displacement);
         getPosition().add(displacement);
         return this;
     }
 
     public CameraFPS strafe(float speed, float secs) {
-        var strafe =
-                cross(getUp(), getDirection())
+        cross(getUp(), getDirection(), displacement)
                 .mul(speed * secs);
-        getPosition().add(strafe);
+        getPosition().add(displacement);
         return this;
 
     }
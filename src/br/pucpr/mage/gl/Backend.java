@@ -0,0 +1,38 @@
+package br.pucpr.mage.gl;
+
+/**
+ * Mantém o GLBackend usado pelo motor. Por padrão é o LwjglBackend. Para rodar sem GPU, troque pelo RecordingBackend
+ * antes de criar qualquer Shader ou Mesh:
+ *
+ * <pre>
+ *     var recorder = new RecordingBackend();
+ *     Backend.set(recorder);
+ * </pre>
+ */
+public final class Backend {
+    private static GLBackend current = new LwjglBackend();
+
+    private Backend() {
+    }
+
+    /**
+     * @return O backend atual. Use com import static: gl().bindBuffer(...)
+     */
+    public static GLBackend gl() {
+        return current;
+    }
+
+    /**
+     * Troca o backend atual.
+     * @param backend O novo backend
+     * @return O backend que estava em uso
+     */
+    public static GLBackend set(GLBackend backend) {
+        if (backend == null) {
+            throw new IllegalArgumentException("Backend can't be null!");
+        }
+        var previous = current;
+        current = backend;
+        return previous;
+    }
+}
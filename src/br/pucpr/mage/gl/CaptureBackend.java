@@ -0,0 +1,809 @@
+package br.pucpr.mage.gl;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL30.GL_MAP_FLUSH_EXPLICIT_BIT;
+
+/**
+ * Backend que repassa todas as chamadas para outro backend e, ao mesmo tempo, as grava em um arquivo binário de
+ * trace, incluindo o conteúdo dos buffers e os valores dos uniforms. O trace pode ser reproduzido depois com o
+ * TracePlayer, sem o código da cena, isolando o custo do driver do custo de CPU do motor.
+ *
+ * Consultas que não alteram o estado (getShaderi, getActiveUniform, etc.) não são gravadas. As exceções são
+ * getUniformLocation e getUniformBlockIndex, cujos resultados são gravados com o nome consultado para que o player
+ * possa traduzir as localizações e os índices dos blocos. Os ids devolvidos pelos gen* e create* também são gravados,
+ * pela mesma razão.
+ *
+ * Fences e mapeamentos também não são gravados. O que é escrito em um buffer mapeado é gravado como um
+ * bufferSubData no flushMappedBufferRange (ou no unmapBuffer, sem GL_MAP_FLUSH_EXPLICIT_BIT), e o bufferStorage é
+ * reproduzido como um bufferData, para que esses dados possam ser enviados.
+ *
+ * A gravação termina depois da quantidade de quadros indicada ou quando close() é chamado. Os quadros são marcados
+ * por frameTerminator(), chamado pelo GLState ao final de cada quadro. As chamadas feitas antes do primeiro quadro
+ * (criação de shaders e malhas) fazem parte do quadro 0. Instale o backend antes do init da cena:
+ *
+ * <pre>
+ *     Backend.set(new CaptureBackend(Backend.gl(), "frames.trace", 100));
+ * </pre>
+ */
+public class CaptureBackend implements GLBackend {
+    private final GLBackend delegate;
+    private DataOutputStream out;
+    private final int maxFrames;
+    private int frames;
+
+    private final Map<Integer, Integer> boundBuffers = new HashMap<>();
+    private final Map<Integer, Mapping> mappings = new HashMap<>();
+
+    /**
+     * Região mapeada de um buffer.
+     */
+    private static class Mapping {
+        final ByteBuffer memory;
+        final long offset;
+        final boolean explicit;
+
+        Mapping(ByteBuffer memory, long offset, boolean explicit) {
+            this.memory = memory;
+            this.offset = offset;
+            this.explicit = explicit;
+        }
+    }
+
+    /**
+     * Cria o backend e abre o arquivo de trace.
+     * @param delegate Backend que executa as chamadas
+     * @param file Arquivo de trace. Se existir, é sobrescrito.
+     * @param maxFrames Quantidade de quadros gravados, ou 0 para gravar até o close.
+     */
+    public CaptureBackend(GLBackend delegate, String file, int maxFrames) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Delegate can't be null!");
+        }
+        if (maxFrames < 0) {
+            throw new IllegalArgumentException("Max frames < 0!");
+        }
+        this.delegate = delegate;
+        this.maxFrames = maxFrames;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+            out.writeInt(TraceOp.MAGIC);
+            out.writeInt(TraceOp.VERSION);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to create trace file", e);
+        }
+    }
+
+    /**
+     * @return O backend que executa as chamadas
+     */
+    public GLBackend getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @return A quantidade de quadros gravados
+     */
+    public int getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return Verdadeiro enquanto as chamadas estão sendo gravadas
+     */
+    public boolean isRecording() {
+        return out != null;
+    }
+
+    /**
+     * Encerra a gravação e fecha o arquivo. As chamadas continuam sendo repassadas ao delegate.
+     */
+    public void close() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to write trace file", e);
+        } finally {
+            out = null;
+        }
+    }
+
+    private boolean op(TraceOp op) {
+        if (out == null) return false;
+        try {
+            out.writeByte(op.ordinal());
+        } catch (IOException e) {
+            close();
+            throw new RuntimeException("Unable to write trace file", e);
+        }
+        return true;
+    }
+
+    private void ints(int... values) {
+        try {
+            for (var value : values) out.writeInt(value);
+        } catch (IOException e) {
+            close();
+            throw new RuntimeException("Unable to write trace file", e);
+        }
+    }
+
+    private void floats(float... values) {
+        try {
+            for (var value : values) out.writeFloat(value);
+        } catch (IOException e) {
+            close();
+            throw new RuntimeException("Unable to write trace file", e);
+        }
+    }
+
+    private void longs(long value) {
+        try {
+            out.writeLong(value);
+        } catch (IOException e) {
+            close();
+            throw new RuntimeException("Unable to write trace file", e);
+        }
+    }
+
+    private void floats(FloatBuffer data) {
+        try {
+            out.writeInt(data.remaining());
+            for (var i = data.position(); i < data.limit(); i++) out.writeFloat(data.get(i));
+        } catch (IOException e) {
+            close();
+            throw new RuntimeException("Unable to write trace file", e);
+        }
+    }
+
+    private void ints(IntBuffer data) {
+        try {
+            out.writeInt(data.remaining());
+            for (var i = data.position(); i < data.limit(); i++) out.writeInt(data.get(i));
+        } catch (IOException e) {
+            close();
+            throw new RuntimeException("Unable to write trace file", e);
+        }
+    }
+
+    private void bytes(ByteBuffer data) {
+        try {
+            out.writeInt(data.remaining());
+            for (var i = data.position(); i < data.limit(); i++) out.writeByte(data.get(i));
+        } catch (IOException e) {
+            close();
+            throw new RuntimeException("Unable to write trace file", e);
+        }
+    }
+
+    private void string(CharSequence text) {
+        try {
+            out.writeUTF(text.toString());
+        } catch (IOException e) {
+            close();
+            throw new RuntimeException("Unable to write trace file", e);
+        }
+    }
+
+    @Override
+    public void frameTerminator() {
+        delegate.frameTerminator();
+        if (!op(TraceOp.FRAME)) return;
+        frames++;
+        if (maxFrames > 0 && frames >= maxFrames) {
+            close();
+        }
+    }
+
+    // Estado
+    // ------
+    @Override
+    public void enable(int cap) {
+        delegate.enable(cap);
+        if (op(TraceOp.ENABLE)) ints(cap);
+    }
+
+    @Override
+    public void disable(int cap) {
+        delegate.disable(cap);
+        if (op(TraceOp.DISABLE)) ints(cap);
+    }
+
+    @Override
+    public void polygonMode(int face, int mode) {
+        delegate.polygonMode(face, mode);
+        if (op(TraceOp.POLYGON_MODE)) ints(face, mode);
+    }
+
+    @Override
+    public void clearColor(float r, float g, float b, float a) {
+        delegate.clearColor(r, g, b, a);
+        if (op(TraceOp.CLEAR_COLOR)) floats(r, g, b, a);
+    }
+
+    @Override
+    public void clear(int mask) {
+        delegate.clear(mask);
+        if (op(TraceOp.CLEAR)) ints(mask);
+    }
+
+    @Override
+    public void viewport(int x, int y, int width, int height) {
+        delegate.viewport(x, y, width, height);
+        if (op(TraceOp.VIEWPORT)) ints(x, y, width, height);
+    }
+
+    @Override
+    public void finish() {
+        delegate.finish();
+        op(TraceOp.FINISH);
+    }
+
+    // Buffers
+    // -------
+    @Override
+    public int genBuffers() {
+        var id = delegate.genBuffers();
+        if (op(TraceOp.GEN_BUFFERS)) ints(id);
+        return id;
+    }
+
+    @Override
+    public void bindBuffer(int target, int buffer) {
+        delegate.bindBuffer(target, buffer);
+        boundBuffers.put(target, buffer);
+        if (op(TraceOp.BIND_BUFFER)) ints(target, buffer);
+    }
+
+    @Override
+    public void bufferData(int target, float[] data, int usage) {
+        delegate.bufferData(target, data, usage);
+        if (op(TraceOp.BUFFER_DATA_FLOAT)) {
+            ints(target, usage, data.length);
+            floats(data);
+        }
+    }
+
+    @Override
+    public void bufferData(int target, FloatBuffer data, int usage) {
+        delegate.bufferData(target, data, usage);
+        if (op(TraceOp.BUFFER_DATA_FLOAT)) {
+            ints(target, usage);
+            floats(data);
+        }
+    }
+
+    @Override
+    public void bufferData(int target, int[] data, int usage) {
+        delegate.bufferData(target, data, usage);
+        if (op(TraceOp.BUFFER_DATA_INT)) {
+            ints(target, usage, data.length);
+            ints(data);
+        }
+    }
+
+    @Override
+    public void bufferData(int target, IntBuffer data, int usage) {
+        delegate.bufferData(target, data, usage);
+        if (op(TraceOp.BUFFER_DATA_INT)) {
+            ints(target, usage);
+            ints(data);
+        }
+    }
+
+    @Override
+    public void bufferData(int target, ByteBuffer data, int usage) {
+        delegate.bufferData(target, data, usage);
+        if (op(TraceOp.BUFFER_DATA_BYTE)) {
+            ints(target, usage);
+            bytes(data);
+        }
+    }
+
+    @Override
+    public void deleteBuffers(int buffer) {
+        delegate.deleteBuffers(buffer);
+        mappings.remove(buffer);
+        if (op(TraceOp.DELETE_BUFFERS)) ints(buffer);
+    }
+
+    // Buffers dinâmicos
+    // -----------------
+    @Override
+    public void bufferData(int target, long size, int usage) {
+        delegate.bufferData(target, size, usage);
+        if (op(TraceOp.BUFFER_DATA_SIZE)) {
+            ints(target, usage);
+            longs(size);
+        }
+    }
+
+    @Override
+    public void bufferSubData(int target, long offset, ByteBuffer data) {
+        delegate.bufferSubData(target, offset, data);
+        if (op(TraceOp.BUFFER_SUB_DATA)) {
+            ints(target);
+            longs(offset);
+            bytes(data);
+        }
+    }
+
+    @Override
+    public void bufferStorage(int target, long size, int flags) {
+        delegate.bufferStorage(target, size, flags);
+        if (op(TraceOp.BUFFER_STORAGE)) {
+            ints(target);
+            longs(size);
+        }
+    }
+
+    @Override
+    public ByteBuffer mapBufferRange(int target, long offset, long length, int access) {
+        var memory = delegate.mapBufferRange(target, offset, length, access);
+        if (memory != null) {
+            mappings.put(boundBuffers.getOrDefault(target, 0),
+                    new Mapping(memory, offset, (access & GL_MAP_FLUSH_EXPLICIT_BIT) != 0));
+        }
+        return memory;
+    }
+
+    @Override
+    public void flushMappedBufferRange(int target, long offset, long length) {
+        var mapping = mappings.get(boundBuffers.getOrDefault(target, 0));
+        if (mapping != null && op(TraceOp.BUFFER_SUB_DATA)) {
+            ints(target);
+            longs(mapping.offset + offset);
+            bytes(mapping.memory.duplicate().position((int) offset).limit((int) (offset + length)));
+        }
+        delegate.flushMappedBufferRange(target, offset, length);
+    }
+
+    @Override
+    public boolean unmapBuffer(int target) {
+        //A memória mapeada deixa de ser válida depois do unmap
+        var mapping = mappings.remove(boundBuffers.getOrDefault(target, 0));
+        if (mapping != null && !mapping.explicit && op(TraceOp.BUFFER_SUB_DATA)) {
+            ints(target);
+            longs(mapping.offset);
+            bytes(mapping.memory.duplicate().clear());
+        }
+        return delegate.unmapBuffer(target);
+    }
+
+    // Sincronização
+    // -------------
+    @Override
+    public long fenceSync() {
+        return delegate.fenceSync();
+    }
+
+    @Override
+    public int clientWaitSync(long sync, int flags, long timeout) {
+        return delegate.clientWaitSync(sync, flags, timeout);
+    }
+
+    @Override
+    public void deleteSync(long sync) {
+        delegate.deleteSync(sync);
+    }
+
+    @Override
+    public boolean isExtensionSupported(String extension) {
+        //Programas carregados de binários não têm fontes no trace, e o binário só vale para o driver atual. Sem a
+        //extensão, o Shader sempre compila os fontes durante a captura.
+        if (extension.equals("GL_ARB_get_program_binary")) {
+            return false;
+        }
+        return delegate.isExtensionSupported(extension);
+    }
+
+    @Override
+    public String getString(int name) {
+        return delegate.getString(name);
+    }
+
+    @Override
+    public int getInteger(int pname) {
+        return delegate.getInteger(pname);
+    }
+
+    // Framebuffers
+    // ------------
+    @Override
+    public int genFramebuffers() {
+        var id = delegate.genFramebuffers();
+        if (op(TraceOp.GEN_FRAMEBUFFERS)) ints(id);
+        return id;
+    }
+
+    @Override
+    public void bindFramebuffer(int target, int framebuffer) {
+        delegate.bindFramebuffer(target, framebuffer);
+        if (op(TraceOp.BIND_FRAMEBUFFER)) ints(target, framebuffer);
+    }
+
+    @Override
+    public void framebufferRenderbuffer(int target, int attachment, int renderbufferTarget, int renderbuffer) {
+        delegate.framebufferRenderbuffer(target, attachment, renderbufferTarget, renderbuffer);
+        if (op(TraceOp.FRAMEBUFFER_RENDERBUFFER)) ints(target, attachment, renderbufferTarget, renderbuffer);
+    }
+
+    @Override
+    public int checkFramebufferStatus(int target) {
+        return delegate.checkFramebufferStatus(target);
+    }
+
+    @Override
+    public void deleteFramebuffers(int framebuffer) {
+        delegate.deleteFramebuffers(framebuffer);
+        if (op(TraceOp.DELETE_FRAMEBUFFERS)) ints(framebuffer);
+    }
+
+    @Override
+    public int genRenderbuffers() {
+        var id = delegate.genRenderbuffers();
+        if (op(TraceOp.GEN_RENDERBUFFERS)) ints(id);
+        return id;
+    }
+
+    @Override
+    public void bindRenderbuffer(int target, int renderbuffer) {
+        delegate.bindRenderbuffer(target, renderbuffer);
+        if (op(TraceOp.BIND_RENDERBUFFER)) ints(target, renderbuffer);
+    }
+
+    @Override
+    public void renderbufferStorage(int target, int internalFormat, int width, int height) {
+        delegate.renderbufferStorage(target, internalFormat, width, height);
+        if (op(TraceOp.RENDERBUFFER_STORAGE)) ints(target, internalFormat, width, height);
+    }
+
+    @Override
+    public void deleteRenderbuffers(int renderbuffer) {
+        delegate.deleteRenderbuffers(renderbuffer);
+        if (op(TraceOp.DELETE_RENDERBUFFERS)) ints(renderbuffer);
+    }
+
+    // Vertex arrays
+    // -------------
+    @Override
+    public int genVertexArrays() {
+        var id = delegate.genVertexArrays();
+        if (op(TraceOp.GEN_VERTEX_ARRAYS)) ints(id);
+        return id;
+    }
+
+    @Override
+    public void bindVertexArray(int array) {
+        delegate.bindVertexArray(array);
+        if (op(TraceOp.BIND_VERTEX_ARRAY)) ints(array);
+    }
+
+    @Override
+    public void enableVertexAttribArray(int index) {
+        delegate.enableVertexAttribArray(index);
+        if (op(TraceOp.ENABLE_VERTEX_ATTRIB_ARRAY)) ints(index);
+    }
+
+    @Override
+    public void disableVertexAttribArray(int index) {
+        delegate.disableVertexAttribArray(index);
+        if (op(TraceOp.DISABLE_VERTEX_ATTRIB_ARRAY)) ints(index);
+    }
+
+    @Override
+    public void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, long pointer) {
+        delegate.vertexAttribPointer(index, size, type, normalized, stride, pointer);
+        if (op(TraceOp.VERTEX_ATTRIB_POINTER)) {
+            ints(index, size, type, normalized ? 1 : 0, stride);
+            longs(pointer);
+        }
+    }
+
+    @Override
+    public void vertexAttribDivisor(int index, int divisor) {
+        delegate.vertexAttribDivisor(index, divisor);
+        if (op(TraceOp.VERTEX_ATTRIB_DIVISOR)) ints(index, divisor);
+    }
+
+    // Desenho
+    // -------
+    @Override
+    public void drawArrays(int mode, int first, int count) {
+        delegate.drawArrays(mode, first, count);
+        if (op(TraceOp.DRAW_ARRAYS)) ints(mode, first, count);
+    }
+
+    @Override
+    public void drawElements(int mode, int count, int type, long indices) {
+        delegate.drawElements(mode, count, type, indices);
+        if (op(TraceOp.DRAW_ELEMENTS)) {
+            ints(mode, count, type);
+            longs(indices);
+        }
+    }
+
+    @Override
+    public void drawArraysInstanced(int mode, int first, int count, int instances) {
+        delegate.drawArraysInstanced(mode, first, count, instances);
+        if (op(TraceOp.DRAW_ARRAYS_INSTANCED)) ints(mode, first, count, instances);
+    }
+
+    @Override
+    public void drawElementsInstanced(int mode, int count, int type, long indices, int instances) {
+        delegate.drawElementsInstanced(mode, count, type, indices, instances);
+        if (op(TraceOp.DRAW_ELEMENTS_INSTANCED)) {
+            ints(mode, count, type, instances);
+            longs(indices);
+        }
+    }
+
+    @Override
+    public void drawElementsBaseVertex(int mode, int count, int type, long indices, int baseVertex) {
+        delegate.drawElementsBaseVertex(mode, count, type, indices, baseVertex);
+        if (op(TraceOp.DRAW_ELEMENTS_BASE_VERTEX)) {
+            ints(mode, count, type, baseVertex);
+            longs(indices);
+        }
+    }
+
+    @Override
+    public void multiDrawElementsIndirect(int mode, int type, long indirect, int drawCount, int stride) {
+        delegate.multiDrawElementsIndirect(mode, type, indirect, drawCount, stride);
+        if (op(TraceOp.MULTI_DRAW_ELEMENTS_INDIRECT)) {
+            ints(mode, type, drawCount, stride);
+            longs(indirect);
+        }
+    }
+
+    // Shaders
+    // -------
+    @Override
+    public int createShader(int type) {
+        var id = delegate.createShader(type);
+        if (op(TraceOp.CREATE_SHADER)) ints(type, id);
+        return id;
+    }
+
+    @Override
+    public void shaderSource(int shader, CharSequence source) {
+        delegate.shaderSource(shader, source);
+        if (op(TraceOp.SHADER_SOURCE)) {
+            //writeUTF é limitado a 64KB, então o fonte é gravado como um array de chars
+            ints(shader, source.length());
+            try {
+                out.writeChars(source.toString());
+            } catch (IOException e) {
+                close();
+                throw new RuntimeException("Unable to write trace file", e);
+            }
+        }
+    }
+
+    @Override
+    public void compileShader(int shader) {
+        delegate.compileShader(shader);
+        if (op(TraceOp.COMPILE_SHADER)) ints(shader);
+    }
+
+    @Override
+    public int getShaderi(int shader, int pname) {
+        return delegate.getShaderi(shader, pname);
+    }
+
+    @Override
+    public String getShaderInfoLog(int shader) {
+        return delegate.getShaderInfoLog(shader);
+    }
+
+    @Override
+    public int createProgram() {
+        var id = delegate.createProgram();
+        if (op(TraceOp.CREATE_PROGRAM)) ints(id);
+        return id;
+    }
+
+    @Override
+    public void attachShader(int program, int shader) {
+        delegate.attachShader(program, shader);
+        if (op(TraceOp.ATTACH_SHADER)) ints(program, shader);
+    }
+
+    @Override
+    public void detachShader(int program, int shader) {
+        delegate.detachShader(program, shader);
+        if (op(TraceOp.DETACH_SHADER)) ints(program, shader);
+    }
+
+    @Override
+    public void bindAttribLocation(int program, int index, CharSequence name) {
+        delegate.bindAttribLocation(program, index, name);
+        if (op(TraceOp.BIND_ATTRIB_LOCATION)) {
+            ints(program, index);
+            string(name);
+        }
+    }
+
+    @Override
+    public void linkProgram(int program) {
+        delegate.linkProgram(program);
+        if (op(TraceOp.LINK_PROGRAM)) ints(program);
+    }
+
+    @Override
+    public int getProgrami(int program, int pname) {
+        return delegate.getProgrami(program, pname);
+    }
+
+    @Override
+    public String getProgramInfoLog(int program) {
+        return delegate.getProgramInfoLog(program);
+    }
+
+    @Override
+    public void deleteProgram(int program) {
+        delegate.deleteProgram(program);
+        if (op(TraceOp.DELETE_PROGRAM)) ints(program);
+    }
+
+    @Override
+    public void programParameteri(int program, int pname, int value) {
+        delegate.programParameteri(program, pname, value);
+    }
+
+    @Override
+    public byte[] getProgramBinary(int program, IntBuffer format) {
+        return delegate.getProgramBinary(program, format);
+    }
+
+    /**
+     * Não é gravado: o binário não pode ser reproduzido em outro driver. Veja isExtensionSupported.
+     */
+    @Override
+    public void programBinary(int program, int format, ByteBuffer binary) {
+        delegate.programBinary(program, format, binary);
+    }
+
+    @Override
+    public void useProgram(int program) {
+        delegate.useProgram(program);
+        if (op(TraceOp.USE_PROGRAM)) ints(program);
+    }
+
+    @Override
+    public int getAttribLocation(int program, CharSequence name) {
+        return delegate.getAttribLocation(program, name);
+    }
+
+    @Override
+    public int getUniformLocation(int program, CharSequence name) {
+        var location = delegate.getUniformLocation(program, name);
+        if (op(TraceOp.GET_UNIFORM_LOCATION)) {
+            ints(program, location);
+            string(name);
+        }
+        return location;
+    }
+
+    @Override
+    public String getActiveAttrib(int program, int index, IntBuffer size, IntBuffer type) {
+        return delegate.getActiveAttrib(program, index, size, type);
+    }
+
+    @Override
+    public String getActiveUniform(int program, int index, IntBuffer size, IntBuffer type) {
+        return delegate.getActiveUniform(program, index, size, type);
+    }
+
+    // Uniforms
+    // --------
+    @Override
+    public void uniform1i(int location, int v0) {
+        delegate.uniform1i(location, v0);
+        if (op(TraceOp.UNIFORM_1I)) ints(location, v0);
+    }
+
+    @Override
+    public void uniform1f(int location, float v0) {
+        delegate.uniform1f(location, v0);
+        if (op(TraceOp.UNIFORM_1F)) {
+            ints(location);
+            floats(v0);
+        }
+    }
+
+    @Override
+    public void uniform2f(int location, float v0, float v1) {
+        delegate.uniform2f(location, v0, v1);
+        if (op(TraceOp.UNIFORM_2F)) {
+            ints(location);
+            floats(v0, v1);
+        }
+    }
+
+    @Override
+    public void uniform3f(int location, float v0, float v1, float v2) {
+        delegate.uniform3f(location, v0, v1, v2);
+        if (op(TraceOp.UNIFORM_3F)) {
+            ints(location);
+            floats(v0, v1, v2);
+        }
+    }
+
+    @Override
+    public void uniform4f(int location, float v0, float v1, float v2, float v3) {
+        delegate.uniform4f(location, v0, v1, v2, v3);
+        if (op(TraceOp.UNIFORM_4F)) {
+            ints(location);
+            floats(v0, v1, v2, v3);
+        }
+    }
+
+    @Override
+    public void uniformMatrix3fv(int location, boolean transpose, FloatBuffer value) {
+        delegate.uniformMatrix3fv(location, transpose, value);
+        if (op(TraceOp.UNIFORM_MATRIX_3FV)) {
+            ints(location, transpose ? 1 : 0);
+            floats(value);
+        }
+    }
+
+    @Override
+    public void uniformMatrix4fv(int location, boolean transpose, FloatBuffer value) {
+        delegate.uniformMatrix4fv(location, transpose, value);
+        if (op(TraceOp.UNIFORM_MATRIX_4FV)) {
+            ints(location, transpose ? 1 : 0);
+            floats(value);
+        }
+    }
+
+    // Uniform blocks
+    // --------------
+    @Override
+    public void bindBufferBase(int target, int index, int buffer) {
+        delegate.bindBufferBase(target, index, buffer);
+        if (op(TraceOp.BIND_BUFFER_BASE)) ints(target, index, buffer);
+    }
+
+    @Override
+    public void bindBufferRange(int target, int index, int buffer, long offset, long size) {
+        delegate.bindBufferRange(target, index, buffer, offset, size);
+        if (op(TraceOp.BIND_BUFFER_RANGE)) {
+            ints(target, index, buffer);
+            longs(offset);
+            longs(size);
+        }
+    }
+
+    @Override
+    public int getUniformBlockIndex(int program, CharSequence name) {
+        var index = delegate.getUniformBlockIndex(program, name);
+        if (op(TraceOp.GET_UNIFORM_BLOCK_INDEX)) {
+            ints(program, index);
+            string(name);
+        }
+        return index;
+    }
+
+    @Override
+    public void uniformBlockBinding(int program, int blockIndex, int binding) {
+        delegate.uniformBlockBinding(program, blockIndex, binding);
+        if (op(TraceOp.UNIFORM_BLOCK_BINDING)) ints(program, blockIndex, binding);
+    }
+
+    // Janela
+    // ------
+    @Override
+    public float getWindowAspect() {
+        return delegate.getWindowAspect();
+    }
+}
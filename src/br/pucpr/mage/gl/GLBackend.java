@@ -0,0 +1,186 @@
+package br.pucpr.mage.gl;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Interface por onde passam todas as chamadas OpenGL feitas pelo motor. Os nomes dos métodos seguem os nomes das
+ * funções da OpenGL, sem o prefixo "gl". Constantes (GL_ARRAY_BUFFER, GL_FLOAT, etc.) continuam sendo as da LWJGL.
+ *
+ * Existem três implementações:
+ * - LwjglBackend: Repassa as chamadas para a LWJGL. É o padrão.
+ * - RecordingBackend: Não desenha nada. Apenas conta as chamadas e bytes enviados, permitindo medir o custo de CPU
+ * do motor em máquinas sem GPU.
+ * - CaptureBackend: Repassa as chamadas para outro backend e as grava em um arquivo de trace, que pode ser
+ * reproduzido pelo TracePlayer.
+ *
+ * @see Backend#gl()
+ */
+public interface GLBackend {
+    // Estado
+    // ------
+    void enable(int cap);
+    void disable(int cap);
+    void polygonMode(int face, int mode);
+    void clearColor(float r, float g, float b, float a);
+    void clear(int mask);
+    void viewport(int x, int y, int width, int height);
+    void finish();
+
+    /**
+     * Marca o final de um quadro, como a extensão GL_GREMEDY_frame_terminator. Não gera nenhuma chamada OpenGL, mas
+     * permite que ferramentas de captura separem os quadros.
+     */
+    default void frameTerminator() {
+    }
+
+    // Buffers
+    // -------
+    int genBuffers();
+    void bindBuffer(int target, int buffer);
+    void bufferData(int target, float[] data, int usage);
+    void bufferData(int target, FloatBuffer data, int usage);
+    void bufferData(int target, int[] data, int usage);
+    void bufferData(int target, IntBuffer data, int usage);
+    void bufferData(int target, ByteBuffer data, int usage);
+    void deleteBuffers(int buffer);
+
+    // Buffers dinâmicos
+    // -----------------
+    /**
+     * Aloca o armazenamento do buffer sem dados. Chamado em um buffer existente, faz o orphaning: o driver entrega uma
+     * nova área de memória e libera a antiga quando a GPU terminar de usá-la.
+     */
+    void bufferData(int target, long size, int usage);
+    void bufferSubData(int target, long offset, ByteBuffer data);
+
+    /**
+     * Aloca um armazenamento imutável (OpenGL 4.4 ou ARB_buffer_storage).
+     */
+    void bufferStorage(int target, long size, int flags);
+    ByteBuffer mapBufferRange(int target, long offset, long length, int access);
+    void flushMappedBufferRange(int target, long offset, long length);
+    boolean unmapBuffer(int target);
+
+    // Sincronização
+    // -------------
+    /**
+     * @return Uma fence (GL_SYNC_GPU_COMMANDS_COMPLETE), sinalizada quando a GPU terminar os comandos já enviados.
+     */
+    long fenceSync();
+    int clientWaitSync(long sync, int flags, long timeout);
+    void deleteSync(long sync);
+
+    /**
+     * @param extension Nome da extensão, como "GL_ARB_buffer_storage"
+     * @return Verdadeiro se o contexto atual oferece a extensão.
+     */
+    boolean isExtensionSupported(String extension);
+
+    /**
+     * @param name GL_VENDOR, GL_RENDERER ou GL_VERSION
+     * @return O texto informado pelo driver
+     */
+    String getString(int name);
+    int getInteger(int pname);
+
+    // Framebuffers
+    // ------------
+    int genFramebuffers();
+    void bindFramebuffer(int target, int framebuffer);
+    void framebufferRenderbuffer(int target, int attachment, int renderbufferTarget, int renderbuffer);
+    int checkFramebufferStatus(int target);
+    void deleteFramebuffers(int framebuffer);
+    int genRenderbuffers();
+    void bindRenderbuffer(int target, int renderbuffer);
+    void renderbufferStorage(int target, int internalFormat, int width, int height);
+    void deleteRenderbuffers(int renderbuffer);
+
+    // Vertex arrays
+    // -------------
+    int genVertexArrays();
+    void bindVertexArray(int array);
+    void enableVertexAttribArray(int index);
+    void disableVertexAttribArray(int index);
+    void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, long pointer);
+    void vertexAttribDivisor(int index, int divisor);
+
+    // Desenho
+    // -------
+    void drawArrays(int mode, int first, int count);
+    void drawElements(int mode, int count, int type, long indices);
+    void drawArraysInstanced(int mode, int first, int count, int instances);
+    void drawElementsInstanced(int mode, int count, int type, long indices, int instances);
+    void drawElementsBaseVertex(int mode, int count, int type, long indices, int baseVertex);
+
+    /**
+     * Executa vários comandos de desenho lidos do GL_DRAW_INDIRECT_BUFFER vinculado (OpenGL 4.3 ou
+     * ARB_multi_draw_indirect).
+     * @param indirect Deslocamento, em bytes, do primeiro comando dentro do buffer
+     * @param drawCount Quantidade de comandos
+     * @param stride Distância entre os comandos, ou 0 para comandos contíguos
+     */
+    void multiDrawElementsIndirect(int mode, int type, long indirect, int drawCount, int stride);
+
+    // Shaders
+    // -------
+    int createShader(int type);
+    void shaderSource(int shader, CharSequence source);
+    void compileShader(int shader);
+    int getShaderi(int shader, int pname);
+    String getShaderInfoLog(int shader);
+    int createProgram();
+    void attachShader(int program, int shader);
+    void detachShader(int program, int shader);
+    void bindAttribLocation(int program, int index, CharSequence name);
+    void linkProgram(int program);
+    int getProgrami(int program, int pname);
+    String getProgramInfoLog(int program);
+    void deleteProgram(int program);
+
+    // Binários de programas (OpenGL 4.1 ou ARB_get_program_binary)
+    // ------------------------------------------------------------
+    void programParameteri(int program, int pname, int value);
+
+    /**
+     * @param program Programa linkado com GL_PROGRAM_BINARY_RETRIEVABLE_HINT
+     * @param format Recebe o formato do binário, usado depois em programBinary
+     * @return Uma cópia do binário do programa
+     */
+    byte[] getProgramBinary(int program, IntBuffer format);
+
+    /**
+     * Carrega o programa a partir de um binário. Se o driver o rejeitar, GL_LINK_STATUS fica como GL_FALSE.
+     */
+    void programBinary(int program, int format, ByteBuffer binary);
+    void useProgram(int program);
+    int getAttribLocation(int program, CharSequence name);
+    int getUniformLocation(int program, CharSequence name);
+    String getActiveAttrib(int program, int index, IntBuffer size, IntBuffer type);
+    String getActiveUniform(int program, int index, IntBuffer size, IntBuffer type);
+
+    // Uniform blocks
+    // --------------
+    void bindBufferBase(int target, int index, int buffer);
+    void bindBufferRange(int target, int index, int buffer, long offset, long size);
+    int getUniformBlockIndex(int program, CharSequence name);
+    void uniformBlockBinding(int program, int blockIndex, int binding);
+
+    // Uniforms
+    // --------
+    void uniform1i(int location, int v0);
+    void uniform1f(int location, float v0);
+    void uniform2f(int location, float v0, float v1);
+    void uniform3f(int location, float v0, float v1, float v2);
+    void uniform4f(int location, float v0, float v1, float v2, float v3);
+    void uniformMatrix3fv(int location, boolean transpose, FloatBuffer value);
+    void uniformMatrix4fv(int location, boolean transpose, FloatBuffer value);
+
+    // Janela
+    // ------
+    /**
+     * @return A proporção (largura / altura) da janela associada ao contexto atual.
+     */
+    float getWindowAspect();
+}
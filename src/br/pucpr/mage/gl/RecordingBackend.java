@@ -0,0 +1,901 @@
+package br.pucpr.mage.gl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.GL_NUM_EXTENSIONS;
+import static org.lwjgl.opengl.GL30.GL_FRAMEBUFFER_COMPLETE;
+import static org.lwjgl.opengl.GL30.GL_MAP_FLUSH_EXPLICIT_BIT;
+import static org.lwjgl.opengl.GL31.GL_INVALID_INDEX;
+import static org.lwjgl.opengl.GL32.GL_ALREADY_SIGNALED;
+import static org.lwjgl.opengl.GL40.GL_DRAW_INDIRECT_BUFFER;
+import static org.lwjgl.opengl.GL41.GL_NUM_PROGRAM_BINARY_FORMATS;
+
+/**
+ * Backend que não desenha nada. Cada chamada é apenas contada, assim como a quantidade de bytes enviados para a
+ * "placa de vídeo" (dados de buffers e valores de uniforms). Serve para medir e testar o custo de CPU do motor em
+ * máquinas sem GPU.
+ *
+ * Como não há driver, os shaders são sempre compilados e linkados com sucesso. Para que as buscas por uniforms e
+ * atributos funcionem como na OpenGL, o código fonte recebido em shaderSource é varrido em busca das declarações
+ * "uniform" e "in" (essa última apenas no vertex shader), e cada variável encontrada recebe uma localização.
+ * Localizações definidas com bindAttribLocation são respeitadas, e os demais atributos ocupam as localizações livres.
+ * Os uniform blocks recebem índices na ordem em que são declarados.
+ *
+ * Buffers mapeados (mapBufferRange) recebem memória de verdade, para que o código que escreve neles funcione, e as
+ * fences são sempre sinalizadas imediatamente. Nenhuma extensão é suportada, a não ser as informadas em addExtension.
+ *
+ * Com GL_ARB_get_program_binary, os binários de programa (PROGRAM_BINARY_FORMAT) contêm as variáveis encontradas no
+ * link, e podem ser carregados de volta com programBinary. Binários em outro formato, ou corrompidos, são rejeitados.
+ */
+public class RecordingBackend implements GLBackend {
+    /**
+     * Funções da OpenGL contadas pelo backend.
+     */
+    public enum Call {
+        ENABLE, DISABLE, POLYGON_MODE, CLEAR_COLOR, CLEAR, VIEWPORT, FINISH,
+        GEN_BUFFERS, BIND_BUFFER, BUFFER_DATA, BUFFER_SUB_DATA, BUFFER_STORAGE,
+        BIND_BUFFER_BASE, BIND_BUFFER_RANGE, GET_UNIFORM_BLOCK_INDEX, UNIFORM_BLOCK_BINDING,
+        DELETE_BUFFERS, MAP_BUFFER_RANGE, FLUSH_MAPPED_BUFFER_RANGE, UNMAP_BUFFER, FENCE_SYNC, CLIENT_WAIT_SYNC, DELETE_SYNC,
+        GEN_FRAMEBUFFERS, BIND_FRAMEBUFFER, FRAMEBUFFER_RENDERBUFFER, CHECK_FRAMEBUFFER_STATUS, DELETE_FRAMEBUFFERS,
+        GEN_RENDERBUFFERS, BIND_RENDERBUFFER, RENDERBUFFER_STORAGE, DELETE_RENDERBUFFERS,
+        GEN_VERTEX_ARRAYS, BIND_VERTEX_ARRAY, ENABLE_VERTEX_ATTRIB_ARRAY, DISABLE_VERTEX_ATTRIB_ARRAY,
+        VERTEX_ATTRIB_POINTER, VERTEX_ATTRIB_DIVISOR,
+        DRAW_ARRAYS, DRAW_ELEMENTS, DRAW_ARRAYS_INSTANCED, DRAW_ELEMENTS_INSTANCED,
+        DRAW_ELEMENTS_BASE_VERTEX, MULTI_DRAW_ELEMENTS_INDIRECT,
+        CREATE_SHADER, SHADER_SOURCE, COMPILE_SHADER, GET_SHADER, CREATE_PROGRAM, ATTACH_SHADER, DETACH_SHADER,
+        BIND_ATTRIB_LOCATION, LINK_PROGRAM, GET_PROGRAM, USE_PROGRAM, GET_ATTRIB_LOCATION, GET_UNIFORM_LOCATION, GET_ACTIVE,
+        DELETE_PROGRAM, PROGRAM_PARAMETER, GET_PROGRAM_BINARY, PROGRAM_BINARY,
+        UNIFORM
+    }
+
+    private static final Pattern UNIFORM = Pattern.compile(
+            "^\\s*(?:layout\\s*\\([^)]*\\)\\s*)?uniform\\s+(?:\\w+\\s+)*?(\\w+)\\s+(\\w+)\\s*(?:\\[\\s*(\\d+)\\s*])?\\s*;");
+    private static final Pattern BLOCK = Pattern.compile(
+            "^\\s*(?:layout\\s*\\([^)]*\\)\\s*)?uniform\\s+(\\w+)\\s*(?:\\{|$)");
+    private static final Pattern ATTRIBUTE = Pattern.compile(
+            "^\\s*(?:layout\\s*\\([^)]*\\)\\s*)?(?:in|attribute)\\s+(?:\\w+\\s+)*?(\\w+)\\s+(\\w+)\\s*;");
+
+    /**
+     * Formato dos binários de programa do backend. O binário guarda as variáveis encontradas no link.
+     */
+    public static final int PROGRAM_BINARY_FORMAT = 0x4D414745;
+
+    private final long[] calls = new long[Call.values().length];
+    private long bytes;
+    private long drawnElements;
+
+    private int nextId = 1;
+    private final int width;
+    private final int height;
+
+    private final Map<Integer, Integer> shaderTypes = new HashMap<>();
+    private final Map<Integer, String> shaderSources = new HashMap<>();
+    private final Map<Integer, List<Integer>> programShaders = new HashMap<>();
+    private final Map<Integer, Program> programs = new HashMap<>();
+    private final Map<Integer, Map<String, Integer>> attribBindings = new HashMap<>();
+    private final Set<Integer> failedPrograms = new HashSet<>();
+
+    private final Map<Integer, Integer> boundBuffers = new HashMap<>();
+    private final Map<Integer, ByteBuffer> bufferMemory = new HashMap<>();
+    private final Map<Integer, Long> pendingMaps = new HashMap<>();
+    private final Set<String> extensions = new HashSet<>();
+
+    /**
+     * Variáveis encontradas nos fontes de um programa linkado.
+     */
+    static class Program {
+        final Map<String, Variable> uniforms = new LinkedHashMap<>();
+        final Map<String, Variable> attributes = new LinkedHashMap<>();
+        final List<String> blocks = new ArrayList<>();
+        int nextUniformLocation;
+
+        static Variable find(Map<String, Variable> variables, CharSequence name) {
+            var key = name.toString();
+            if (key.endsWith("[0]")) key = key.substring(0, key.length() - 3);
+            return variables.get(key);
+        }
+
+        static Variable get(Map<String, Variable> variables, int index) {
+            if (index < 0 || index >= variables.size()) {
+                throw new IllegalArgumentException("Invalid variable index: " + index);
+            }
+            return variables.values().stream().skip(index).findFirst().orElseThrow();
+        }
+    }
+
+    /**
+     * Variável declarada no GLSL, com seu tipo, tamanho (para arrays) e localização.
+     */
+    static class Variable {
+        final String name;
+        final String type;
+        final int size;
+        final int location;
+
+        Variable(String name, String type, int size, int location) {
+            this.name = name;
+            this.type = type;
+            this.size = size;
+            this.location = location;
+        }
+    }
+
+    /**
+     * Cria o backend simulando uma janela com o tamanho indicado.
+     * @param width Largura da janela simulada
+     * @param height Altura da janela simulada
+     */
+    public RecordingBackend(int width, int height) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("Invalid window size: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+    }
+
+    public RecordingBackend() {
+        this(800, 600);
+    }
+
+    /**
+     * Faz com que o backend informe a extensão como suportada, permitindo testar os caminhos que dependem dela.
+     * @param extension Nome da extensão, como "GL_ARB_buffer_storage"
+     * @return O próprio backend
+     */
+    public RecordingBackend addExtension(String extension) {
+        extensions.add(extension);
+        return this;
+    }
+
+    private void count(Call call) {
+        calls[call.ordinal()]++;
+    }
+
+    /**
+     * @param call Função da OpenGL
+     * @return Quantas vezes a função foi chamada desde o último reset.
+     */
+    public long getCount(Call call) {
+        return calls[call.ordinal()];
+    }
+
+    /**
+     * @return O total de chamadas de qualquer função desde o último reset.
+     */
+    public long getTotalCalls() {
+        var total = 0L;
+        for (var count : calls) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @return Total de bytes enviados em buffers e uniforms desde o último reset.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return Total de vértices ou índices processados em comandos de desenho desde o último reset.
+     */
+    public long getDrawnElements() {
+        return drawnElements;
+    }
+
+    /**
+     * @return A quantidade de comandos de desenho (drawArrays, drawElements e suas versões instanciadas) desde o
+     * último reset.
+     */
+    public long getDrawCalls() {
+        return getCount(Call.DRAW_ARRAYS) + getCount(Call.DRAW_ELEMENTS)
+                + getCount(Call.DRAW_ARRAYS_INSTANCED) + getCount(Call.DRAW_ELEMENTS_INSTANCED)
+                + getCount(Call.DRAW_ELEMENTS_BASE_VERTEX) + getCount(Call.MULTI_DRAW_ELEMENTS_INDIRECT);
+    }
+
+    /**
+     * Zera os contadores. Os objetos criados (buffers, shaders, programas) são mantidos.
+     * @return O próprio backend
+     */
+    public RecordingBackend reset() {
+        Arrays.fill(calls, 0);
+        bytes = 0;
+        drawnElements = 0;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        var sb = new StringBuilder("RecordingBackend[calls=").append(getTotalCalls())
+                .append(", draws=").append(getDrawCalls())
+                .append(", bytes=").append(bytes);
+        for (var call : Call.values()) {
+            if (calls[call.ordinal()] != 0) {
+                sb.append(", ").append(call).append('=').append(calls[call.ordinal()]);
+            }
+        }
+        return sb.append(']').toString();
+    }
+
+    // Estado
+    // ------
+    @Override
+    public void enable(int cap) {
+        count(Call.ENABLE);
+    }
+
+    @Override
+    public void disable(int cap) {
+        count(Call.DISABLE);
+    }
+
+    @Override
+    public void polygonMode(int face, int mode) {
+        count(Call.POLYGON_MODE);
+    }
+
+    @Override
+    public void clearColor(float r, float g, float b, float a) {
+        count(Call.CLEAR_COLOR);
+    }
+
+    @Override
+    public void clear(int mask) {
+        count(Call.CLEAR);
+    }
+
+    @Override
+    public void viewport(int x, int y, int width, int height) {
+        count(Call.VIEWPORT);
+    }
+
+    @Override
+    public void finish() {
+        count(Call.FINISH);
+    }
+
+    // Buffers
+    // -------
+    @Override
+    public int genBuffers() {
+        count(Call.GEN_BUFFERS);
+        return nextId++;
+    }
+
+    @Override
+    public void bindBuffer(int target, int buffer) {
+        count(Call.BIND_BUFFER);
+        boundBuffers.put(target, buffer);
+    }
+
+    @Override
+    public void bufferData(int target, float[] data, int usage) {
+        count(Call.BUFFER_DATA);
+        bytes += data.length * Float.BYTES;
+    }
+
+    @Override
+    public void bufferData(int target, FloatBuffer data, int usage) {
+        count(Call.BUFFER_DATA);
+        bytes += data.remaining() * Float.BYTES;
+    }
+
+    @Override
+    public void bufferData(int target, int[] data, int usage) {
+        count(Call.BUFFER_DATA);
+        bytes += data.length * Integer.BYTES;
+    }
+
+    @Override
+    public void bufferData(int target, IntBuffer data, int usage) {
+        count(Call.BUFFER_DATA);
+        bytes += data.remaining() * Integer.BYTES;
+    }
+
+    @Override
+    public void bufferData(int target, ByteBuffer data, int usage) {
+        count(Call.BUFFER_DATA);
+        bytes += data.remaining();
+    }
+
+    @Override
+    public void deleteBuffers(int buffer) {
+        count(Call.DELETE_BUFFERS);
+        bufferMemory.remove(buffer);
+    }
+
+    // Buffers dinâmicos
+    // -----------------
+    @Override
+    public void bufferData(int target, long size, int usage) {
+        count(Call.BUFFER_DATA);
+        bufferMemory.remove(boundBuffers.getOrDefault(target, 0));
+    }
+
+    @Override
+    public void bufferSubData(int target, long offset, ByteBuffer data) {
+        count(Call.BUFFER_SUB_DATA);
+        bytes += data.remaining();
+        var memory = bufferMemory.get(boundBuffers.getOrDefault(target, 0));
+        if (memory != null && offset + data.remaining() <= memory.capacity()) {
+            memory.duplicate().position((int) offset).put(data.duplicate());
+        }
+    }
+
+    @Override
+    public void bufferStorage(int target, long size, int flags) {
+        count(Call.BUFFER_STORAGE);
+        bufferMemory.put(boundBuffers.getOrDefault(target, 0), ByteBuffer.allocateDirect((int) size).order(ByteOrder.nativeOrder()));
+    }
+
+    @Override
+    public ByteBuffer mapBufferRange(int target, long offset, long length, int access) {
+        count(Call.MAP_BUFFER_RANGE);
+        var buffer = boundBuffers.getOrDefault(target, 0);
+        var memory = bufferMemory.get(buffer);
+        if (memory == null || memory.capacity() < offset + length) {
+            memory = ByteBuffer.allocateDirect((int) (offset + length)).order(ByteOrder.nativeOrder());
+            bufferMemory.put(buffer, memory);
+        }
+        //Sem flush explícito, os dados escritos são contados no unmap
+        if ((access & GL_MAP_FLUSH_EXPLICIT_BIT) == 0) {
+            pendingMaps.put(buffer, length);
+        }
+        return memory.duplicate().position((int) offset).limit((int) (offset + length)).slice()
+                .order(ByteOrder.nativeOrder());
+    }
+
+    @Override
+    public void flushMappedBufferRange(int target, long offset, long length) {
+        count(Call.FLUSH_MAPPED_BUFFER_RANGE);
+        bytes += length;
+    }
+
+    @Override
+    public boolean unmapBuffer(int target) {
+        count(Call.UNMAP_BUFFER);
+        var length = pendingMaps.remove(boundBuffers.getOrDefault(target, 0));
+        if (length != null) bytes += length;
+        return true;
+    }
+
+    // Sincronização
+    // -------------
+    @Override
+    public long fenceSync() {
+        count(Call.FENCE_SYNC);
+        return nextId++;
+    }
+
+    @Override
+    public int clientWaitSync(long sync, int flags, long timeout) {
+        count(Call.CLIENT_WAIT_SYNC);
+        return GL_ALREADY_SIGNALED;
+    }
+
+    @Override
+    public void deleteSync(long sync) {
+        count(Call.DELETE_SYNC);
+    }
+
+    @Override
+    public boolean isExtensionSupported(String extension) {
+        return extensions.contains(extension);
+    }
+
+    @Override
+    public String getString(int name) {
+        if (name == GL_VENDOR) return "br.pucpr.mage";
+        if (name == GL_RENDERER) return "RecordingBackend";
+        if (name == GL_VERSION) return "3.3.0";
+        return null;
+    }
+
+    @Override
+    public int getInteger(int pname) {
+        if (pname == GL_NUM_PROGRAM_BINARY_FORMATS) {
+            return extensions.contains("GL_ARB_get_program_binary") ? 1 : 0;
+        }
+        if (pname == GL_NUM_EXTENSIONS) return extensions.size();
+        return 0;
+    }
+
+    // Framebuffers
+    // ------------
+    @Override
+    public int genFramebuffers() {
+        count(Call.GEN_FRAMEBUFFERS);
+        return nextId++;
+    }
+
+    @Override
+    public void bindFramebuffer(int target, int framebuffer) {
+        count(Call.BIND_FRAMEBUFFER);
+    }
+
+    @Override
+    public void framebufferRenderbuffer(int target, int attachment, int renderbufferTarget, int renderbuffer) {
+        count(Call.FRAMEBUFFER_RENDERBUFFER);
+    }
+
+    @Override
+    public int checkFramebufferStatus(int target) {
+        count(Call.CHECK_FRAMEBUFFER_STATUS);
+        return GL_FRAMEBUFFER_COMPLETE;
+    }
+
+    @Override
+    public void deleteFramebuffers(int framebuffer) {
+        count(Call.DELETE_FRAMEBUFFERS);
+    }
+
+    @Override
+    public int genRenderbuffers() {
+        count(Call.GEN_RENDERBUFFERS);
+        return nextId++;
+    }
+
+    @Override
+    public void bindRenderbuffer(int target, int renderbuffer) {
+        count(Call.BIND_RENDERBUFFER);
+    }
+
+    @Override
+    public void renderbufferStorage(int target, int internalFormat, int width, int height) {
+        count(Call.RENDERBUFFER_STORAGE);
+    }
+
+    @Override
+    public void deleteRenderbuffers(int renderbuffer) {
+        count(Call.DELETE_RENDERBUFFERS);
+    }
+
+    // Vertex arrays
+    // -------------
+    @Override
+    public int genVertexArrays() {
+        count(Call.GEN_VERTEX_ARRAYS);
+        return nextId++;
+    }
+
+    @Override
+    public void bindVertexArray(int array) {
+        count(Call.BIND_VERTEX_ARRAY);
+    }
+
+    @Override
+    public void enableVertexAttribArray(int index) {
+        count(Call.ENABLE_VERTEX_ATTRIB_ARRAY);
+    }
+
+    @Override
+    public void disableVertexAttribArray(int index) {
+        count(Call.DISABLE_VERTEX_ATTRIB_ARRAY);
+    }
+
+    @Override
+    public void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, long pointer) {
+        count(Call.VERTEX_ATTRIB_POINTER);
+    }
+
+    // Desenho
+    // -------
+    @Override
+    public void vertexAttribDivisor(int index, int divisor) {
+        count(Call.VERTEX_ATTRIB_DIVISOR);
+    }
+
+    @Override
+    public void drawArrays(int mode, int first, int count) {
+        count(Call.DRAW_ARRAYS);
+        drawnElements += count;
+    }
+
+    @Override
+    public void drawElements(int mode, int count, int type, long indices) {
+        count(Call.DRAW_ELEMENTS);
+        drawnElements += count;
+    }
+
+    @Override
+    public void drawArraysInstanced(int mode, int first, int count, int instances) {
+        count(Call.DRAW_ARRAYS_INSTANCED);
+        drawnElements += (long) count * instances;
+    }
+
+    @Override
+    public void drawElementsInstanced(int mode, int count, int type, long indices, int instances) {
+        count(Call.DRAW_ELEMENTS_INSTANCED);
+        drawnElements += (long) count * instances;
+    }
+
+    @Override
+    public void drawElementsBaseVertex(int mode, int count, int type, long indices, int baseVertex) {
+        count(Call.DRAW_ELEMENTS_BASE_VERTEX);
+        drawnElements += count;
+    }
+
+    @Override
+    public void multiDrawElementsIndirect(int mode, int type, long indirect, int drawCount, int stride) {
+        count(Call.MULTI_DRAW_ELEMENTS_INDIRECT);
+        //Se os comandos foram escritos em memória mapeada, os índices desenhados podem ser somados
+        var commands = bufferMemory.get(boundBuffers.getOrDefault(GL_DRAW_INDIRECT_BUFFER, 0));
+        if (commands == null) return;
+        var step = stride == 0 ? 5 * Integer.BYTES : stride;
+        for (var i = 0; i < drawCount; i++) {
+            var offset = indirect + (long) i * step;
+            if (offset + 2 * Integer.BYTES > commands.capacity()) break;
+            drawnElements += (long) commands.getInt((int) offset) * commands.getInt((int) offset + Integer.BYTES);
+        }
+    }
+
+    // Shaders
+    // -------
+    @Override
+    public int createShader(int type) {
+        count(Call.CREATE_SHADER);
+        var id = nextId++;
+        shaderTypes.put(id, type);
+        return id;
+    }
+
+    @Override
+    public void shaderSource(int shader, CharSequence source) {
+        count(Call.SHADER_SOURCE);
+        shaderSources.put(shader, source.toString());
+    }
+
+    @Override
+    public void compileShader(int shader) {
+        count(Call.COMPILE_SHADER);
+    }
+
+    @Override
+    public int getShaderi(int shader, int pname) {
+        count(Call.GET_SHADER);
+        return GL_TRUE;
+    }
+
+    @Override
+    public String getShaderInfoLog(int shader) {
+        return "";
+    }
+
+    @Override
+    public int createProgram() {
+        count(Call.CREATE_PROGRAM);
+        var id = nextId++;
+        programShaders.put(id, new ArrayList<>());
+        return id;
+    }
+
+    @Override
+    public void attachShader(int program, int shader) {
+        count(Call.ATTACH_SHADER);
+        programShaders.get(program).add(shader);
+    }
+
+    @Override
+    public void detachShader(int program, int shader) {
+        count(Call.DETACH_SHADER);
+        programShaders.get(program).remove((Integer) shader);
+    }
+
+    @Override
+    public void bindAttribLocation(int program, int index, CharSequence name) {
+        count(Call.BIND_ATTRIB_LOCATION);
+        attribBindings.computeIfAbsent(program, p -> new HashMap<>()).put(name.toString(), index);
+    }
+
+    @Override
+    public void linkProgram(int program) {
+        count(Call.LINK_PROGRAM);
+
+        var bindings = attribBindings.getOrDefault(program, Map.of());
+        var used = new BitSet();
+        bindings.values().forEach(used::set);
+
+        var linked = new Program();
+        for (var shader : programShaders.get(program)) {
+            var source = shaderSources.getOrDefault(shader, "");
+            var vertex = shaderTypes.get(shader) == GL_VERTEX_SHADER;
+            for (var line : source.split("\n")) {
+                var comment = line.indexOf("//");
+                if (comment != -1) line = line.substring(0, comment);
+
+                var block = BLOCK.matcher(line);
+                if (block.find()) {
+                    if (!linked.blocks.contains(block.group(1))) linked.blocks.add(block.group(1));
+                    continue;
+                }
+
+                var m = UNIFORM.matcher(line);
+                if (m.find()) {
+                    var name = m.group(2);
+                    var size = m.group(3) == null ? 1 : Integer.parseInt(m.group(3));
+                    if (!linked.uniforms.containsKey(name)) {
+                        linked.uniforms.put(name, new Variable(name, m.group(1), size, linked.nextUniformLocation));
+                        linked.nextUniformLocation += size;
+                    }
+                } else if (vertex) {
+                    var a = ATTRIBUTE.matcher(line);
+                    if (a.find() && !linked.attributes.containsKey(a.group(2))) {
+                        //Matrizes ocupam uma localização por coluna
+                        var type = a.group(1);
+                        var columns = type.equals("mat4") ? 4 : type.equals("mat3") ? 3 : type.equals("mat2") ? 2 : 1;
+                        var bound = bindings.get(a.group(2));
+                        var location = bound != null ? bound : nextFree(used, columns);
+                        linked.attributes.put(a.group(2), new Variable(a.group(2), type, 1, location));
+                        used.set(location, location + columns);
+                    }
+                }
+            }
+        }
+        programs.put(program, linked);
+        failedPrograms.remove(program);
+    }
+
+    /**
+     * @return A primeira localização a partir da qual há columns localizações livres.
+     */
+    private static int nextFree(BitSet used, int columns) {
+        var location = used.nextClearBit(0);
+        while (!used.get(location, location + columns).isEmpty()) {
+            location = used.nextClearBit(location + 1);
+        }
+        return location;
+    }
+
+    @Override
+    public int getProgrami(int program, int pname) {
+        count(Call.GET_PROGRAM);
+        var linked = programs.get(program);
+        if (pname == GL_ACTIVE_UNIFORMS) return linked == null ? 0 : linked.uniforms.size();
+        if (pname == GL_ACTIVE_ATTRIBUTES) return linked == null ? 0 : linked.attributes.size();
+        if (pname == GL_LINK_STATUS) return failedPrograms.contains(program) ? GL_FALSE : GL_TRUE;
+        return GL_TRUE;
+    }
+
+    @Override
+    public String getProgramInfoLog(int program) {
+        return "";
+    }
+
+    @Override
+    public void deleteProgram(int program) {
+        count(Call.DELETE_PROGRAM);
+        programs.remove(program);
+        programShaders.remove(program);
+        attribBindings.remove(program);
+        failedPrograms.remove(program);
+    }
+
+    @Override
+    public void programParameteri(int program, int pname, int value) {
+        count(Call.PROGRAM_PARAMETER);
+    }
+
+    @Override
+    public byte[] getProgramBinary(int program, IntBuffer format) {
+        count(Call.GET_PROGRAM_BINARY);
+        var linked = programs.get(program);
+        if (linked == null) {
+            throw new IllegalArgumentException("Program not linked: " + program);
+        }
+
+        var text = new StringBuilder();
+        text.append("n\t").append(linked.nextUniformLocation).append('\n');
+        for (var v : linked.uniforms.values()) {
+            text.append("u\t").append(v.name).append('\t').append(v.type).append('\t').append(v.size).append('\t')
+                    .append(v.location).append('\n');
+        }
+        for (var v : linked.attributes.values()) {
+            text.append("a\t").append(v.name).append('\t').append(v.type).append('\t').append(v.size).append('\t')
+                    .append(v.location).append('\n');
+        }
+        for (var block : linked.blocks) {
+            text.append("b\t").append(block).append('\n');
+        }
+        format.put(format.position(), PROGRAM_BINARY_FORMAT);
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void programBinary(int program, int format, ByteBuffer binary) {
+        count(Call.PROGRAM_BINARY);
+        bytes += binary.remaining();
+        failedPrograms.add(program);
+        if (format != PROGRAM_BINARY_FORMAT || !extensions.contains("GL_ARB_get_program_binary")) {
+            return;
+        }
+
+        var data = new byte[binary.remaining()];
+        binary.duplicate().get(data);
+        var linked = new Program();
+        try {
+            for (var line : new String(data, StandardCharsets.UTF_8).split("\n")) {
+                if (line.isEmpty()) continue;
+                var fields = line.split("\t");
+                switch (fields[0]) {
+                    case "n":
+                        linked.nextUniformLocation = Integer.parseInt(fields[1]);
+                        break;
+                    case "u":
+                    case "a":
+                        var variable = new Variable(fields[1], fields[2], Integer.parseInt(fields[3]),
+                                Integer.parseInt(fields[4]));
+                        (fields[0].equals("u") ? linked.uniforms : linked.attributes).put(variable.name, variable);
+                        break;
+                    case "b":
+                        linked.blocks.add(fields[1]);
+                        break;
+                    default:
+                        return;
+                }
+            }
+        } catch (RuntimeException e) {
+            return; //Binário corrompido: o programa fica sem link, como no driver
+        }
+        programs.put(program, linked);
+        failedPrograms.remove(program);
+    }
+
+    @Override
+    public void useProgram(int program) {
+        count(Call.USE_PROGRAM);
+    }
+
+    @Override
+    public int getAttribLocation(int program, CharSequence name) {
+        count(Call.GET_ATTRIB_LOCATION);
+        var linked = programs.get(program);
+        var variable = linked == null ? null : Program.find(linked.attributes, name);
+        return variable == null ? -1 : variable.location;
+    }
+
+    @Override
+    public int getUniformLocation(int program, CharSequence name) {
+        count(Call.GET_UNIFORM_LOCATION);
+        var linked = programs.get(program);
+        var variable = linked == null ? null : Program.find(linked.uniforms, name);
+        return variable == null ? -1 : variable.location;
+    }
+
+    @Override
+    public String getActiveAttrib(int program, int index, IntBuffer size, IntBuffer type) {
+        count(Call.GET_ACTIVE);
+        return describe(Program.get(programs.get(program).attributes, index), size, type);
+    }
+
+    @Override
+    public String getActiveUniform(int program, int index, IntBuffer size, IntBuffer type) {
+        count(Call.GET_ACTIVE);
+        return describe(Program.get(programs.get(program).uniforms, index), size, type);
+    }
+
+    /**
+     * Preenche tamanho e tipo da variável, seguindo o que o driver faria em glGetActiveUniform/glGetActiveAttrib.
+     * @return O nome da variável. Arrays recebem o sufixo [0], como na OpenGL.
+     */
+    private static String describe(Variable variable, IntBuffer size, IntBuffer type) {
+        size.put(size.position(), variable.size);
+        type.put(type.position(), glslType(variable.type));
+        return variable.size > 1 ? variable.name + "[0]" : variable.name;
+    }
+
+    /**
+     * @param type Nome do tipo no GLSL
+     * @return A constante da OpenGL equivalente ao tipo.
+     */
+    private static int glslType(String type) {
+        switch (type) {
+            case "float": return GL_FLOAT;
+            case "vec2": return GL_FLOAT_VEC2;
+            case "vec3": return GL_FLOAT_VEC3;
+            case "vec4": return GL_FLOAT_VEC4;
+            case "int": return GL_INT;
+            case "ivec2": return GL_INT_VEC2;
+            case "ivec3": return GL_INT_VEC3;
+            case "ivec4": return GL_INT_VEC4;
+            case "bool": return GL_BOOL;
+            case "mat2": return GL_FLOAT_MAT2;
+            case "mat3": return GL_FLOAT_MAT3;
+            case "mat4": return GL_FLOAT_MAT4;
+            case "sampler2D": return GL_SAMPLER_2D;
+            case "samplerCube": return GL_SAMPLER_CUBE;
+            default: return GL_FLOAT;
+        }
+    }
+
+    // Uniforms
+    // --------
+    @Override
+    public void uniform1i(int location, int v0) {
+        count(Call.UNIFORM);
+        bytes += Integer.BYTES;
+    }
+
+    @Override
+    public void uniform1f(int location, float v0) {
+        count(Call.UNIFORM);
+        bytes += Float.BYTES;
+    }
+
+    @Override
+    public void uniform2f(int location, float v0, float v1) {
+        count(Call.UNIFORM);
+        bytes += 2 * Float.BYTES;
+    }
+
+    @Override
+    public void uniform3f(int location, float v0, float v1, float v2) {
+        count(Call.UNIFORM);
+        bytes += 3 * Float.BYTES;
+    }
+
+    @Override
+    public void uniform4f(int location, float v0, float v1, float v2, float v3) {
+        count(Call.UNIFORM);
+        bytes += 4 * Float.BYTES;
+    }
+
+    @Override
+    public void uniformMatrix3fv(int location, boolean transpose, FloatBuffer value) {
+        count(Call.UNIFORM);
+        bytes += value.remaining() * Float.BYTES;
+    }
+
+    @Override
+    public void uniformMatrix4fv(int location, boolean transpose, FloatBuffer value) {
+        count(Call.UNIFORM);
+        bytes += value.remaining() * Float.BYTES;
+    }
+
+    // Uniform blocks
+    // --------------
+    @Override
+    public void bindBufferBase(int target, int index, int buffer) {
+        count(Call.BIND_BUFFER_BASE);
+    }
+
+    @Override
+    public void bindBufferRange(int target, int index, int buffer, long offset, long size) {
+        count(Call.BIND_BUFFER_RANGE);
+    }
+
+    @Override
+    public int getUniformBlockIndex(int program, CharSequence name) {
+        count(Call.GET_UNIFORM_BLOCK_INDEX);
+        var linked = programs.get(program);
+        return linked == null ? GL_INVALID_INDEX : linked.blocks.indexOf(name.toString());
+    }
+
+    @Override
+    public void uniformBlockBinding(int program, int blockIndex, int binding) {
+        count(Call.UNIFORM_BLOCK_BINDING);
+    }
+
+    // Janela
+    // ------
+    @Override
+    public float getWindowAspect() {
+        return width / (float) height;
+    }
+}
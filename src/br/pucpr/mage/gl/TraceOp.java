@@ -0,0 +1,38 @@
+package br.pucpr.mage.gl;
+
+/**
+ * Comandos gravados em um arquivo de trace. O código de cada comando é a sua posição no enum, portanto novos
+ * comandos devem ser adicionados sempre ao final.
+ * @see CaptureBackend
+ * @see TracePlayer
+ */
+enum TraceOp {
+    FRAME,
+    ENABLE, DISABLE, POLYGON_MODE, CLEAR_COLOR, CLEAR, VIEWPORT, FINISH,
+    GEN_BUFFERS, BIND_BUFFER, BUFFER_DATA_FLOAT, BUFFER_DATA_INT,
+    GEN_FRAMEBUFFERS, BIND_FRAMEBUFFER, FRAMEBUFFER_RENDERBUFFER, DELETE_FRAMEBUFFERS,
+    GEN_RENDERBUFFERS, BIND_RENDERBUFFER, RENDERBUFFER_STORAGE, DELETE_RENDERBUFFERS,
+    GEN_VERTEX_ARRAYS, BIND_VERTEX_ARRAY, ENABLE_VERTEX_ATTRIB_ARRAY, DISABLE_VERTEX_ATTRIB_ARRAY,
+    VERTEX_ATTRIB_POINTER, VERTEX_ATTRIB_DIVISOR,
+    DRAW_ARRAYS, DRAW_ELEMENTS, DRAW_ARRAYS_INSTANCED, DRAW_ELEMENTS_INSTANCED,
+    CREATE_SHADER, SHADER_SOURCE, COMPILE_SHADER, CREATE_PROGRAM, ATTACH_SHADER, DETACH_SHADER, LINK_PROGRAM,
+    USE_PROGRAM, GET_UNIFORM_LOCATION,
+    UNIFORM_1I, UNIFORM_1F, UNIFORM_2F, UNIFORM_3F, UNIFORM_4F, UNIFORM_MATRIX_3FV, UNIFORM_MATRIX_4FV,
+    BUFFER_DATA_BYTE, BIND_ATTRIB_LOCATION,
+    DELETE_BUFFERS, BUFFER_DATA_SIZE, BUFFER_SUB_DATA, BUFFER_STORAGE,
+    BIND_BUFFER_BASE, BIND_BUFFER_RANGE, UNIFORM_BLOCK_BINDING,
+    DRAW_ELEMENTS_BASE_VERTEX, MULTI_DRAW_ELEMENTS_INDIRECT, DELETE_PROGRAM,
+    GET_UNIFORM_BLOCK_INDEX;
+
+    static final int MAGIC = 0x4D414745; //"MAGE"
+    static final int VERSION = 1;
+
+    private static final TraceOp[] VALUES = values();
+
+    static TraceOp of(int code) {
+        if (code < 0 || code >= VALUES.length) {
+            throw new IllegalArgumentException("Invalid trace command: " + code);
+        }
+        return VALUES[code];
+    }
+}
@@ -0,0 +1,518 @@
+package br.pucpr.mage.gl;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL15.GL_STREAM_DRAW;
+import static org.lwjgl.opengl.GL31.GL_INVALID_INDEX;
+
+/**
+ * Reproduz um trace gravado pelo CaptureBackend em outro backend, quadro a quadro, sem precisar da cena que o gerou.
+ * Como todo o trabalho de CPU do motor (culling, matrizes, ordenação) já está resolvido no trace, o tempo de
+ * reprodução mede apenas o custo das chamadas e do driver.
+ *
+ * Os ids de buffers, vertex arrays, shaders, programas, framebuffers e renderbuffers são traduzidos para os ids
+ * criados durante a reprodução, assim como as localizações dos uniforms e os índices dos uniform blocks, consultados
+ * novamente pelo nome. Já os índices dos atributos são reproduzidos exatamente como foram gravados, portanto, exceto
+ * nos shaders que os fixam com um VertexFormat, o trace deve ser reproduzido no mesmo driver em que foi capturado (ou
+ * em um RecordingBackend).
+ *
+ * <pre>
+ *     var player = new TracePlayer("frames.trace", Backend.gl());
+ *     while (player.nextFrame()) {
+ *         ...
+ *     }
+ *     player.close();
+ * </pre>
+ */
+public class TracePlayer {
+    private final GLBackend target;
+    private DataInputStream in;
+    private int frame;
+
+    private int[] buffers = new int[16];
+    private int[] vertexArrays = new int[16];
+    private int[] shaders = new int[16];
+    private int[] programs = new int[16];
+    private int[] framebuffers = new int[4];
+    private int[] renderbuffers = new int[4];
+
+    //Localizações dos uniforms, indexadas pelo id gravado do programa e pela localização gravada
+    private int[][] locations = new int[16][];
+    private int[] currentLocations;
+    private int currentProgram;
+
+    //Índices dos uniform blocks, indexados pelo id gravado do programa e pelo índice gravado
+    private int[][] blockIndices = new int[16][];
+
+    private FloatBuffer floats = MemoryUtil.memAllocFloat(1024);
+    private IntBuffer ints = MemoryUtil.memAllocInt(1024);
+    private ByteBuffer bytes = MemoryUtil.memAlloc(4096);
+
+    /**
+     * Abre o arquivo de trace.
+     * @param file Arquivo gravado pelo CaptureBackend
+     * @param target Backend onde as chamadas serão executadas
+     */
+    public TracePlayer(String file, GLBackend target) {
+        if (target == null) {
+            throw new IllegalArgumentException("Target can't be null!");
+        }
+        this.target = target;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            if (in.readInt() != TraceOp.MAGIC) {
+                throw new IllegalArgumentException("Invalid trace file: " + file);
+            }
+            var version = in.readInt();
+            if (version != TraceOp.VERSION) {
+                throw new IllegalArgumentException("Unsupported trace version: " + version);
+            }
+        } catch (IOException e) {
+            close();
+            throw new RuntimeException("Unable to read trace file", e);
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return Quantidade de quadros já reproduzidos
+     */
+    public int getFrame() {
+        return frame;
+    }
+
+    /**
+     * Reproduz as chamadas do próximo quadro. O primeiro quadro inclui a criação dos recursos feita antes dele.
+     * @return Falso se o trace terminou e nenhum quadro completo foi reproduzido.
+     */
+    public boolean nextFrame() {
+        if (in == null) return false;
+        try {
+            while (true) {
+                int code = in.read();
+                if (code == -1) {
+                    close();
+                    return false;
+                }
+                var op = TraceOp.of(code);
+                if (op == TraceOp.FRAME) {
+                    frame++;
+                    return true;
+                }
+                execute(op);
+            }
+        } catch (EOFException e) {
+            close();
+            throw new IllegalArgumentException("Truncated trace file", e);
+        } catch (IOException e) {
+            close();
+            throw new RuntimeException("Unable to read trace file", e);
+        }
+    }
+
+    /**
+     * Fecha o arquivo e libera a memória usada na reprodução. Os objetos OpenGL criados continuam existindo.
+     */
+    public void close() {
+        if (floats != null) {
+            MemoryUtil.memFree(floats);
+            MemoryUtil.memFree(ints);
+            MemoryUtil.memFree(bytes);
+            floats = null;
+            ints = null;
+            bytes = null;
+        }
+        if (in == null) return;
+        try {
+            in.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read trace file", e);
+        } finally {
+            in = null;
+        }
+    }
+
+    private void execute(TraceOp op) throws IOException {
+        switch (op) {
+            case ENABLE:
+                target.enable(in.readInt());
+                break;
+            case DISABLE:
+                target.disable(in.readInt());
+                break;
+            case POLYGON_MODE:
+                target.polygonMode(in.readInt(), in.readInt());
+                break;
+            case CLEAR_COLOR:
+                target.clearColor(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat());
+                break;
+            case CLEAR:
+                target.clear(in.readInt());
+                break;
+            case VIEWPORT:
+                target.viewport(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+                break;
+            case FINISH:
+                target.finish();
+                break;
+
+            case GEN_BUFFERS:
+                buffers = put(buffers, in.readInt(), target.genBuffers());
+                break;
+            case BIND_BUFFER: {
+                var bufferTarget = in.readInt();
+                target.bindBuffer(bufferTarget, get(buffers, in.readInt()));
+                break;
+            }
+            case BUFFER_DATA_FLOAT: {
+                var bufferTarget = in.readInt();
+                var usage = in.readInt();
+                target.bufferData(bufferTarget, readFloats(), usage);
+                break;
+            }
+            case BUFFER_DATA_INT: {
+                var bufferTarget = in.readInt();
+                var usage = in.readInt();
+                target.bufferData(bufferTarget, readInts(), usage);
+                break;
+            }
+            case BUFFER_DATA_BYTE: {
+                var bufferTarget = in.readInt();
+                var usage = in.readInt();
+                target.bufferData(bufferTarget, readBytes(), usage);
+                break;
+            }
+            case DELETE_BUFFERS:
+                target.deleteBuffers(get(buffers, in.readInt()));
+                break;
+            case BUFFER_DATA_SIZE: {
+                var bufferTarget = in.readInt();
+                var usage = in.readInt();
+                target.bufferData(bufferTarget, in.readLong(), usage);
+                break;
+            }
+            case BUFFER_SUB_DATA: {
+                var bufferTarget = in.readInt();
+                var offset = in.readLong();
+                target.bufferSubData(bufferTarget, offset, readBytes());
+                break;
+            }
+            case BUFFER_STORAGE: {
+                //Os dados escritos no buffer mapeado foram gravados como bufferSubData, que exige um buffer mutável
+                var bufferTarget = in.readInt();
+                target.bufferData(bufferTarget, in.readLong(), GL_STREAM_DRAW);
+                break;
+            }
+
+            case GEN_FRAMEBUFFERS:
+                framebuffers = put(framebuffers, in.readInt(), target.genFramebuffers());
+                break;
+            case BIND_FRAMEBUFFER: {
+                var fbTarget = in.readInt();
+                target.bindFramebuffer(fbTarget, get(framebuffers, in.readInt()));
+                break;
+            }
+            case FRAMEBUFFER_RENDERBUFFER: {
+                var fbTarget = in.readInt();
+                var attachment = in.readInt();
+                var rbTarget = in.readInt();
+                target.framebufferRenderbuffer(fbTarget, attachment, rbTarget, get(renderbuffers, in.readInt()));
+                break;
+            }
+            case DELETE_FRAMEBUFFERS:
+                target.deleteFramebuffers(get(framebuffers, in.readInt()));
+                break;
+            case GEN_RENDERBUFFERS:
+                renderbuffers = put(renderbuffers, in.readInt(), target.genRenderbuffers());
+                break;
+            case BIND_RENDERBUFFER: {
+                var rbTarget = in.readInt();
+                target.bindRenderbuffer(rbTarget, get(renderbuffers, in.readInt()));
+                break;
+            }
+            case RENDERBUFFER_STORAGE:
+                target.renderbufferStorage(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+                break;
+            case DELETE_RENDERBUFFERS:
+                target.deleteRenderbuffers(get(renderbuffers, in.readInt()));
+                break;
+
+            case GEN_VERTEX_ARRAYS:
+                vertexArrays = put(vertexArrays, in.readInt(), target.genVertexArrays());
+                break;
+            case BIND_VERTEX_ARRAY:
+                target.bindVertexArray(get(vertexArrays, in.readInt()));
+                break;
+            case ENABLE_VERTEX_ATTRIB_ARRAY:
+                target.enableVertexAttribArray(in.readInt());
+                break;
+            case DISABLE_VERTEX_ATTRIB_ARRAY:
+                target.disableVertexAttribArray(in.readInt());
+                break;
+            case VERTEX_ATTRIB_POINTER:
+                target.vertexAttribPointer(in.readInt(), in.readInt(), in.readInt(), in.readInt() != 0,
+                        in.readInt(), in.readLong());
+                break;
+            case VERTEX_ATTRIB_DIVISOR:
+                target.vertexAttribDivisor(in.readInt(), in.readInt());
+                break;
+
+            case DRAW_ARRAYS:
+                target.drawArrays(in.readInt(), in.readInt(), in.readInt());
+                break;
+            case DRAW_ELEMENTS:
+                target.drawElements(in.readInt(), in.readInt(), in.readInt(), in.readLong());
+                break;
+            case DRAW_ARRAYS_INSTANCED:
+                target.drawArraysInstanced(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+                break;
+            case DRAW_ELEMENTS_INSTANCED: {
+                var mode = in.readInt();
+                var count = in.readInt();
+                var type = in.readInt();
+                var instances = in.readInt();
+                target.drawElementsInstanced(mode, count, type, in.readLong(), instances);
+                break;
+            }
+            case DRAW_ELEMENTS_BASE_VERTEX: {
+                var mode = in.readInt();
+                var count = in.readInt();
+                var type = in.readInt();
+                var baseVertex = in.readInt();
+                target.drawElementsBaseVertex(mode, count, type, in.readLong(), baseVertex);
+                break;
+            }
+            case MULTI_DRAW_ELEMENTS_INDIRECT: {
+                var mode = in.readInt();
+                var type = in.readInt();
+                var drawCount = in.readInt();
+                var stride = in.readInt();
+                target.multiDrawElementsIndirect(mode, type, in.readLong(), drawCount, stride);
+                break;
+            }
+
+            case CREATE_SHADER: {
+                var type = in.readInt();
+                shaders = put(shaders, in.readInt(), target.createShader(type));
+                break;
+            }
+            case SHADER_SOURCE: {
+                var shader = get(shaders, in.readInt());
+                var source = new StringBuilder(in.readInt());
+                for (var i = 0; i < source.capacity(); i++) source.append(in.readChar());
+                target.shaderSource(shader, source);
+                break;
+            }
+            case COMPILE_SHADER:
+                target.compileShader(get(shaders, in.readInt()));
+                break;
+            case CREATE_PROGRAM:
+                programs = put(programs, in.readInt(), target.createProgram());
+                break;
+            case ATTACH_SHADER: {
+                var program = get(programs, in.readInt());
+                target.attachShader(program, get(shaders, in.readInt()));
+                break;
+            }
+            case DETACH_SHADER: {
+                var program = get(programs, in.readInt());
+                target.detachShader(program, get(shaders, in.readInt()));
+                break;
+            }
+            case BIND_ATTRIB_LOCATION: {
+                var program = get(programs, in.readInt());
+                var index = in.readInt();
+                target.bindAttribLocation(program, index, in.readUTF());
+                break;
+            }
+            case LINK_PROGRAM:
+                target.linkProgram(get(programs, in.readInt()));
+                break;
+            case DELETE_PROGRAM:
+                target.deleteProgram(get(programs, in.readInt()));
+                break;
+            case USE_PROGRAM: {
+                var program = in.readInt();
+                currentProgram = program;
+                currentLocations = program < locations.length ? locations[program] : null;
+                target.useProgram(get(programs, program));
+                break;
+            }
+            case GET_UNIFORM_LOCATION: {
+                var program = in.readInt();
+                var location = in.readInt();
+                var name = in.readUTF();
+                if (location >= 0) {
+                    mapLocation(program, location, target.getUniformLocation(get(programs, program), name));
+                }
+                break;
+            }
+
+            case BIND_BUFFER_BASE: {
+                var bufferTarget = in.readInt();
+                var index = in.readInt();
+                target.bindBufferBase(bufferTarget, index, get(buffers, in.readInt()));
+                break;
+            }
+            case BIND_BUFFER_RANGE: {
+                var bufferTarget = in.readInt();
+                var index = in.readInt();
+                var buffer = get(buffers, in.readInt());
+                target.bindBufferRange(bufferTarget, index, buffer, in.readLong(), in.readLong());
+                break;
+            }
+            case GET_UNIFORM_BLOCK_INDEX: {
+                var program = in.readInt();
+                var index = in.readInt();
+                var name = in.readUTF();
+                if (index != GL_INVALID_INDEX) {
+                    blockIndices = remap(blockIndices, program, index,
+                            target.getUniformBlockIndex(get(programs, program), name));
+                }
+                break;
+            }
+            case UNIFORM_BLOCK_BINDING: {
+                var program = in.readInt();
+                var index = blockIndex(program, in.readInt());
+                target.uniformBlockBinding(get(programs, program), index, in.readInt());
+                break;
+            }
+
+            case UNIFORM_1I:
+                target.uniform1i(location(in.readInt()), in.readInt());
+                break;
+            case UNIFORM_1F:
+                target.uniform1f(location(in.readInt()), in.readFloat());
+                break;
+            case UNIFORM_2F:
+                target.uniform2f(location(in.readInt()), in.readFloat(), in.readFloat());
+                break;
+            case UNIFORM_3F:
+                target.uniform3f(location(in.readInt()), in.readFloat(), in.readFloat(), in.readFloat());
+                break;
+            case UNIFORM_4F:
+                target.uniform4f(location(in.readInt()), in.readFloat(), in.readFloat(), in.readFloat(),
+                        in.readFloat());
+                break;
+            case UNIFORM_MATRIX_3FV: {
+                var location = location(in.readInt());
+                var transpose = in.readInt() != 0;
+                target.uniformMatrix3fv(location, transpose, readFloats());
+                break;
+            }
+            case UNIFORM_MATRIX_4FV: {
+                var location = location(in.readInt());
+                var transpose = in.readInt() != 0;
+                target.uniformMatrix4fv(location, transpose, readFloats());
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unexpected trace command: " + op);
+        }
+    }
+
+    private FloatBuffer readFloats() throws IOException {
+        var count = in.readInt();
+        if (floats.capacity() < count) {
+            floats = MemoryUtil.memRealloc(floats, Math.max(count, floats.capacity() * 2));
+        }
+        floats.clear();
+        for (var i = 0; i < count; i++) floats.put(in.readFloat());
+        return floats.flip();
+    }
+
+    private IntBuffer readInts() throws IOException {
+        var count = in.readInt();
+        if (ints.capacity() < count) {
+            ints = MemoryUtil.memRealloc(ints, Math.max(count, ints.capacity() * 2));
+        }
+        ints.clear();
+        for (var i = 0; i < count; i++) ints.put(in.readInt());
+        return ints.flip();
+    }
+
+    private ByteBuffer readBytes() throws IOException {
+        var count = in.readInt();
+        if (bytes.capacity() < count) {
+            bytes = MemoryUtil.memRealloc(bytes, Math.max(count, bytes.capacity() * 2));
+        }
+        bytes.clear();
+        for (var i = 0; i < count; i++) bytes.put(in.readByte());
+        return bytes.flip();
+    }
+
+    private int location(int recorded) {
+        if (recorded < 0) return recorded;
+        if (currentLocations == null || recorded >= currentLocations.length) {
+            throw new IllegalArgumentException("Unknown uniform location in trace: " + recorded);
+        }
+        return currentLocations[recorded];
+    }
+
+    private void mapLocation(int program, int recorded, int location) {
+        locations = remap(locations, program, recorded, location);
+        if (program == currentProgram) {
+            currentLocations = locations[program];
+        }
+    }
+
+    private int blockIndex(int program, int recorded) {
+        var map = program < blockIndices.length ? blockIndices[program] : null;
+        //Traces sem GET_UNIFORM_BLOCK_INDEX guardam apenas o índice do driver em que foram capturados
+        if (map == null || recorded < 0 || recorded >= map.length || map[recorded] == -1) {
+            return recorded;
+        }
+        return map[recorded];
+    }
+
+    /**
+     * Associa o valor gravado ao valor obtido na reprodução, no mapa do programa indicado. Valores não associados
+     * ficam com -1.
+     * @return O array de mapas, que pode ter sido realocado
+     */
+    private static int[][] remap(int[][] maps, int program, int recorded, int value) {
+        if (program >= maps.length) {
+            maps = Arrays.copyOf(maps, Math.max(program + 1, maps.length * 2));
+        }
+        var map = maps[program];
+        if (map == null) {
+            map = new int[Math.max(16, recorded + 1)];
+            Arrays.fill(map, -1);
+        } else if (recorded >= map.length) {
+            var size = map.length;
+            map = Arrays.copyOf(map, Math.max(recorded + 1, size * 2));
+            Arrays.fill(map, size, map.length, -1);
+        }
+        map[recorded] = value;
+        maps[program] = map;
+        return maps;
+    }
+
+    private static int[] put(int[] map, int recorded, int id) {
+        if (recorded >= map.length) {
+            map = Arrays.copyOf(map, Math.max(recorded + 1, map.length * 2));
+        }
+        map[recorded] = id;
+        return map;
+    }
+
+    private static int get(int[] map, int recorded) {
+        if (recorded == 0) return 0;
+        if (recorded < 0 || recorded >= map.length) {
+            throw new IllegalArgumentException("Unknown object id in trace: " + recorded);
+        }
+        return map[recorded];
+    }
+}
@@ -3,9 +3,14 @@
 //Matriz de transformação World
 uniform mat4 uWorld;
 
-//Matrizes de transformação da camera
-uniform mat4 uView;         //Posicionamento
-uniform mat4 uProjection;   //Abertura
+//Dados da camera, enviados uma vez por quadro pelo CameraUniforms
+layout(std140) uniform Camera {
+    mat4 uView;             //Posicionamento
+    mat4 uProjection;       //Abertura
+    mat4 uViewProjection;   //uProjection * uView
+    vec3 uCameraPosition;
+    float uTime;
+};
 
 //Atributos do vértice: posição e cor
 //São variáveis de entrada do shader, portanto, devem ser associadas a buffers pelo java
@@ -16,6 +21,6 @@ out vec3 vColor;
 
 void main(){
     //Transforma a posição do triangulo coordenadas do modelo para coordenadas de projeção
-    gl_Position = uProjection * uView * uWorld * vec4(aPosition, 1.0);
+    gl_Position = uViewProjection * uWorld * vec4(aPosition, 1.0);
     vColor = aColor;
 }
\ No newline at end of file
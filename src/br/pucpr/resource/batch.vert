@@ -0,0 +1,33 @@
+#version 330
+
+//Dados da camera, enviados uma vez por quadro pelo CameraUniforms
+layout(std140) uniform Camera {
+    mat4 uView;             //Posicionamento
+    mat4 uProjection;       //Abertura
+    mat4 uViewProjection;   //uProjection * uView
+    vec3 uCameraPosition;
+    float uTime;
+};
+
+//Dados de cada desenho do MultiDrawBatch. DRAW_ID é definido no cabeçalho inserido pelo
+//MultiDrawBatch.loadProgram: gl_DrawIDARB com multi-draw indirect, ou um uniform no fallback.
+struct DrawItem {
+    mat4 world;
+    vec4 color;
+};
+
+layout(std140) uniform DrawData {
+    DrawItem uDraws[128];
+};
+
+//Atributos do vértice: posição e cor
+in vec3 aPosition;
+in vec3 aColor;
+
+out vec3 vColor;
+
+void main(){
+    DrawItem item = uDraws[DRAW_ID];
+    gl_Position = uViewProjection * item.world * vec4(aPosition, 1.0);
+    vColor = aColor * item.color.rgb;
+}
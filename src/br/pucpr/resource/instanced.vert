@@ -0,0 +1,25 @@
+#version 330
+
+//Dados da camera, enviados uma vez por quadro pelo CameraUniforms
+layout(std140) uniform Camera {
+    mat4 uView;             //Posicionamento
+    mat4 uProjection;       //Abertura
+    mat4 uViewProjection;   //uProjection * uView
+    vec3 uCameraPosition;
+    float uTime;
+};
+
+//Atributos do vértice: posição e cor
+in vec3 aPosition;
+in vec3 aColor;
+
+//Atributo por instância: a matriz world de cada cópia da malha
+in mat4 aWorld;
+
+out vec3 vColor;
+
+void main(){
+    //Igual ao basic.vert, mas a matriz world vem da instância em vez de um uniform
+    gl_Position = uViewProjection * aWorld * vec4(aPosition, 1.0);
+    vColor = aColor;
+}